@@ -0,0 +1,97 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write the attenuation of each source/receiver into an {@link AttenuationMatrixWriter} instead of keeping it in memory.
+ * The noise levels are computed afterwards for any emission with {@link AttenuationMatrixStore#replay(List, AttenuationMatrixStore.ReceiverLevelsVisitor)}.
+ */
+public class AttenuationMatrixComputeRaysOut extends ComputeRaysOutAttenuation {
+    private final AttenuationMatrixWriter writer;
+
+    /**
+     * @param pathData Propagation parameters
+     * @param inputData Input data, may be null
+     * @param writer Output of the attenuation, shared between threads and cells
+     */
+    public AttenuationMatrixComputeRaysOut(PropagationProcessPathData pathData, PropagationProcessData inputData,
+                                           AttenuationMatrixWriter writer) {
+        super(false, pathData, inputData);
+        this.writer = writer;
+    }
+
+    @Override
+    public IComputeRaysOut subProcess() {
+        return new ThreadMatrixRaysOut(this);
+    }
+
+    public static class ThreadMatrixRaysOut extends ThreadRaysOut {
+        protected AttenuationMatrixComputeRaysOut matrixParent;
+        // Merged attenuation of the sources of the current receiver
+        protected List<VerticeSL> receiverLevels = new ArrayList<>();
+
+        public ThreadMatrixRaysOut(AttenuationMatrixComputeRaysOut multiThreadParent) {
+            super(multiThreadParent);
+            this.matrixParent = multiThreadParent;
+        }
+
+        @Override
+        protected void pushResult(long receiverId, long sourceId, double[] level) {
+            receiverLevels.add(new VerticeSL(receiverId, sourceId, level));
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+            super.finalizeReceiver(receiverId);
+            long receiverPK = receiverId;
+            if(matrixParent.inputData != null && receiverId < matrixParent.inputData.receiversPk.size()) {
+                receiverPK = matrixParent.inputData.receiversPk.get((int)receiverId);
+            }
+            try {
+                matrixParent.writer.writeReceiver(receiverPK, receiverLevels);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                receiverLevels.clear();
+            }
+        }
+    }
+
+    /**
+     * Create one {@link AttenuationMatrixComputeRaysOut} by cell, all writing into the same file
+     */
+    public static class Factory implements PointNoiseMap.IComputeRaysOutFactory {
+        private final AttenuationMatrixWriter writer;
+
+        /**
+         * @param writer Output of the attenuation, must be closed by the caller once all cells are computed
+         */
+        public Factory(AttenuationMatrixWriter writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public IComputeRaysOut create(PropagationProcessData threadData, PropagationProcessPathData pathData) {
+            return new AttenuationMatrixComputeRaysOut(pathData, threadData, writer);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.utilities.TableLocation;
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Memory mapped source/receiver attenuation matrix written by {@link AttenuationMatrixWriter}.
+ * Receivers are stored one after the other, each with the identifiers of its sources then the float attenuation
+ * spectra. The noise levels of any emission scenario are computed again from this file without pathfinding.
+ */
+public class AttenuationMatrixStore implements Closeable {
+    static final int MAGIC = 0x4E4D4154;
+    static final int VERSION = 1;
+    // Maximum size of a mapped region
+    private static final long MAXIMUM_CHUNK_SIZE = 1L << 30;
+    // Number of receivers computed in parallel before being given to the replay visitor
+    private static final int REPLAY_BLOCK_SIZE = 4096;
+    private final RandomAccessFile file;
+    private final int[] frequencies;
+    private final long[] receiverIds;
+    // Mapped region and position in this region of each receiver
+    private final int[] receiverChunk;
+    private final int[] receiverPosition;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private Map<Long, Integer> receiverIndex = null;
+
+    /**
+     * @param path File written by {@link AttenuationMatrixWriter}
+     * @throws IOException
+     */
+    public AttenuationMatrixStore(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            long fileSize = channel.size();
+            ByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, fileSize - Long.BYTES - Integer.BYTES,
+                    Long.BYTES + Integer.BYTES);
+            long footerOffset = tail.getLong();
+            if(tail.getInt() != MAGIC) {
+                throw new IOException("Not an attenuation matrix file or not closed " + path);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 3 * Integer.BYTES);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported attenuation matrix file " + path);
+            }
+            frequencies = new int[header.getInt()];
+            ByteBuffer frequenciesBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 3 * Integer.BYTES,
+                    (long) frequencies.length * Integer.BYTES);
+            for(int i = 0; i < frequencies.length; i++) {
+                frequencies[i] = frequenciesBuffer.getInt();
+            }
+            ByteBuffer footer = channel.map(FileChannel.MapMode.READ_ONLY, footerOffset,
+                    fileSize - footerOffset - Long.BYTES - Integer.BYTES);
+            int receiverCount = footer.getInt();
+            receiverIds = new long[receiverCount];
+            long[] offsets = new long[receiverCount];
+            for(int i = 0; i < receiverCount; i++) {
+                receiverIds[i] = footer.getLong();
+                offsets[i] = footer.getLong();
+            }
+            // Map the records by regions, a record is never split between two regions
+            receiverChunk = new int[receiverCount];
+            receiverPosition = new int[receiverCount];
+            int first = 0;
+            while(first < receiverCount) {
+                long chunkStart = offsets[first];
+                int last = first;
+                while(last + 1 < receiverCount && offsets[last + 1] >= chunkStart &&
+                        getRecordEnd(offsets, last + 1, footerOffset) - chunkStart <= MAXIMUM_CHUNK_SIZE) {
+                    last++;
+                }
+                long chunkEnd = getRecordEnd(offsets, last, footerOffset);
+                if(chunkEnd - chunkStart > MAXIMUM_CHUNK_SIZE) {
+                    throw new IOException("Receiver " + receiverIds[first] + " record is too large");
+                }
+                chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart));
+                for(int i = first; i <= last; i++) {
+                    receiverChunk[i] = chunks.size() - 1;
+                    receiverPosition[i] = (int) (offsets[i] - chunkStart);
+                }
+                first = last + 1;
+            }
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    private static long getRecordEnd(long[] offsets, int index, long footerOffset) {
+        return index + 1 < offsets.length ? offsets[index + 1] : footerOffset;
+    }
+
+    static long getRecordSize(int pairCount, int frequencyCount) {
+        return Long.BYTES + Integer.BYTES + (long) pairCount * Long.BYTES +
+                (long) pairCount * frequencyCount * Float.BYTES;
+    }
+
+    /**
+     * @return Frequency of each value of the attenuation spectra
+     */
+    public int[] getFrequencies() {
+        return frequencies.clone();
+    }
+
+    /**
+     * @return Number of stored receivers
+     */
+    public int getReceiverCount() {
+        return receiverIds.length;
+    }
+
+    /**
+     * @param receiverIndex Receiver index [0-getReceiverCount()[
+     * @return Receiver identifier
+     */
+    public long getReceiverId(int receiverIndex) {
+        return receiverIds[receiverIndex];
+    }
+
+    /**
+     * @param receiverId Receiver identifier
+     * @return Receiver index, -1 if not found
+     */
+    public synchronized int getReceiverIndex(long receiverId) {
+        if(receiverIndex == null) {
+            receiverIndex = new HashMap<>(receiverIds.length);
+            for(int i = 0; i < receiverIds.length; i++) {
+                receiverIndex.put(receiverIds[i], i);
+            }
+        }
+        return receiverIndex.getOrDefault(receiverId, -1);
+    }
+
+    /**
+     * @param receiverIndex Receiver index [0-getReceiverCount()[
+     * @return Attenuation in dB of each source of the receiver
+     */
+    public List<ComputeRaysOutAttenuation.VerticeSL> getReceiverAttenuation(int receiverIndex) {
+        ByteBuffer chunk = chunks.get(receiverChunk[receiverIndex]);
+        int position = receiverPosition[receiverIndex] + Long.BYTES;
+        int pairCount = chunk.getInt(position);
+        position += Integer.BYTES;
+        int spectrumPosition = position + pairCount * Long.BYTES;
+        List<ComputeRaysOutAttenuation.VerticeSL> levels = new ArrayList<>(pairCount);
+        for(int pair = 0; pair < pairCount; pair++) {
+            double[] value = new double[frequencies.length];
+            for(int idfreq = 0; idfreq < frequencies.length; idfreq++) {
+                value[idfreq] = chunk.getFloat(spectrumPosition);
+                spectrumPosition += Float.BYTES;
+            }
+            levels.add(new ComputeRaysOutAttenuation.VerticeSL(receiverIds[receiverIndex],
+                    chunk.getLong(position + pair * Long.BYTES), value));
+        }
+        return levels;
+    }
+
+    /**
+     * Compute the noise level of the receivers for each period. Receivers are computed in parallel by blocks, then
+     * given to the visitor in the order of the receivers in the file, from the calling thread. Only one block of
+     * levels is held in memory.
+     * Sources without emission in a period are ignored for this period.
+     * @param periodsEmission Emission spectrum in dB of the sources for each period (ex. hours of a time series)
+     * @param visitor Receive the noise level spectrum in dB of each receiver then of each period
+     */
+    public void replay(List<Map<Long, double[]>> periodsEmission, ReceiverLevelsVisitor visitor) {
+        final int periodCount = periodsEmission.size();
+        // Convert emission to energetic values once
+        List<Map<Long, double[]>> periodsPower = new ArrayList<>(periodCount);
+        for(Map<Long, double[]> emission : periodsEmission) {
+            Map<Long, double[]> power = new HashMap<>(emission.size());
+            for(Map.Entry<Long, double[]> entry : emission.entrySet()) {
+                if(entry.getValue().length != frequencies.length) {
+                    throw new IllegalArgumentException("Expected " + frequencies.length + " frequencies for source " +
+                            entry.getKey());
+                }
+                power.put(entry.getKey(), ComputeRays.dbaToW(entry.getValue()));
+            }
+            periodsPower.add(power);
+        }
+        final double[][][] levels = new double[Math.min(REPLAY_BLOCK_SIZE, receiverIds.length)][][];
+        for(int blockStart = 0; blockStart < receiverIds.length; blockStart += REPLAY_BLOCK_SIZE) {
+            final int start = blockStart;
+            final int end = Math.min(receiverIds.length, blockStart + REPLAY_BLOCK_SIZE);
+            IntStream.range(start, end).parallel().forEach(receiver ->
+                    levels[receiver - start] = computeReceiverLevels(receiver, periodsPower));
+            for(int receiver = start; receiver < end; receiver++) {
+                visitor.visit(receiverIds[receiver], levels[receiver - start]);
+                levels[receiver - start] = null;
+            }
+        }
+    }
+
+    private double[][] computeReceiverLevels(int receiver, List<Map<Long, double[]>> periodsPower) {
+        final int periodCount = periodsPower.size();
+        double[][] receiverPower = new double[periodCount][frequencies.length];
+        double[] attenuation = new double[frequencies.length];
+        ByteBuffer chunk = chunks.get(receiverChunk[receiver]);
+        int position = receiverPosition[receiver] + Long.BYTES;
+        int pairCount = chunk.getInt(position);
+        position += Integer.BYTES;
+        int spectrumPosition = position + pairCount * Long.BYTES;
+        for(int pair = 0; pair < pairCount; pair++) {
+            long sourceId = chunk.getLong(position + pair * Long.BYTES);
+            for(int idfreq = 0; idfreq < frequencies.length; idfreq++) {
+                attenuation[idfreq] = ComputeRays.dbaToW(chunk.getFloat(spectrumPosition));
+                spectrumPosition += Float.BYTES;
+            }
+            for(int period = 0; period < periodCount; period++) {
+                double[] sourcePower = periodsPower.get(period).get(sourceId);
+                if(sourcePower != null) {
+                    double[] periodPower = receiverPower[period];
+                    for(int idfreq = 0; idfreq < frequencies.length; idfreq++) {
+                        periodPower[idfreq] += sourcePower[idfreq] * attenuation[idfreq];
+                    }
+                }
+            }
+        }
+        for(int period = 0; period < periodCount; period++) {
+            receiverPower[period] = ComputeRays.wToDba(receiverPower[period]);
+        }
+        return receiverPower;
+    }
+
+    /**
+     * Read the emission of the sources from a table
+     * @param connection Active connection
+     * @param tableName Emission table
+     * @param sourcePkField Source identifier column
+     * @param spectrumFields Emission columns in dB, one for each frequency of the attenuation matrix
+     * @return Emission spectrum of each source
+     * @throws SQLException
+     */
+    public static Map<Long, double[]> fetchEmission(Connection connection, String tableName, String sourcePkField,
+                                                    List<String> spectrumFields) throws SQLException {
+        StringBuilder query = new StringBuilder("SELECT ");
+        query.append(TableLocation.quoteIdentifier(sourcePkField));
+        for(String field : spectrumFields) {
+            query.append(", ");
+            query.append(TableLocation.quoteIdentifier(field));
+        }
+        query.append(" FROM ");
+        query.append(TableLocation.parse(tableName));
+        Map<Long, double[]> emission = new HashMap<>();
+        try(Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(query.toString())) {
+            while (rs.next()) {
+                double[] spectrum = new double[spectrumFields.size()];
+                for(int idfreq = 0; idfreq < spectrum.length; idfreq++) {
+                    spectrum[idfreq] = rs.getDouble(idfreq + 2);
+                }
+                emission.put(rs.getLong(1), spectrum);
+            }
+        }
+        return emission;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Receive the noise levels computed by {@link #replay(List, ReceiverLevelsVisitor)}
+     */
+    public interface ReceiverLevelsVisitor {
+        /**
+         * @param receiverId Receiver identifier
+         * @param levels Noise level spectrum in dB of each period
+         */
+        void visit(long receiverId, double[][] levels);
+    }
+}
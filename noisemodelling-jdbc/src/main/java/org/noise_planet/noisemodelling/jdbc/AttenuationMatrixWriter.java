@@ -0,0 +1,130 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Write the source/receiver attenuation in a file readable by {@link AttenuationMatrixStore}.
+ * The attenuation of all the sources of a receiver is written at once, receivers are written in the order of the calls.
+ * This class is thread safe.
+ */
+public class AttenuationMatrixWriter implements Closeable {
+    private static final int WRITE_CACHE = 65536;
+    private final DataOutputStream out;
+    private final int frequencyCount;
+    private long position = 0;
+    private long[] receiverIds = new long[1024];
+    private long[] receiverOffsets = new long[1024];
+    private int receiverCount = 0;
+    private long pairCount = 0;
+    private boolean closed = false;
+
+    /**
+     * @param file Output file, replaced if exists
+     * @param frequencies Frequency of each value of the attenuation spectra
+     * @throws IOException
+     */
+    public AttenuationMatrixWriter(File file, List<Integer> frequencies) throws IOException {
+        this.frequencyCount = frequencies.size();
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), WRITE_CACHE));
+        out.writeInt(AttenuationMatrixStore.MAGIC);
+        out.writeInt(AttenuationMatrixStore.VERSION);
+        out.writeInt(frequencyCount);
+        for(int frequency : frequencies) {
+            out.writeInt(frequency);
+        }
+        position = 3 * Integer.BYTES + frequencyCount * Integer.BYTES;
+    }
+
+    /**
+     * @return Number of written receivers
+     */
+    public synchronized int getReceiverCount() {
+        return receiverCount;
+    }
+
+    /**
+     * @return Number of written source/receiver pairs
+     */
+    public synchronized long getPairCount() {
+        return pairCount;
+    }
+
+    /**
+     * Write the attenuation of the sources of a receiver
+     * @param receiverId Receiver identifier
+     * @param levels Attenuation in dB of each source, the receiver identifier of the items is ignored
+     * @throws IOException
+     */
+    public synchronized void writeReceiver(long receiverId, List<ComputeRaysOutAttenuation.VerticeSL> levels)
+            throws IOException {
+        if(closed) {
+            throw new IOException("Attenuation matrix writer is closed");
+        }
+        // Check the levels before writing the record, a partial record would corrupt the file
+        for(ComputeRaysOutAttenuation.VerticeSL level : levels) {
+            if(level.value.length != frequencyCount) {
+                throw new IOException("Expected " + frequencyCount + " frequencies, got " + level.value.length);
+            }
+        }
+        out.writeLong(receiverId);
+        out.writeInt(levels.size());
+        for(ComputeRaysOutAttenuation.VerticeSL level : levels) {
+            out.writeLong(level.sourceId);
+        }
+        for(ComputeRaysOutAttenuation.VerticeSL level : levels) {
+            for(double value : level.value) {
+                out.writeFloat((float) value);
+            }
+        }
+        if(receiverCount == receiverIds.length) {
+            receiverIds = Arrays.copyOf(receiverIds, receiverCount * 2);
+            receiverOffsets = Arrays.copyOf(receiverOffsets, receiverCount * 2);
+        }
+        receiverIds[receiverCount] = receiverId;
+        receiverOffsets[receiverCount] = position;
+        receiverCount++;
+        position += AttenuationMatrixStore.getRecordSize(levels.size(), frequencyCount);
+        pairCount += levels.size();
+    }
+
+    /**
+     * Write the receivers index and close the file
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        long footerOffset = position;
+        out.writeInt(receiverCount);
+        for(int i = 0; i < receiverCount; i++) {
+            out.writeLong(receiverIds[i]);
+            out.writeLong(receiverOffsets[i]);
+        }
+        out.writeLong(footerOffset);
+        out.writeInt(AttenuationMatrixStore.MAGIC);
+        out.close();
+    }
+}
@@ -9,6 +9,7 @@ import org.locationtech.jts.geom.*;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.pathfinder.GeoWithSoilType;
 import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+import org.noise_planet.noisemodelling.pathfinder.MeshCache;
 import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
@@ -20,7 +21,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Common attributes for propagation of sound sources.
@@ -62,6 +65,10 @@ public abstract class JdbcNoiseMap {
 
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
+    /** Cell size of the ground factor raster, 0 to intersect the soil areas with each path */
+    protected double groundFactorRasterResolution = 0;
+    /** Distance between the nodes of the ground elevation grid, 0 to locate the triangle of each position */
+    protected double elevationRasterResolution = 0;
 
     protected String heightField = "";
     protected GeometryFactory geometryFactory;
@@ -69,6 +76,14 @@ public abstract class JdbcNoiseMap {
     // Initialised attributes
     protected int gridDim = 0;
     protected Envelope mainEnvelope = new Envelope();
+    // Optional in-memory cache of buildings and DEM shared by cells
+    protected SceneCache sceneCache = null;
+    // Optional on-disk cache of cells triangulation
+    protected MeshCache meshCache = null;
+    // Optional soil areas split once for all cells
+    protected SoilTileStore soilTileStore = null;
+    // Fetch only these sources, null for all sources
+    protected Set<Long> sourcesFilter = null;
 
     public JdbcNoiseMap(String buildingsTableName, String sourcesTableName) {
         this.buildingsTableName = buildingsTableName;
@@ -131,7 +146,91 @@ public abstract class JdbcNoiseMap {
         this.groundSurfaceSplitSideLength = groundSurfaceSplitSideLength;
     }
 
+    /**
+     * @return Cache of buildings and DEM shared by cells, null if tables are queried for each cell
+     */
+    public SceneCache getSceneCache() {
+        return sceneCache;
+    }
+
+    /**
+     * @param sceneCache Cache of buildings and DEM shared by cells, null to query tables for each cell
+     */
+    public void setSceneCache(SceneCache sceneCache) {
+        this.sceneCache = sceneCache;
+    }
+
+    /**
+     * @return Cache of cells triangulation, null if cells are always triangulated
+     */
+    public MeshCache getMeshCache() {
+        return meshCache;
+    }
+
+    /**
+     * Skip the triangulation of cells when buildings and DEM did not change since a previous computation.
+     * @param meshCache Cache of cells triangulation, null to always triangulate cells
+     */
+    public void setMeshCache(MeshCache meshCache) {
+        this.meshCache = meshCache;
+    }
+
+    /**
+     * @return Soil areas split once for all cells, null if soil areas are split for each cell
+     */
+    public SoilTileStore getSoilTileStore() {
+        return soilTileStore;
+    }
+
+    /**
+     * Split the soil areas once in {@link #initialize}, cells then only fetch the pre-clipped pieces.
+     * @param soilTileStore Soil areas tiles, null to split soil areas for each cell
+     */
+    public void setSoilTileStore(SoilTileStore soilTileStore) {
+        this.soilTileStore = soilTileStore;
+    }
+
+    /**
+     * @return Identifier of the only sources to fetch, null if all sources are fetched
+     */
+    public Set<Long> getSourcesFilter() {
+        return sourcesFilter;
+    }
+
+    /**
+     * @param sourcesFilter Identifier of the only sources to fetch, null to fetch all sources
+     */
+    public void setSourcesFilter(Set<Long> sourcesFilter) {
+        this.sourcesFilter = sourcesFilter;
+    }
+
     protected void fetchCellDem(Connection connection, Envelope fetchEnvelope, MeshBuilder mesh) throws SQLException {
+        if(!demTable.isEmpty()) {
+            if(sceneCache != null) {
+                List<Coordinate> topoPoints = new ArrayList<>();
+                sceneCache.fetchDemPoints(connection, this, fetchEnvelope, topoPoints);
+                for(Coordinate topoPoint : topoPoints) {
+                    // cached coordinates are shared, the mesh may update them
+                    mesh.addTopographicPoint(new Coordinate(topoPoint));
+                }
+            } else {
+                List<Coordinate> topoPoints = new ArrayList<>();
+                fetchDemPoints(connection, fetchEnvelope, topoPoints);
+                for(Coordinate topoPoint : topoPoints) {
+                    mesh.addTopographicPoint(topoPoint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetch DEM points
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @param topoPoints (Out) DEM points located in the envelope
+     * @throws SQLException
+     */
+    void fetchDemPoints(Connection connection, Envelope fetchEnvelope, List<Coordinate> topoPoints) throws SQLException {
         if(!demTable.isEmpty()) {
             List<String> geomFields = SFSUtilities.getGeometryFields(connection,
                     TableLocation.parse(demTable));
@@ -148,7 +247,7 @@ public abstract class JdbcNoiseMap {
                     while (rs.next()) {
                         Geometry pt = rs.getGeometry();
                         if(pt != null) {
-                            mesh.addTopographicPoint(pt.getCoordinate());
+                            topoPoints.add(pt.getCoordinate());
                         }
                     }
                 }
@@ -159,45 +258,66 @@ public abstract class JdbcNoiseMap {
     protected void fetchCellSoilAreas(Connection connection, Envelope fetchEnvelope, List<GeoWithSoilType> geoWithSoil)
             throws SQLException {
         if(!soilTableName.isEmpty()){
+            if(soilTileStore != null && soilTileStore.isBuilt()) {
+                soilTileStore.fetchSoilAreas(fetchEnvelope, geoWithSoil);
+                return;
+            }
             double startX = Math.floor(fetchEnvelope.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
             double startY = Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
-            String soilGeomName = SFSUtilities.getGeometryFields(connection,
-                    TableLocation.parse(soilTableName)).get(0);
-            try (PreparedStatement st = connection.prepareStatement(
-                    "SELECT " + TableLocation.quoteIdentifier(soilGeomName) + ", G FROM " +
-                            soilTableName + " WHERE " +
-                            TableLocation.quoteIdentifier(soilGeomName) + " && ?::geometry")) {
-                st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
-                try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
-                    while (rs.next()) {
-                        Geometry poly = rs.getGeometry();
-                        if(poly != null) {
-                            // Split soil by square
-                            Envelope geoEnv = poly.getEnvelopeInternal();
-                            double startXGeo = Math.max(startX, Math.floor(geoEnv.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
-                            double startYGeo = Math.max(startY, Math.floor(geoEnv.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
-                            double xCursor = startXGeo;
-                            double g = rs.getDouble("G");
-                            double maxX = Math.min(fetchEnvelope.getMaxX(), geoEnv.getMaxX());
-                            double maxY = Math.min(fetchEnvelope.getMaxY(), geoEnv.getMaxY());
-                            while(xCursor < maxX)  {
-                                double yCursor = startYGeo;
-                                while(yCursor < maxY) {
-                                    Envelope cellEnv = new Envelope(xCursor, xCursor + groundSurfaceSplitSideLength, yCursor, yCursor+groundSurfaceSplitSideLength);
-                                    Geometry envGeom = geometryFactory.toGeometry(cellEnv);
-                                    try {
-                                        Geometry inters = poly.intersection(envGeom);
-                                        if (!inters.isEmpty() && (inters instanceof Polygon || inters instanceof MultiPolygon)) {
-                                            geoWithSoil.add(new GeoWithSoilType(inters, g));
-                                        }
-                                    } catch (TopologyException | IllegalArgumentException ex) {
-                                        // Ignore
-                                    }
-                                    yCursor += groundSurfaceSplitSideLength;
-                                }
-                                xCursor += groundSurfaceSplitSideLength;
+            List<GeoWithSoilType> soilAreas = new ArrayList<>();
+            fetchSoilAreas(connection, fetchEnvelope, soilAreas);
+            for(GeoWithSoilType soilArea : soilAreas) {
+                Geometry poly = soilArea.getGeo();
+                // Split soil by square
+                Envelope geoEnv = poly.getEnvelopeInternal();
+                double startXGeo = Math.max(startX, Math.floor(geoEnv.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
+                double startYGeo = Math.max(startY, Math.floor(geoEnv.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength);
+                double xCursor = startXGeo;
+                double g = soilArea.getType();
+                double maxX = Math.min(fetchEnvelope.getMaxX(), geoEnv.getMaxX());
+                double maxY = Math.min(fetchEnvelope.getMaxY(), geoEnv.getMaxY());
+                while(xCursor < maxX)  {
+                    double yCursor = startYGeo;
+                    while(yCursor < maxY) {
+                        Envelope cellEnv = new Envelope(xCursor, xCursor + groundSurfaceSplitSideLength, yCursor, yCursor+groundSurfaceSplitSideLength);
+                        Geometry envGeom = geometryFactory.toGeometry(cellEnv);
+                        try {
+                            Geometry inters = poly.intersection(envGeom);
+                            if (!inters.isEmpty() && (inters instanceof Polygon || inters instanceof MultiPolygon)) {
+                                geoWithSoil.add(new GeoWithSoilType(inters, g));
                             }
+                        } catch (TopologyException | IllegalArgumentException ex) {
+                            // Ignore
                         }
+                        yCursor += groundSurfaceSplitSideLength;
+                    }
+                    xCursor += groundSurfaceSplitSideLength;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetch soil areas without splitting
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @param soilAreas (Out) Soil areas with an envelope intersecting the fetch envelope
+     * @throws SQLException
+     */
+    void fetchSoilAreas(Connection connection, Envelope fetchEnvelope, List<GeoWithSoilType> soilAreas)
+            throws SQLException {
+        String soilGeomName = SFSUtilities.getGeometryFields(connection,
+                TableLocation.parse(soilTableName)).get(0);
+        try (PreparedStatement st = connection.prepareStatement(
+                "SELECT " + TableLocation.quoteIdentifier(soilGeomName) + ", G FROM " +
+                        soilTableName + " WHERE " +
+                        TableLocation.quoteIdentifier(soilGeomName) + " && ?::geometry")) {
+            st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
+            try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry poly = rs.getGeometry();
+                    if(poly != null) {
+                        soilAreas.add(new GeoWithSoilType(poly, rs.getDouble("G")));
                     }
                 }
             }
@@ -215,6 +335,39 @@ public abstract class JdbcNoiseMap {
 
     void fetchCellBuildings(Connection connection, Envelope fetchEnvelope, List<MeshBuilder.PolygonWithHeight> buildings) throws SQLException {
         Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        List<MeshBuilder.PolygonWithHeight> envelopeBuildings = new ArrayList<>();
+        if(sceneCache != null) {
+            sceneCache.fetchBuildings(connection, this, fetchEnvelope, envelopeBuildings);
+        } else {
+            fetchBuildings(connection, fetchEnvelope, envelopeBuildings);
+        }
+        // The mesh and its cache key depend on the buildings order, the tiles of the scene cache do not keep it
+        envelopeBuildings.sort(Comparator.comparingInt(MeshBuilder.PolygonWithHeight::getPrimaryKey));
+        for(MeshBuilder.PolygonWithHeight building : envelopeBuildings) {
+            Geometry intersectedGeometry = null;
+            try {
+                intersectedGeometry = building.getGeometry().intersection(envGeo);
+            } catch (TopologyException ex) {
+                WKTWriter wktWriter = new WKTWriter(3);
+                logger.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(building.getGeometry()),wktWriter.write(envGeo)), ex);
+            }
+            if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon) {
+                MeshBuilder.PolygonWithHeight poly = new MeshBuilder.PolygonWithHeight(intersectedGeometry,
+                        building.getHeight(), building.getAlpha());
+                poly.setPrimaryKey(building.getPrimaryKey());
+                buildings.add(poly);
+            }
+        }
+    }
+
+    /**
+     * Fetch buildings without clipping
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @param buildings (Out) Buildings with an envelope intersecting the fetch envelope
+     * @throws SQLException
+     */
+    void fetchBuildings(Connection connection, Envelope fetchEnvelope, List<MeshBuilder.PolygonWithHeight> buildings) throws SQLException {
         boolean fetchAlpha = JDBCUtilities.hasField(connection, buildingsTableName, alphaFieldName);
         String additionalQuery = "";
         if(!heightField.isEmpty()) {
@@ -234,7 +387,8 @@ public abstract class JdbcNoiseMap {
         try (PreparedStatement st = connection.prepareStatement(
                 "SELECT " + TableLocation.quoteIdentifier(buildingGeomName) + additionalQuery + " FROM " +
                         buildingsTableName + " WHERE " +
-                        TableLocation.quoteIdentifier(buildingGeomName) + " && ?::geometry")) {
+                        TableLocation.quoteIdentifier(buildingGeomName) + " && ?::geometry" +
+                        (pkBuilding.isEmpty() ? "" : " ORDER BY " + pkBuilding))) {
             st.setObject(1, geometryFactory.toGeometry(fetchEnvelope));
             try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                 int columnIndex = 0;
@@ -250,31 +404,22 @@ public abstract class JdbcNoiseMap {
                     //if we don't have height of building
                     Geometry building = rs.getGeometry();
                     if(building != null) {
-                        Geometry intersectedGeometry = null;
-                        try {
-                            intersectedGeometry = building.intersection(envGeo);
-                        } catch (TopologyException ex) {
-                            WKTWriter wktWriter = new WKTWriter(3);
-                            logger.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(building),wktWriter.write(envGeo)), ex);
-                        }
-                        if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon) {
-                            if(fetchAlpha && Double.compare(rs.getDouble(alphaFieldName), oldAlpha) != 0 ) {
-                                // Compute building absorption value
-                                alphaList.clear();
-                                oldAlpha = rs.getDouble(alphaFieldName);
-                                for(double freq : propagationProcessPathData.freq_lvl_exact) {
-                                    alphaList.add(MeshBuilder.getWallAlpha(oldAlpha, freq));
-                                }
+                        if(fetchAlpha && Double.compare(rs.getDouble(alphaFieldName), oldAlpha) != 0 ) {
+                            // Compute building absorption value
+                            alphaList.clear();
+                            oldAlpha = rs.getDouble(alphaFieldName);
+                            for(double freq : propagationProcessPathData.freq_lvl_exact) {
+                                alphaList.add(MeshBuilder.getWallAlpha(oldAlpha, freq));
                             }
+                        }
 
-                            MeshBuilder.PolygonWithHeight poly = new MeshBuilder.PolygonWithHeight(intersectedGeometry,
-                                    heightField.isEmpty() ? Double.MAX_VALUE : rs.getDouble(heightField),
-                                    alphaList);
-                            if(columnIndex != 0) {
-                                poly.setPrimaryKey(rs.getInt(columnIndex));
-                            }
-                            buildings.add(poly);
+                        MeshBuilder.PolygonWithHeight poly = new MeshBuilder.PolygonWithHeight(building,
+                                heightField.isEmpty() ? Double.MAX_VALUE : rs.getDouble(heightField),
+                                alphaList);
+                        if(columnIndex != 0) {
+                            poly.setPrimaryKey(rs.getInt(columnIndex));
                         }
+                        buildings.add(poly);
                     }
                 }
             }
@@ -313,6 +458,9 @@ public abstract class JdbcNoiseMap {
             st.setFetchDirection(ResultSet.FETCH_FORWARD);
             try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                 while (rs.next()) {
+                    if(sourcesFilter != null && !sourcesFilter.contains(rs.getLong(pkIndex))) {
+                        continue;
+                    }
                     Geometry geo = rs.getGeometry();
                     if (geo != null) {
                         geo = domainConstraint.intersection(geo);
@@ -387,6 +535,11 @@ public abstract class JdbcNoiseMap {
             // 1 Step - Evaluation of the main bounding box (sources)
             setMainEnvelope(getComputationEnvelope(connection));
         }
+        if(soilTileStore != null && !soilTableName.isEmpty()) {
+            Envelope soilEnvelope = new Envelope(mainEnvelope);
+            soilEnvelope.expandBy(maximumPropagationDistance);
+            soilTileStore.build(connection, this, soilEnvelope);
+        }
     }
 
     /**
@@ -561,6 +714,39 @@ public abstract class JdbcNoiseMap {
         this.maximumError = maximumError;
     }
 
+    /**
+     * @return Cell size of the ground factor raster, 0 if the soil areas are intersected with each path
+     */
+    public double getGroundFactorRasterResolution() {
+        return groundFactorRasterResolution;
+    }
+
+    /**
+     * Sample the soil areas on a grid in order to speed up the computation of the paths mean ground factor.
+     * @param groundFactorRasterResolution Cell size of the ground factor raster, 0 to intersect the soil areas with
+     *                                     each path
+     */
+    public void setGroundFactorRasterResolution(double groundFactorRasterResolution) {
+        this.groundFactorRasterResolution = groundFactorRasterResolution;
+    }
+
+    /**
+     * @return Distance between the nodes of the ground elevation grid, 0 if the triangle of each position is located
+     */
+    public double getElevationRasterResolution() {
+        return elevationRasterResolution;
+    }
+
+    /**
+     * Sample the ground elevation of each cell on a grid in order to speed up the evaluation of the ground height of
+     * receivers, sources and reflection points.
+     * @param elevationRasterResolution Distance between the nodes of the ground elevation grid, 0 to locate the
+     *                                  triangle of each position
+     */
+    public void setElevationRasterResolution(double elevationRasterResolution) {
+        this.elevationRasterResolution = elevationRasterResolution;
+    }
+
     /**
      * @return Reflection and diffraction maximum search distance, default to 400m.
      */
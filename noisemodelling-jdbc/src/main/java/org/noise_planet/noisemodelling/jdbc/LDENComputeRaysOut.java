@@ -1,5 +1,6 @@
 package org.noise_planet.noisemodelling.jdbc;
 
+import org.locationtech.jts.geom.Envelope;
 import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
@@ -10,6 +11,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -150,6 +152,13 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                                 wjSourcesDEN.get((int) sourceId)), entry.getValue());
                         pushInStack(ldenComputeRaysOut.ldenData.lDenLevels, new VerticeSL(receiverPK, sourcePK, levels));
                     }
+                    List<List<double[]>> wjSourcesPeriods = ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesPeriods;
+                    for(int idPeriod = 0; idPeriod < wjSourcesPeriods.size(); idPeriod++) {
+                        double[] levels = ComputeRays.sumArray(ComputeRays.wToDba(wjSourcesPeriods.get(idPeriod).
+                                get((int) sourceId)), entry.getValue());
+                        pushInStack(ldenComputeRaysOut.ldenData.getPeriodLevels(ldenConfig.periods.get(idPeriod)),
+                                new VerticeSL(receiverPK, sourcePK, levels));
+                    }
                 }
             } else {
                 // Merge all results
@@ -169,6 +178,11 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     processAndPushResult(receiverPK, ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesDEN,
                             ldenComputeRaysOut.ldenData.lDenLevels);
                 }
+                List<List<double[]>> wjSourcesPeriods = ldenComputeRaysOut.ldenPropagationProcessData.wjSourcesPeriods;
+                for(int idPeriod = 0; idPeriod < wjSourcesPeriods.size(); idPeriod++) {
+                    processAndPushResult(receiverPK, wjSourcesPeriods.get(idPeriod),
+                            ldenComputeRaysOut.ldenData.getPeriodLevels(ldenConfig.periods.get(idPeriod)));
+                }
             }
             receiverAttenuationLevels.clear();
         }
@@ -181,5 +195,33 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         public ConcurrentLinkedDeque<VerticeSL> lNightLevels = new ConcurrentLinkedDeque<>();
         public ConcurrentLinkedDeque<VerticeSL> lDenLevels = new ConcurrentLinkedDeque<>();
         public ConcurrentLinkedDeque<PropagationPath> rays = new ConcurrentLinkedDeque<>();
+        public Map<String, ConcurrentLinkedDeque<VerticeSL>> periodLevels = new ConcurrentHashMap<>();
+        // Cells pushed after all their results, written in the run manifest
+        public ConcurrentLinkedDeque<CompletedCell> completedCells = new ConcurrentLinkedDeque<>();
+
+        /**
+         * @param period Period name of {@link LDENConfig#getPeriods()}
+         * @return Levels stack of this period
+         */
+        public ConcurrentLinkedDeque<VerticeSL> getPeriodLevels(String period) {
+            return periodLevels.computeIfAbsent(period, k -> new ConcurrentLinkedDeque<>());
+        }
+    }
+
+    /**
+     * Cell with all its receivers computed
+     */
+    static class CompletedCell {
+        final PointNoiseMap.CellIndex cellIndex;
+        final int gridDim;
+        final Envelope cellEnvelope;
+        final List<Long> receivers;
+
+        CompletedCell(PointNoiseMap.CellIndex cellIndex, int gridDim, Envelope cellEnvelope, List<Long> receivers) {
+            this.cellIndex = cellIndex;
+            this.gridDim = gridDim;
+            this.cellEnvelope = cellEnvelope;
+            this.receivers = receivers;
+        }
     }
 }
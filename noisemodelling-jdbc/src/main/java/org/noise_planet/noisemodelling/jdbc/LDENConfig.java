@@ -24,6 +24,11 @@ package org.noise_planet.noisemodelling.jdbc;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 
 /**
  * Configuration of NoiseModelling computation based on database data using standard Lden outputs
@@ -71,8 +76,16 @@ public class LDENConfig {
     String lDenTable = "LDEN_RESULT";
     String raysTable = "RAYS";
 
+    // Additional periods (ex. H00 to H23), the emission of each period is read from the source columns suffixed by
+    // the period name. Each period is written in its own table.
+    List<String> periods = new ArrayList<>();
+    String periodTableFormat = "L%s_RESULT";
+
     String lwFrequencyPrepend = "LW";
 
+    // Table of the completed cells, the table of their receivers is suffixed by _RECEIVERS. null to disable the manifest
+    String manifestTable = null;
+
     File sqlOutputFile;
     Boolean sqlOutputFileCompression = true;
     Boolean dropResultsTable = true;
@@ -247,4 +260,96 @@ public class LDENConfig {
     public boolean isMergeSources() {
         return mergeSources;
     }
+
+    /**
+     * @return Additional periods, empty by default
+     */
+    public List<String> getPeriods() {
+        return periods;
+    }
+
+    /**
+     * The propagation is computed once, then the attenuation is combined with the emission of each period.
+     * Traffic columns are read with the period suffix (ex. LV_H00, LV_SPD_H00) and the Lw columns with the period
+     * inserted after the prefix (ex. LWH0063).
+     * @param periods Additional periods names (ex. H00 to H23), must be set before running computation
+     * @throws IllegalArgumentException If the table of a period is the table of another result (ex. period DEN)
+     */
+    public void setPeriods(List<String> periods) {
+        checkPeriodTables(periods);
+        this.periods = new ArrayList<>(periods);
+    }
+
+    /**
+     * @return Format of the period tables names, %s is replaced by the period name
+     */
+    public String getPeriodTableFormat() {
+        return periodTableFormat;
+    }
+
+    /**
+     * @param periodTableFormat Format of the period tables names, %s is replaced by the period name (default L%s_RESULT)
+     */
+    public void setPeriodTableFormat(String periodTableFormat) {
+        this.periodTableFormat = periodTableFormat;
+    }
+
+    /**
+     * @param period Period name
+     * @return Name of the result table of this period
+     */
+    public String getPeriodTable(String period) {
+        return String.format(periodTableFormat, period);
+    }
+
+    /**
+     * Check that the period tables do not overwrite the other results tables, as the tables names may be changed
+     * after the periods
+     * @throws IllegalArgumentException If the table of a period is the table of another result
+     */
+    public void checkPeriodTables() {
+        checkPeriodTables(periods);
+    }
+
+    private void checkPeriodTables(List<String> periods) {
+        Set<String> tables = new HashSet<>();
+        for(String table : new String[] {lDayTable, lEveningTable, lNightTable, lDenTable, raysTable}) {
+            tables.add(table.toUpperCase(Locale.ROOT));
+        }
+        if(manifestTable != null) {
+            tables.add(manifestTable.toUpperCase(Locale.ROOT));
+            tables.add(getManifestReceiversTable().toUpperCase(Locale.ROOT));
+        }
+        for(String period : periods) {
+            String periodTable = getPeriodTable(period);
+            if(!tables.add(periodTable.toUpperCase(Locale.ROOT))) {
+                throw new IllegalArgumentException(String.format("The table %s of the period %s is already used by " +
+                        "another result", periodTable, period));
+            }
+        }
+    }
+
+    /**
+     * @return Table of the completed cells, null if the run manifest is disabled
+     */
+    public String getManifestTable() {
+        return manifestTable;
+    }
+
+    /**
+     * The run manifest keep the completed cells and receivers, it is written with the results. An interrupted run
+     * can then be resumed with {@link LDENPointNoiseMapFactory#resume(java.sql.Connection, PointNoiseMap)}.
+     * @param manifestTable Table of the completed cells, the receivers are written in the same table name suffixed by
+     *                      _RECEIVERS. null to disable the run manifest (default)
+     */
+    public void setManifestTable(String manifestTable) {
+        this.manifestTable = manifestTable;
+    }
+
+    /**
+     * @return Table of the receivers of the completed cells
+     */
+    public String getManifestReceiversTable() {
+        return manifestTable + "_RECEIVERS";
+    }
 }
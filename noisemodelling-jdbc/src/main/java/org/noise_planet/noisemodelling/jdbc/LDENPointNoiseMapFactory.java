@@ -23,6 +23,8 @@
 package org.noise_planet.noisemodelling.jdbc;
 
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Envelope;
 import org.noise_planet.noisemodelling.emission.DirectionAttributes;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
 import org.noise_planet.noisemodelling.jdbc.utils.StringPreparedStatements;
@@ -36,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import java.io.*;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
@@ -45,12 +48,17 @@ import java.util.zip.GZIPOutputStream;
 /**
  *
  */
-public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProcessDataFactory, PointNoiseMap.IComputeRaysOutFactory, ProfilerThread.Metric {
+public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProcessDataFactory, PointNoiseMap.IComputeRaysOutFactory, ProfilerThread.Metric,
+        PointNoiseMapExecutor.CellListener {
     LDENConfig ldenConfig;
     TableWriter tableWriter;
     Thread tableWriterThread;
     Connection connection;
+    // Noise map given by initialize, its grid is written in the run manifest
+    PointNoiseMap pointNoiseMap;
     static final int BATCH_MAX_SIZE = 500;
+    // Tolerance (m) on the cell envelopes of the run manifest
+    static final double MANIFEST_ENVELOPE_EPSILON = 1e-6;
     static final int WRITER_CACHE = 65536;
     LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
     /**
@@ -89,6 +97,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
 
     @Override
     public void initialize(Connection connection, PointNoiseMap pointNoiseMap) throws SQLException {
+        this.pointNoiseMap = pointNoiseMap;
         if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN) {
             // Fetch source fields
             List<String> sourceField = JDBCUtilities.getFieldNames(connection.getMetaData(), pointNoiseMap.getSourcesTableName());
@@ -101,6 +110,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 period = "E";
             } else if (ldenConfig.computeLNight) {
                 period = "N";
+            } else if (!ldenConfig.periods.isEmpty()) {
+                period = ldenConfig.periods.get(0);
             }
             String freqField = ldenConfig.lwFrequencyPrepend + period;
             if (!period.isEmpty()) {
@@ -169,6 +180,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         if(ldenConfig.propagationProcessPathData == null) {
             throw new IllegalStateException("start() function must be called after PointNoiseMap initialization call");
         }
+        ldenConfig.checkPeriodTables();
         tableWriter = new TableWriter(connection, ldenConfig, ldenData);
         ldenConfig.exitWhenDone = false;
         tableWriterThread = new Thread(tableWriter);
@@ -213,6 +225,119 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         }
     }
 
+    /**
+     * @return Tables that receive the results of the computation
+     */
+    public List<String> getResultTables() {
+        List<String> tables = new ArrayList<>();
+        if(ldenConfig.computeLDay) {
+            tables.add(ldenConfig.lDayTable);
+        }
+        if(ldenConfig.computeLEvening) {
+            tables.add(ldenConfig.lEveningTable);
+        }
+        if(ldenConfig.computeLNight) {
+            tables.add(ldenConfig.lNightTable);
+        }
+        if(ldenConfig.computeLDEN) {
+            tables.add(ldenConfig.lDenTable);
+        }
+        for(String period : ldenConfig.periods) {
+            tables.add(ldenConfig.getPeriodTable(period));
+        }
+        if(ldenConfig.exportRays) {
+            tables.add(ldenConfig.raysTable);
+        }
+        return tables;
+    }
+
+    /**
+     * Add the cell in the run manifest, once all its results are written. Does nothing if the manifest is disabled.
+     * Must be called after each cell evaluation, it is done by {@link PointNoiseMapExecutor} if this factory is
+     * set as cell listener.
+     * @param cellIndex Computed cell
+     * @param computeRaysOut Output of the cell
+     */
+    @Override
+    public void onCellComputed(PointNoiseMap.CellIndex cellIndex, IComputeRaysOut computeRaysOut) {
+        if(ldenConfig.manifestTable == null || ldenConfig.aborted ||
+                !(computeRaysOut instanceof ComputeRaysOutAttenuation)) {
+            return;
+        }
+        PropagationProcessData cellData = ((ComputeRaysOutAttenuation) computeRaysOut).inputData;
+        if(cellData.cellProg != null && cellData.cellProg.isCanceled()) {
+            return;
+        }
+        if(pointNoiseMap == null) {
+            throw new IllegalStateException("The run manifest requires the factory to be initialized by PointNoiseMap");
+        }
+        Envelope cellEnvelope = PointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(),
+                cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), pointNoiseMap.getCellWidth(),
+                pointNoiseMap.getCellHeight());
+        ldenData.completedCells.add(new LDENComputeRaysOut.CompletedCell(cellIndex, pointNoiseMap.getGridDim(),
+                cellEnvelope, new ArrayList<>(cellData.receiversPk)));
+    }
+
+    /**
+     * Read the run manifest of an interrupted computation and delete the results of its uncompleted cells.
+     * The results tables are kept by the next call to {@link #start()}.
+     * @param connection Active connection
+     * @param pointNoiseMap Initialized noise map, its grid must be the grid of the interrupted computation
+     * @return Completed cells and receivers, empty if there is no manifest
+     * @throws SQLException If the manifest has been computed with another grid
+     */
+    public RunManifest resume(Connection connection, PointNoiseMap pointNoiseMap) throws SQLException {
+        if(ldenConfig.manifestTable == null) {
+            throw new IllegalStateException("The run manifest is disabled, see LDENConfig#setManifestTable");
+        }
+        this.pointNoiseMap = pointNoiseMap;
+        ldenConfig.setDropResultsTable(false);
+        RunManifest manifest = new RunManifest();
+        if(!JDBCUtilities.tableExists(connection, ldenConfig.manifestTable)) {
+            return manifest;
+        }
+        int gridDim = pointNoiseMap.getGridDim();
+        try(Statement st = connection.createStatement()) {
+            try(ResultSet rs = st.executeQuery("SELECT CELL_I, CELL_J, GRID_DIM, MIN_X, MIN_Y, MAX_X, MAX_Y FROM " +
+                    ldenConfig.manifestTable)) {
+                while (rs.next()) {
+                    int cellI = rs.getInt(1);
+                    int cellJ = rs.getInt(2);
+                    if(rs.getInt(3) != gridDim || cellI < 0 || cellI >= gridDim || cellJ < 0 || cellJ >= gridDim) {
+                        throw new SQLException(String.format(Locale.ROOT, "The cell (%d, %d) of the run manifest %s " +
+                                        "has been computed with a grid of %d x %d cells, the current grid is %d x %d",
+                                cellI, cellJ, ldenConfig.manifestTable, rs.getInt(3), rs.getInt(3), gridDim, gridDim));
+                    }
+                    Envelope cellEnvelope = PointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(), cellI, cellJ,
+                            pointNoiseMap.getCellWidth(), pointNoiseMap.getCellHeight());
+                    if(Math.abs(cellEnvelope.getMinX() - rs.getDouble(4)) > MANIFEST_ENVELOPE_EPSILON ||
+                            Math.abs(cellEnvelope.getMinY() - rs.getDouble(5)) > MANIFEST_ENVELOPE_EPSILON ||
+                            Math.abs(cellEnvelope.getMaxX() - rs.getDouble(6)) > MANIFEST_ENVELOPE_EPSILON ||
+                            Math.abs(cellEnvelope.getMaxY() - rs.getDouble(7)) > MANIFEST_ENVELOPE_EPSILON) {
+                        throw new SQLException(String.format(Locale.ROOT, "The cell (%d, %d) of the run manifest %s " +
+                                "does not match the current computation envelope", cellI, cellJ,
+                                ldenConfig.manifestTable));
+                    }
+                    manifest.completedCells.add(new PointNoiseMap.CellIndex(cellJ, cellI));
+                }
+            }
+            // The executor skip the receivers of the completed cells located on the border of the other cells
+            try(ResultSet rs = st.executeQuery("SELECT IDRECEIVER FROM " + ldenConfig.getManifestReceiversTable())) {
+                while (rs.next()) {
+                    manifest.completedReceivers.add(rs.getLong(1));
+                }
+            }
+            // Rows written before the interruption of their cell
+            for(String table : getResultTables()) {
+                if(JDBCUtilities.tableExists(connection, table)) {
+                    st.execute("DELETE FROM " + table + " WHERE IDRECEIVER NOT IN (SELECT IDRECEIVER FROM " +
+                            ldenConfig.getManifestReceiversTable() + ")");
+                }
+            }
+        }
+        return manifest;
+    }
+
     @Override
     public LDENPropagationProcessData create(FastObstructionTest freeFieldFinder) {
         LDENPropagationProcessData ldenPropagationProcessData = new LDENPropagationProcessData(freeFieldFinder, ldenConfig);
@@ -225,6 +350,28 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         return new LDENComputeRaysOut(pathData, (LDENPropagationProcessData)threadData, ldenData);
     }
 
+    /**
+     * Completed cells and receivers of an interrupted computation
+     */
+    public static class RunManifest {
+        private final Set<PointNoiseMap.CellIndex> completedCells = new HashSet<>();
+        private final Set<Long> completedReceivers = new HashSet<>();
+
+        /**
+         * @return Cells to skip
+         */
+        public Set<PointNoiseMap.CellIndex> getCompletedCells() {
+            return completedCells;
+        }
+
+        /**
+         * @return Receivers to skip, computed by completed cells
+         */
+        public Set<Long> getCompletedReceivers() {
+            return completedReceivers;
+        }
+    }
+
     private static class TableWriter implements Runnable {
         Logger LOGGER = LoggerFactory.getLogger(TableWriter.class);
         File sqlFilePath;
@@ -234,6 +381,8 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         double[] a_weighting;
         boolean started = false;
         Writer o;
+        // Tables created by this writer, in creation order
+        List<String> createdTables = new ArrayList<>();
 
         public TableWriter(Connection connection, LDENConfig ldenConfig, LDENComputeRaysOut.LdenData ldenData) {
             this.connection = connection;
@@ -246,7 +395,17 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             }
         }
 
-        void processRaysStack(ConcurrentLinkedDeque<PropagationPath> stack) throws SQLException {
+        /**
+         * Pop rays from stack and insert rows, the rays pushed while writing are left in the stack
+         * @param stack Stack to pop from
+         * @return Number of written rows
+         * @throws SQLException Got an error
+         */
+        int processRaysStack(ConcurrentLinkedDeque<PropagationPath> stack) throws SQLException {
+            int rowCount = stack.size();
+            if(rowCount == 0) {
+                return 0;
+            }
             String query = "INSERT INTO " + ldenConfig.raysTable + "(the_geom , IDRECEIVER , IDSOURCE ) VALUES (?, ?, ?);";
             // PK, GEOM, ID_RECEIVER, ID_SOURCE
             PreparedStatement ps;
@@ -256,7 +415,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 ps = new StringPreparedStatements(o, query);
             }
             int batchSize = 0;
-            while(!stack.isEmpty()) {
+            for(int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
                 PropagationPath row = stack.pop();
                 ldenData.queueSize.decrementAndGet();
                 int parameterIndex = 1;
@@ -274,16 +433,21 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             if (batchSize > 0) {
                 ps.executeBatch();
             }
-
+            return rowCount;
         }
 
         /**
-         * Pop values from stack and insert rows
+         * Pop values from stack and insert rows, the values pushed while writing are left in the stack
          * @param tableName Table to feed
          * @param stack Stack to pop from
+         * @return Number of written rows
          * @throws SQLException Got an error
          */
-        void processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
+        int processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
+            int rowCount = stack.size();
+            if(rowCount == 0) {
+                return 0;
+            }
             StringBuilder query = new StringBuilder("INSERT INTO ");
             query.append(tableName);
             query.append(" VALUES (? "); // ID_RECEIVER
@@ -305,7 +469,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 ps = new StringPreparedStatements(o, query.toString());
             }
             int batchSize = 0;
-            while(!stack.isEmpty()) {
+            for(int rowIndex = 0; rowIndex < rowCount; rowIndex++) {
                 ComputeRaysOutAttenuation.VerticeSL row = stack.pop();
                 ldenData.queueSize.decrementAndGet();
                 int parameterIndex = 1;
@@ -348,6 +512,24 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             if (batchSize > 0) {
                 ps.executeBatch();
             }
+            return rowCount;
+        }
+
+        /**
+         * Write the rows that are in the results stacks
+         * @return Number of written rows
+         * @throws SQLException Got an error
+         */
+        int processStacks() throws SQLException {
+            int rowCount = processStack(ldenConfig.lDayTable, ldenData.lDayLevels);
+            rowCount += processStack(ldenConfig.lEveningTable, ldenData.lEveningLevels);
+            rowCount += processStack(ldenConfig.lNightTable, ldenData.lNightLevels);
+            rowCount += processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
+            rowCount += processRaysStack(ldenData.rays);
+            for(String period : ldenConfig.periods) {
+                rowCount += processStack(ldenConfig.getPeriodTable(period), ldenData.getPeriodLevels(period));
+            }
+            return rowCount;
         }
 
         private String forgeCreateTable(String tableName) {
@@ -395,6 +577,56 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             }
         }
 
+        /**
+         * Write the completed cells, up to the last cell given
+         * @param lastCell Last cell to write, its results must be written before
+         */
+        void processCompletedCells(LDENComputeRaysOut.CompletedCell lastCell) throws SQLException {
+            PreparedStatement cellStatement;
+            PreparedStatement receiverStatement;
+            String cellQuery = "INSERT INTO " + ldenConfig.manifestTable +
+                    "(CELL_I, CELL_J, GRID_DIM, MIN_X, MIN_Y, MAX_X, MAX_Y) VALUES (?, ?, ?, ?, ?, ?, ?);";
+            String receiverQuery = "INSERT INTO " + ldenConfig.getManifestReceiversTable() + "(IDRECEIVER) VALUES (?);";
+            if(sqlFilePath == null) {
+                cellStatement = connection.prepareStatement(cellQuery);
+                receiverStatement = connection.prepareStatement(receiverQuery);
+            } else {
+                cellStatement = new StringPreparedStatements(o, cellQuery);
+                receiverStatement = new StringPreparedStatements(o, receiverQuery);
+            }
+            int batchSize = 0;
+            LDENComputeRaysOut.CompletedCell cell;
+            do {
+                cell = ldenData.completedCells.pop();
+                cellStatement.setInt(1, cell.cellIndex.getLatitudeIndex());
+                cellStatement.setInt(2, cell.cellIndex.getLongitudeIndex());
+                cellStatement.setInt(3, cell.gridDim);
+                cellStatement.setDouble(4, cell.cellEnvelope.getMinX());
+                cellStatement.setDouble(5, cell.cellEnvelope.getMinY());
+                cellStatement.setDouble(6, cell.cellEnvelope.getMaxX());
+                cellStatement.setDouble(7, cell.cellEnvelope.getMaxY());
+                cellStatement.addBatch();
+                for(long receiver : cell.receivers) {
+                    receiverStatement.setLong(1, receiver);
+                    receiverStatement.addBatch();
+                    batchSize++;
+                    if (batchSize >= BATCH_MAX_SIZE) {
+                        receiverStatement.executeBatch();
+                        receiverStatement.clearBatch();
+                        batchSize = 0;
+                    }
+                }
+            } while (cell != lastCell);
+            if (batchSize > 0) {
+                receiverStatement.executeBatch();
+            }
+            cellStatement.executeBatch();
+            // The results of the cells are committed with the manifest
+            if(sqlFilePath == null && !connection.getAutoCommit()) {
+                connection.commit();
+            }
+        }
+
         public void init() throws SQLException, IOException {
             if(ldenConfig.exportRays) {
                 if(ldenConfig.dropResultsTable) {
@@ -405,55 +637,75 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 processQuery(q);
             }
             if(ldenConfig.computeLDay) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDayTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lDayTable);
-                processQuery(q);
+                createResultTable(ldenConfig.lDayTable);
             }
             if(ldenConfig.computeLEvening) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lEveningTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lEveningTable);
-                processQuery(q);
+                createResultTable(ldenConfig.lEveningTable);
             }
             if(ldenConfig.computeLNight) {
-                if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lNightTable);
-                    processQuery(q);
-                }
-                String q = forgeCreateTable(ldenConfig.lNightTable);
-                processQuery(q);
+                createResultTable(ldenConfig.lNightTable);
             }
             if(ldenConfig.computeLDEN) {
+                createResultTable(ldenConfig.lDenTable);
+            }
+            for(String period : ldenConfig.periods) {
+                createResultTable(ldenConfig.getPeriodTable(period));
+            }
+            if(ldenConfig.manifestTable != null) {
                 if(ldenConfig.dropResultsTable) {
-                    String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDenTable);
-                    processQuery(q);
+                    processQuery(String.format("DROP TABLE IF EXISTS %s, %s;", ldenConfig.manifestTable,
+                            ldenConfig.getManifestReceiversTable()));
                 }
-                String q = forgeCreateTable(ldenConfig.lDenTable);
+                processQuery("CREATE TABLE IF NOT EXISTS " + ldenConfig.manifestTable +
+                        "(CELL_I integer NOT NULL, CELL_J integer NOT NULL, GRID_DIM integer NOT NULL, " +
+                        "MIN_X double precision NOT NULL, MIN_Y double precision NOT NULL, " +
+                        "MAX_X double precision NOT NULL, MAX_Y double precision NOT NULL);");
+                processQuery("CREATE TABLE IF NOT EXISTS " + ldenConfig.getManifestReceiversTable() +
+                        "(IDRECEIVER bigint NOT NULL);");
+            }
+        }
+
+        /**
+         * Drop and create the table, or keep it with its rows if the results tables are not dropped
+         * @param tableName Results table
+         */
+        private void createResultTable(String tableName) throws SQLException, IOException {
+            if(ldenConfig.dropResultsTable) {
+                String q = String.format("DROP TABLE IF EXISTS %s;", tableName);
                 processQuery(q);
+            } else if(sqlFilePath == null && JDBCUtilities.tableExists(connection, tableName)) {
+                if(!hasPrimaryKey(tableName)) {
+                    // Table of an interrupted computation
+                    createdTables.add(tableName);
+                }
+                return;
+            }
+            processQuery(forgeCreateTable(tableName));
+            createdTables.add(tableName);
+        }
+
+        private boolean hasPrimaryKey(String tableName) throws SQLException {
+            TableLocation location = TableLocation.parse(tableName,
+                    JDBCUtilities.isH2DataBase(connection.getMetaData()));
+            try(ResultSet rs = connection.getMetaData().getPrimaryKeys(location.getCatalog(null),
+                    location.getSchema(null), location.getTable())) {
+                return rs.next();
             }
         }
 
         void mainLoop() throws SQLException, IOException {
             while (!ldenConfig.aborted) {
                 started = true;
+                boolean exitWhenDone = ldenConfig.exitWhenDone;
+                // The results of the cells completed before the stacks are written are in the stacks, so the cells
+                // are checkpointed in the manifest once the stacks are written
+                LDENComputeRaysOut.CompletedCell completedCell = ldenData.completedCells.peekLast();
                 try {
-                    if(!ldenData.lDayLevels.isEmpty()) {
-                        processStack(ldenConfig.lDayTable, ldenData.lDayLevels);
-                    } else if(!ldenData.lEveningLevels.isEmpty()) {
-                        processStack(ldenConfig.lEveningTable, ldenData.lEveningLevels);
-                    } else if(!ldenData.lNightLevels.isEmpty()) {
-                        processStack(ldenConfig.lNightTable, ldenData.lNightLevels);
-                    } else if(!ldenData.lDenLevels.isEmpty()) {
-                        processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
-                    } else if(!ldenData.rays.isEmpty()) {
-                        processRaysStack(ldenData.rays);
-                    } else {
-                        if(ldenConfig.exitWhenDone) {
+                    int rowCount = processStacks();
+                    if(completedCell != null) {
+                        processCompletedCells(completedCell);
+                    } else if(rowCount == 0) {
+                        if(exitWhenDone && ldenData.completedCells.isEmpty()) {
                             break;
                         } else {
                             Thread.sleep(50);
@@ -469,17 +721,9 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         void createKeys()  throws SQLException, IOException {
             // Set primary keys
             LOGGER.info("Write done, apply primary keys");
-            if(ldenConfig.computeLDay) {
-                processQuery(forgePkTable(ldenConfig.lDayTable));
-            }
-            if(ldenConfig.computeLEvening) {
-                processQuery(forgePkTable(ldenConfig.lEveningTable));
-            }
-            if(ldenConfig.computeLNight) {
-                processQuery(forgePkTable(ldenConfig.lNightTable));
-            }
-            if(ldenConfig.computeLDEN) {
-                processQuery(forgePkTable(ldenConfig.lDenTable));
+            // Existing tables already have their keys
+            for(String tableName : createdTables) {
+                processQuery(forgePkTable(tableName));
             }
         }
 
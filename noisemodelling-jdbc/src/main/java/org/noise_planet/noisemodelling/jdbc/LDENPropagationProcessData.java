@@ -53,6 +53,8 @@ public class LDENPropagationProcessData extends PropagationProcessData {
     public List<double[]> wjSourcesE = new ArrayList<>();
     public List<double[]> wjSourcesN = new ArrayList<>();
     public List<double[]> wjSourcesDEN = new ArrayList<>();
+    // Source value in energetic of each period of LDENConfig#getPeriods, then of each source
+    public List<List<double[]>> wjSourcesPeriods = new ArrayList<>();
 
     /**
      * Attenuation and other attributes relative to direction on sphere
@@ -64,6 +66,9 @@ public class LDENPropagationProcessData extends PropagationProcessData {
     public LDENPropagationProcessData(FastObstructionTest freeFieldFinder, LDENConfig ldenConfig) {
         super(freeFieldFinder);
         this.ldenConfig = ldenConfig;
+        for(int idPeriod = 0; idPeriod < ldenConfig.periods.size(); idPeriod++) {
+            wjSourcesPeriods.add(new ArrayList<>());
+        }
     }
 
     public void setDirectionAttributes(Map<Integer, DirectionAttributes> directionAttributes) {
@@ -86,6 +91,12 @@ public class LDENPropagationProcessData extends PropagationProcessData {
         if(ldenConfig.computeLDEN) {
             wjSourcesDEN.add(res[3]);
         }
+        if(!ldenConfig.periods.isEmpty()) {
+            double[][] periodsLw = computeLwPeriods(rs);
+            for(int idPeriod = 0; idPeriod < periodsLw.length; idPeriod++) {
+                wjSourcesPeriods.get(idPeriod).add(periodsLw[idPeriod]);
+            }
+        }
     }
 
     @Override
@@ -270,22 +281,7 @@ public class LDENPropagationProcessData extends PropagationProcessData {
             }
         } else if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW) {
             // Extract road slope
-            double slope = 0;
-            try {
-                Geometry g = rs.getGeometry();
-                if(freeFieldFinder!=null && g != null && !g.isEmpty()) {
-                    Coordinate[] c = g.getCoordinates();
-                    if(c.length >= 2) {
-                        double z0 = freeFieldFinder.getHeightAtPosition(c[0]);
-                        double z1 = freeFieldFinder.getHeightAtPosition(c[1]);
-                        if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
-                            slope = Utils.computeSlope(z0, z1, g.getLength());
-                        }
-                    }
-                }
-            } catch (SQLException ex) {
-                // ignore
-            }
+            double slope = getSourceSlope(rs);
             // Day
             ld = ComputeRays.dbaToW(getEmissionFromResultSet(rs, "D", slope));
 
@@ -297,22 +293,7 @@ public class LDENPropagationProcessData extends PropagationProcessData {
 
         }else if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_RAILWAY_FLOW) {
             // Extract road slope
-            double slope = 0;
-            try {
-                Geometry g = rs.getGeometry();
-                if(freeFieldFinder!=null && g != null && !g.isEmpty()) {
-                    Coordinate[] c = g.getCoordinates();
-                    if(c.length >= 2) {
-                        double z0 = freeFieldFinder.getHeightAtPosition(c[0]);
-                        double z1 = freeFieldFinder.getHeightAtPosition(c[1]);
-                        if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
-                            slope = Utils.computeSlope(z0, z1, g.getLength());
-                        }
-                    }
-                }
-            } catch (SQLException ex) {
-                // ignore
-            }
+            double slope = getSourceSlope(rs);
             // Day
             ld = ComputeRays.dbaToW(getEmissionFromResultSet(rs, "D", slope));
 
@@ -332,18 +313,99 @@ public class LDENPropagationProcessData extends PropagationProcessData {
         return new double[][] {ld, le, ln, lden};
     }
 
+    /**
+     * @param rs result set of source
+     * @return Slope of the source geometry, 0 if unknown
+     */
+    private double getSourceSlope(SpatialResultSet rs) {
+        double slope = 0;
+        try {
+            Geometry g = rs.getGeometry();
+            if(freeFieldFinder!=null && g != null && !g.isEmpty()) {
+                Coordinate[] c = g.getCoordinates();
+                if(c.length >= 2) {
+                    double z0 = freeFieldFinder.getHeightAtPosition(c[0]);
+                    double z1 = freeFieldFinder.getHeightAtPosition(c[1]);
+                    if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
+                        slope = Utils.computeSlope(z0, z1, g.getLength());
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            // ignore
+        }
+        return slope;
+    }
+
+    /**
+     * @param rs result set of source
+     * @return Emission spectrum in energetic of each period of {@link LDENConfig#getPeriods()}
+     */
+    public double[][] computeLwPeriods(SpatialResultSet rs) throws SQLException, IOException {
+        List<String> periods = ldenConfig.periods;
+        int freqCount = ldenConfig.propagationProcessPathData.freq_lvl.size();
+        double[][] lw = new double[periods.size()][];
+        double slope = 0;
+        if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW ||
+                ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_RAILWAY_FLOW) {
+            slope = getSourceSlope(rs);
+        }
+        for(int idPeriod = 0; idPeriod < periods.size(); idPeriod++) {
+            String period = periods.get(idPeriod);
+            double[] lwPeriod = new double[freqCount];
+            if (ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_PROBA) {
+                double val = ComputeRays.dbaToW(90.0);
+                for(int idfreq = 0; idfreq < freqCount; idfreq++) {
+                    lwPeriod[idfreq] = ComputeRays.dbaToW(val);
+                }
+            } else if (ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN) {
+                for (int idfreq = 0; idfreq < freqCount; idfreq++) {
+                    lwPeriod[idfreq] = ComputeRays.dbaToW(rs.getDouble(ldenConfig.lwFrequencyPrepend + period +
+                            ldenConfig.propagationProcessPathData.freq_lvl.get(idfreq)));
+                }
+            } else {
+                lwPeriod = ComputeRays.dbaToW(getEmissionFromResultSet(rs, period, slope));
+            }
+            lw[idPeriod] = lwPeriod;
+        }
+        return lw;
+    }
+
+    /**
+     * @param sourceId Source index
+     * @return Loudest power of the computed periods (day, evening, night, den and additional periods) for each
+     * frequency
+     */
     public double[] getMaximalSourcePower(int sourceId) {
+        double[] maximalPower = new double[0];
         if(ldenConfig.computeLDEN && sourceId < wjSourcesDEN.size()) {
-            return wjSourcesDEN.get(sourceId);
-        } else if(ldenConfig.computeLDay && sourceId < wjSourcesD.size()) {
-            return wjSourcesD.get(sourceId);
-        } else if(ldenConfig.computeLEvening && sourceId < wjSourcesE.size()) {
-            return wjSourcesE.get(sourceId);
-        } else if(ldenConfig.computeLNight && sourceId < wjSourcesN.size()) {
-            return wjSourcesN.get(sourceId);
-        } else {
-            return new double[0];
+            maximalPower = getMaximalPower(maximalPower, wjSourcesDEN.get(sourceId));
+        }
+        if(ldenConfig.computeLDay && sourceId < wjSourcesD.size()) {
+            maximalPower = getMaximalPower(maximalPower, wjSourcesD.get(sourceId));
+        }
+        if(ldenConfig.computeLEvening && sourceId < wjSourcesE.size()) {
+            maximalPower = getMaximalPower(maximalPower, wjSourcesE.get(sourceId));
+        }
+        if(ldenConfig.computeLNight && sourceId < wjSourcesN.size()) {
+            maximalPower = getMaximalPower(maximalPower, wjSourcesN.get(sourceId));
+        }
+        for(List<double[]> wjSources : wjSourcesPeriods) {
+            if(sourceId < wjSources.size()) {
+                maximalPower = getMaximalPower(maximalPower, wjSources.get(sourceId));
+            }
+        }
+        return maximalPower;
+    }
+
+    private static double[] getMaximalPower(double[] maximalPower, double[] power) {
+        if(maximalPower.length == 0) {
+            return power.clone();
+        }
+        for(int idfreq = 0; idfreq < maximalPower.length; idfreq++) {
+            maximalPower[idfreq] = Math.max(maximalPower[idfreq], power[idfreq]);
         }
+        return maximalPower;
     }
 
     public static class OmnidirectionalDirection implements DirectionAttributes {
@@ -0,0 +1,178 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutMultiMeteo;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Write the attenuation of each meteorological variant of {@link ComputeRaysOutMultiMeteo} into its own table.
+ * The table of a variant holds one row per source/receiver with the attenuation (dB) of each frequency band.
+ * The cells are written when {@link PointNoiseMapExecutor} notifies this writer as cell listener, the cells that are
+ * not written yet are written by {@link #stop()}.
+ */
+public class MultiMeteoTableWriter implements PointNoiseMap.IComputeRaysOutFactory,
+        PointNoiseMapExecutor.CellListener {
+    private static final int BATCH_MAX_SIZE = 500;
+    private final Connection connection;
+    private final String tablePrefix;
+    private final List<PropagationProcessPathData> meteoVariants;
+    // Outputs of the cells that are not written in the tables
+    private final Set<ComputeRaysOutMultiMeteo> unwrittenOutputs = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @param connection Active connection
+     * @param tablePrefix Name of the tables, the variant index is appended
+     * @param meteoVariants Meteorological conditions, must contain at least one item
+     */
+    public MultiMeteoTableWriter(Connection connection, String tablePrefix,
+                                 List<PropagationProcessPathData> meteoVariants) {
+        if(meteoVariants.isEmpty()) {
+            throw new IllegalArgumentException("At least one meteorological variant is required");
+        }
+        this.connection = connection;
+        this.tablePrefix = tablePrefix;
+        this.meteoVariants = Collections.unmodifiableList(new ArrayList<>(meteoVariants));
+    }
+
+    /**
+     * @param variant Index of the meteorological condition
+     * @return Table of the variant
+     */
+    public String getVariantTable(int variant) {
+        return tablePrefix + "_" + variant;
+    }
+
+    /**
+     * Drop and create the tables of the variants
+     * @throws SQLException
+     */
+    public void createTables() throws SQLException {
+        try(Statement st = connection.createStatement()) {
+            for (int variant = 0; variant < meteoVariants.size(); variant++) {
+                String tableName = getVariantTable(variant);
+                st.execute("DROP TABLE IF EXISTS " + tableName);
+                StringBuilder sb = new StringBuilder("CREATE TABLE ");
+                sb.append(tableName);
+                sb.append(" (IDRECEIVER bigint NOT NULL, IDSOURCE bigint NOT NULL");
+                for (int freq : meteoVariants.get(variant).freq_lvl) {
+                    sb.append(", HZ");
+                    sb.append(freq);
+                    sb.append(" numeric(5, 2)");
+                }
+                sb.append(")");
+                st.execute(sb.toString());
+            }
+        }
+    }
+
+    /**
+     * The paths of the cell are evaluated with the meteorological variants instead of the given path data
+     */
+    @Override
+    public IComputeRaysOut create(PropagationProcessData threadData, PropagationProcessPathData pathData) {
+        ComputeRaysOutMultiMeteo computeRaysOut = new ComputeRaysOutMultiMeteo(false, meteoVariants, threadData);
+        synchronized (unwrittenOutputs) {
+            unwrittenOutputs.add(computeRaysOut);
+        }
+        return computeRaysOut;
+    }
+
+    /**
+     * Write the levels of the computed cell
+     */
+    @Override
+    public void onCellComputed(PointNoiseMap.CellIndex cellIndex, IComputeRaysOut computeRaysOut) {
+        if(computeRaysOut instanceof ComputeRaysOutMultiMeteo) {
+            try {
+                write((ComputeRaysOutMultiMeteo) computeRaysOut);
+            } catch (SQLException ex) {
+                throw new IllegalStateException(ex.getLocalizedMessage(), ex);
+            }
+        }
+    }
+
+    /**
+     * Write the levels of the evaluated cells that are not written yet. Must be called once all cells are evaluated.
+     * @throws SQLException
+     */
+    public void stop() throws SQLException {
+        List<ComputeRaysOutMultiMeteo> outputs;
+        synchronized (unwrittenOutputs) {
+            outputs = new ArrayList<>(unwrittenOutputs);
+        }
+        for(ComputeRaysOutMultiMeteo computeRaysOut : outputs) {
+            write(computeRaysOut);
+        }
+    }
+
+    /**
+     * Insert the levels of a computed cell into the tables of the variants, if they are not already written
+     * @param computeRaysOut Output of {@link PointNoiseMap#evaluateCell}
+     * @throws SQLException
+     */
+    public synchronized void write(ComputeRaysOutMultiMeteo computeRaysOut) throws SQLException {
+        synchronized (unwrittenOutputs) {
+            if(!unwrittenOutputs.remove(computeRaysOut)) {
+                return;
+            }
+        }
+        for (int variant = 0; variant < meteoVariants.size(); variant++) {
+            int frequencyCount = meteoVariants.get(variant).freq_lvl.size();
+            StringBuilder query = new StringBuilder("INSERT INTO ");
+            query.append(getVariantTable(variant));
+            query.append(" VALUES (?, ?");
+            for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+                query.append(", ?");
+            }
+            query.append(")");
+            try(PreparedStatement ps = connection.prepareStatement(query.toString())) {
+                int batchSize = 0;
+                for (ComputeRaysOutAttenuation.VerticeSL row : computeRaysOut.getVerticesSoundLevel(variant)) {
+                    int parameterIndex = 1;
+                    ps.setLong(parameterIndex++, row.receiverId);
+                    ps.setLong(parameterIndex++, row.sourceId);
+                    for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+                        double value = row.value[idfreq];
+                        if(!Double.isFinite(value)) {
+                            value = -99.0;
+                        }
+                        ps.setDouble(parameterIndex++, value);
+                    }
+                    ps.addBatch();
+                    batchSize++;
+                    if (batchSize >= BATCH_MAX_SIZE) {
+                        ps.executeBatch();
+                        ps.clearBatch();
+                        batchSize = 0;
+                    }
+                }
+                if (batchSize > 0) {
+                    ps.executeBatch();
+                }
+            }
+        }
+    }
+}
@@ -35,6 +35,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Compute noise propagation at specified receiver points.
@@ -46,6 +47,8 @@ public class PointNoiseMap extends JdbcNoiseMap {
     private IComputeRaysOutFactory computeRaysOutFactory;
     private Logger logger = LoggerFactory.getLogger(PointNoiseMap.class);
     private int threadCount = 0;
+    // Compute only these receivers, null for all receivers
+    private Set<Long> receiversFilter = null;
     private ProfilerThread profilerThread;
 
     public PointNoiseMap(String buildingsTableName, String sourcesTableName, String receiverTableName) {
@@ -80,6 +83,28 @@ public class PointNoiseMap extends JdbcNoiseMap {
         this.propagationProcessDataFactory = propagationProcessDataFactory;
     }
 
+    /**
+     * @return Receivers table name
+     */
+    public String getReceiverTableName() {
+        return receiverTableName;
+    }
+
+    /**
+     * @return Identifier of the only receivers to compute, null if all receivers are computed
+     */
+    public Set<Long> getReceiversFilter() {
+        return receiversFilter;
+    }
+
+    /**
+     * @param receiversFilter Identifier of the only receivers to compute, null to compute all receivers.
+     *                        Cells without any of these receivers are not populated.
+     */
+    public void setReceiversFilter(Set<Long> receiversFilter) {
+        this.receiversFilter = receiversFilter;
+    }
+
     public int getThreadCount() {
         return threadCount;
     }
@@ -99,7 +124,6 @@ public class PointNoiseMap extends JdbcNoiseMap {
      */
     public PropagationProcessData prepareCell(Connection connection,int cellI, int cellJ,
                                               ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
-        boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
         MeshBuilder mesh = new MeshBuilder();
         int ij = cellI * gridDim + cellJ + 1;
         if(verbose) {
@@ -124,13 +148,18 @@ public class PointNoiseMap extends JdbcNoiseMap {
         Envelope meshEnvelope = new Envelope(expandedCellEnvelop);
         // Expand again envelope for sound sources or buildings sides that are close to the edge
         meshEnvelope.expandBy(10);
+        FastObstructionTest freeFieldFinder;
         try {
-            mesh.finishPolygonFeeding(expandedCellEnvelop);
+            if(meshCache != null) {
+                freeFieldFinder = meshCache.getFastObstructionTest(mesh, expandedCellEnvelop);
+            } else {
+                mesh.finishPolygonFeeding(expandedCellEnvelop);
+                freeFieldFinder = new FastObstructionTest(mesh.getPolygonWithHeight(),
+                        mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices());
+            }
         } catch (LayerDelaunayError ex) {
             throw new SQLException(ex.getLocalizedMessage(), ex);
         }
-        FastObstructionTest freeFieldFinder = new FastObstructionTest(mesh.getPolygonWithHeight(),
-                mesh.getTriangles(), mesh.getTriNeighbors(), mesh.getVertices());
 
 
         PropagationProcessData propagationProcessData;
@@ -142,6 +171,8 @@ public class PointNoiseMap extends JdbcNoiseMap {
         propagationProcessData.reflexionOrder = soundReflectionOrder;
         propagationProcessData.maximumError = getMaximumError();
         propagationProcessData.noiseFloor = getNoiseFloor();
+        propagationProcessData.groundFactorRasterResolution = getGroundFactorRasterResolution();
+        propagationProcessData.elevationRasterResolution = getElevationRasterResolution();
         propagationProcessData.maxRefDist = maximumReflectionDistance;
         propagationProcessData.maxSrcDist = maximumPropagationDistance;
         propagationProcessData.gS = getGs();
@@ -157,7 +188,25 @@ public class PointNoiseMap extends JdbcNoiseMap {
         fetchCellSoilAreas(connection, expandedCellEnvelop, propagationProcessData.getSoilList());
 
         // Fetch receivers
+        fetchCellReceivers(connection, cellEnvelope, propagationProcessData, skipReceivers);
+
+        if(progression != null) {
+            propagationProcessData.cellProg = progression.subProcess(propagationProcessData.receivers.size());
+        }
+        return propagationProcessData;
+    }
 
+    /**
+     * Fetch receivers located in the cell envelope
+     * @param connection Active connection
+     * @param cellEnvelope Cell envelope (not expanded)
+     * @param propagationProcessData (Out) Propagation process input data
+     * @param skipReceivers Already processed receivers, fetched receivers are added to this set
+     * @throws SQLException
+     */
+    protected void fetchCellReceivers(Connection connection, Envelope cellEnvelope,
+                                      PropagationProcessData propagationProcessData, Set<Long> skipReceivers) throws SQLException {
+        boolean isH2 = JDBCUtilities.isH2DataBase(connection.getMetaData());
         String receiverGeomName = SFSUtilities.getGeometryFields(connection,
                 TableLocation.parse(receiverTableName)).get(0);
         int intPk = JDBCUtilities.getIntegerPrimaryKey(connection, receiverTableName);
@@ -175,6 +224,9 @@ public class PointNoiseMap extends JdbcNoiseMap {
             try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
                 while (rs.next()) {
                     long receiverPk = rs.getLong(2);
+                    if(receiversFilter != null && !receiversFilter.contains(receiverPk)) {
+                        continue;
+                    }
                     if(skipReceivers.contains(receiverPk)) {
                         continue;
                     } else {
@@ -187,10 +239,6 @@ public class PointNoiseMap extends JdbcNoiseMap {
                 }
             }
         }
-        if(progression != null) {
-            propagationProcessData.cellProg = progression.subProcess(propagationProcessData.receivers.size());
-        }
-        return propagationProcessData;
     }
 
     @Override
@@ -217,7 +265,15 @@ public class PointNoiseMap extends JdbcNoiseMap {
         }
         logger.info("Collect all receivers in order to localize populated cells");
         geometryField = geometryFields.get(0);
-        ResultSet rs = connection.createStatement().executeQuery("SELECT " + geometryField + " FROM " + receiverTableName);
+        String pkSelect = "";
+        if(receiversFilter != null) {
+            int intPk = JDBCUtilities.getIntegerPrimaryKey(connection, receiverTableName);
+            if(intPk < 1) {
+                throw new SQLException(String.format("Table %s missing primary key for receiver identification", receiverTableName));
+            }
+            pkSelect = ", " + TableLocation.quoteIdentifier(JDBCUtilities.getFieldName(connection.getMetaData(), receiverTableName, intPk));
+        }
+        ResultSet rs = connection.createStatement().executeQuery("SELECT " + geometryField + pkSelect + " FROM " + receiverTableName);
         // Construct RTree with cells envelopes
         STRtree rtree = new STRtree();
         for(int i = 0; i < gridDim; i++) {
@@ -230,6 +286,9 @@ public class PointNoiseMap extends JdbcNoiseMap {
         // Iterate over receivers and look for intersecting cells
         try (SpatialResultSet srs = rs.unwrap(SpatialResultSet.class)) {
             while (srs.next()) {
+                if(receiversFilter != null && !receiversFilter.contains(srs.getLong(2))) {
+                    continue;
+                }
                 Geometry pt = srs.getGeometry();
                 if(pt != null && !pt.isEmpty()) {
                     Coordinate ptCoord = pt.getCoordinate();
@@ -257,7 +316,16 @@ public class PointNoiseMap extends JdbcNoiseMap {
     public IComputeRaysOut evaluateCell(Connection connection, int cellI, int cellJ,
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         PropagationProcessData threadData = prepareCell(connection, cellI, cellJ, progression, skipReceivers);
+        return computeCell(threadData, null);
+    }
 
+    /**
+     * Launch sound propagation on a cell prepared with {@link #prepareCell(Connection, int, int, ProgressVisitor, Set)}
+     * @param threadData Prepared cell data
+     * @param forkJoinPool Shared pool used to compute receivers, null to use a dedicated pool of {@link #getThreadCount()} threads
+     * @return Computation output of the cell
+     */
+    public IComputeRaysOut computeCell(PropagationProcessData threadData, ForkJoinPool forkJoinPool) {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     threadData.receivers.size(), threadData.sourceGeometries.size(),
@@ -280,6 +348,10 @@ public class PointNoiseMap extends JdbcNoiseMap {
             computeRays.setThreadCount(threadCount);
         }
 
+        if(forkJoinPool != null) {
+            computeRays.setForkJoinPool(forkJoinPool);
+        }
+
         if(!receiverHasAbsoluteZCoordinates) {
             computeRays.makeReceiverRelativeZToAbsolute();
         }
@@ -0,0 +1,413 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.SFSUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluate all populated cells of a {@link PointNoiseMap} concurrently.
+ * Cells and receivers are computed by the same work-stealing pool, so cores do not idle while a cell
+ * fetch its data, triangulate its mesh or compute its last receivers.
+ * Cells are started by descending predicted cost (receivers x sources x buildings).
+ * Cells are loaded and meshed in this order by a background thread, up to {@link #getLookahead()} cells ahead of
+ * the computation, so the preparation of the next cells overlap with the propagation of the current ones.
+ * As cells are prepared one at a time, receivers located on cells boundaries are always attributed
+ * to the same cell and the result does not depend on the threads scheduling.
+ */
+public class PointNoiseMapExecutor {
+    private static final int DEFAULT_CONCURRENT_CELLS = 2;
+    private static final int DEFAULT_LOOKAHEAD = 1;
+    private static final long POLL_TIMEOUT_MS = 100;
+    /** Pushed by the loader when there is no more cells to prepare */
+    private static final PreparedCell END_OF_CELLS = new PreparedCell(null, null);
+    private Logger logger = LoggerFactory.getLogger(PointNoiseMapExecutor.class);
+    private final PointNoiseMap pointNoiseMap;
+    private int parallelism = 0;
+    private int concurrentCells = DEFAULT_CONCURRENT_CELLS;
+    private int lookahead = DEFAULT_LOOKAHEAD;
+    private CellListener cellListener;
+    private Set<PointNoiseMap.CellIndex> completedCells = Collections.emptySet();
+    private Set<Long> completedReceivers = Collections.emptySet();
+
+    /**
+     * @param pointNoiseMap Initialised instance of PointNoiseMap
+     */
+    public PointNoiseMapExecutor(PointNoiseMap pointNoiseMap) {
+        this.pointNoiseMap = pointNoiseMap;
+    }
+
+    /**
+     * @return Number of workers of the shared pool, 0 for using all available cores
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism Number of workers of the shared pool, 0 for using all available cores
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return Maximum number of cells loaded in memory at the same time
+     */
+    public int getConcurrentCells() {
+        return concurrentCells;
+    }
+
+    /**
+     * Each prepared cell hold its mesh and sources in memory. This value limit the heap usage.
+     * @param concurrentCells Maximum number of cells loaded in memory at the same time
+     */
+    public void setConcurrentCells(int concurrentCells) {
+        this.concurrentCells = Math.max(1, concurrentCells);
+    }
+
+    /**
+     * @return Maximum number of prepared cells waiting for computation
+     */
+    public int getLookahead() {
+        return lookahead;
+    }
+
+    /**
+     * The cells in memory are at most concurrentCells + lookahead + 1 (the one being prepared).
+     * @param lookahead Maximum number of prepared cells waiting for computation
+     */
+    public void setLookahead(int lookahead) {
+        this.lookahead = Math.max(1, lookahead);
+    }
+
+    /**
+     * @param cellListener Called for each cell when the cell computation is done (may be called concurrently), not
+     *                     called for the cells interrupted by a cancellation
+     */
+    public void setCellListener(CellListener cellListener) {
+        this.cellListener = cellListener;
+    }
+
+    /**
+     * @param completedCells Cells computed by a previous run, they are skipped
+     * @param completedReceivers Receivers computed by a previous run, they are skipped
+     * @see LDENPointNoiseMapFactory#resume(Connection, PointNoiseMap)
+     */
+    public void setCompletedCells(Set<PointNoiseMap.CellIndex> completedCells, Set<Long> completedReceivers) {
+        this.completedCells = completedCells;
+        this.completedReceivers = completedReceivers;
+    }
+
+    /**
+     * Predicted computation cost of a cell
+     * @param connection Active connection
+     * @param cellIndex Cell index
+     * @param receiverCount Number of receivers in the cell
+     * @return receivers x sources x buildings located in the expanded cell envelope
+     * @throws SQLException
+     */
+    public double computeCellCost(Connection connection, PointNoiseMap.CellIndex cellIndex, int receiverCount)
+            throws SQLException {
+        Envelope expandedCellEnvelop = PointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(),
+                cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), pointNoiseMap.getCellWidth(),
+                pointNoiseMap.getCellHeight());
+        expandedCellEnvelop.expandBy(pointNoiseMap.getMaximumPropagationDistance());
+        long sourceCount = countGeometries(connection, pointNoiseMap.getSourcesTableName(), expandedCellEnvelop);
+        long buildingCount = countGeometries(connection, pointNoiseMap.getBuildingsTableName(), expandedCellEnvelop);
+        return (double)Math.max(1, receiverCount) * Math.max(1, sourceCount) * Math.max(1, buildingCount);
+    }
+
+    private long countGeometries(Connection connection, String tableName, Envelope envelope) throws SQLException {
+        if(tableName == null || tableName.isEmpty()) {
+            return 0;
+        }
+        List<String> geomFields = SFSUtilities.getGeometryFields(connection, TableLocation.parse(tableName));
+        if(geomFields.isEmpty()) {
+            return 0;
+        }
+        try (PreparedStatement st = connection.prepareStatement("SELECT COUNT(*) FROM " + tableName + " WHERE " +
+                TableLocation.quoteIdentifier(geomFields.get(0)) + " && ?::geometry")) {
+            st.setObject(1, pointNoiseMap.geometryFactory.toGeometry(envelope));
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * @param connection Active connection
+     * @param cells Populated cells with the number of receivers, see {@link PointNoiseMap#searchPopulatedCells(Connection)}
+     * @return Cells ordered by descending predicted cost
+     * @throws SQLException
+     */
+    public List<PointNoiseMap.CellIndex> sortCellsByCost(Connection connection, Map<PointNoiseMap.CellIndex,
+            Integer> cells) throws SQLException {
+        List<CellCost> cellCosts = new ArrayList<>(cells.size());
+        for(Map.Entry<PointNoiseMap.CellIndex, Integer> entry : cells.entrySet()) {
+            cellCosts.add(new CellCost(entry.getKey(), computeCellCost(connection, entry.getKey(), entry.getValue())));
+        }
+        Collections.sort(cellCosts);
+        List<PointNoiseMap.CellIndex> sortedCells = new ArrayList<>(cellCosts.size());
+        for(CellCost cellCost : cellCosts) {
+            sortedCells.add(cellCost.cellIndex);
+        }
+        return sortedCells;
+    }
+
+    /**
+     * Compute all populated cells. {@link PointNoiseMap#initialize(Connection, ProgressVisitor)} must be called before.
+     * @param connection Active connection, only used by the cells loader thread
+     * @param progression Progression info
+     * @return Set of processed receivers primary keys
+     * @throws SQLException
+     * @throws IOException
+     */
+    public Set<Long> run(Connection connection, ProgressVisitor progression) throws SQLException, IOException {
+        if(progression == null) {
+            progression = new EmptyProgressVisitor();
+        }
+        Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+        cells.keySet().removeAll(completedCells);
+        ConcurrentLinkedDeque<PointNoiseMap.CellIndex> cellsToCompute =
+                new ConcurrentLinkedDeque<>(sortCellsByCost(connection, cells));
+        ProgressVisitor cellsProgression = progression.subProcess(cellsToCompute.size());
+        Set<Long> skipReceivers = ConcurrentHashMap.newKeySet();
+        skipReceivers.addAll(completedReceivers);
+        int poolSize = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool forkJoinPool = new ForkJoinPool(poolSize);
+        AtomicReference<Exception> firstError = new AtomicReference<>();
+        BlockingQueue<PreparedCell> preparedCells = new ArrayBlockingQueue<>(lookahead);
+        Thread loaderThread = new Thread(new CellLoader(connection, cellsToCompute, preparedCells,
+                cellsProgression, skipReceivers, firstError), "PointNoiseMap cell loader");
+        int computationCount = Math.min(concurrentCells, cellsToCompute.size());
+        try {
+            loaderThread.start();
+            List<ForkJoinTask<?>> cellsComputation = new ArrayList<>();
+            for (int i = 0; i < computationCount; i++) {
+                cellsComputation.add(forkJoinPool.submit(new CellComputation(preparedCells, cellsProgression,
+                        forkJoinPool, firstError)));
+            }
+            for (ForkJoinTask<?> cellComputation : cellsComputation) {
+                cellComputation.join();
+            }
+            loaderThread.join();
+        } catch (InterruptedException ex) {
+            cellsProgression.cancel();
+            Thread.currentThread().interrupt();
+        } finally {
+            forkJoinPool.shutdown();
+        }
+        Exception ex = firstError.get();
+        if(ex instanceof SQLException) {
+            throw (SQLException) ex;
+        } else if(ex instanceof IOException) {
+            throw (IOException) ex;
+        } else if(ex != null) {
+            throw new SQLException(ex.getLocalizedMessage(), ex);
+        }
+        return skipReceivers;
+    }
+
+    /**
+     * Notified when a cell computation is done
+     */
+    public interface CellListener {
+        void onCellComputed(PointNoiseMap.CellIndex cellIndex, IComputeRaysOut computeRaysOut);
+    }
+
+    private static final class CellCost implements Comparable<CellCost> {
+        final PointNoiseMap.CellIndex cellIndex;
+        final double cost;
+
+        CellCost(PointNoiseMap.CellIndex cellIndex, double cost) {
+            this.cellIndex = cellIndex;
+            this.cost = cost;
+        }
+
+        @Override
+        public int compareTo(CellCost o) {
+            int cmp = -Double.compare(cost, o.cost);
+            return cmp != 0 ? cmp : cellIndex.compareTo(o.cellIndex);
+        }
+    }
+
+    private static final class PreparedCell {
+        final PointNoiseMap.CellIndex cellIndex;
+        final PropagationProcessData cellData;
+
+        PreparedCell(PointNoiseMap.CellIndex cellIndex, PropagationProcessData cellData) {
+            this.cellIndex = cellIndex;
+            this.cellData = cellData;
+        }
+    }
+
+    private static boolean isStopped(ProgressVisitor progression, AtomicReference<Exception> firstError) {
+        return progression.isCanceled() || firstError.get() != null;
+    }
+
+    private void onError(Exception ex, ProgressVisitor progression, AtomicReference<Exception> firstError) {
+        logger.error(ex.getLocalizedMessage(), ex);
+        firstError.compareAndSet(null, ex);
+        progression.cancel();
+    }
+
+    /**
+     * Fetch and mesh the cells in order, then push them in the bounded queue of prepared cells
+     */
+    private final class CellLoader implements Runnable {
+        private final Connection connection;
+        private final ConcurrentLinkedDeque<PointNoiseMap.CellIndex> cellsToCompute;
+        private final BlockingQueue<PreparedCell> preparedCells;
+        private final ProgressVisitor progression;
+        private final Set<Long> skipReceivers;
+        private final AtomicReference<Exception> firstError;
+
+        CellLoader(Connection connection, ConcurrentLinkedDeque<PointNoiseMap.CellIndex> cellsToCompute,
+                   BlockingQueue<PreparedCell> preparedCells, ProgressVisitor progression, Set<Long> skipReceivers,
+                   AtomicReference<Exception> firstError) {
+            this.connection = connection;
+            this.cellsToCompute = cellsToCompute;
+            this.preparedCells = preparedCells;
+            this.progression = progression;
+            this.skipReceivers = skipReceivers;
+            this.firstError = firstError;
+        }
+
+        private boolean push(PreparedCell preparedCell) throws InterruptedException {
+            while (!isStopped(progression, firstError)) {
+                if (preparedCells.offer(preparedCell, POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            try {
+                PointNoiseMap.CellIndex cellIndex;
+                while (!isStopped(progression, firstError) && (cellIndex = cellsToCompute.poll()) != null) {
+                    PropagationProcessData cellData = pointNoiseMap.prepareCell(connection,
+                            cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progression, skipReceivers);
+                    if (!push(new PreparedCell(cellIndex, cellData))) {
+                        return;
+                    }
+                }
+                push(END_OF_CELLS);
+            } catch (SQLException | IOException | RuntimeException ex) {
+                onError(ex, progression, firstError);
+            } catch (InterruptedException ex) {
+                progression.cancel();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wait for a prepared cell without starving the pool, see {@link ForkJoinPool#managedBlock}
+     */
+    private static final class PreparedCellTaker implements ForkJoinPool.ManagedBlocker {
+        private final BlockingQueue<PreparedCell> preparedCells;
+        private PreparedCell preparedCell;
+
+        PreparedCellTaker(BlockingQueue<PreparedCell> preparedCells) {
+            this.preparedCells = preparedCells;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (preparedCell == null) {
+                preparedCell = preparedCells.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            }
+            // return even on timeout in order to check cancellation
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return preparedCell != null || (preparedCell = preparedCells.poll()) != null;
+        }
+    }
+
+    /**
+     * Compute the prepared cells until the loader push the end of cells
+     */
+    private final class CellComputation implements Runnable {
+        private final BlockingQueue<PreparedCell> preparedCells;
+        private final ProgressVisitor progression;
+        private final ForkJoinPool forkJoinPool;
+        private final AtomicReference<Exception> firstError;
+
+        CellComputation(BlockingQueue<PreparedCell> preparedCells, ProgressVisitor progression,
+                        ForkJoinPool forkJoinPool, AtomicReference<Exception> firstError) {
+            this.preparedCells = preparedCells;
+            this.progression = progression;
+            this.forkJoinPool = forkJoinPool;
+            this.firstError = firstError;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (!isStopped(progression, firstError)) {
+                    PreparedCellTaker taker = new PreparedCellTaker(preparedCells);
+                    ForkJoinPool.managedBlock(taker);
+                    PreparedCell preparedCell = taker.preparedCell;
+                    if (preparedCell == null) {
+                        continue;
+                    }
+                    if (preparedCell == END_OF_CELLS) {
+                        // let the other computations stop too
+                        preparedCells.offer(END_OF_CELLS);
+                        break;
+                    }
+                    IComputeRaysOut computeRaysOut = pointNoiseMap.computeCell(preparedCell.cellData, forkJoinPool);
+                    if (cellListener != null && !isStopped(progression, firstError)) {
+                        cellListener.onCellComputed(preparedCell.cellIndex, computeRaysOut);
+                    }
+                }
+            } catch (RuntimeException ex) {
+                onError(ex, progression, firstError);
+            } catch (InterruptedException ex) {
+                progression.cancel();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
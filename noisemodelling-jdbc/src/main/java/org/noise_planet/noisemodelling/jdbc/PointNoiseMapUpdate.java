@@ -0,0 +1,249 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SFSUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Update the LDEN tables of a previous computation after a local change of sources or buildings.
+ * Only the receivers close enough to the changed geometries are computed again, their previous rows are replaced.
+ * When the tables hold one row per source and only sources have changed, only the rows of the changed sources are
+ * replaced, the contribution of the other sources is kept.
+ */
+public class PointNoiseMapUpdate {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PointNoiseMapUpdate.class);
+    private static final int BATCH_MAX_SIZE = 500;
+    // Lateral diffraction paths longer than 3 times the direct path are rejected by ComputeRays, so the vertical
+    // edges of these paths are not further than 2 times the propagation distance from the receiver
+    private static final double LATERAL_DIFFRACTION_DISTANCE_RATIO = 2;
+    private final PointNoiseMap pointNoiseMap;
+    private final LDENPointNoiseMapFactory factory;
+    private final Set<Long> changedSources = new HashSet<>();
+    private final List<Geometry> changedSourcesGeometries = new ArrayList<>();
+    private final List<Geometry> changedBuildings = new ArrayList<>();
+
+    /**
+     * @param pointNoiseMap Noise map of the previous computation, already initialized
+     * @param factory Factory of the previous computation, not started
+     */
+    public PointNoiseMapUpdate(PointNoiseMap pointNoiseMap, LDENPointNoiseMapFactory factory) {
+        this.pointNoiseMap = pointNoiseMap;
+        this.factory = factory;
+    }
+
+    /**
+     * Add sources that exist in the sources table, with new emission or geometry
+     * @param connection Active connection
+     * @param sourcesPk Identifier of the changed sources
+     * @throws SQLException
+     */
+    public void addChangedSources(Connection connection, Collection<Long> sourcesPk) throws SQLException {
+        String sourcesTable = pointNoiseMap.getSourcesTableName();
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, sourcesTable);
+        if(pkIndex < 1) {
+            throw new IllegalArgumentException(String.format("Source table %s does not contain a primary key",
+                    sourcesTable));
+        }
+        String pkField = JDBCUtilities.getFieldName(connection.getMetaData(), sourcesTable, pkIndex);
+        String geomField = SFSUtilities.getGeometryFields(connection, TableLocation.parse(sourcesTable)).get(0);
+        try (PreparedStatement st = connection.prepareStatement("SELECT " + TableLocation.quoteIdentifier(geomField) +
+                " FROM " + sourcesTable + " WHERE " + TableLocation.quoteIdentifier(pkField) + " = ?")) {
+            for(long sourcePk : sourcesPk) {
+                st.setLong(1, sourcePk);
+                try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        addChangedSource(sourcePk, rs.getGeometry());
+                    }
+                }
+                changedSources.add(sourcePk);
+            }
+        }
+    }
+
+    /**
+     * Add a changed source, this method must be used with the previous geometry of moved or removed sources
+     * @param sourcePk Source identifier
+     * @param geometry Source geometry
+     */
+    public void addChangedSource(long sourcePk, Geometry geometry) {
+        changedSources.add(sourcePk);
+        if(geometry != null) {
+            changedSourcesGeometries.add(geometry);
+        }
+    }
+
+    /**
+     * Add the geometry of a created, removed or modified building (or barrier).
+     * For a modification both previous and new geometries should be added.
+     * @param geometry Building geometry
+     */
+    public void addChangedBuilding(Geometry geometry) {
+        changedBuildings.add(geometry);
+    }
+
+    /**
+     * @return True if only the rows of the changed sources need to be computed again
+     */
+    public boolean isSourcesOnly() {
+        return changedBuildings.isEmpty() && !factory.ldenConfig.mergeSources;
+    }
+
+    /**
+     * Receivers close enough to the changed sources or buildings to be impacted by the change
+     * @param connection Active connection
+     * @return Identifier of impacted receivers
+     * @throws SQLException
+     */
+    public Set<Long> findImpactedReceivers(Connection connection) throws SQLException {
+        String receiverTable = pointNoiseMap.getReceiverTableName();
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, receiverTable);
+        if(pkIndex < 1) {
+            throw new SQLException(String.format("Table %s missing primary key for receiver identification",
+                    receiverTable));
+        }
+        String pkField = JDBCUtilities.getFieldName(connection.getMetaData(), receiverTable, pkIndex);
+        String geomField = SFSUtilities.getGeometryFields(connection, TableLocation.parse(receiverTable)).get(0);
+        Set<Long> receivers = new HashSet<>();
+        try (PreparedStatement st = connection.prepareStatement("SELECT " + TableLocation.quoteIdentifier(pkField) +
+                " FROM " + receiverTable + " WHERE " + TableLocation.quoteIdentifier(geomField) +
+                " && ?::geometry AND ST_DWITHIN(" + TableLocation.quoteIdentifier(geomField) + ", ?::geometry, ?)")) {
+            // Propagation paths are not longer than the maximum propagation distance
+            fetchReceivers(st, changedSourcesGeometries, pointNoiseMap.getMaximumPropagationDistance(), receivers);
+            // Reflection walls may be a bit further than the sources
+            double buildingDistance = Math.max(pointNoiseMap.getMaximumPropagationDistance(),
+                    pointNoiseMap.getMaximumReflectionDistance());
+            if(pointNoiseMap.isComputeHorizontalDiffraction()) {
+                // Lateral diffraction paths go around the buildings
+                buildingDistance = Math.max(buildingDistance, LATERAL_DIFFRACTION_DISTANCE_RATIO *
+                        pointNoiseMap.getMaximumPropagationDistance());
+            }
+            fetchReceivers(st, changedBuildings, buildingDistance, receivers);
+        }
+        return receivers;
+    }
+
+    private static void fetchReceivers(PreparedStatement st, List<Geometry> geometries, double distance,
+                                       Set<Long> receivers) throws SQLException {
+        GeometryFactory geometryFactory = new GeometryFactory();
+        for(Geometry geometry : geometries) {
+            Envelope envelope = new Envelope(geometry.getEnvelopeInternal());
+            envelope.expandBy(distance);
+            st.setObject(1, geometryFactory.toGeometry(envelope));
+            st.setObject(2, geometry);
+            st.setDouble(3, distance);
+            try (SpatialResultSet rs = st.executeQuery().unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    receivers.add(rs.getLong(1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Delete the outdated rows then compute again the impacted receivers into the LDEN tables
+     * @param connection Active connection
+     * @param progression Progression of the cells
+     * @return Identifier of the computed receivers
+     * @throws SQLException
+     * @throws IOException
+     */
+    public Set<Long> run(Connection connection, ProgressVisitor progression) throws SQLException, IOException {
+        Set<Long> impactedReceivers = findImpactedReceivers(connection);
+        LOGGER.info(String.format("%d receivers impacted by the change of %d sources and %d buildings",
+                impactedReceivers.size(), changedSources.size(), changedBuildings.size()));
+        if(impactedReceivers.isEmpty()) {
+            return impactedReceivers;
+        }
+        boolean sourcesOnly = isSourcesOnly();
+        deleteResults(connection, sourcesOnly ? changedSources : impactedReceivers, sourcesOnly);
+        if(!changedBuildings.isEmpty() && pointNoiseMap.getSceneCache() != null) {
+            pointNoiseMap.getSceneCache().clear();
+        }
+        LDENConfig ldenConfig = factory.ldenConfig;
+        Boolean dropResultsTable = ldenConfig.dropResultsTable;
+        Set<Long> receiversFilter = pointNoiseMap.getReceiversFilter();
+        Set<Long> sourcesFilter = pointNoiseMap.getSourcesFilter();
+        ldenConfig.setDropResultsTable(false);
+        pointNoiseMap.setReceiversFilter(impactedReceivers);
+        if(sourcesOnly) {
+            pointNoiseMap.setSourcesFilter(changedSources);
+        }
+        factory.start();
+        try {
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progression.subProcess(cells.size());
+            Set<Long> receivers = new HashSet<>();
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                        progressVisitor, receivers);
+            }
+        } finally {
+            factory.stop();
+            ldenConfig.setDropResultsTable(dropResultsTable);
+            pointNoiseMap.setReceiversFilter(receiversFilter);
+            pointNoiseMap.setSourcesFilter(sourcesFilter);
+        }
+        return impactedReceivers;
+    }
+
+    /**
+     * Delete the rows of the results tables
+     * @param connection Active connection
+     * @param identifiers Identifier of the rows to delete
+     * @param sources True if identifiers are sources, false for receivers
+     */
+    private void deleteResults(Connection connection, Set<Long> identifiers, boolean sources) throws SQLException {
+        String field = sources ? "IDSOURCE" : "IDRECEIVER";
+        for(String table : factory.getResultTables()) {
+            if(!JDBCUtilities.tableExists(connection, table)) {
+                continue;
+            }
+            try (PreparedStatement st = connection.prepareStatement("DELETE FROM " + table + " WHERE " + field +
+                    " = ?")) {
+                int batchSize = 0;
+                for(long identifier : identifiers) {
+                    st.setLong(1, identifier);
+                    st.addBatch();
+                    batchSize++;
+                    if(batchSize >= BATCH_MAX_SIZE) {
+                        st.executeBatch();
+                        batchSize = 0;
+                    }
+                }
+                if(batchSize > 0) {
+                    st.executeBatch();
+                }
+            }
+        }
+    }
+}
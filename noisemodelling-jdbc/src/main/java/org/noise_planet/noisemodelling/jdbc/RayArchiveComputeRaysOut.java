@@ -0,0 +1,161 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Archive the propagation paths into a {@link RayArchiveWriter} then forward them to another output.
+ * Block of a receiver: receiver identifier, source count then for each source the source
+ * identifier, the source Li coefficient and the propagation paths.
+ */
+public class RayArchiveComputeRaysOut implements IComputeRaysOut {
+    private static final int SOURCE_COUNT_POSITION = Long.BYTES;
+    private final IComputeRaysOut delegate;
+    private final PropagationProcessData inputData;
+    private final RayArchiveWriter writer;
+    private final BlockBuffer block = new BlockBuffer();
+    private final DataOutputStream blockStream = new DataOutputStream(block);
+    private int sourceCount = 0;
+    private Coordinate receiverPosition;
+
+    /**
+     * @param delegate Output of the propagation paths, may be null
+     * @param inputData Input data used to retrieve the identifiers of sources and receivers, may be null
+     * @param writer Archive shared between threads and cells
+     */
+    public RayArchiveComputeRaysOut(IComputeRaysOut delegate, PropagationProcessData inputData,
+                                    RayArchiveWriter writer) {
+        this.delegate = delegate;
+        this.inputData = inputData;
+        this.writer = writer;
+    }
+
+    @Override
+    public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                        List<PropagationPath> propagationPath) {
+        // Write before the delegate evaluate (and alter) the paths
+        try {
+            if(block.size() == 0) {
+                writeHeader(receiverId);
+            }
+            long sourcePK = sourceId;
+            if(inputData != null && sourceId < inputData.sourcesPk.size()) {
+                sourcePK = inputData.sourcesPk.get((int)sourceId);
+            }
+            blockStream.writeLong(sourcePK);
+            blockStream.writeDouble(sourceLi);
+            PropagationPath.writePropagationPathListStream(blockStream, propagationPath);
+            sourceCount++;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        if(delegate != null) {
+            return delegate.addPropagationPaths(sourceId, sourceLi, receiverId, propagationPath);
+        } else {
+            return new double[0];
+        }
+    }
+
+    private void writeHeader(long receiverId) throws IOException {
+        long receiverPK = receiverId;
+        Coordinate position = new Coordinate(Double.NaN, Double.NaN, Double.NaN);
+        if(inputData != null && receiverId < inputData.receivers.size()) {
+            position = inputData.receivers.get((int)receiverId);
+            if(receiverId < inputData.receiversPk.size()) {
+                receiverPK = inputData.receiversPk.get((int)receiverId);
+            }
+        }
+        receiverPosition = position;
+        blockStream.writeLong(receiverPK);
+        blockStream.writeInt(0);
+    }
+
+    @Override
+    public void finalizeReceiver(long receiverId) {
+        try {
+            if(block.size() == 0) {
+                writeHeader(receiverId);
+            }
+            blockStream.flush();
+            block.setInt(SOURCE_COUNT_POSITION, sourceCount);
+            writer.writeReceiver(block.getLong(0), receiverPosition, block.getBuffer(), block.size());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            block.reset();
+            sourceCount = 0;
+        }
+        if(delegate != null) {
+            delegate.finalizeReceiver(receiverId);
+        }
+    }
+
+    @Override
+    public IComputeRaysOut subProcess() {
+        return new RayArchiveComputeRaysOut(delegate != null ? delegate.subProcess() : null, inputData, writer);
+    }
+
+    /**
+     * Archive the propagation paths of the outputs created by another factory
+     */
+    public static class Factory implements PointNoiseMap.IComputeRaysOutFactory {
+        private final PointNoiseMap.IComputeRaysOutFactory delegate;
+        private final RayArchiveWriter writer;
+
+        /**
+         * @param delegate Factory of the outputs of the propagation paths, may be null
+         * @param writer Archive, must be closed by the caller once all cells are computed
+         */
+        public Factory(PointNoiseMap.IComputeRaysOutFactory delegate, RayArchiveWriter writer) {
+            this.delegate = delegate;
+            this.writer = writer;
+        }
+
+        @Override
+        public IComputeRaysOut create(PropagationProcessData threadData, PropagationProcessPathData pathData) {
+            return new RayArchiveComputeRaysOut(delegate != null ? delegate.create(threadData, pathData) : null,
+                    threadData, writer);
+        }
+    }
+
+    private static final class BlockBuffer extends ByteArrayOutputStream {
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        long getLong(int position) {
+            long value = 0;
+            for(int i = 0; i < Long.BYTES; i++) {
+                value = (value << 8) | (buf[position + i] & 0xFF);
+            }
+            return value;
+        }
+
+        void setInt(int position, int value) {
+            buf[position] = (byte) (value >>> 24);
+            buf[position + 1] = (byte) (value >>> 16);
+            buf[position + 2] = (byte) (value >>> 8);
+            buf[position + 3] = (byte) value;
+        }
+    }
+}
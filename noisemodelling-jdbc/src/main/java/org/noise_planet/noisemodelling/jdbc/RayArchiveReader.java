@@ -0,0 +1,189 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read the propagation paths written by {@link RayArchiveWriter}.
+ * The blocks of the receivers can be read concurrently.
+ */
+public class RayArchiveReader implements Closeable {
+    static final int MAGIC = 0x4E524159;
+    static final int VERSION = 1;
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long[] receiverIds;
+    private final Coordinate[] receiverPositions;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] rawLengths;
+
+    /**
+     * @param path File written by {@link RayArchiveWriter}
+     * @throws IOException
+     */
+    public RayArchiveReader(File path) throws IOException {
+        file = new RandomAccessFile(path, "r");
+        try {
+            channel = file.getChannel();
+            long fileSize = channel.size();
+            ByteBuffer tail = read(fileSize - Long.BYTES - Integer.BYTES, Long.BYTES + Integer.BYTES);
+            long footerOffset = tail.getLong();
+            if(tail.getInt() != MAGIC) {
+                throw new IOException("Not a ray archive file or not closed " + path);
+            }
+            ByteBuffer header = read(0, 2 * Integer.BYTES);
+            if(header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Unsupported ray archive file " + path);
+            }
+            ByteBuffer footer = read(footerOffset, (int) (fileSize - footerOffset - Long.BYTES - Integer.BYTES));
+            int receiverCount = footer.getInt();
+            receiverIds = new long[receiverCount];
+            receiverPositions = new Coordinate[receiverCount];
+            blockOffsets = new long[receiverCount];
+            blockLengths = new int[receiverCount];
+            rawLengths = new int[receiverCount];
+            for(int i = 0; i < receiverCount; i++) {
+                receiverIds[i] = footer.getLong();
+                receiverPositions[i] = new Coordinate(footer.getDouble(), footer.getDouble(), footer.getDouble());
+                blockOffsets[i] = footer.getLong();
+                blockLengths[i] = footer.getInt();
+                rawLengths[i] = footer.getInt();
+            }
+        } catch (IOException | RuntimeException ex) {
+            file.close();
+            throw ex;
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if(channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return Number of stored receivers
+     */
+    public int getReceiverCount() {
+        return receiverIds.length;
+    }
+
+    /**
+     * @param receiverIndex Receiver index [0-getReceiverCount()[
+     * @return Receiver identifier
+     */
+    public long getReceiverId(int receiverIndex) {
+        return receiverIds[receiverIndex];
+    }
+
+    /**
+     * @param receiverIndex Receiver index [0-getReceiverCount()[
+     * @return Receiver position, NaN if unknown
+     */
+    public Coordinate getReceiverPosition(int receiverIndex) {
+        return receiverPositions[receiverIndex];
+    }
+
+    /**
+     * Read and decompress the propagation paths of a receiver
+     * @param receiverIndex Receiver index [0-getReceiverCount()[
+     * @return Propagation paths of the receiver
+     * @throws IOException
+     */
+    public ReceiverRays readReceiver(int receiverIndex) throws IOException {
+        ByteBuffer compressed = read(blockOffsets[receiverIndex], blockLengths[receiverIndex]);
+        byte[] raw = new byte[rawLengths[receiverIndex]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array(), 0, blockLengths[receiverIndex]);
+            int length = 0;
+            while (length < raw.length) {
+                int read = inflater.inflate(raw, length, raw.length - length);
+                if(read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new EOFException("Truncated block of receiver " + receiverIds[receiverIndex]);
+                }
+                length += read;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException(ex);
+        } finally {
+            inflater.end();
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw));
+        ReceiverRays receiverRays = new ReceiverRays(in.readLong(), receiverPositions[receiverIndex]);
+        int sourceCount = in.readInt();
+        for(int idSource = 0; idSource < sourceCount; idSource++) {
+            long sourceId = in.readLong();
+            double sourceLi = in.readDouble();
+            ArrayList<PropagationPath> paths = new ArrayList<>();
+            PropagationPath.readPropagationPathListStream(in, paths);
+            receiverRays.sources.add(new SourceRays(sourceId, sourceLi, paths));
+        }
+        return receiverRays;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Propagation paths of a receiver
+     */
+    public static class ReceiverRays {
+        public final long receiverId;
+        public final Coordinate position;
+        public final List<SourceRays> sources = new ArrayList<>();
+
+        public ReceiverRays(long receiverId, Coordinate position) {
+            this.receiverId = receiverId;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Propagation paths between a source and a receiver
+     */
+    public static class SourceRays {
+        public final long sourceId;
+        public final double sourceLi;
+        public final List<PropagationPath> paths;
+
+        public SourceRays(long sourceId, double sourceLi, List<PropagationPath> paths) {
+            this.sourceId = sourceId;
+            this.sourceLi = sourceLi;
+            this.paths = paths;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.h2gis.api.ProgressVisitor;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.locationtech.jts.geom.Geometry;
+import org.noise_planet.noisemodelling.pathfinder.FastObstructionTest;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PointPath;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.pathfinder.SegmentPath;
+import org.noise_planet.noisemodelling.pathfinder.ThreadPool;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Evaluate again the propagation paths of a {@link RayArchiveReader} without computing the paths.
+ * The acoustic parameters (temperature, humidity, wind rose) come from the {@link PropagationProcessPathData}, the
+ * ground factor of the paths and the absorption of the walls can be replaced.
+ * Receivers are processed in parallel, one archive block at a time.
+ */
+public class RayArchiveReplay {
+    private static final Logger LOGGER = LoggerFactory.getLogger(RayArchiveReplay.class);
+    private final RayArchiveReader reader;
+    private int threadCount = 0;
+    private Double groundFactor = null;
+    private List<Double> wallAlpha = null;
+    private ProgressVisitor progressVisitor = null;
+
+    /**
+     * @param reader Propagation paths archive
+     */
+    public RayArchiveReplay(RayArchiveReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return Number of threads, 0 for the number of available processors
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of threads, 0 for the number of available processors
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * @return Ground factor G of all the paths segments, null to keep the archived values
+     */
+    public Double getGroundFactor() {
+        return groundFactor;
+    }
+
+    /**
+     * @param groundFactor Ground factor G [0-1] of all the paths segments, null to keep the archived values
+     */
+    public void setGroundFactor(Double groundFactor) {
+        this.groundFactor = groundFactor;
+    }
+
+    /**
+     * @return Absorption coefficient of the walls for each frequency, null to keep the archived values
+     */
+    public List<Double> getWallAlpha() {
+        return wallAlpha;
+    }
+
+    /**
+     * @param wallAlpha Absorption coefficient of the reflecting walls for each frequency, null to keep the archived values
+     */
+    public void setWallAlpha(List<Double> wallAlpha) {
+        this.wallAlpha = wallAlpha == null ? null : Collections.unmodifiableList(new ArrayList<>(wallAlpha));
+    }
+
+    /**
+     * @param progressVisitor Progression of the receivers, may be null
+     */
+    public void setProgressVisitor(ProgressVisitor progressVisitor) {
+        this.progressVisitor = progressVisitor;
+    }
+
+    /**
+     * Fetch all the sources of the table then evaluate the archived paths into the tables of the factory.
+     * The factory must be started before this call, and stopped afterwards, as with {@link PointNoiseMap}.
+     * @param connection Active connection
+     * @param sourcesTableName Sources table, with the same emission fields as for the archived computation
+     * @param factory LDEN tables output
+     * @param pathData Acoustic parameters, the frequencies must match the sources emission
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void replay(Connection connection, String sourcesTableName, LDENPointNoiseMapFactory factory,
+                       PropagationProcessPathData pathData) throws SQLException, IOException {
+        LDENPropagationProcessData data = factory.create((FastObstructionTest) null);
+        fetchSources(connection, sourcesTableName, data);
+        replay(data, factory.create(data, pathData));
+    }
+
+    /**
+     * Fetch all the sources of a table
+     * @param connection Active connection
+     * @param sourcesTableName Sources table
+     * @param data Sources destination
+     * @throws SQLException
+     * @throws IOException
+     */
+    public static void fetchSources(Connection connection, String sourcesTableName, PropagationProcessData data)
+            throws SQLException, IOException {
+        int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, sourcesTableName);
+        if(pkIndex < 1) {
+            throw new IllegalArgumentException(String.format("Source table %s does not contain a primary key",
+                    sourcesTableName));
+        }
+        try (Statement st = connection.createStatement();
+             SpatialResultSet rs = st.executeQuery("SELECT * FROM " + sourcesTableName).unwrap(SpatialResultSet.class)) {
+            while (rs.next()) {
+                Geometry geo = rs.getGeometry();
+                if (geo != null) {
+                    data.addSource(rs.getLong(pkIndex), geo, rs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate the archived paths. The archived receivers are appended to the receivers of data and the sources are
+     * retrieved from data using their identifier. Paths of sources missing in data are ignored.
+     * @param data Sources (and optionally emission/directivity) of the archived computation
+     * @param computeRaysOut Output of the propagation paths
+     * @throws IOException
+     */
+    public void replay(PropagationProcessData data, IComputeRaysOut computeRaysOut) throws IOException {
+        Map<Long, Integer> sourceIndex = new HashMap<>(data.sourcesPk.size());
+        for(int idSource = 0; idSource < data.sourcesPk.size(); idSource++) {
+            sourceIndex.put(data.sourcesPk.get(idSource), idSource);
+        }
+        final int receiverOffset = data.receivers.size();
+        ConcurrentLinkedDeque<Integer> receiversToCompute = new ConcurrentLinkedDeque<>();
+        for(int receiver = 0; receiver < reader.getReceiverCount(); receiver++) {
+            data.addReceiver(reader.getReceiverId(receiver), reader.getReceiverPosition(receiver));
+            receiversToCompute.add(receiver);
+        }
+        int threads = threadCount > 0 ? threadCount : Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ThreadPool threadManager = new ThreadPool(threads, threads + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
+        for(int idThread = 0; idThread < threads; idThread++) {
+            ReplayJob job = new ReplayJob(receiversToCompute, computeRaysOut.subProcess(), sourceIndex,
+                    receiverOffset, failure);
+            if(threads != 1) {
+                threadManager.executeBlocking(job);
+            } else {
+                job.run();
+            }
+        }
+        threadManager.shutdown();
+        try {
+            threadManager.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            LOGGER.error(ex.getLocalizedMessage(), ex);
+        }
+        if(failure.get() != null) {
+            if(failure.get() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) failure.get()).getCause();
+            }
+            throw failure.get();
+        }
+    }
+
+    /**
+     * Replace the archived values by the parameters of this replay
+     * @param path Archived propagation path
+     */
+    void applyParameters(PropagationPath path) {
+        if(groundFactor != null) {
+            for(SegmentPath segmentPath : path.getSegmentList()) {
+                segmentPath.gPath = groundFactor;
+            }
+            for(SegmentPath segmentPath : path.getSRList()) {
+                segmentPath.gPath = groundFactor;
+            }
+        }
+        if(wallAlpha != null) {
+            for(PointPath pointPath : path.getPointList()) {
+                if(pointPath.type == PointPath.POINT_TYPE.REFL) {
+                    pointPath.setAlphaWall(wallAlpha);
+                }
+            }
+        }
+    }
+
+    private final class ReplayJob implements Runnable {
+        private final ConcurrentLinkedDeque<Integer> receiversToCompute;
+        private final IComputeRaysOut dataOut;
+        private final Map<Long, Integer> sourceIndex;
+        private final int receiverOffset;
+        private final AtomicReference<RuntimeException> failure;
+
+        ReplayJob(ConcurrentLinkedDeque<Integer> receiversToCompute, IComputeRaysOut dataOut,
+                  Map<Long, Integer> sourceIndex, int receiverOffset, AtomicReference<RuntimeException> failure) {
+            this.receiversToCompute = receiversToCompute;
+            this.dataOut = dataOut;
+            this.sourceIndex = sourceIndex;
+            this.receiverOffset = receiverOffset;
+            this.failure = failure;
+        }
+
+        @Override
+        public void run() {
+            try {
+                Integer receiver;
+                while (failure.get() == null && (receiver = receiversToCompute.poll()) != null) {
+                    if (progressVisitor != null && progressVisitor.isCanceled()) {
+                        break;
+                    }
+                    RayArchiveReader.ReceiverRays receiverRays = reader.readReceiver(receiver);
+                    long receiverId = receiverOffset + receiver;
+                    for (RayArchiveReader.SourceRays sourceRays : receiverRays.sources) {
+                        Integer sourceId = sourceIndex.get(sourceRays.sourceId);
+                        if (sourceId == null) {
+                            continue;
+                        }
+                        for (PropagationPath path : sourceRays.paths) {
+                            applyParameters(path);
+                        }
+                        dataOut.addPropagationPaths(sourceId, sourceRays.sourceLi, receiverId, sourceRays.paths);
+                    }
+                    dataOut.finalizeReceiver(receiverId);
+                    if (progressVisitor != null) {
+                        progressVisitor.endStep();
+                    }
+                }
+            } catch (IOException ex) {
+                failure.compareAndSet(null, new UncheckedIOException(ex));
+            } catch (RuntimeException ex) {
+                failure.compareAndSet(null, ex);
+            }
+        }
+    }
+}
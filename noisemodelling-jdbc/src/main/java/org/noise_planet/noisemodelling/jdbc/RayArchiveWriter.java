@@ -0,0 +1,128 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Write the propagation paths in a file readable by {@link RayArchiveReader}.
+ * The paths of a receiver are written in one compressed block, the blocks are indexed at the end of the file.
+ * This class is thread safe.
+ */
+public class RayArchiveWriter implements Closeable {
+    private static final int WRITE_CACHE = 65536;
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private byte[] compressBuffer = new byte[WRITE_CACHE];
+    private long position;
+    private long[] receiverIds = new long[1024];
+    private Coordinate[] receiverPositions = new Coordinate[1024];
+    private long[] blockOffsets = new long[1024];
+    private int[] blockLengths = new int[1024];
+    private int[] rawLengths = new int[1024];
+    private int receiverCount = 0;
+    private boolean closed = false;
+
+    /**
+     * @param file Output file, replaced if exists
+     * @throws IOException
+     */
+    public RayArchiveWriter(File file) throws IOException {
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), WRITE_CACHE));
+        out.writeInt(RayArchiveReader.MAGIC);
+        out.writeInt(RayArchiveReader.VERSION);
+        position = 2 * Integer.BYTES;
+    }
+
+    /**
+     * @return Number of written receivers
+     */
+    public synchronized int getReceiverCount() {
+        return receiverCount;
+    }
+
+    /**
+     * Compress and write the paths block of a receiver
+     * @param receiverId Receiver identifier
+     * @param receiverPosition Receiver position
+     * @param block Content of the block, see {@link RayArchiveComputeRaysOut}
+     * @param length Number of bytes of the block
+     * @throws IOException
+     */
+    public synchronized void writeReceiver(long receiverId, Coordinate receiverPosition, byte[] block, int length)
+            throws IOException {
+        if(closed) {
+            throw new IOException("Ray archive writer is closed");
+        }
+        deflater.reset();
+        deflater.setInput(block, 0, length);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if(compressedLength == compressBuffer.length) {
+                compressBuffer = Arrays.copyOf(compressBuffer, compressBuffer.length * 2);
+            }
+            compressedLength += deflater.deflate(compressBuffer, compressedLength,
+                    compressBuffer.length - compressedLength);
+        }
+        if(receiverCount == receiverIds.length) {
+            receiverIds = Arrays.copyOf(receiverIds, receiverCount * 2);
+            receiverPositions = Arrays.copyOf(receiverPositions, receiverCount * 2);
+            blockOffsets = Arrays.copyOf(blockOffsets, receiverCount * 2);
+            blockLengths = Arrays.copyOf(blockLengths, receiverCount * 2);
+            rawLengths = Arrays.copyOf(rawLengths, receiverCount * 2);
+        }
+        receiverIds[receiverCount] = receiverId;
+        receiverPositions[receiverCount] = receiverPosition;
+        blockOffsets[receiverCount] = position;
+        blockLengths[receiverCount] = compressedLength;
+        rawLengths[receiverCount] = length;
+        receiverCount++;
+        out.write(compressBuffer, 0, compressedLength);
+        position += compressedLength;
+    }
+
+    /**
+     * Write the blocks index and close the file
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        deflater.end();
+        long footerOffset = position;
+        out.writeInt(receiverCount);
+        for(int i = 0; i < receiverCount; i++) {
+            out.writeLong(receiverIds[i]);
+            PropagationPath.writeCoordinate(out, receiverPositions[i]);
+            out.writeLong(blockOffsets[i]);
+            out.writeInt(blockLengths[i]);
+            out.writeInt(rawLengths[i]);
+        }
+        out.writeLong(footerOffset);
+        out.writeInt(RayArchiveReader.MAGIC);
+        out.close();
+    }
+}
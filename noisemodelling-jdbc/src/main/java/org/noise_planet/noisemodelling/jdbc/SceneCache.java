@@ -0,0 +1,242 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.MeshBuilder;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keep buildings and DEM points in memory, in order to not query them again for each neighbouring cell.
+ * The layers are loaded by square tiles. Each building is attached to the tile that contains the center of its
+ * envelope and each DEM point to the tile that contains it, so nothing is duplicated between tiles.
+ * Least recently used tiles are evicted when the total number of cached vertices exceed the provided limit.
+ * Sound sources are not cached as their attributes are read from the result set by
+ * {@link org.noise_planet.noisemodelling.pathfinder.PropagationProcessData#addSource}.
+ */
+public class SceneCache {
+    public static final long DEFAULT_MAXIMUM_VERTICES = 10_000_000;
+    private final double tileSize;
+    private final long maximumVertices;
+    private final LinkedHashMap<TileIndex, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedVertices = 0;
+    // Greatest half width or half height of loaded buildings envelope
+    private double maxBuildingHalfExtent = 0;
+    private long tileLoadCount = 0;
+    private long tileHitCount = 0;
+
+    /**
+     * @param tileSize Side length of the cached tiles, a multiple of the computation cell size is a good choice
+     * @param maximumVertices Evict tiles when the cache contains more vertices than this value
+     */
+    public SceneCache(double tileSize, long maximumVertices) {
+        if(!(tileSize > 0)) {
+            throw new IllegalArgumentException("Tile size must be greater than 0");
+        }
+        this.tileSize = tileSize;
+        this.maximumVertices = maximumVertices;
+    }
+
+    /**
+     * @param tileSize Side length of the cached tiles
+     */
+    public SceneCache(double tileSize) {
+        this(tileSize, DEFAULT_MAXIMUM_VERTICES);
+    }
+
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return Number of vertices (buildings and DEM) currently cached
+     */
+    public synchronized long getCachedVertices() {
+        return cachedVertices;
+    }
+
+    /**
+     * @return Number of tiles fetched from the database
+     */
+    public synchronized long getTileLoadCount() {
+        return tileLoadCount;
+    }
+
+    /**
+     * @return Number of tiles served from memory
+     */
+    public synchronized long getTileHitCount() {
+        return tileHitCount;
+    }
+
+    /**
+     * Remove all cached tiles
+     */
+    public synchronized void clear() {
+        tiles.clear();
+        cachedVertices = 0;
+        maxBuildingHalfExtent = 0;
+    }
+
+    /**
+     * Fetch buildings without clipping
+     * @param connection Active connection
+     * @param noiseMap Source of the buildings table and fetch parameters
+     * @param fetchEnvelope Fetch envelope
+     * @param buildings (Out) Buildings with an envelope intersecting the fetch envelope. Instances are shared.
+     * @throws SQLException
+     */
+    public synchronized void fetchBuildings(Connection connection, JdbcNoiseMap noiseMap, Envelope fetchEnvelope,
+                                            List<MeshBuilder.PolygonWithHeight> buildings) throws SQLException {
+        // A building may be attached to a tile outside of the fetch envelope. Loading new tiles may reveal larger
+        // buildings so repeat until the searched tiles do not change.
+        List<Tile> envelopeTiles;
+        double searchedExtent;
+        do {
+            searchedExtent = maxBuildingHalfExtent;
+            Envelope searchEnvelope = new Envelope(fetchEnvelope);
+            searchEnvelope.expandBy(searchedExtent);
+            envelopeTiles = getTiles(connection, noiseMap, searchEnvelope);
+        } while (searchedExtent < maxBuildingHalfExtent);
+        for(Tile tile : envelopeTiles) {
+            for(MeshBuilder.PolygonWithHeight building : tile.buildings) {
+                if(building.getGeometry().getEnvelopeInternal().intersects(fetchEnvelope)) {
+                    buildings.add(building);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetch DEM points
+     * @param connection Active connection
+     * @param noiseMap Source of the DEM table
+     * @param fetchEnvelope Fetch envelope
+     * @param topoPoints (Out) DEM points located in the envelope. Instances are shared.
+     * @throws SQLException
+     */
+    public synchronized void fetchDemPoints(Connection connection, JdbcNoiseMap noiseMap, Envelope fetchEnvelope,
+                                            List<Coordinate> topoPoints) throws SQLException {
+        for(Tile tile : getTiles(connection, noiseMap, fetchEnvelope)) {
+            for(Coordinate topoPoint : tile.demPoints) {
+                if(fetchEnvelope.intersects(topoPoint)) {
+                    topoPoints.add(topoPoint);
+                }
+            }
+        }
+    }
+
+    private int toTileIndex(double ordinate) {
+        return (int) Math.floor(ordinate / tileSize);
+    }
+
+    private List<Tile> getTiles(Connection connection, JdbcNoiseMap noiseMap, Envelope envelope) throws SQLException {
+        List<Tile> envelopeTiles = new ArrayList<>();
+        int minI = toTileIndex(envelope.getMinX());
+        int maxI = toTileIndex(envelope.getMaxX());
+        int minJ = toTileIndex(envelope.getMinY());
+        int maxJ = toTileIndex(envelope.getMaxY());
+        for(int i = minI; i <= maxI; i++) {
+            for(int j = minJ; j <= maxJ; j++) {
+                TileIndex tileIndex = new TileIndex(i, j);
+                Tile tile = tiles.get(tileIndex);
+                if(tile == null) {
+                    tile = loadTile(connection, noiseMap, tileIndex);
+                    tiles.put(tileIndex, tile);
+                    cachedVertices += tile.vertexCount;
+                    evict(tileIndex);
+                } else {
+                    tileHitCount++;
+                }
+                envelopeTiles.add(tile);
+            }
+        }
+        return envelopeTiles;
+    }
+
+    private void evict(TileIndex keep) {
+        Iterator<Map.Entry<TileIndex, Tile>> it = tiles.entrySet().iterator();
+        while (cachedVertices > maximumVertices && it.hasNext()) {
+            Map.Entry<TileIndex, Tile> entry = it.next();
+            if(!entry.getKey().equals(keep)) {
+                cachedVertices -= entry.getValue().vertexCount;
+                it.remove();
+            }
+        }
+    }
+
+    private Tile loadTile(Connection connection, JdbcNoiseMap noiseMap, TileIndex tileIndex) throws SQLException {
+        tileLoadCount++;
+        Tile tile = new Tile();
+        Envelope tileEnvelope = new Envelope(tileIndex.i * tileSize, (tileIndex.i + 1) * tileSize,
+                tileIndex.j * tileSize, (tileIndex.j + 1) * tileSize);
+        List<MeshBuilder.PolygonWithHeight> buildings = new ArrayList<>();
+        noiseMap.fetchBuildings(connection, tileEnvelope, buildings);
+        for(MeshBuilder.PolygonWithHeight building : buildings) {
+            Envelope buildingEnvelope = building.getGeometry().getEnvelopeInternal();
+            maxBuildingHalfExtent = Math.max(maxBuildingHalfExtent,
+                    Math.max(buildingEnvelope.getWidth(), buildingEnvelope.getHeight()) / 2);
+            Coordinate center = buildingEnvelope.centre();
+            if(toTileIndex(center.x) == tileIndex.i && toTileIndex(center.y) == tileIndex.j) {
+                tile.buildings.add(building);
+                tile.vertexCount += building.getGeometry().getNumPoints();
+            }
+        }
+        List<Coordinate> demPoints = new ArrayList<>();
+        noiseMap.fetchDemPoints(connection, tileEnvelope, demPoints);
+        for(Coordinate demPoint : demPoints) {
+            if(toTileIndex(demPoint.x) == tileIndex.i && toTileIndex(demPoint.y) == tileIndex.j) {
+                tile.demPoints.add(demPoint);
+            }
+        }
+        tile.vertexCount += tile.demPoints.size();
+        return tile;
+    }
+
+    private static final class Tile {
+        final List<MeshBuilder.PolygonWithHeight> buildings = new ArrayList<>();
+        final List<Coordinate> demPoints = new ArrayList<>();
+        long vertexCount = 0;
+    }
+
+    private static final class TileIndex {
+        final int i;
+        final int j;
+
+        TileIndex(int i, int j) {
+            this.i = i;
+            this.j = j;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TileIndex tileIndex = (TileIndex) o;
+            return i == tileIndex.i && j == tileIndex.j;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(i, j);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.MultiPolygon;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.geom.TopologyException;
+import org.locationtech.jts.geom.prep.PreparedGeometry;
+import org.locationtech.jts.geom.prep.PreparedGeometryFactory;
+import org.noise_planet.noisemodelling.pathfinder.GeoWithSoilType;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Soil areas split once by square tiles of {@link JdbcNoiseMap#getGroundSurfaceSplitSideLength()} side, so the cells
+ * only collect the pre-clipped pieces instead of intersecting each soil polygon again.
+ * The tiles are aligned on the same grid than {@link JdbcNoiseMap#fetchCellSoilAreas}.
+ */
+public class SoilTileStore {
+    private final Map<Long, List<GeoWithSoilType>> tiles = new HashMap<>();
+    private double tileSize = 0;
+    private int pieceCount = 0;
+    private boolean built = false;
+
+    /**
+     * @return True if the soil table has been tiled
+     */
+    public synchronized boolean isBuilt() {
+        return built;
+    }
+
+    /**
+     * @return Side length of the tiles
+     */
+    public synchronized double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * @return Number of soil pieces stored in the tiles
+     */
+    public synchronized int getPieceCount() {
+        return pieceCount;
+    }
+
+    /**
+     * Read the soil areas of the noise map and split them in parallel. Previous tiles are replaced.
+     * @param connection Active connection
+     * @param noiseMap Source of the soil table and tile size
+     * @param envelope Tile the soil areas that intersects this envelope
+     * @throws SQLException
+     */
+    public synchronized void build(Connection connection, JdbcNoiseMap noiseMap, Envelope envelope)
+            throws SQLException {
+        tiles.clear();
+        pieceCount = 0;
+        tileSize = noiseMap.getGroundSurfaceSplitSideLength();
+        List<GeoWithSoilType> soilAreas = new ArrayList<>();
+        noiseMap.fetchSoilAreas(connection, envelope, soilAreas);
+        final GeometryFactory factory = noiseMap.geometryFactory;
+        // Keep the table order in each tile in order to have the same result on each run
+        List<Map<Long, GeoWithSoilType>> pieces = soilAreas.parallelStream()
+                .map(soilArea -> splitSoilArea(soilArea, envelope, factory))
+                .collect(Collectors.toList());
+        for(Map<Long, GeoWithSoilType> soilAreaPieces : pieces) {
+            for(Map.Entry<Long, GeoWithSoilType> entry : soilAreaPieces.entrySet()) {
+                tiles.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(entry.getValue());
+                pieceCount++;
+            }
+        }
+        built = true;
+    }
+
+    private Map<Long, GeoWithSoilType> splitSoilArea(GeoWithSoilType soilArea, Envelope envelope,
+                                                    GeometryFactory factory) {
+        Map<Long, GeoWithSoilType> pieces = new HashMap<>();
+        Geometry poly = soilArea.getGeo();
+        Envelope geoEnv = new Envelope(poly.getEnvelopeInternal());
+        geoEnv = geoEnv.intersection(envelope);
+        if(geoEnv.isNull()) {
+            return pieces;
+        }
+        int minI = toTileIndex(geoEnv.getMinX());
+        int maxI = toTileIndex(geoEnv.getMaxX());
+        int minJ = toTileIndex(geoEnv.getMinY());
+        int maxJ = toTileIndex(geoEnv.getMaxY());
+        PreparedGeometry preparedPoly = minI == maxI && minJ == maxJ ? null :
+                PreparedGeometryFactory.prepare(poly);
+        for(int i = minI; i <= maxI; i++) {
+            for(int j = minJ; j <= maxJ; j++) {
+                Envelope tileEnv = new Envelope(i * tileSize, (i + 1) * tileSize, j * tileSize, (j + 1) * tileSize);
+                if(tileEnv.getMinX() >= geoEnv.getMaxX() || tileEnv.getMinY() >= geoEnv.getMaxY()) {
+                    continue;
+                }
+                Geometry tileGeom = factory.toGeometry(tileEnv);
+                Geometry piece;
+                if(preparedPoly != null && preparedPoly.contains(tileGeom)) {
+                    piece = tileGeom;
+                } else if(preparedPoly != null && !preparedPoly.intersects(tileGeom)) {
+                    continue;
+                } else {
+                    try {
+                        piece = poly.intersection(tileGeom);
+                    } catch (TopologyException | IllegalArgumentException ex) {
+                        // Ignore
+                        continue;
+                    }
+                }
+                if (!piece.isEmpty() && (piece instanceof Polygon || piece instanceof MultiPolygon)) {
+                    // Compute the envelope now as the pieces are read by concurrent cells
+                    piece.getEnvelopeInternal();
+                    pieces.put(getTileKey(i, j), new GeoWithSoilType(piece, soilArea.getType()));
+                }
+            }
+        }
+        return pieces;
+    }
+
+    private int toTileIndex(double ordinate) {
+        return (int) Math.floor(ordinate / tileSize);
+    }
+
+    private static long getTileKey(int i, int j) {
+        return ((long) i << 32) | (j & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Fetch the soil pieces of the tiles intersecting the envelope
+     * @param fetchEnvelope Fetch envelope
+     * @param geoWithSoil (Out) Soil pieces intersecting the fetch envelope. Instances are shared.
+     */
+    public synchronized void fetchSoilAreas(Envelope fetchEnvelope, List<GeoWithSoilType> geoWithSoil) {
+        if(!built) {
+            throw new IllegalStateException("Soil tiles must be built before fetching soil areas");
+        }
+        int minI = toTileIndex(fetchEnvelope.getMinX());
+        int maxI = toTileIndex(fetchEnvelope.getMaxX());
+        int minJ = toTileIndex(fetchEnvelope.getMinY());
+        int maxJ = toTileIndex(fetchEnvelope.getMaxY());
+        if((long)(maxI - minI + 1) * (maxJ - minJ + 1) > tiles.size()) {
+            // Less stored tiles than searched tiles
+            List<Long> keys = new ArrayList<>();
+            for(long key : tiles.keySet()) {
+                int i = (int) (key >> 32);
+                int j = (int) key;
+                if(i >= minI && i <= maxI && j >= minJ && j <= maxJ) {
+                    keys.add(key);
+                }
+            }
+            Collections.sort(keys);
+            for(long key : keys) {
+                addTilePieces(tiles.get(key), fetchEnvelope, geoWithSoil);
+            }
+        } else {
+            for (int i = minI; i <= maxI; i++) {
+                for (int j = minJ; j <= maxJ; j++) {
+                    addTilePieces(tiles.get(getTileKey(i, j)), fetchEnvelope, geoWithSoil);
+                }
+            }
+        }
+    }
+
+    private static void addTilePieces(List<GeoWithSoilType> tile, Envelope fetchEnvelope,
+                                      List<GeoWithSoilType> geoWithSoil) {
+        if(tile != null) {
+            for(GeoWithSoilType piece : tile) {
+                if(piece.getGeo().getEnvelopeInternal().intersects(fetchEnvelope)) {
+                    geoWithSoil.add(piece);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class AttenuationMatrixStoreTest {
+
+    private static PropagationProcessData createScene() throws LayerDelaunayError {
+        PropagationProcessData rayData = Utils.createBarrierScene();
+        rayData.addReceiver(new Coordinate(150, -40, 4));
+        rayData.addSource(new GeometryFactory().createPoint(new Coordinate(40, 80, 1)));
+        return rayData;
+    }
+
+    @Test
+    public void testWriteAndReplay() throws LayerDelaunayError, IOException {
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        ComputeRaysOutAttenuation propDataOut = new ComputeRaysOutAttenuation(false, attData);
+        ComputeRays computeRays = new ComputeRays(createScene());
+        computeRays.setThreadCount(1);
+        computeRays.run(propDataOut);
+        List<ComputeRaysOutAttenuation.VerticeSL> expected = propDataOut.getVerticesSoundLevel();
+        assertEquals(4, expected.size());
+
+        File matrixFile = File.createTempFile("attenuation", ".bin");
+        try {
+            try (AttenuationMatrixWriter writer = new AttenuationMatrixWriter(matrixFile, attData.freq_lvl)) {
+                computeRays = new ComputeRays(createScene());
+                computeRays.setThreadCount(1);
+                computeRays.run(new AttenuationMatrixComputeRaysOut(attData, null, writer));
+                assertEquals(2, writer.getReceiverCount());
+                assertEquals(4, writer.getPairCount());
+            }
+            try (AttenuationMatrixStore store = new AttenuationMatrixStore(matrixFile)) {
+                assertEquals(2, store.getReceiverCount());
+                assertArrayEquals(attData.freq_lvl.stream().mapToInt(Integer::intValue).toArray(),
+                        store.getFrequencies());
+                // Stored attenuation
+                for (ComputeRaysOutAttenuation.VerticeSL level : expected) {
+                    int receiverIndex = store.getReceiverIndex(level.receiverId);
+                    double[] got = null;
+                    for (ComputeRaysOutAttenuation.VerticeSL stored : store.getReceiverAttenuation(receiverIndex)) {
+                        if (stored.sourceId == level.sourceId) {
+                            got = stored.value;
+                        }
+                    }
+                    assertNotNull(got);
+                    assertArrayEquals(level.value, got, 1e-4);
+                }
+                // Two emission periods, the second one without the first source
+                double[] emission = new double[attData.freq_lvl.size()];
+                Arrays.fill(emission, 90);
+                double[] lowEmission = new double[attData.freq_lvl.size()];
+                Arrays.fill(lowEmission, 80);
+                Map<Long, double[]> day = new HashMap<>();
+                day.put(0L, emission);
+                day.put(1L, lowEmission);
+                Map<Long, double[]> night = new HashMap<>();
+                night.put(1L, lowEmission);
+                List<Map<Long, double[]>> periods = new ArrayList<>();
+                periods.add(day);
+                periods.add(night);
+                Map<Long, double[][]> levels = new LinkedHashMap<>();
+                store.replay(periods, levels::put);
+                assertEquals(2, levels.size());
+                for (int period = 0; period < periods.size(); period++) {
+                    Map<Long, double[]> periodEmission = periods.get(period);
+                    for (long receiverId : levels.keySet()) {
+                        double[] power = new double[emission.length];
+                        for (ComputeRaysOutAttenuation.VerticeSL level : expected) {
+                            if (level.receiverId == receiverId && periodEmission.containsKey(level.sourceId)) {
+                                power = ComputeRays.sumArray(power, ComputeRays.dbaToW(
+                                        ComputeRays.sumArray(level.value, periodEmission.get(level.sourceId))));
+                            }
+                        }
+                        assertArrayEquals(ComputeRays.wToDba(power), levels.get(receiverId)[period], 1e-3);
+                    }
+                }
+            }
+        } finally {
+            matrixFile.delete();
+        }
+    }
+
+    @Test
+    public void testWrongFrequencyCount() throws IOException {
+        List<Integer> frequencies = Arrays.asList(500, 1000);
+        File matrixFile = File.createTempFile("attenuation", ".bin");
+        try {
+            try (AttenuationMatrixWriter writer = new AttenuationMatrixWriter(matrixFile, frequencies)) {
+                writer.writeReceiver(1, Collections.singletonList(
+                        new ComputeRaysOutAttenuation.VerticeSL(1, 5, new double[]{-20, -30})));
+                try {
+                    writer.writeReceiver(2, Arrays.asList(
+                            new ComputeRaysOutAttenuation.VerticeSL(2, 5, new double[]{-20, -30}),
+                            new ComputeRaysOutAttenuation.VerticeSL(2, 6, new double[]{-20, -30, -40})));
+                    fail("Wrong frequency count must be rejected");
+                } catch (IOException ex) {
+                    // expected
+                }
+                writer.writeReceiver(3, Collections.singletonList(
+                        new ComputeRaysOutAttenuation.VerticeSL(3, 6, new double[]{-25, -35})));
+                assertEquals(2, writer.getReceiverCount());
+                assertEquals(2, writer.getPairCount());
+            }
+            try (AttenuationMatrixStore store = new AttenuationMatrixStore(matrixFile)) {
+                assertEquals(2, store.getReceiverCount());
+                assertEquals(-1, store.getReceiverIndex(2));
+                List<ComputeRaysOutAttenuation.VerticeSL> levels =
+                        store.getReceiverAttenuation(store.getReceiverIndex(3));
+                assertEquals(1, levels.size());
+                assertEquals(6, levels.get(0).sourceId);
+                assertArrayEquals(new double[]{-25, -35}, levels.get(0).value, 1e-4);
+            }
+        } finally {
+            matrixFile.delete();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -2602,4 +2603,47 @@ public class EvaluateAttenuationCnossosTest {
 
         }
 
-}
\ No newline at end of file
+    /**
+     * The frequency tables built by initEvaluateAttenutation must give the same ground attenuation as the direct formula
+     */
+    @Test
+    public void testAGroundTablesEqualsDirectFormula() throws LayerDelaunayError {
+        PropagationProcessData rayData = Utils.createBarrierScene();
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        attData.setHumidity(70);
+        attData.setTemperature(10);
+        ComputeRaysOutAttenuation propDataOut = new ComputeRaysOutAttenuation(true, attData);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(1);
+        computeRays.run(propDataOut);
+
+        assertFalse(propDataOut.getPropagationPaths().isEmpty());
+        EvaluateAttenuationCnossos evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
+        evaluateAttenuationCnossos.initEvaluateAttenutation(attData);
+        int evaluatedSegments = 0;
+        for (PropagationPath path : propDataOut.getPropagationPaths()) {
+            path.initPropagationPath();
+            for (boolean favorable : new boolean[]{false, true}) {
+                path.setFavorable(favorable);
+                List<SegmentPath> segments = new ArrayList<>(path.getSegmentList());
+                segments.addAll(path.getSRList());
+                for (SegmentPath segmentPath : segments) {
+                    if (segmentPath.gPath == 0 || segmentPath.testForm == null) {
+                        continue;
+                    }
+                    // Table 2.5.b homogeneous conditions
+                    segmentPath.setGw(segmentPath.gPath);
+                    segmentPath.setGm(segmentPath.gPath);
+                    segmentPath.getZs(path, segmentPath);
+                    segmentPath.getZr(path, segmentPath);
+                    segmentPath.getZsPrime(path, segmentPath);
+                    segmentPath.getZrPrime(path, segmentPath);
+                    assertArrayEquals(EvaluateAttenuationCnossos.getAGroundCore(path, segmentPath, attData),
+                            evaluateAttenuationCnossos.getAGround(segmentPath, path, attData), 1e-12);
+                    evaluatedSegments++;
+                }
+            }
+        }
+        assertTrue(evaluatedSegments > 0);
+    }
+}
@@ -11,16 +11,21 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
 import org.noise_planet.noisemodelling.emission.RailWayLW;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.RootProgressVisitor;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -279,6 +284,587 @@ public class LDENPointNoiseMapFactoryTest {
     }
 
 
+    @Test
+    public void testTableGenerationFromTrafficPeriods() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(true);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true);
+        // Periods read from the same traffic columns than day and night
+        ldenConfig.setPeriods(Arrays.asList("D", "N"));
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        computeNoiseMap(createNoiseMap(factory), factory);
+
+        assertEquals("LD_RESULT", ldenConfig.getPeriodTable("D"));
+        assertTrue(JDBCUtilities.tableExists(connection, ldenConfig.getPeriodTable("D")));
+        assertTrue(JDBCUtilities.tableExists(connection, ldenConfig.getPeriodTable("N")));
+        String[][] comparedTables = new String[][] {{ldenConfig.lDayTable, ldenConfig.getPeriodTable("D")},
+                {ldenConfig.lNightTable, ldenConfig.getPeriodTable("N")}};
+        for(String[] tables : comparedTables) {
+            try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), " +
+                    "MAX(ABS(A.LAEQ - B.LAEQ)), MAX(ABS(A.HZ1000 - B.HZ1000)) FROM " + tables[0] + " A, " + tables[1] +
+                    " B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+                assertTrue(rs.next());
+                assertEquals(830, rs.getInt(1));
+                assertEquals(0, rs.getDouble(2), 1e-6);
+                assertEquals(0, rs.getDouble(3), 1e-6);
+            }
+        }
+    }
+
+    /**
+     * The maximum error stop must be bounded by the loudest period, here an additional period louder than the day
+     */
+    @Test
+    public void testTableGenerationFromTrafficPeriodsMaximumError() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+        // H00 and H01 use the day traffic, some roads are almost empty during the day
+        try(Statement st = connection.createStatement()) {
+            for(String period : new String[] {"H00", "H01"}) {
+                for(String column : new String[] {"TV_", "HV_", "LV_SPD_", "HV_SPD_"}) {
+                    st.execute("ALTER TABLE ROADS_TRAFF ADD COLUMN " + column + period + " DOUBLE");
+                    st.execute("UPDATE ROADS_TRAFF SET " + column + period + " = " + column + "D");
+                }
+            }
+            st.execute("UPDATE ROADS_TRAFF SET TV_D = 1, HV_D = 0 WHERE MOD(PK2, 3) = 0");
+        }
+
+        // H00 with the maximum error, H01 without
+        double maximumError = 0.5;
+        for(String period : new String[] {"H00", "H01"}) {
+            LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+            ldenConfig.setComputeLDay(true);
+            ldenConfig.setComputeLEvening(false);
+            ldenConfig.setComputeLNight(false);
+            ldenConfig.setComputeLDEN(false);
+            ldenConfig.setMergeSources(true);
+            ldenConfig.setlDayTable("LDAY_" + period);
+            ldenConfig.setPeriods(Collections.singletonList(period));
+            LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+            PointNoiseMap pointNoiseMap = createNoiseMap(factory);
+            if(period.equals("H00")) {
+                pointNoiseMap.setMaximumError(maximumError);
+                LDENPropagationProcessData data = new LDENPropagationProcessData(null, ldenConfig);
+                data.wjSourcesD.add(new double[] {1, 4});
+                data.wjSourcesPeriods.get(0).add(new double[] {2, 3});
+                assertArrayEquals(new double[] {2, 4}, data.getMaximalSourcePower(0), 0);
+            }
+            computeNoiseMap(pointNoiseMap, factory);
+        }
+
+        // The stop criterion is evaluated on the unweighted level, the A-weighted level of a receiver may move a bit
+        // more. Sources bounded by the quiet day power only would be skipped with an error of tens of dB.
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(A.LAEQ - B.LAEQ)), " +
+                "AVG(ABS(A.LAEQ - B.LAEQ)) FROM LH00_RESULT A, LH01_RESULT B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+            assertEquals(0, rs.getDouble(2), 4 * maximumError);
+            assertEquals(0, rs.getDouble(3), maximumError / 5);
+        }
+    }
+
+    @Test
+    public void testPeriodTableCollision() {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        for(String period : new String[] {"DEN", "day", "NIGHT", "EVENING"}) {
+            try {
+                ldenConfig.setPeriods(Collections.singletonList(period));
+                fail("The period " + period + " must be rejected");
+            } catch (IllegalArgumentException ex) {
+                // expected
+            }
+        }
+        try {
+            ldenConfig.setPeriods(Arrays.asList("H00", "H00"));
+            fail("Duplicate periods must be rejected");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        assertTrue(ldenConfig.getPeriods().isEmpty());
+        ldenConfig.setPeriods(Arrays.asList("D", "H00"));
+        ldenConfig.checkPeriodTables();
+        // Result table renamed after the periods
+        ldenConfig.setlDayTable("LH00_RESULT");
+        try {
+            ldenConfig.checkPeriodTables();
+            fail("The day table is the table of the period H00");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    private PointNoiseMap computeDayNoiseMap(LDENConfig ldenConfig) throws SQLException, IOException {
+        return computeDayNoiseMap(ldenConfig, false);
+    }
+
+    private PointNoiseMap computeDayNoiseMap(LDENConfig ldenConfig, boolean lateralDiffraction) throws SQLException,
+            IOException {
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = createNoiseMap(factory);
+        pointNoiseMap.setComputeHorizontalDiffraction(lateralDiffraction);
+        computeNoiseMap(pointNoiseMap, factory);
+        return pointNoiseMap;
+    }
+
+    /**
+     * @return Noise map of the roads_traff scene, without diffraction nor reflection
+     */
+    private static PointNoiseMap createNoiseMap(LDENPointNoiseMapFactory factory) {
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF",
+                "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        return pointNoiseMap;
+    }
+
+    /**
+     * Compute the cells of a 4x4 grid one after the other
+     */
+    private void computeNoiseMap(PointNoiseMap pointNoiseMap, LDENPointNoiseMapFactory factory) throws SQLException,
+            IOException {
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(),
+                        new EmptyProgressVisitor(), receivers);
+            }
+        } finally {
+            factory.stop();
+        }
+        connection.commit();
+    }
+
+    private void checkIncrementalUpdate(boolean mergeSources) throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setMergeSources(mergeSources);
+        PointNoiseMap pointNoiseMap = computeDayNoiseMap(ldenConfig);
+
+        // Change the traffic of the road closest to a receiver
+        long changedRoad;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT R.PK2 FROM ROADS_TRAFF R, " +
+                "(SELECT THE_GEOM FROM RECEIVERS LIMIT 1) C ORDER BY ST_DISTANCE(R.THE_GEOM, C.THE_GEOM) LIMIT 1")) {
+            assertTrue(rs.next());
+            changedRoad = rs.getLong(1);
+        }
+        connection.createStatement().execute("UPDATE ROADS_TRAFF SET TV_D = TV_D * 5 + 1000 WHERE PK2 = " + changedRoad);
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        PointNoiseMapUpdate update = new PointNoiseMapUpdate(pointNoiseMap, factory);
+        update.addChangedSources(connection, Collections.singletonList(changedRoad));
+        assertEquals(!mergeSources, update.isSourcesOnly());
+        Set<Long> impactedReceivers = update.run(connection, new EmptyProgressVisitor());
+        connection.commit();
+        assertFalse(impactedReceivers.isEmpty());
+        assertTrue(impactedReceivers.size() < 830);
+
+        LDENConfig referenceConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        referenceConfig.setMergeSources(mergeSources);
+        referenceConfig.setlDayTable("LDAY_REFERENCE");
+        computeDayNoiseMap(referenceConfig);
+
+        String join = mergeSources ? "A.IDRECEIVER = B.IDRECEIVER" :
+                "A.IDRECEIVER = B.IDRECEIVER AND A.IDSOURCE = B.IDSOURCE";
+        int rowCount;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM LDAY_REFERENCE")) {
+            assertTrue(rs.next());
+            rowCount = rs.getInt(1);
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM " + ldenConfig.lDayTable)) {
+            assertTrue(rs.next());
+            assertEquals(rowCount, rs.getInt(1));
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(A.LAEQ - B.LAEQ)), " +
+                "MAX(ABS(A.HZ1000 - B.HZ1000)) FROM " + ldenConfig.lDayTable + " A, LDAY_REFERENCE B WHERE " + join)) {
+            assertTrue(rs.next());
+            assertEquals(rowCount, rs.getInt(1));
+            assertEquals(0, rs.getDouble(2), 0.011);
+            assertEquals(0, rs.getDouble(3), 0.011);
+        }
+    }
+
+    @Test
+    public void testIncrementalUpdateMergedSources() throws SQLException, IOException {
+        checkIncrementalUpdate(true);
+    }
+
+    @Test
+    public void testIncrementalUpdateSources() throws SQLException, IOException {
+        checkIncrementalUpdate(false);
+    }
+
+    @Test
+    public void testIncrementalUpdateBarrier() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setMergeSources(true);
+        PointNoiseMap pointNoiseMap = computeDayNoiseMap(ldenConfig, true);
+
+        // Add a barrier between a receiver and its closest road
+        Geometry barrier;
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT ST_EXPAND(ST_CENTROID(ST_MAKELINE(" +
+                "ST_CLOSESTPOINT(R.THE_GEOM, C.THE_GEOM), C.THE_GEOM)), 3) FROM ROADS_TRAFF R, " +
+                "(SELECT THE_GEOM FROM RECEIVERS LIMIT 1) C ORDER BY ST_DISTANCE(R.THE_GEOM, C.THE_GEOM) LIMIT 1")) {
+            assertTrue(rs.next());
+            Polygon polygon = (Polygon) rs.getObject(1);
+            barrier = polygon.getFactory().createMultiPolygon(new Polygon[]{polygon});
+            barrier.setSRID(2154);
+        }
+        try(PreparedStatement st = connection.prepareStatement("INSERT INTO BUILDINGS(THE_GEOM) VALUES (?)")) {
+            st.setObject(1, barrier);
+            st.execute();
+        }
+
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        PointNoiseMapUpdate update = new PointNoiseMapUpdate(pointNoiseMap, factory);
+        update.addChangedBuilding(barrier);
+        assertFalse(update.isSourcesOnly());
+        Set<Long> impactedReceivers = update.run(connection, new EmptyProgressVisitor());
+        connection.commit();
+        assertFalse(impactedReceivers.isEmpty());
+        assertTrue(impactedReceivers.size() < 830);
+
+        LDENConfig referenceConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        referenceConfig.setMergeSources(true);
+        referenceConfig.setlDayTable("LDAY_REFERENCE");
+        computeDayNoiseMap(referenceConfig, true);
+
+        int rowCount = JDBCUtilities.getRowCount(connection, "LDAY_REFERENCE");
+        assertEquals(rowCount, JDBCUtilities.getRowCount(connection, ldenConfig.lDayTable));
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(A.LAEQ - B.LAEQ)) " +
+                "FROM " + ldenConfig.lDayTable + " A, LDAY_REFERENCE B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(rowCount, rs.getInt(1));
+            assertEquals(0, rs.getDouble(2), 0.011);
+        }
+    }
+
+    @Test
+    public void testResumeInterruptedRun() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+        ldenConfig.setManifestTable("RUN_MANIFEST");
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = createNoiseMap(factory);
+
+        // First run is interrupted while computing a cell
+        int completedCellCount;
+        int cellCount;
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            cellCount = cells.size();
+            List<PointNoiseMap.CellIndex> sortedCells = new ArrayList<>(new TreeSet<>(cells.keySet()));
+            completedCellCount = cellCount / 2;
+            Set<Long> receivers = new HashSet<>();
+            for(PointNoiseMap.CellIndex cellIndex : sortedCells.subList(0, completedCellCount)) {
+                factory.onCellComputed(cellIndex, pointNoiseMap.evaluateCell(connection,
+                        cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(),
+                        receivers));
+            }
+            // Results written without the cell in the manifest
+            PointNoiseMap.CellIndex interruptedCell = sortedCells.get(completedCellCount);
+            pointNoiseMap.evaluateCell(connection, interruptedCell.getLatitudeIndex(),
+                    interruptedCell.getLongitudeIndex(), new EmptyProgressVisitor(), receivers);
+        } finally {
+            factory.stop();
+        }
+        connection.commit();
+
+        // Resume
+        factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        LDENPointNoiseMapFactory.RunManifest manifest = factory.resume(connection, pointNoiseMap);
+        assertEquals(completedCellCount, manifest.getCompletedCells().size());
+        assertFalse(manifest.getCompletedReceivers().isEmpty());
+        PointNoiseMapExecutor executor = new PointNoiseMapExecutor(pointNoiseMap);
+        executor.setParallelism(2);
+        executor.setCompletedCells(manifest.getCompletedCells(), manifest.getCompletedReceivers());
+        executor.setCellListener(factory);
+        Set<Long> computedReceivers;
+        try {
+            factory.start();
+            computedReceivers = executor.run(connection, new RootProgressVisitor(1, false, 1));
+        } finally {
+            factory.stop();
+        }
+        connection.commit();
+        assertEquals(cellCount, JDBCUtilities.getRowCount(connection, "RUN_MANIFEST"));
+        assertEquals(computedReceivers.size(), JDBCUtilities.getRowCount(connection, "RUN_MANIFEST_RECEIVERS"));
+
+        LDENConfig referenceConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        referenceConfig.setMergeSources(false);
+        referenceConfig.setlDayTable("LDAY_REFERENCE");
+        computeDayNoiseMap(referenceConfig);
+
+        int rowCount = JDBCUtilities.getRowCount(connection, "LDAY_REFERENCE");
+        assertEquals(rowCount, JDBCUtilities.getRowCount(connection, ldenConfig.lDayTable));
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), MAX(ABS(A.LAEQ - B.LAEQ)) " +
+                "FROM " + ldenConfig.lDayTable + " A, LDAY_REFERENCE B WHERE A.IDRECEIVER = B.IDRECEIVER AND " +
+                "A.IDSOURCE = B.IDSOURCE")) {
+            assertTrue(rs.next());
+            assertEquals(rowCount, rs.getInt(1));
+            assertEquals(0, rs.getDouble(2), 0.011);
+        }
+
+        // The manifest can not be resumed with another grid
+        pointNoiseMap.setGridDim(8);
+        try {
+            new LDENPointNoiseMapFactory(connection, ldenConfig).resume(connection, pointNoiseMap);
+            fail("The manifest grid must match the noise map grid");
+        } catch (SQLException ex) {
+            // expected
+        }
+        assertEquals(rowCount, JDBCUtilities.getRowCount(connection, ldenConfig.lDayTable));
+    }
+
+    @Test
+    public void testManifestWrittenDuringRun() throws SQLException, IOException, InterruptedException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(false);
+        ldenConfig.setManifestTable("RUN_MANIFEST");
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = createNoiseMap(factory);
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4);
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            PointNoiseMap.CellIndex cellIndex = new TreeSet<>(cells.keySet()).first();
+            Set<Long> receivers = new HashSet<>();
+            factory.onCellComputed(cellIndex, pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                    cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(), receivers));
+            // The results of the other cells keep coming, the completed cell must be checkpointed anyway
+            long receiverId = -1;
+            long deadline = System.currentTimeMillis() + 60000;
+            while (JDBCUtilities.getRowCount(connection, "RUN_MANIFEST") == 0 &&
+                    System.currentTimeMillis() < deadline) {
+                for(int i = 0; i < 100; i++) {
+                    double[] levels = new double[ldenConfig.propagationProcessPathData.freq_lvl.size()];
+                    factory.ldenData.lDayLevels.add(new ComputeRaysOutAttenuation.VerticeSL(receiverId--, 0, levels));
+                    factory.ldenData.queueSize.incrementAndGet();
+                }
+                Thread.sleep(5);
+            }
+            assertEquals(1, JDBCUtilities.getRowCount(connection, "RUN_MANIFEST"));
+            assertEquals(receivers.size(), JDBCUtilities.getRowCount(connection, "RUN_MANIFEST_RECEIVERS"));
+            try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(DISTINCT IDRECEIVER) FROM " +
+                    ldenConfig.lDayTable + " WHERE IDRECEIVER >= 0")) {
+                assertTrue(rs.next());
+                assertTrue(rs.getInt(1) > 0);
+            }
+        } finally {
+            factory.stop();
+        }
+    }
+
+    @Test
+    public void testTableGenerationFromRayArchive() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(true);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(false);
+        ldenConfig.setMergeSources(true);
+
+        File archiveFile = File.createTempFile("rays", ".bin");
+        try {
+            LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+            PointNoiseMap pointNoiseMap = createNoiseMap(factory);
+            pointNoiseMap.setSoundReflectionOrder(1);
+            try (RayArchiveWriter writer = new RayArchiveWriter(archiveFile)) {
+                pointNoiseMap.setComputeRaysOutFactory(new RayArchiveComputeRaysOut.Factory(factory, writer));
+                computeNoiseMap(pointNoiseMap, factory);
+            }
+
+            // Evaluate again the archived paths, with the same parameters then with a ground factor of 1
+            String[] replayTables = new String[]{"LDAY_REPLAY", "LDAY_REPLAY_G1"};
+            try (RayArchiveReader reader = new RayArchiveReader(archiveFile)) {
+                assertEquals(830, reader.getReceiverCount());
+                for (String replayTable : replayTables) {
+                    LDENConfig replayConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+                    replayConfig.setComputeLDay(true);
+                    replayConfig.setComputeLEvening(false);
+                    replayConfig.setComputeLNight(false);
+                    replayConfig.setComputeLDEN(false);
+                    replayConfig.setMergeSources(true);
+                    replayConfig.setlDayTable(replayTable);
+                    replayConfig.setPropagationProcessPathData(ldenConfig.propagationProcessPathData);
+                    RayArchiveReplay replay = new RayArchiveReplay(reader);
+                    replay.setThreadCount(2);
+                    if (replayTable.equals("LDAY_REPLAY_G1")) {
+                        replay.setGroundFactor(1.0);
+                    }
+                    LDENPointNoiseMapFactory replayFactory = new LDENPointNoiseMapFactory(connection, replayConfig);
+                    replayFactory.start();
+                    try {
+                        replay.replay(connection, "ROADS_TRAFF", replayFactory, ldenConfig.propagationProcessPathData);
+                    } finally {
+                        replayFactory.stop();
+                    }
+                }
+            }
+        } finally {
+            archiveFile.delete();
+        }
+        try (ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), " +
+                "MAX(ABS(A.LAEQ - B.LAEQ)), MAX(ABS(A.HZ1000 - B.HZ1000)) FROM " + ldenConfig.lDayTable +
+                " A, LDAY_REPLAY B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+            assertEquals(0, rs.getDouble(2), 1e-3);
+            assertEquals(0, rs.getDouble(3), 1e-3);
+        }
+        try (ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*), " +
+                "MAX(ABS(A.LAEQ - B.LAEQ)) FROM " + ldenConfig.lDayTable +
+                " A, LDAY_REPLAY_G1 B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+            assertTrue(rs.getDouble(2) > 0.1);
+        }
+    }
+
+    @Test
+    public void testTableGenerationFromTrafficCellExecutor() throws SQLException, IOException {
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        // Reference computation, cells are evaluated one by one
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(true);
+        ldenConfig.setMergeSources(true);
+        ldenConfig.setlDenTable("LDEN_REF");
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        Set<Long> receivers = new HashSet<>();
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4); // force grid size
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = new RootProgressVisitor(1, false, 1).subProcess(cells.size());
+            // Boundary receivers are attributed to the first computed cell, so use the same cells order
+            for(PointNoiseMap.CellIndex cellIndex : new PointNoiseMapExecutor(pointNoiseMap).sortCellsByCost(connection, cells)) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        }finally {
+            factory.stop();
+        }
+
+        // Same computation with concurrent cells
+        ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setComputeLDay(false);
+        ldenConfig.setComputeLEvening(false);
+        ldenConfig.setComputeLNight(false);
+        ldenConfig.setComputeLDEN(true);
+        ldenConfig.setMergeSources(true);
+        factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+        pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+        pointNoiseMap.setVerbose(false);
+        PointNoiseMapExecutor executor = new PointNoiseMapExecutor(pointNoiseMap);
+        executor.setParallelism(4);
+        executor.setConcurrentCells(3);
+        executor.setLookahead(2);
+        Set<PointNoiseMap.CellIndex> computedCells = Collections.synchronizedSet(new HashSet<>());
+        executor.setCellListener((cellIndex, computeRaysOut) -> computedCells.add(cellIndex));
+        Set<Long> executorReceivers;
+        try {
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(4); // force grid size
+            executorReceivers = executor.run(connection, new RootProgressVisitor(1, false, 1));
+        }finally {
+            factory.stop();
+        }
+        connection.commit();
+
+        assertEquals(receivers, executorReceivers);
+        assertEquals(pointNoiseMap.searchPopulatedCells(connection).keySet(), computedCells);
+
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT FROM " + ldenConfig.lDenTable)) {
+            assertTrue(rs.next());
+            assertEquals(830, rs.getInt(1));
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT MAX(ABS(R.LEQ - L.LEQ)), " +
+                "MAX(ABS(R.LAEQ - L.LAEQ)), COUNT(*) FROM LDEN_REF R, " + ldenConfig.lDenTable + " L" +
+                " WHERE R.IDRECEIVER = L.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertEquals(0, rs.getDouble(1), 0.011);
+            assertEquals(0, rs.getDouble(2), 0.011);
+            assertEquals(830, rs.getInt(3));
+        }
+    }
+
     @Test
     public void testTableGenerationFromTrafficNightOnly() throws SQLException, IOException {
         SHPRead.readShape(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
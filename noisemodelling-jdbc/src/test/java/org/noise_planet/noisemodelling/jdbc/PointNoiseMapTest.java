@@ -3,6 +3,7 @@ package org.noise_planet.noisemodelling.jdbc;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.io.shp.SHPRead;
+import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.SFSUtilities;
 import org.junit.After;
 import org.junit.Before;
@@ -24,6 +25,7 @@ import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
@@ -105,6 +107,96 @@ public class PointNoiseMapTest {
         }
     }
 
+    @Test
+    public void testMultiMeteoTables() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom POINT, GID SERIAL)");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(-72 41 11)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(-9 41 1.6)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(70 11 7)')");
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(false);
+            pointNoiseMap.setComputeVerticalDiffraction(true);
+            pointNoiseMap.setSoundReflectionOrder(0);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(true);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setDemTable("DEM");
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+
+            List<PropagationProcessPathData> variants = new ArrayList<>();
+            for(double temperature : new double[] {10, 25}) {
+                PropagationProcessPathData attData = new PropagationProcessPathData();
+                attData.setTemperature(temperature);
+                variants.add(attData);
+            }
+            MultiMeteoTableWriter writer = new MultiMeteoTableWriter(connection, "METEO_LEVELS", variants);
+            writer.createTables();
+            pointNoiseMap.setComputeRaysOutFactory(writer);
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+            pointNoiseMap.setThreadCount(1);
+            // The cells are written by the cell listener
+            PointNoiseMapExecutor executor = new PointNoiseMapExecutor(pointNoiseMap);
+            executor.setCellListener(writer);
+            executor.run(connection, new EmptyProgressVisitor());
+            assertEquals(3, JDBCUtilities.getRowCount(connection, writer.getVariantTable(0)));
+            assertEquals(3, JDBCUtilities.getRowCount(connection, writer.getVariantTable(1)));
+            writer.stop();
+            assertEquals(3, JDBCUtilities.getRowCount(connection, writer.getVariantTable(0)));
+            assertEquals(3, JDBCUtilities.getRowCount(connection, writer.getVariantTable(1)));
+            try(ResultSet rs = st.executeQuery("SELECT MAX(ABS(A.HZ8000 - B.HZ8000)) FROM " +
+                    writer.getVariantTable(0) + " A, " + writer.getVariantTable(1) + " B WHERE " +
+                    "A.IDRECEIVER = B.IDRECEIVER AND A.IDSOURCE = B.IDSOURCE")) {
+                assertTrue(rs.next());
+                assertTrue(rs.getDouble(1) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testSceneCache() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom POINT, GID SERIAL)");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINT(-72 41 11)')");
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setDemTable("DEM");
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            SceneCache sceneCache = new SceneCache(35);
+            WKTWriter wktWriter = new WKTWriter(3);
+            Envelope[] envelopes = new Envelope[] {new Envelope(-20, 90, 10, 80),
+                    new Envelope(50, 160, -10, 100), new Envelope(-200, 400, -200, 400)};
+            for(Envelope envelope : envelopes) {
+                pointNoiseMap.setSceneCache(null);
+                List<MeshBuilder.PolygonWithHeight> expectedBuildings = new ArrayList<>();
+                pointNoiseMap.fetchCellBuildings(connection, envelope, expectedBuildings);
+                List<Coordinate> expectedDem = new ArrayList<>();
+                pointNoiseMap.fetchDemPoints(connection, envelope, expectedDem);
+                pointNoiseMap.setSceneCache(sceneCache);
+                List<MeshBuilder.PolygonWithHeight> buildings = new ArrayList<>();
+                pointNoiseMap.fetchCellBuildings(connection, envelope, buildings);
+                List<Coordinate> dem = new ArrayList<>();
+                sceneCache.fetchDemPoints(connection, pointNoiseMap, envelope, dem);
+                Set<String> expectedBuildingsWKT = new HashSet<>();
+                for(MeshBuilder.PolygonWithHeight building : expectedBuildings) {
+                    expectedBuildingsWKT.add(wktWriter.write(building.getGeometry()) + " " + building.getHeight());
+                }
+                Set<String> buildingsWKT = new HashSet<>();
+                for(MeshBuilder.PolygonWithHeight building : buildings) {
+                    buildingsWKT.add(wktWriter.write(building.getGeometry()) + " " + building.getHeight());
+                }
+                assertEquals(expectedBuildings.size(), buildings.size());
+                assertEquals(expectedBuildingsWKT, buildingsWKT);
+                assertEquals(expectedDem.size(), dem.size());
+                assertEquals(new HashSet<>(expectedDem), new HashSet<>(dem));
+            }
+            assertTrue(sceneCache.getTileHitCount() > 0);
+        }
+    }
+
     @Test
     public void testGroundSurface() throws Exception {
         try(Statement st = connection.createStatement()) {
@@ -143,6 +235,48 @@ public class PointNoiseMapTest {
         }
     }
 
+    @Test
+    public void testSoilTileStore() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setSoilTableName("LAND_G");
+            SoilTileStore soilTileStore = new SoilTileStore();
+            pointNoiseMap.setSoilTileStore(soilTileStore);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            assertTrue(soilTileStore.isBuilt());
+            assertTrue(soilTileStore.getPieceCount() > 0);
+            GeometryFactory factory = new GeometryFactory();
+            double expectedMaxArea = Math.pow(pointNoiseMap.getGroundSurfaceSplitSideLength(), 2);
+            for(int i=0; i < pointNoiseMap.getGridDim(); i++) {
+                for (int j = 0; j < pointNoiseMap.getGridDim(); j++) {
+                    Envelope envelope = JdbcNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(), i, j,
+                            pointNoiseMap.getCellWidth(), pointNoiseMap.getCellHeight());
+                    envelope.expandBy(pointNoiseMap.getMaximumPropagationDistance());
+                    Geometry envelopeGeom = factory.toGeometry(envelope);
+                    pointNoiseMap.setSoilTileStore(null);
+                    List<GeoWithSoilType> expectedSoil = new ArrayList<>();
+                    pointNoiseMap.fetchCellSoilAreas(connection, envelope, expectedSoil);
+                    pointNoiseMap.setSoilTileStore(soilTileStore);
+                    List<GeoWithSoilType> soil = new ArrayList<>();
+                    pointNoiseMap.fetchCellSoilAreas(connection, envelope, soil);
+                    double expectedWeightedArea = 0;
+                    for(GeoWithSoilType soilType : expectedSoil) {
+                        expectedWeightedArea += soilType.getGeo().intersection(envelopeGeom).getArea() * soilType.getType();
+                    }
+                    double weightedArea = 0;
+                    for(GeoWithSoilType soilType : soil) {
+                        assertTrue(soilType.getGeo().getArea() <= expectedMaxArea + 1e-6);
+                        weightedArea += soilType.getGeo().intersection(envelopeGeom).getArea() * soilType.getType();
+                    }
+                    assertEquals(expectedWeightedArea, weightedArea, expectedWeightedArea * 1e-9);
+                }
+            }
+        }
+    }
+
     @Test
     public void testNoiseMapBuilding() throws Exception {
         try(Statement st = connection.createStatement()) {
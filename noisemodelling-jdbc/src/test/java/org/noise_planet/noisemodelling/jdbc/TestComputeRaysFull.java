@@ -11,6 +11,7 @@ import org.noise_planet.noisemodelling.pathfinder.utils.Densifier3D;
 import org.noise_planet.noisemodelling.pathfinder.utils.GeoJSONDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutMultiMeteo;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,10 +22,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.noise_planet.noisemodelling.jdbc.Utils.addArray;
 
 
@@ -110,6 +113,85 @@ rayData.noiseFloor = 40;
         assertArrayEquals(  new double[]{38.07,38.01,37.89,36.79,34.29,36.21,31.73,15.39},L, 0.3);
     }
 
+    /**
+     * Evaluate the paths of a single propagation run against several meteorological conditions
+     */
+    @Test
+    public void testMultiMeteoVariants() throws LayerDelaunayError {
+        List<PropagationProcessPathData> variants = new ArrayList<>();
+        for(double temperature : new double[] {10, 25}) {
+            PropagationProcessPathData attData = new PropagationProcessPathData();
+            attData.setHumidity(temperature > 20 ? 40 : 70);
+            attData.setTemperature(temperature);
+            variants.add(attData);
+        }
+        double[] windRose = new double[PropagationProcessPathData.DEFAULT_WIND_ROSE.length];
+        Arrays.fill(windRose, 0.2);
+        variants.get(1).setWindRose(windRose);
+
+        ComputeRaysOutMultiMeteo multiMeteoOut = new ComputeRaysOutMultiMeteo(false, variants, null);
+        ComputeRays computeRays = new ComputeRays(Utils.createBarrierScene());
+        computeRays.setThreadCount(1);
+        computeRays.run(multiMeteoOut);
+        assertEquals(2, multiMeteoOut.getVariantCount());
+
+        for(int variant = 0; variant < variants.size(); variant++) {
+            ComputeRaysOutAttenuation propDataOut = new ComputeRaysOutAttenuation(false, variants.get(variant));
+            computeRays = new ComputeRays(Utils.createBarrierScene());
+            computeRays.setThreadCount(1);
+            computeRays.run(propDataOut);
+            List<ComputeRaysOutAttenuation.VerticeSL> expected = propDataOut.getVerticesSoundLevel();
+            List<ComputeRaysOutAttenuation.VerticeSL> got = multiMeteoOut.getVerticesSoundLevel(variant);
+            assertEquals(1, expected.size());
+            assertEquals(expected.size(), got.size());
+            assertArrayEquals(expected.get(0).value, got.get(0).value, 1e-9);
+        }
+        assertArrayEquals(multiMeteoOut.getVerticesSoundLevel().get(0).value,
+                multiMeteoOut.getVerticesSoundLevel(0).get(0).value, 0);
+        assertFalse(Arrays.equals(multiMeteoOut.getVerticesSoundLevel(0).get(0).value,
+                multiMeteoOut.getVerticesSoundLevel(1).get(0).value));
+    }
+
+    /**
+     * The level returned to the path finder must be the lowest level of the variants, it is used to skip the sources
+     * with the maximum error
+     */
+    @Test
+    public void testMultiMeteoLowestLevels() throws LayerDelaunayError {
+        List<PropagationProcessPathData> variants = new ArrayList<>();
+        for(double temperature : new double[] {10, 25}) {
+            PropagationProcessPathData attData = new PropagationProcessPathData();
+            attData.setTemperature(temperature);
+            variants.add(attData);
+        }
+        double[] windRose = new double[PropagationProcessPathData.DEFAULT_WIND_ROSE.length];
+        Arrays.fill(windRose, 1);
+        variants.get(1).setWindRose(windRose);
+
+        ComputeRaysOut raysOut = new ComputeRaysOut(true);
+        ComputeRays computeRays = new ComputeRays(Utils.createBarrierScene());
+        computeRays.setThreadCount(1);
+        computeRays.run(raysOut);
+        List<PropagationPath> paths = raysOut.getPropagationPaths();
+        assertFalse(paths.isEmpty());
+
+        ComputeRaysOutMultiMeteo multiMeteoOut = new ComputeRaysOutMultiMeteo(false, variants, null);
+        double[][] variantsLevels = new double[variants.size()][];
+        for(int variant = 0; variant < variants.size(); variant++) {
+            variantsLevels[variant] = new ComputeRaysOutAttenuation(false, variants.get(variant))
+                    .computeAttenuation(variants.get(variant), 0, 1, 0, paths);
+        }
+        assertFalse(Arrays.equals(variantsLevels[0], variantsLevels[1]));
+        double[] lowestLevels = new double[variantsLevels[0].length];
+        for(int idfreq = 0; idfreq < lowestLevels.length; idfreq++) {
+            lowestLevels[idfreq] = Math.min(variantsLevels[0][idfreq], variantsLevels[1][idfreq]);
+        }
+        assertArrayEquals(lowestLevels, multiMeteoOut.addPropagationPaths(0, 1, 0, paths), 1e-9);
+        assertArrayEquals(lowestLevels, multiMeteoOut.subProcess().addPropagationPaths(0, 1, 0, paths), 1e-9);
+        // The levels of the first variant are kept
+        assertArrayEquals(variantsLevels[0], multiMeteoOut.getVerticesSoundLevel(0).get(0).value, 1e-9);
+    }
+
     /**
      * Test TC03 -- Porous ground (G = 1)
      */
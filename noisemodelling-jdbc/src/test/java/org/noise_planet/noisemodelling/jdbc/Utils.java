@@ -2,7 +2,10 @@ package org.noise_planet.noisemodelling.jdbc;
 
 import org.h2.util.StringUtils;
 import org.h2gis.utilities.SpatialResultSet;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
@@ -26,6 +29,26 @@ public class Utils {
 
         return result;
     }
+    /**
+     * @return Scene with a barrier between one source and one receiver, over a mixed ground (G = 0.5)
+     */
+    public static PropagationProcessData createBarrierScene() throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        Envelope cellEnvelope = new Envelope(new Coordinate(-300., -300., 0.), new Coordinate(300, 300, 0.));
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(95, 105, 0, 60)), 8);
+        mesh.finishPolygonFeeding(cellEnvelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        rayData.addReceiver(new Coordinate(200, 50, 4));
+        rayData.addSource(factory.createPoint(new Coordinate(10, 10, 1)));
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(0, 250, -20, 80)), 0.5));
+        rayData.setComputeVerticalDiffraction(true);
+        return rayData;
+    }
+
     public static String getRunScriptRes(String fileName) throws URISyntaxException {
         File resourceFile = new File(PointNoiseMapTest.class.getResource(fileName).toURI());
         return "RUNSCRIPT FROM "+ StringUtils.quoteStringSQL(resourceFile.getPath());
@@ -39,7 +39,6 @@ import org.h2gis.api.ProgressVisitor;
 import org.h2gis.utilities.jts_utils.CoordinateUtils;
 import org.locationtech.jts.algorithm.*;
 import org.locationtech.jts.geom.*;
-import org.locationtech.jts.geom.impl.CoordinateArraySequence;
 import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.math.Vector3D;
@@ -54,10 +53,17 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -74,11 +80,34 @@ public class ComputeRays {
     // because 20 * LOG10(4) = 12 dB, so small contribution in comparison with diffraction on horizontal edge
     // in order to reduce computational cost
     private final static double MAX_RATIO_HULL_DIRECT_PATH = 4;
+    // Maximum number of line source discretizations kept per source of the cell, the receivers at different
+    // distances of a line source use different split counts
+    private final static int LINE_SOURCE_DISCRETIZATIONS_PER_SOURCE = 8;
+    // Maximum number of side hull edges kept in the buildings crossing cache of each thread
+    private final static int SIDE_HULL_EDGE_CACHE_SIZE = 4096;
     private int threadCount;
     private PropagationProcessData data;
     private ProfilerThread profilerThread;
+    private ForkJoinPool forkJoinPool;
 
     private STRtree rTreeOfGeoSoil;
+    // Optional sampled soil areas, see PropagationProcessData#groundFactorRasterResolution
+    private GroundFactorRaster groundFactorRaster;
+    // Sound sources grouped by location, used when the maximum error is set
+    private volatile SourceClusterTree sourceClusterTree;
+    // Line source points shared by receivers, bounded by the number of sources of the cell
+    private final Map<LineSourceKey, LineSourceDiscretization> lineSourceDiscretizations = new ConcurrentHashMap<>();
+    private int lineSourceDiscretizationsCapacity;
+    // Buildings crossed by the last side hull edges of each thread. Neighbouring source points of a receiver share
+    // most of the hull edges between building corners. Removed at the end of each receivers batch, so the pool
+    // threads do not keep the edges of a computed cell.
+    private final ThreadLocal<Map<LineSegment, int[]>> sideHullEdgeCache = ThreadLocal.withInitial(
+            () -> new LinkedHashMap<LineSegment, int[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<LineSegment, int[]> eldest) {
+                    return size() > SIDE_HULL_EDGE_CACHE_SIZE;
+                }
+            });
     private final static Logger LOGGER = LoggerFactory.getLogger(ComputeRays.class);
 
     /**
@@ -200,6 +229,22 @@ public class ComputeRays {
         return threadCount;
     }
 
+    /**
+     * @return Shared pool used to compute receivers or null if this instance creates its own pool
+     */
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    /**
+     * Compute receivers using a shared work-stealing pool instead of a dedicated thread pool.
+     * Idle workers of the pool (ex: other cells) will steal remaining receivers batches.
+     * @param forkJoinPool Shared pool or null to use a dedicated pool of {@link #getThreadCount()} threads
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
     public void setThreadCount(int threadCount) {
         this.threadCount = threadCount;
     }
@@ -208,6 +253,7 @@ public class ComputeRays {
      * Update ground Z coordinates of sound sources absolute to sea levels
      */
     public void makeSourceRelativeZToAbsolute() {
+        initElevationRaster();
         AbsoluteCoordinateSequenceFilter filter = new AbsoluteCoordinateSequenceFilter(data.freeFieldFinder, true);
         List<Geometry> sourceCopy = new ArrayList<>(data.sourceGeometries.size());
         for (Geometry source : data.sourceGeometries) {
@@ -231,12 +277,28 @@ public class ComputeRays {
      * Update ground Z coordinates of receivers absolute to sea levels
      */
     public void makeReceiverRelativeZToAbsolute() {
-        AbsoluteCoordinateSequenceFilter filter = new AbsoluteCoordinateSequenceFilter(data.freeFieldFinder, true);
-        CoordinateSequence sequence = new CoordinateArraySequence(data.receivers.toArray(new Coordinate[data.receivers.size()]));
-        for (int i = 0; i < sequence.size(); i++) {
-            filter.filter(sequence, i);
+        initElevationRaster();
+        Coordinate[] receivers = data.receivers.toArray(new Coordinate[data.receivers.size()]);
+        double[] zGround = data.freeFieldFinder.getHeightAtPositions(receivers);
+        for (int i = 0; i < receivers.length; i++) {
+            if (!Double.isNaN(zGround[i])) {
+                receivers[i].setOrdinate(2, zGround[i] + (Double.isNaN(receivers[i].getOrdinate(2)) ? 0 : receivers[i].getOrdinate(2)));
+            }
+        }
+        data.receivers = Arrays.asList(receivers);
+    }
+
+    /**
+     * Sample the ground elevation of the mesh if requested by {@link PropagationProcessData#elevationRasterResolution}
+     */
+    private void initElevationRaster() {
+        if (data.elevationRasterResolution > 0 && data.freeFieldFinder != null) {
+            ElevationRaster elevationRaster = data.freeFieldFinder.getElevationRaster();
+            if (elevationRaster == null || elevationRaster.getResolution() != data.elevationRasterResolution) {
+                data.freeFieldFinder.setElevationRaster(new ElevationRaster(data.freeFieldFinder,
+                        data.elevationRasterResolution));
+            }
         }
-        data.receivers = Arrays.asList(sequence.toCoordinateArray());
     }
 
     public static double dbaToW(double dBA) {
@@ -388,7 +450,7 @@ public class ComputeRays {
         for (MirrorReceiverResult receiverReflection : receiverReflections) {
             // Check propagation distance limitation
             if(receiverReflection.getReceiverPos().distance3D(srcCoord) > data.maxSrcDist) {
-                break;
+                continue;
             }
             // Print wall reflections
             //System.out.println(Arrays.toString(asWallArray(receiverReflection)));
@@ -407,7 +469,7 @@ public class ComputeRays {
             // Check first wall distance reflection limitation
             if(linters.hasIntersection() && new Coordinate(
                     linters.getIntersection(0)).distance(srcCoord) > data.maxRefDist) {
-                break;
+                continue;
             }
             while (linters.hasIntersection() && MirrorReceiverIterator.wallPointTest(seg, destinationPt)) {
                 // There are a probable reflection point on the segment
@@ -554,10 +616,20 @@ public class ComputeRays {
      */
     public PropagationPath computeFreefield(Coordinate receiverCoord,
                                             Coordinate srcCoord, List<TriIdWithIntersection> inters) {
+        return computeFreeFieldProfile(receiverCoord, srcCoord, inters).toPropagationPath(data.gS);
+    }
+
+    /**
+     * Ground factor, ground altitudes and mean ground plane between a source and a receiver. The profile does not
+     * depend on the path variant, so it is computed once and shared by the direct and diffraction paths.
+     * @param receiverCoord
+     * @param srcCoord
+     * @param inters        PropagationPath between srcCoord and receiverCoord (or null if must be computed here)
+     */
+    FreeFieldProfile computeFreeFieldProfile(Coordinate receiverCoord,
+                                             Coordinate srcCoord, List<TriIdWithIntersection> inters) {
 
         GeometryFactory factory = new GeometryFactory();
-        List<PointPath> points = new ArrayList<PointPath>();
-        List<SegmentPath> segments = new ArrayList<SegmentPath>();
 
         double gPath;
         double totRSDistance = 0.;
@@ -568,24 +640,28 @@ public class ComputeRays {
 
 
         //will give a flag here for soil effect
-        final List<GeoWithSoilType> soilTypeList = data.getSoilList();
-        LineString RSZone = factory.createLineString(new Coordinate[]{receiverCoord, srcCoord});
-        List<EnvelopeWithIndex<Integer>> resultZ0 = rTreeOfGeoSoil.query(RSZone.getEnvelopeInternal());
-        for (EnvelopeWithIndex<Integer> envel : resultZ0) {
-            RectangleLineIntersector rectangleLineIntersector = new RectangleLineIntersector(envel);
-            if (rectangleLineIntersector.intersects(receiverCoord, srcCoord)) {
-                try {
-                    //get the geo intersected
-                    Geometry geoInter = RSZone.intersection(soilTypeList.get(envel.getId()).getGeo());
-                    //add the intersected distance with ground effect
-                    totRSDistance += getIntersectedDistance(geoInter) * soilTypeList.get(envel.getId()).getType();
-                } catch (TopologyException | IllegalArgumentException ex) {
-                    // Ignore
+        if (groundFactorRaster != null) {
+            gPath = groundFactorRaster.getMeanGroundFactor(receiverCoord, srcCoord);
+        } else {
+            final List<GeoWithSoilType> soilTypeList = data.getSoilList();
+            LineString RSZone = factory.createLineString(new Coordinate[]{receiverCoord, srcCoord});
+            List<EnvelopeWithIndex<Integer>> resultZ0 = rTreeOfGeoSoil.query(RSZone.getEnvelopeInternal());
+            for (EnvelopeWithIndex<Integer> envel : resultZ0) {
+                RectangleLineIntersector rectangleLineIntersector = new RectangleLineIntersector(envel);
+                if (rectangleLineIntersector.intersects(receiverCoord, srcCoord)) {
+                    try {
+                        //get the geo intersected
+                        Geometry geoInter = RSZone.intersection(soilTypeList.get(envel.getId()).getGeo());
+                        //add the intersected distance with ground effect
+                        totRSDistance += getIntersectedDistance(geoInter) * soilTypeList.get(envel.getId()).getType();
+                    } catch (TopologyException | IllegalArgumentException ex) {
+                        // Ignore
+                    }
                 }
             }
+            // Compute GPath using 2D Length
+            gPath = totRSDistance / RSZone.getLength();
         }
-        // Compute GPath using 2D Length
-        gPath = totRSDistance / RSZone.getLength();
 
         if (inters == null) {
             inters = new ArrayList<>();
@@ -618,14 +694,7 @@ public class ComputeRays {
         pInit.x = srcCoord.x + pInit.x;
         pInit.y = srcCoord.y + pInit.y;
 
-        segments.add(new SegmentPath(gPath, new Vector3D(projSource, projReceiver), pInit));
-
-        points.add(new PointPath(srcCoord, altS, new ArrayList<>(), -1, PointPath.POINT_TYPE.SRCE));
-        points.add(new PointPath(receiverCoord, altR, new ArrayList<>(), -1, PointPath.POINT_TYPE.RECV));
-        PropagationPath propagationPath = new PropagationPath(false, points, segments, segments);
-        propagationPath.setGs(data.gS);
-        return propagationPath;
-
+        return new FreeFieldProfile(receiverCoord, srcCoord, gPath, altR, altS, projReceiver, projSource, pInit);
     }
 
 
@@ -667,6 +736,15 @@ public class ComputeRays {
 
     public PropagationPath computeHorizontalEdgeDiffraction(boolean obstructedSourceReceiver, Coordinate receiverCoord,
                                                             Coordinate srcCoord, List<TriIdWithIntersection> allInterPoints) {
+        return computeHorizontalEdgeDiffraction(obstructedSourceReceiver, receiverCoord, srcCoord, allInterPoints, null);
+    }
+
+    /**
+     * @param freeFieldProfile Profile between srcCoord and receiverCoord, null if must be computed here
+     */
+    PropagationPath computeHorizontalEdgeDiffraction(boolean obstructedSourceReceiver, Coordinate receiverCoord,
+                                                     Coordinate srcCoord, List<TriIdWithIntersection> allInterPoints,
+                                                     FreeFieldProfile freeFieldProfile) {
 
         List<PointPath> points = new ArrayList<PointPath>();
         List<SegmentPath> segments = new ArrayList<SegmentPath>();
@@ -708,7 +786,10 @@ public class ComputeRays {
             segments.add(propagationPath2.getSegmentList().get(0));
 
         } else {
-            PropagationPath propagationPath = computeFreefield(receiverCoord, srcCoord, null);
+            if (freeFieldProfile == null) {
+                freeFieldProfile = computeFreeFieldProfile(receiverCoord, srcCoord, null);
+            }
+            PropagationPath propagationPath = freeFieldProfile.toPropagationPath(data.gS);
             points.addAll(propagationPath.getPointList());
             segments.addAll(propagationPath.getSegmentList());
             srPath.addAll(propagationPath.getSRList());
@@ -777,6 +858,14 @@ public class ComputeRays {
      * @return
      */
     public List<Coordinate> computeSideHull(boolean left, Coordinate p1, Coordinate p2) {
+        return computeSideHull(left, p1, p2, true);
+    }
+
+    /**
+     * @param optimized False to evaluate each hull edge against the buildings and to reject long hulls only once
+     *                  computed, as a reference for the cached and early rejected hull
+     */
+    List<Coordinate> computeSideHull(boolean left, Coordinate p1, Coordinate p2, boolean optimized) {
         if (p1.equals(p2)) {
             return new ArrayList<>();
         }
@@ -803,10 +892,18 @@ public class ComputeRays {
         IntersectionRayVisitor intersectionRayVisitor = new IntersectionRayVisitor(
                 data.freeFieldFinder.getPolygonWithHeight(), p1, p2, data.freeFieldFinder, input, buildingInHull, cutPlane);
 
-        data.freeFieldFinder.getBuildingsOnPath(p1, p2, intersectionRayVisitor);
+        getBuildingsOnSideHullEdge(p1, p2, intersectionRayVisitor, optimized);
 
+        double directPathLength = p1.distance(p2);
         int k;
         while (convexHullIntersects) {
+            // The hull contains the triangle p1, q, p2 so its length is greater than the triangle perimeter
+            for (int idInput = 0; optimized && idInput < input.size(); idInput++) {
+                Coordinate q = input.get(idInput);
+                if ((p1.distance(q) + q.distance(p2) + directPathLength) / directPathLength > MAX_RATIO_HULL_DIRECT_PATH) {
+                    return new ArrayList<>();
+                }
+            }
             ConvexHull convexHull = new ConvexHull(input.toArray(new Coordinate[0]), geometryFactory);
             Geometry convexhull = convexHull.getConvexHull();
 
@@ -867,7 +964,8 @@ public class ComputeRays {
                         }
                         intersectionRayVisitor = new IntersectionRayVisitor(data.freeFieldFinder.getPolygonWithHeight(),
                                 coordinates[k], coordinates[k + 1], data.freeFieldFinder, input, buildingInHull, cutPlane);
-                        data.freeFieldFinder.getBuildingsOnPath(coordinates[k], coordinates[k + 1], intersectionRayVisitor);
+                        getBuildingsOnSideHullEdge(coordinates[k], coordinates[k + 1], intersectionRayVisitor,
+                                optimized);
                         if (!intersectionRayVisitor.doContinue()) {
                             convexHullIntersects = true;
                         }
@@ -898,6 +996,43 @@ public class ComputeRays {
     }
 
 
+    /**
+     * Feed the visitor with the buildings crossed by the hull edge p0-p1, in the order of
+     * {@link FastObstructionTest#getBuildingsOnPath}. The crossed buildings only depend on the edge, so they are
+     * cached.
+     */
+    private void getBuildingsOnSideHullEdge(Coordinate p0, Coordinate p1,
+                                            FastObstructionTest.IntersectionRayVisitor visitor, boolean useCache) {
+        if (!useCache) {
+            data.freeFieldFinder.getBuildingsOnPath(p0, p1, visitor);
+            return;
+        }
+        Map<LineSegment, int[]> cache = sideHullEdgeCache.get();
+        LineSegment edge = new LineSegment(p0, p1);
+        int[] crossedBuildings = cache.get(edge);
+        if (crossedBuildings == null) {
+            final List<Integer> buildings = new ArrayList<>();
+            data.freeFieldFinder.getBuildingsOnPath(p0, p1, new FastObstructionTest.IntersectionRayVisitor(
+                    data.freeFieldFinder.getPolygonWithHeight(), p0, p1) {
+                @Override
+                public void addBuilding(int buildingId) {
+                    buildings.add(buildingId);
+                }
+            });
+            crossedBuildings = new int[buildings.size()];
+            for (int i = 0; i < crossedBuildings.length; i++) {
+                crossedBuildings[i] = buildings.get(i);
+            }
+            cache.put(new LineSegment(new Coordinate(p0), new Coordinate(p1)), crossedBuildings);
+        }
+        for (int buildingId : crossedBuildings) {
+            visitor.visitItem(buildingId);
+            if (!visitor.doContinue()) {
+                return;
+            }
+        }
+    }
+
     public List<PropagationPath> directPath(Coordinate srcCoord,
                                             Coordinate receiverCoord, boolean verticalDiffraction, boolean horizontalDiffraction) {
 
@@ -928,16 +1063,23 @@ public class ComputeRays {
 
         // double fav_probability = favrose[(int) (Math.round(calcRotationAngleInDegrees(srcCoord, receiverCoord) / 30))];
 
+        // Ground profile of the direct line, shared by all path variants
+        FreeFieldProfile freeFieldProfile = null;
+        if (freefield || verticalDiffraction || topographyHideReceiver && data.isComputeHorizontalDiffraction() && horizontalDiffraction) {
+            freeFieldProfile = computeFreeFieldProfile(receiverCoord, srcCoord, inters);
+        }
+
         if (freefield) {
-            PropagationPath propagationPath = computeFreefield(receiverCoord, srcCoord, inters);
+            PropagationPath propagationPath = freeFieldProfile.toPropagationPath(data.gS);
             propagationPaths.add(propagationPath);
         }
 
         //Process diffraction 3D
         // todo include rayleigh criterium
         if (verticalDiffraction && !freefield) {
-            PropagationPath propagationPath3 = computeFreefield(receiverCoord, srcCoord, inters);
-            PropagationPath propagationPath = computeHorizontalEdgeDiffraction(topographyHideReceiver, receiverCoord, srcCoord, inters);
+            PropagationPath propagationPath3 = freeFieldProfile.toPropagationPath(data.gS);
+            PropagationPath propagationPath = computeHorizontalEdgeDiffraction(topographyHideReceiver, receiverCoord,
+                    srcCoord, inters, freeFieldProfile);
             propagationPath.getSRList().addAll(propagationPath3.getSRList());
             propagationPaths.add(propagationPath);
 
@@ -946,7 +1088,7 @@ public class ComputeRays {
 
         if (topographyHideReceiver && data.isComputeHorizontalDiffraction() && horizontalDiffraction && !freefield) {
             // todo if one of the points > roof or < floor, get out this path
-            PropagationPath propagationPath3 = computeFreefield(receiverCoord, srcCoord, inters);
+            PropagationPath propagationPath3 = freeFieldProfile.toPropagationPath(data.gS);
 
             PropagationPath propagationPath = computeVerticalEdgeDiffraction(srcCoord, receiverCoord, "left");
             if (propagationPath.getPointList()!=null) {
@@ -983,11 +1125,12 @@ public class ComputeRays {
      * @param nearBuildingsWalls Walls to use in reflection
      * @param raysCount number of rays computed in this function
      * @param dataOut
+     * @param mirrorReceiverIndex Receiver images
      * @return Minimal power level (dB) or maximum attenuation (dB)
      */
     private double[] receiverSourcePropa(SourcePointInfo src,
                                          Coordinate receiverCoord, int rcvId, AtomicInteger raysCount,
-                                         IComputeRaysOut dataOut,List<FastObstructionTest.Wall> nearBuildingsWalls, List<MirrorReceiverResult> mirrorReceiverResults) {
+                                         IComputeRaysOut dataOut,List<FastObstructionTest.Wall> nearBuildingsWalls, MirrorReceiverIndex mirrorReceiverIndex) {
         Coordinate srcCoord = src.position;
         int srcId = src.sourcePrimaryKey;
         double sourceLi = src.li;
@@ -1003,7 +1146,8 @@ public class ComputeRays {
             // Process specular reflection
             if (data.reflexionOrder > 0) {
                 List<PropagationPath> propagationPaths_all = computeReflexion(receiverCoord, srcCoord,
-                        false, nearBuildingsWalls, mirrorReceiverResults);
+                        false, nearBuildingsWalls, mirrorReceiverIndex.findCloseMirrorReceivers(srcCoord,
+                                data.maxSrcDist));
                 propagationPaths.addAll(propagationPaths_all);
             }
 
@@ -1037,9 +1181,66 @@ public class ComputeRays {
         return ComputeRays.sumArray(srcWJ.length, srcWJ);
     }
 
-    private double addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, List<SourcePointInfo> sourceList, double[] wj) {
-        double totalPowerRemaining = 0;
+    /**
+     * Number of sub-segments used by {@link #splitLineStringIntoPoints(LineString, double, List)}, the split points
+     * only depend on this value.
+     * @param geomLength Line source length
+     * @param segmentSizeConstraint Maximal distance between points
+     * @return Number of sub-segments, 0 if the line source is modelled as a single point source
+     */
+    private static long getSplitCount(double geomLength, double segmentSizeConstraint) {
+        if (geomLength < segmentSizeConstraint) {
+            return 0;
+        } else {
+            return (long) Math.ceil(geomLength / segmentSizeConstraint);
+        }
+    }
+
+    /**
+     * Split the line source into points with their orientation and ground factor.
+     * @param source Line source
+     * @param segmentSizeConstraint Maximal distance between points
+     * @param srcIndex Source index
+     * @return Line source points
+     */
+    private LineSourceDiscretization discretizeLineSource(LineString source, double segmentSizeConstraint,
+                                                          int srcIndex) {
         ArrayList<Coordinate> pts = new ArrayList<Coordinate>();
+        double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
+        Orientation[] orientations = new Orientation[pts.size()];
+        Orientation sourceOrientation = null;
+        double gs = this.data.gS;
+        if(data.sourcesPk.size() > srcIndex) {
+            Long sourcePk = data.sourcesPk.get(srcIndex);
+            sourceOrientation = data.sourceOrientation.get(sourcePk);
+            if(data.sourceGs.containsKey(sourcePk)) {
+                // If the line source already provide a ground factor use it
+                gs = data.sourceGs.get(sourcePk);
+            }
+        }
+        for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
+            // use the orientation computed from the line source coordinates
+            Vector3D v;
+            if(ptIndex == 0) {
+                v = new Vector3D(source.getCoordinates()[0], pts.get(ptIndex));
+            } else {
+                v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
+            }
+            if(sourceOrientation != null) {
+                // If the line source already provide an orientation then alter the line orientation
+                orientations[ptIndex] = Orientation.fromVector(
+                        Orientation.rotate(new Orientation(sourceOrientation.yaw, sourceOrientation.roll, 0),
+                                v.normalize()), sourceOrientation.roll);
+            } else {
+                orientations[ptIndex] = Orientation.fromVector(v.normalize(), 0);
+            }
+        }
+        return new LineSourceDiscretization(pts.toArray(new Coordinate[0]), orientations, li, gs);
+    }
+
+    private double addLineSource(LineString source, Coordinate receiverCoord, int srcIndex, int partIndex,
+                                 List<SourcePointInfo> sourceList, double[] wj) {
+        double totalPowerRemaining = 0;
 
         // Compute li to equation 4.1 NMPB 2008 (June 2009)
         Coordinate nearestPoint = JTSUtility.getNearestPoint(receiverCoord, source);
@@ -1047,38 +1248,168 @@ public class ComputeRays {
         if (Double.isNaN(segmentSizeConstraint)) {
             segmentSizeConstraint = Math.max(1, receiverCoord.distance(nearestPoint) / 2.0);
         }
-        double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
-        for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
-            Coordinate pt = pts.get(ptIndex);
+        // Receivers with the same split count share the line source points
+        // Concurrent threads may compute the same points, the discretizations are no longer kept once the cache is
+        // full
+        LineSourceKey key = new LineSourceKey(srcIndex, partIndex, getSplitCount(source.getLength(),
+                segmentSizeConstraint));
+        LineSourceDiscretization discretization = lineSourceDiscretizations.get(key);
+        if (discretization == null) {
+            discretization = discretizeLineSource(source, segmentSizeConstraint, srcIndex);
+            if (lineSourceDiscretizations.size() < lineSourceDiscretizationsCapacity) {
+                lineSourceDiscretizations.putIfAbsent(key, discretization);
+            }
+        }
+        for (int ptIndex = 0; ptIndex < discretization.points.length; ptIndex++) {
+            Coordinate pt = discretization.points[ptIndex];
             if (pt.distance(receiverCoord) < data.maxSrcDist) {
-                // use the orientation computed from the line source coordinates
-                Vector3D v;
-                if(ptIndex == 0) {
-                    v = new Vector3D(source.getCoordinates()[0], pts.get(ptIndex));
-                } else {
-                    v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
+                totalPowerRemaining += insertPtSource(receiverCoord, new Coordinate(pt), wj, discretization.li,
+                        srcIndex, sourceList, discretization.orientations[ptIndex], discretization.gs);
+            }
+        }
+        return totalPowerRemaining;
+    }
+
+    /**
+     * Add the source points of a sound source
+     * @param srcIndex Source index in the list sourceGeometries
+     * @param receiverCoord Receiver position
+     * @param sourceList (Out) Source points
+     * @return Sum of the maximal power of the added source points at the receiver position
+     */
+    private double addSource(int srcIndex, Coordinate receiverCoord, List<SourcePointInfo> sourceList) {
+        double sourcePower = 0;
+        Geometry source = data.sourceGeometries.get(srcIndex);
+        double[] wj = data.getMaximalSourcePower(srcIndex);
+        if (source instanceof Point) {
+            Coordinate ptpos = source.getCoordinate();
+            if (ptpos.distance(receiverCoord) < data.maxSrcDist) {
+                Orientation orientation = null;
+                if(data.sourcesPk.size() > srcIndex) {
+                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
                 }
-                Orientation inputOrientation;
-                if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
-                    // If the line source already provide an orientation then alter the line orientation
-                    inputOrientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                    inputOrientation = Orientation.fromVector(
-                            Orientation.rotate(new Orientation(inputOrientation.yaw, inputOrientation.roll, 0),
-                                    v.normalize()), inputOrientation.roll);
-                } else {
-                    inputOrientation = Orientation.fromVector(v.normalize(), 0);
+                if(orientation == null) {
+                    orientation = new Orientation(0,0, 0);
                 }
+
                 double gs;
                 if(data.sourcesPk.size() > srcIndex && data.sourceGs.containsKey(data.sourcesPk.get(srcIndex))) {
                     // If the line source already provide an orientation then alter the line orientation
                     gs = data.sourceGs.get(data.sourcesPk.get(srcIndex));
                 } else {
-                    gs = this.data.gS;
+                    gs = data.gS;
+                }
+
+                sourcePower += insertPtSource(receiverCoord, ptpos, wj, 1., srcIndex, sourceList, orientation, gs);
+            }
+        } else if (source instanceof LineString) {
+            // Discretization of line into multiple point
+            // First point is the closest point of the LineString from
+            // the receiver
+            sourcePower += addLineSource((LineString) source, receiverCoord, srcIndex, 0, sourceList, wj);
+        } else if (source instanceof MultiLineString) {
+            for (int id = 0; id < source.getNumGeometries(); id++) {
+                Geometry subGeom = source.getGeometryN(id);
+                if (subGeom instanceof LineString) {
+                    sourcePower += addLineSource((LineString) subGeom, receiverCoord, srcIndex, id, sourceList,
+                            wj);
                 }
-                totalPowerRemaining += insertPtSource(receiverCoord, pt, wj, li, srcIndex, sourceList, inputOrientation, gs);
             }
+        } else {
+            throw new IllegalArgumentException(String.format("Sound source %s geometry are not supported", source.getGeometryType()));
+        }
+        return sourcePower;
+    }
+
+    /**
+     * Compute the source points of the receiver by descending maximal power, until the remaining sources can not
+     * change the received level by more than {@link PropagationProcessData#maximumError}.
+     * Groups of sources are bounded using the source tree and split only when they may contribute.
+     * @param receiverCoord Receiver position
+     * @param idReceiver Receiver identifier
+     * @param dataOut Rays output
+     * @param progressVisitor Progression, may be null
+     * @param wallsReceiver Walls near the receiver
+     * @param mirrorReceiverIndex Receiver images
+     * @param noiseFloorPower Noise floor (W)
+     * @param raysCount Number of computed rays
+     */
+    private void computeRaysWithSourceTree(Coordinate receiverCoord, int idReceiver, IComputeRaysOut dataOut,
+                                           ProgressVisitor progressVisitor,
+                                           List<FastObstructionTest.Wall> wallsReceiver,
+                                           MirrorReceiverIndex mirrorReceiverIndex, double noiseFloorPower,
+                                           AtomicInteger raysCount) {
+        SourceClusterTree tree = getSourceClusterTree();
+        // Sum of all sources power using only geometric dispersion with direct field
+        double totalPowerRemaining = noiseFloorPower;
+        // Final sound power level at each receiver
+        double maximumPowerAtReceiver = noiseFloorPower;
+        PriorityQueue<SourceCandidate> candidates = new PriorityQueue<>();
+        int root = tree.getRoot();
+        if(root >= 0 && tree.getDistance(root, receiverCoord) < data.maxSrcDist) {
+            SourceCandidate rootCandidate = new SourceCandidate(root, tree.getMaximalPower(root, receiverCoord));
+            totalPowerRemaining += rootCandidate.maximalPower;
+            candidates.add(rootCandidate);
+        }
+        List<SourcePointInfo> sourceList = new ArrayList<>();
+        while (!candidates.isEmpty()) {
+            // If the delta between already received power and maximal potential power received is inferior than than data.maximumError
+            if ((progressVisitor != null && progressVisitor.isCanceled()) || wToDba(maximumPowerAtReceiver + totalPowerRemaining) - wToDba(maximumPowerAtReceiver) < data.maximumError) {
+                break; //Stop looking for more rays
+            }
+            SourceCandidate candidate = candidates.poll();
+            if (candidate.sourcePoint != null) {
+                // For each Pt Source - Pt Receiver
+                SourcePointInfo src = candidate.sourcePoint;
+                double[] power = receiverSourcePropa(src, receiverCoord, idReceiver
+                        , raysCount, dataOut, wallsReceiver, mirrorReceiverIndex);
+                double global = ComputeRays.sumArray(power.length, ComputeRays.dbaToW(power));
+                totalPowerRemaining -= src.globalWj;
+                if (power.length > 0) {
+                    maximumPowerAtReceiver += global;
+                } else {
+                    maximumPowerAtReceiver += src.globalWj;
+                }
+            } else {
+                // Replace the bound of the group by the bounds of its content
+                totalPowerRemaining -= candidate.maximalPower;
+                int srcIndex = tree.getSource(candidate.node);
+                if (srcIndex >= 0) {
+                    sourceList.clear();
+                    totalPowerRemaining += addSource(srcIndex, receiverCoord, sourceList);
+                    for (SourcePointInfo sourcePoint : sourceList) {
+                        candidates.add(new SourceCandidate(sourcePoint));
+                    }
+                } else {
+                    for (int child : new int[]{tree.getLeft(candidate.node), tree.getRight(candidate.node)}) {
+                        if (tree.getDistance(child, receiverCoord) < data.maxSrcDist) {
+                            SourceCandidate childCandidate = new SourceCandidate(child,
+                                    tree.getMaximalPower(child, receiverCoord));
+                            totalPowerRemaining += childCandidate.maximalPower;
+                            candidates.add(childCandidate);
+                        }
+                    }
+                }
+            }
+            totalPowerRemaining = Math.max(0, totalPowerRemaining);
         }
-        return totalPowerRemaining;
+    }
+
+    /**
+     * @return Tree of the sound sources, built on first call
+     */
+    private SourceClusterTree getSourceClusterTree() {
+        SourceClusterTree tree = sourceClusterTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = sourceClusterTree;
+                if (tree == null) {
+                    tree = new SourceClusterTree(data);
+                    sourceClusterTree = tree;
+                }
+            }
+        }
+        return tree;
     }
 
     /**
@@ -1088,110 +1419,50 @@ public class ComputeRays {
      */
     public void computeRaysAtPosition(Coordinate receiverCoord, int idReceiver, List<PropagationDebugInfo> debugInfo, IComputeRaysOut dataOut, ProgressVisitor progressVisitor) {
         // List of walls within maxReceiverSource distance
-        HashSet<Integer> processedLineSources = new HashSet<Integer>(); //Already processed Raw source (line and/or points)
         List<FastObstructionTest.Wall> wallsReceiver = new ArrayList<>();
         List<MirrorReceiverResult> mirrorReceiverResults = new ArrayList<>();
         if (data.reflexionOrder > 0) {
             wallsReceiver.addAll(data.freeFieldFinder.getLimitsInRange(
-                    data.maxRefDist, receiverCoord, false));
-            new MirrorReceiverIterator.It(receiverCoord, wallsReceiver, data.reflexionOrder).forEach(mirrorReceiverResults::add);
-        }
-        double searchSourceDistance = data.maxSrcDist;
-        Envelope receiverSourceRegion = new Envelope(receiverCoord.x
-                - searchSourceDistance, receiverCoord.x + searchSourceDistance,
-                receiverCoord.y - searchSourceDistance, receiverCoord.y
-                + searchSourceDistance
-        );
-        Iterator<Integer> regionSourcesLst = data.sourcesIndex
-                .query(receiverSourceRegion);
-        List<SourcePointInfo> sourceList = new ArrayList<>();
-
-        // Sum of all sources power using only geometric dispersion with direct field
-        double totalPowerRemaining = 0;
-        if (data.noiseFloor>0) {
-            totalPowerRemaining = dbaToW(data.noiseFloor);
-        }
-        while (regionSourcesLst.hasNext()) {
-            Integer srcIndex = regionSourcesLst.next();
-            if (!processedLineSources.contains(srcIndex)) {
-                processedLineSources.add(srcIndex);
-                Geometry source = data.sourceGeometries.get(srcIndex);
-                double[] wj = data.getMaximalSourcePower(srcIndex);
-                if (source instanceof Point) {
-                    Coordinate ptpos = source.getCoordinate();
-                    if (ptpos.distance(receiverCoord) < data.maxSrcDist) {
-                        Orientation orientation = null;
-                        if(data.sourcesPk.size() > srcIndex) {
-                            orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                        }
-                        if(orientation == null) {
-                            orientation = new Orientation(0,0, 0);
-                        }
-
-                        double gs;
-                        if(data.sourcesPk.size() > srcIndex && data.sourceGs.containsKey(data.sourcesPk.get(srcIndex))) {
-                            // If the line source already provide an orientation then alter the line orientation
-                            gs = data.sourceGs.get(data.sourcesPk.get(srcIndex));
-                        } else {
-                            gs = data.gS;
-                        }
-
-                        totalPowerRemaining += insertPtSource(receiverCoord, ptpos, wj, 1., srcIndex, sourceList, orientation, gs);
-                    }
-                } else if (source instanceof LineString) {
-                    // Discretization of line into multiple point
-                    // First point is the closest point of the LineString from
-                    // the receiver
-                    totalPowerRemaining += addLineSource((LineString) source, receiverCoord, srcIndex, sourceList, wj);
-                } else if (source instanceof MultiLineString) {
-                    for (int id = 0; id < source.getNumGeometries(); id++) {
-                        Geometry subGeom = source.getGeometryN(id);
-                        if (subGeom instanceof LineString) {
-                            totalPowerRemaining += addLineSource((LineString) subGeom, receiverCoord, srcIndex, sourceList, wj);
-                        }
-                    }
-                } else {
-                    throw new IllegalArgumentException(String.format("Sound source %s geometry are not supported", source.getGeometryType()));
-                }
-            }
-        }
-
-        // Sort sources by power contribution descending
-        Collections.sort(sourceList);
-        // Final sound power level at each receiver
-        double maximumPowerAtReceiver = 0;
-        if (data.noiseFloor>0) {
-            maximumPowerAtReceiver = dbaToW(data.noiseFloor);
+                    data.maxRefDist, receiverCoord));
+            new MirrorReceiverIterator.It(receiverCoord, wallsReceiver, data.reflexionOrder,
+                    data.maxSrcDist).forEach(mirrorReceiverResults::add);
         }
-        //Iterate over source point sorted by maximal power by descending order
+        MirrorReceiverIndex mirrorReceiverIndex = new MirrorReceiverIndex(mirrorReceiverResults, wallsReceiver);
         AtomicInteger raysCount = new AtomicInteger(0);
-        for (SourcePointInfo src : sourceList) {
-            // If the delta between already received power and maximal potential power received is inferior than than data.maximumError
-            if ((progressVisitor != null && progressVisitor.isCanceled()) || (data.maximumError > 0 && wToDba(maximumPowerAtReceiver + totalPowerRemaining) - wToDba(maximumPowerAtReceiver) < data.maximumError)) {
-                break; //Stop looking for more rays
+        if (data.maximumError > 0) {
+            double noiseFloorPower = data.noiseFloor > 0 ? dbaToW(data.noiseFloor) : 0;
+            computeRaysWithSourceTree(receiverCoord, idReceiver, dataOut, progressVisitor, wallsReceiver,
+                    mirrorReceiverIndex, noiseFloorPower, raysCount);
+        } else {
+            HashSet<Integer> processedLineSources = new HashSet<Integer>(); //Already processed Raw source (line and/or points)
+            double searchSourceDistance = data.maxSrcDist;
+            Envelope receiverSourceRegion = new Envelope(receiverCoord.x
+                    - searchSourceDistance, receiverCoord.x + searchSourceDistance,
+                    receiverCoord.y - searchSourceDistance, receiverCoord.y
+                    + searchSourceDistance
+            );
+            Iterator<Integer> regionSourcesLst = data.sourcesIndex
+                    .query(receiverSourceRegion);
+            List<SourcePointInfo> sourceList = new ArrayList<>();
+            while (regionSourcesLst.hasNext()) {
+                Integer srcIndex = regionSourcesLst.next();
+                if (!processedLineSources.contains(srcIndex)) {
+                    processedLineSources.add(srcIndex);
+                    addSource(srcIndex, receiverCoord, sourceList);
+                }
             }
 
-
-            // For each Pt Source - Pt Receiver
-            Coordinate srcCoord = src.position;
-
-            Set<FastObstructionTest.Wall> wallsSource = new HashSet<>(wallsReceiver);
-            if (data.reflexionOrder > 0) {
-                wallsSource.addAll(data.freeFieldFinder.getLimitsInRange(
-                        data.maxRefDist, srcCoord, false));
-            }
-            double[] power = receiverSourcePropa(src, receiverCoord, idReceiver
-                    , raysCount, dataOut, wallsReceiver, mirrorReceiverResults);
-            double global = ComputeRays.sumArray(power.length, ComputeRays.dbaToW(power));
-            totalPowerRemaining -= src.globalWj;
-            if (power.length > 0) {
-                maximumPowerAtReceiver += global;
-            } else {
-                maximumPowerAtReceiver += src.globalWj;
+            // Sort sources by power contribution descending
+            Collections.sort(sourceList);
+            //Iterate over source point sorted by maximal power by descending order
+            for (SourcePointInfo src : sourceList) {
+                if (progressVisitor != null && progressVisitor.isCanceled()) {
+                    break; //Stop looking for more rays
+                }
+                // For each Pt Source - Pt Receiver
+                receiverSourcePropa(src, receiverCoord, idReceiver, raysCount, dataOut, wallsReceiver,
+                        mirrorReceiverIndex);
             }
-            totalPowerRemaining = Math.max(0, totalPowerRemaining);
-
-
         }
         if(profilerThread != null &&
                 profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
@@ -1204,6 +1475,8 @@ public class ComputeRays {
     /**
      * Must be called before computeSoundLevelAtPosition     */
     public void initStructures() {
+        lineSourceDiscretizations.clear();
+        lineSourceDiscretizationsCapacity = data.sourceGeometries.size() * LINE_SOURCE_DISCRETIZATIONS_PER_SOURCE;
         //Build R-tree for soil geometry and soil type
         rTreeOfGeoSoil = new STRtree();
         List<GeoWithSoilType> soilTypeList = data.getSoilList();
@@ -1214,6 +1487,12 @@ public class ComputeRays {
                         new EnvelopeWithIndex<Integer>(geoWithSoilType.getGeo().getEnvelopeInternal(), i));
             }
         }
+        initElevationRaster();
+        if (data.groundFactorRasterResolution > 0 && soilTypeList != null) {
+            groundFactorRaster = new GroundFactorRaster(soilTypeList, data.groundFactorRasterResolution);
+        } else {
+            groundFactorRaster = null;
+        }
     }
 
     public void runDebug(IComputeRaysOut computeRaysOut, List<PropagationDebugInfo> debugInfo) {
@@ -1232,6 +1511,11 @@ public class ComputeRays {
             this.threadCount = Math.max(1, runtime.availableProcessors());
         }
 
+        if(forkJoinPool != null) {
+            runShared(computeRaysOut, debugInfo, propaProcessProgression);
+            return;
+        }
+
         ThreadPool threadManager = new ThreadPool(
                 threadCount,
                 threadCount + 1, Long.MAX_VALUE,
@@ -1264,6 +1548,30 @@ public class ComputeRays {
         }
     }
 
+    /**
+     * Fork one receivers batch per worker of the shared pool then wait for the completion of the batches.
+     * The calling thread helps to compute the batches if it is a worker of the pool.
+     */
+    private void runShared(IComputeRaysOut computeRaysOut, List<PropagationDebugInfo> debugInfo,
+                           ProgressVisitor propaProcessProgression) {
+        ConcurrentLinkedDeque<Integer> receiversToCompute = new ConcurrentLinkedDeque<>();
+        for(int receiverId =0; receiverId < data.receivers.size(); receiverId++) {
+            receiversToCompute.add(receiverId);
+        }
+        int batchCount = Math.min(forkJoinPool.getParallelism(), data.receivers.size());
+        List<ForkJoinTask<?>> batches = new ArrayList<>(batchCount);
+        for(int idBatch = 0; idBatch < batchCount; idBatch++) {
+            if (propaProcessProgression != null && propaProcessProgression.isCanceled()) {
+                break;
+            }
+            batches.add(forkJoinPool.submit(new RangeReceiversComputation(receiversToCompute, this, debugInfo,
+                    propaProcessProgression, computeRaysOut.subProcess())));
+        }
+        for(ForkJoinTask<?> batch : batches) {
+            batch.join();
+        }
+    }
+
     public void run(IComputeRaysOut computeRaysOut) {
         runDebug(computeRaysOut, null);
     }
@@ -1337,6 +1645,9 @@ private static final class RangeReceiversComputation implements Runnable {
                 progressVisitor.cancel();
             }
             throw ex;
+        } finally {
+            propagationProcess.sideHullEdgeCache.remove();
+            FastObstructionTest.releaseWalkBuffer();
         }
     }
 }
@@ -1385,6 +1696,123 @@ public static final class AbsoluteCoordinateSequenceFilter implements Coordinate
     }
 }
 
+/**
+ * Geometry of a free field path between a source and a receiver, see {@link #computeFreeFieldProfile}
+ */
+static final class FreeFieldProfile {
+    private final Coordinate receiverCoord;
+    private final Coordinate srcCoord;
+    private final double gPath;
+    private final double altR;
+    private final double altS;
+    private final Coordinate projReceiver;
+    private final Coordinate projSource;
+    private final Coordinate pInit;
+
+    FreeFieldProfile(Coordinate receiverCoord, Coordinate srcCoord, double gPath, double altR, double altS,
+                     Coordinate projReceiver, Coordinate projSource, Coordinate pInit) {
+        this.receiverCoord = receiverCoord;
+        this.srcCoord = srcCoord;
+        this.gPath = gPath;
+        this.altR = altR;
+        this.altS = altS;
+        this.projReceiver = projReceiver;
+        this.projSource = projSource;
+        this.pInit = pInit;
+    }
+
+    /**
+     * @param gS Source factor absorption
+     * @return New free field path, segments and points are not shared with other paths
+     */
+    PropagationPath toPropagationPath(double gS) {
+        List<PointPath> points = new ArrayList<PointPath>();
+        List<SegmentPath> segments = new ArrayList<SegmentPath>();
+        segments.add(new SegmentPath(gPath, new Vector3D(projSource, projReceiver), new Coordinate(pInit)));
+
+        points.add(new PointPath(srcCoord, altS, new ArrayList<>(), -1, PointPath.POINT_TYPE.SRCE));
+        points.add(new PointPath(receiverCoord, altR, new ArrayList<>(), -1, PointPath.POINT_TYPE.RECV));
+        PropagationPath propagationPath = new PropagationPath(false, points, segments, segments);
+        propagationPath.setGs(gS);
+        return propagationPath;
+    }
+}
+
+/**
+ * Identify the points of a line source for a split count
+ */
+private static final class LineSourceKey {
+    private final int sourceIndex;
+    private final int partIndex;
+    private final long splitCount;
+
+    LineSourceKey(int sourceIndex, int partIndex, long splitCount) {
+        this.sourceIndex = sourceIndex;
+        this.partIndex = partIndex;
+        this.splitCount = splitCount;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LineSourceKey that = (LineSourceKey) o;
+        return sourceIndex == that.sourceIndex && partIndex == that.partIndex && splitCount == that.splitCount;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sourceIndex, partIndex, splitCount);
+    }
+}
+
+/**
+ * Points of a line source with their orientation
+ */
+private static final class LineSourceDiscretization {
+    private final Coordinate[] points;
+    private final Orientation[] orientations;
+    private final double li;
+    private final double gs;
+
+    LineSourceDiscretization(Coordinate[] points, Orientation[] orientations, double li, double gs) {
+        this.points = points;
+        this.orientations = orientations;
+        this.li = li;
+        this.gs = gs;
+    }
+}
+
+/**
+ * Group of sound sources or source point, ordered by descending maximal power
+ */
+private static final class SourceCandidate implements Comparable<SourceCandidate> {
+    private final int node;
+    private final SourcePointInfo sourcePoint;
+    private final double maximalPower;
+
+    SourceCandidate(int node, double maximalPower) {
+        this.node = node;
+        this.sourcePoint = null;
+        this.maximalPower = maximalPower;
+    }
+
+    SourceCandidate(SourcePointInfo sourcePoint) {
+        this.node = -1;
+        this.sourcePoint = sourcePoint;
+        this.maximalPower = sourcePoint.globalWj;
+    }
+
+    @Override
+    public int compareTo(SourceCandidate other) {
+        int cmp = -Double.compare(maximalPower, other.maximalPower);
+        if (cmp == 0 && sourcePoint != null && other.sourcePoint != null) {
+            return sourcePoint.compareTo(other.sourcePoint);
+        }
+        return cmp;
+    }
+}
+
 private static final class SourcePointInfo implements Comparable<SourcePointInfo> {
     private double[] wj;
     private double li; //
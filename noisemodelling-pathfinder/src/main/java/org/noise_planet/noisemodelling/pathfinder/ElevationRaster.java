@@ -0,0 +1,121 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ground elevation of a triangulated mesh sampled on a regular grid of nodes. The ground height at a position is
+ * bilinearly interpolated from the four surrounding nodes, without locating a triangle.
+ */
+public class ElevationRaster {
+    private static final double BARYCENTRIC_EPSILON = 1e-9;
+    private final double minX;
+    private final double minY;
+    private final double resolution;
+    private final int columns;
+    private final int rows;
+    // Ground elevation of the nodes, NaN where the node is not covered by the mesh
+    private final double[] nodeZ;
+
+    /**
+     * @param fastObstructionTest Triangulated mesh
+     * @param resolution Distance between two nodes
+     */
+    public ElevationRaster(FastObstructionTest fastObstructionTest, double resolution) {
+        if(!(resolution > 0)) {
+            throw new IllegalArgumentException("Resolution must be greater than 0");
+        }
+        this.resolution = resolution;
+        Envelope envelope = fastObstructionTest.getMeshEnvelope();
+        if(envelope == null || envelope.isNull()) {
+            minX = 0;
+            minY = 0;
+            columns = 0;
+            rows = 0;
+            nodeZ = new double[0];
+            return;
+        }
+        minX = envelope.getMinX();
+        minY = envelope.getMinY();
+        columns = (int) Math.ceil(envelope.getWidth() / resolution) + 1;
+        rows = (int) Math.ceil(envelope.getHeight() / resolution) + 1;
+        nodeZ = new double[columns * rows];
+        Arrays.fill(nodeZ, Double.NaN);
+        List<Coordinate> vertices = fastObstructionTest.getVertices();
+        for(Triangle triangle : fastObstructionTest.getTriangles()) {
+            rasterizeTriangle(vertices.get(triangle.getA()), vertices.get(triangle.getB()),
+                    vertices.get(triangle.getC()));
+        }
+    }
+
+    /**
+     * Set the nodes located in the triangle with the plane of the triangle
+     */
+    private void rasterizeTriangle(Coordinate a, Coordinate b, Coordinate c) {
+        double det = (b.y - c.y) * (a.x - c.x) + (c.x - b.x) * (a.y - c.y);
+        if(det == 0) {
+            return;
+        }
+        int minColumn = Math.max(0, (int) Math.ceil((Math.min(a.x, Math.min(b.x, c.x)) - minX) / resolution));
+        int maxColumn = Math.min(columns - 1, (int) Math.floor((Math.max(a.x, Math.max(b.x, c.x)) - minX) / resolution));
+        int minRow = Math.max(0, (int) Math.ceil((Math.min(a.y, Math.min(b.y, c.y)) - minY) / resolution));
+        int maxRow = Math.min(rows - 1, (int) Math.floor((Math.max(a.y, Math.max(b.y, c.y)) - minY) / resolution));
+        for(int row = minRow; row <= maxRow; row++) {
+            double y = minY + row * resolution;
+            for(int column = minColumn; column <= maxColumn; column++) {
+                double x = minX + column * resolution;
+                double l1 = ((b.y - c.y) * (x - c.x) + (c.x - b.x) * (y - c.y)) / det;
+                double l2 = ((c.y - a.y) * (x - c.x) + (a.x - c.x) * (y - c.y)) / det;
+                double l3 = 1 - l1 - l2;
+                if(l1 >= -BARYCENTRIC_EPSILON && l2 >= -BARYCENTRIC_EPSILON && l3 >= -BARYCENTRIC_EPSILON) {
+                    nodeZ[row * columns + column] = l1 * a.z + l2 * b.z + l3 * c.z;
+                }
+            }
+        }
+    }
+
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Bilinear interpolation of the ground elevation, NaN if a surrounding node is not covered by the mesh
+     */
+    public double getHeightAtPosition(double x, double y) {
+        double fx = (x - minX) / resolution;
+        double fy = (y - minY) / resolution;
+        if(!(fx >= 0 && fy >= 0 && fx <= columns - 1 && fy <= rows - 1)) {
+            return Double.NaN;
+        }
+        int column = Math.min(columns - 2, (int) fx);
+        int row = Math.min(rows - 2, (int) fy);
+        if(column < 0 || row < 0) {
+            // Only one node on this axis
+            return columns == 1 || rows == 1 ? nodeZ[Math.max(0, row) * columns + Math.max(0, column)] : Double.NaN;
+        }
+        fx -= column;
+        fy -= row;
+        int node = row * columns + column;
+        double z00 = nodeZ[node];
+        double z10 = nodeZ[node + 1];
+        double z01 = nodeZ[node + columns];
+        double z11 = nodeZ[node + columns + 1];
+        return (z00 * (1 - fx) + z10 * fx) * (1 - fy) + (z01 * (1 - fx) + z11 * fx) * fy;
+    }
+}
@@ -60,16 +60,46 @@ public class FastObstructionTest {
     public static final double epsilon = 1e-7;
     public static final double wideAngleTranslationEpsilon = 0.01;
     private static final double MINIMAL_REFLECTION_WALL_LENGTH = 1.0;
-    private List<Triangle> triVertices;
-    private List<Coordinate> vertices;
-    private List<Triangle> triNeighbors; // Neighbors
+    // Relative cross product under which a triangle side is considered parallel to the propagation line
+    private static final double PARALLEL_EPSILON = 1e-12;
+    // Point location walk give up after this number of triangles
+    private static final int MAXIMUM_LOCATION_WALK_STEPS = 256;
+    // Triangle walk scratch memory, reused by all rays of a thread
+    private static final ThreadLocal<WalkBuffer> WALK_BUFFER = ThreadLocal.withInitial(WalkBuffer::new);
+    // Mesh is stored in primitive arrays, vertices of the triangle t are triangleVertices[3t], [3t+1], [3t+2]
+    private int[] triangleVertices;
+    // Building identifier [1-n] of each triangle, 0 if the triangle is not in a building
+    private int[] triangleBuildings;
+    // Neighbor triangle of each triangle side (same layout than triangleVertices), -1 if none
+    private int[] triangleNeighbors;
+    private double[] verticesX;
+    private double[] verticesY;
+    private double[] verticesZ;
     private List<MeshBuilder.PolygonWithHeight> polygonWithHeight = new ArrayList<MeshBuilder.PolygonWithHeight>();//list polygon with height
     private Envelope meshEnvelope;
 
     private STRtree triIndex = null;
+    // Uniform grid of walk start triangles, a triangle having its centroid in the bucket, -1 if none
+    private int[] locationGrid;
+    private int locationGridColumns;
+    private int locationGridRows;
+    private double locationGridCellWidth;
+    private double locationGridCellHeight;
+    // Building walls seen from the free field and their grid index
+    private List<Wall> walls;
+    private int[] wallGridStart;
+    private int[] wallGridIds;
+    private int wallGridColumns;
+    private int wallGridRows;
+    private double wallGridCellWidth;
+    private double wallGridCellHeight;
+    // Last located triangles of each thread, consecutive queries are often close to one of them
+    private final ThreadLocal<int[]> locationHints = ThreadLocal.withInitial(() -> new int[]{-1, -1});
     private List<Float> verticesOpenAngle = null;
     private List<Coordinate> verticesOpenAngleTranslated = null; /*Open angle*/
     private boolean hasBuildingWithHeight;
+    // Optional sampled ground elevation, see getHeightAtPosition
+    private ElevationRaster elevationRaster = null;
     private Logger logger = LoggerFactory.getLogger(FastObstructionTest.class);
     //data for calculate 3D diffraction,
     //first coordinate is the coordinate after the changing coordinate system, the second parameter will keep the data of original coordinate system
@@ -84,7 +114,25 @@ public class FastObstructionTest {
      */
     public FastObstructionTest(List<MeshBuilder.PolygonWithHeight> buildings,
                                List<Triangle> triangles, List<Triangle> triNeighbors, List<Coordinate> points) {
+        this(buildings, toVertexIndices(triangles), toAttributes(triangles),
+                triNeighbors == null ? null : toVertexIndices(triNeighbors), toOrdinates(points, Coordinate.X),
+                toOrdinates(points, Coordinate.Y), toOrdinates(points, Coordinate.Z));
+    }
 
+    /**
+     * Initialize buildings and mesh from primitive arrays. Arrays are not copied.
+     *
+     * @param buildings         list of buildings with their height
+     * @param triangleVertices  vertex indices of triangles, 3 per triangle
+     * @param triangleBuildings building identifier [1-n] of each triangle, 0 if not in a building
+     * @param triangleNeighbors neighbor triangle index of each side, 3 per triangle, -1 if none. May be null
+     * @param verticesX         X of vertices
+     * @param verticesY         Y of vertices
+     * @param verticesZ         Z of vertices
+     */
+    public FastObstructionTest(List<MeshBuilder.PolygonWithHeight> buildings, int[] triangleVertices,
+                               int[] triangleBuildings, int[] triangleNeighbors, double[] verticesX,
+                               double[] verticesY, double[] verticesZ) {
         List<MeshBuilder.PolygonWithHeight> polygonWithHeightArray = new ArrayList<MeshBuilder.PolygonWithHeight>(buildings.size());
         hasBuildingWithHeight = false;
         for(MeshBuilder.PolygonWithHeight poly : buildings) {
@@ -92,28 +140,68 @@ public class FastObstructionTest {
             hasBuildingWithHeight = hasBuildingWithHeight || poly.hasHeight();
         }
         this.polygonWithHeight = polygonWithHeightArray;
-        this.triVertices = triangles;
-        this.triNeighbors = triNeighbors;
-        this.vertices = points;
+        this.triangleVertices = triangleVertices;
+        this.triangleBuildings = triangleBuildings;
+        this.triangleNeighbors = triangleNeighbors;
+        this.verticesX = verticesX;
+        this.verticesY = verticesY;
+        this.verticesZ = verticesZ;
         meshEnvelope = new Envelope();
-        for(Coordinate p : points) {
-            meshEnvelope.expandToInclude(p);
+        for(int vertexId = 0; vertexId < verticesX.length; vertexId++) {
+            meshEnvelope.expandToInclude(verticesX[vertexId], verticesY[vertexId]);
         }
 
         // /////////////////////////////////
         // Feed Query Structure to find triangle, by coordinate
 
         triIndex = new STRtree();
-        for (int triId = 0; triId < this.triVertices.size(); triId++) {
-            Triangle tri = triVertices.get(triId);
-            Envelope env = new Envelope(vertices.get(tri.getA()), vertices.get(tri.getB()));
-            env.expandToInclude(vertices.get(tri.getC()));
+        for (int triId = 0; triId < triangleBuildings.length; triId++) {
+            int a = triangleVertices[triId * 3];
+            int b = triangleVertices[triId * 3 + 1];
+            int c = triangleVertices[triId * 3 + 2];
+            Envelope env = new Envelope(verticesX[a], verticesX[b], verticesY[a], verticesY[b]);
+            env.expandToInclude(verticesX[c], verticesY[c]);
             triIndex.insert(env, triId);
         }
+        buildLocationGrid();
+        buildWallIndex();
         //give a average height to each building
         setAverageBuildingHeight(this.polygonWithHeight);
     }
 
+    private static int[] toVertexIndices(List<Triangle> triangles) {
+        int[] indices = new int[triangles.size() * 3];
+        int i = 0;
+        for(Triangle triangle : triangles) {
+            indices[i++] = triangle.getA();
+            indices[i++] = triangle.getB();
+            indices[i++] = triangle.getC();
+        }
+        return indices;
+    }
+
+    private static int[] toAttributes(List<Triangle> triangles) {
+        int[] attributes = new int[triangles.size()];
+        int i = 0;
+        for(Triangle triangle : triangles) {
+            attributes[i++] = triangle.getAttribute();
+        }
+        return attributes;
+    }
+
+    private static double[] toOrdinates(List<Coordinate> points, int ordinateIndex) {
+        double[] ordinates = new double[points.size()];
+        int i = 0;
+        for(Coordinate point : points) {
+            ordinates[i++] = point.getOrdinate(ordinateIndex);
+        }
+        return ordinates;
+    }
+
+    private Coordinate getVertex(int vertexId) {
+        return new Coordinate(verticesX[vertexId], verticesY[vertexId], verticesZ[vertexId]);
+    }
+
     /**
      * Find all buildings (polygons) that 2D cross the line p1->p2
      * @param p1 first point of line
@@ -123,25 +211,27 @@ public class FastObstructionTest {
      */
     public void getBuildingsOnPath(Coordinate p1, Coordinate p2, IntersectionRayVisitor visitor) {
         // Navigate through triangle feeding the visitor with intersecting buildings
-        LineSegment propaLine = new LineSegment(p1, p2);
         //get receiver triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
-        HashSet<Integer> navigationHistory = new HashSet<Integer>();
-        int navigationTri = curTriP1;
-        while (navigationTri != -1) {
-            navigationHistory.add(navigationTri);
-            Coordinate[] tri = getTriangle(navigationTri);
-            if (dotInTri(p2, tri[0], tri[1], tri[2])) {
-                return;
-            }
-            TriIdWithIntersection propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory);
-            if(propaTri.isIntersectionOnBuilding()) {
-                visitor.visitItem(propaTri.getBuildingId());
-                if(!visitor.doContinue()) {
+        WalkBuffer buffer = acquireWalkBuffer(triangleBuildings.length);
+        try {
+            int navigationTri = curTriP1;
+            while (navigationTri != -1) {
+                buffer.visit(navigationTri);
+                if (dotInTri(p2.x, p2.y, navigationTri)) {
                     return;
                 }
+                int nextTri = this.getNextTri(navigationTri, p1, p2, buffer);
+                if (buffer.intersectionOnBuilding) {
+                    visitor.visitItem(buffer.buildingId);
+                    if (!visitor.doContinue()) {
+                        return;
+                    }
+                }
+                navigationTri = nextTri;
             }
-            navigationTri = propaTri.getTriID();
+        } finally {
+            buffer.inUse = false;
         }
     }
 
@@ -162,7 +252,18 @@ public class FastObstructionTest {
      * @return Triangle list
      */
     public List<Triangle> getTriangles() {
-        return Collections.unmodifiableList(triVertices);
+        return new AbstractList<Triangle>() {
+            @Override
+            public Triangle get(int index) {
+                return new Triangle(triangleVertices[index * 3], triangleVertices[index * 3 + 1],
+                        triangleVertices[index * 3 + 2], triangleBuildings[index]);
+            }
+
+            @Override
+            public int size() {
+                return triangleBuildings.length;
+            }
+        };
     }
 
 
@@ -170,111 +271,117 @@ public class FastObstructionTest {
      * @return vertices list, only for debug and unit test purpose
      */
     public List<Coordinate> getVertices() {
-        return Collections.unmodifiableList(vertices);
+        return new AbstractList<Coordinate>() {
+            @Override
+            public Coordinate get(int index) {
+                return getVertex(index);
+            }
+
+            @Override
+            public int size() {
+                return verticesX.length;
+            }
+        };
     }
 
 
     /**
      * Compute the next triangle index.Find the shortest intersection point of
      * triIndex segments to the p1 coordinate
+     * The intersection is stored into the walk buffer.
      *
      * @param triIndex        Triangle index
-     * @param propagationLine Propagation line
+     * @param p0              Propagation line origin
+     * @param p1              Propagation line destination
+     * @param buffer          Walk buffer with visited triangles, receive the intersection
      * @return Next triangle to the specified direction, -1 if there is no
      * triangle neighbor.
      */
-    private TriIdWithIntersection getNextTri(final int triIndex,
-                                             final LineSegment propagationLine,
-                                             HashSet<Integer> navigationHistory) {
-        final Triangle tri = this.triVertices.get(triIndex);
-        final Triangle triNeighbors = this.triNeighbors.get(triIndex);
+    private int getNextTri(final int triIndex, final Coordinate p0, final Coordinate p1, final WalkBuffer buffer) {
+        final int triOffset = triIndex * 3;
+        final int triBuildingId = triangleBuildings[triIndex];
         int nearestIntersectionSide = -1;
         int idneigh;
 
         double nearestIntersectionPtDist = Double.MAX_VALUE;
-        // Find intersection pt
-        final Coordinate aTri = this.vertices.get(tri.getA());
-        final Coordinate bTri = this.vertices.get(tri.getB());
-        final Coordinate cTri = this.vertices.get(tri.getC());
-        double distline_line;
-        Coordinate intersection = new Coordinate();
+        double intersectionX = 0;
+        double intersectionY = 0;
         //if there is no intersection, by default we set the - max value to Topography intersection to avoid the problem
         double zTopoIntersection = -Double.MAX_VALUE;
         double zPropagationRayIntersection;
         // Intersection First Side
-        idneigh = triNeighbors.get(2);
-        if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(aTri, bTri));
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
-                intersectionTest = closestPoints[0];
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
+        idneigh = triangleNeighbors[triOffset + 2];
+        if (idneigh != -1 && !buffer.isVisited(idneigh)) {
+            int a = triangleVertices[triOffset];
+            int b = triangleVertices[triOffset + 1];
+            if(sideIntersection(p0, p1, a, b, buffer)) {
+                double distline_line = distance2D(p1.x, p1.y, buffer.intersectionX, buffer.intersectionY);
                 if (distline_line < nearestIntersectionPtDist) {
-                    intersection = intersectionTest;
+                    intersectionX = buffer.intersectionX;
+                    intersectionY = buffer.intersectionY;
                     nearestIntersectionPtDist = distline_line;
                     nearestIntersectionSide = 2;
                     //we will get the intersection point coordinate with(x,y,NaN)
                     //get this point Z using interested segment.
-                    zTopoIntersection = calculateLinearInterpolation(aTri, bTri, intersection);
+                    zTopoIntersection = interpolateZ(intersectionX, intersectionY, verticesX[a], verticesY[a],
+                            verticesZ[a], verticesX[b], verticesY[b], verticesZ[b]);
                 }
             }
         }
         // Intersection Second Side
-        idneigh = triNeighbors.get(0);
-        if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(bTri, cTri));
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
-                intersectionTest = closestPoints[0];
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
+        idneigh = triangleNeighbors[triOffset];
+        if (idneigh != -1 && !buffer.isVisited(idneigh)) {
+            int b = triangleVertices[triOffset + 1];
+            int c = triangleVertices[triOffset + 2];
+            if(sideIntersection(p0, p1, b, c, buffer)) {
+                double distline_line = distance2D(p1.x, p1.y, buffer.intersectionX, buffer.intersectionY);
                 if (distline_line < nearestIntersectionPtDist) {
-                    intersection = intersectionTest;
+                    intersectionX = buffer.intersectionX;
+                    intersectionY = buffer.intersectionY;
                     nearestIntersectionPtDist = distline_line;
                     nearestIntersectionSide = 0;
-                    //we will get the intersection point coordinate with(x,y,NaN)
-                    //get this point Z using interested segment.
-                    zTopoIntersection = calculateLinearInterpolation(bTri, cTri, intersection);
+                    zTopoIntersection = interpolateZ(intersectionX, intersectionY, verticesX[b], verticesY[b],
+                            verticesZ[b], verticesX[c], verticesY[c], verticesZ[c]);
                 }
             }
         }
         // Intersection Third Side
-        idneigh = triNeighbors.get(1);
-        if (idneigh != -1 && !navigationHistory.contains(idneigh)) {
-            Coordinate[] closestPoints = propagationLine.closestPoints(new LineSegment(cTri, aTri));
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
-                intersectionTest = closestPoints[0];
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
+        idneigh = triangleNeighbors[triOffset + 1];
+        if (idneigh != -1 && !buffer.isVisited(idneigh)) {
+            int c = triangleVertices[triOffset + 2];
+            int a = triangleVertices[triOffset];
+            if(sideIntersection(p0, p1, c, a, buffer)) {
+                double distline_line = distance2D(p1.x, p1.y, buffer.intersectionX, buffer.intersectionY);
                 if (distline_line < nearestIntersectionPtDist) {
-                    intersection = intersectionTest;
+                    intersectionX = buffer.intersectionX;
+                    intersectionY = buffer.intersectionY;
                     nearestIntersectionSide = 1;
-                    //we will get the intersection point coordinate with(x,y,NaN)
-                    //get this point Z using interested segment.
-                    zTopoIntersection = calculateLinearInterpolation(cTri, aTri, intersection);
+                    zTopoIntersection = interpolateZ(intersectionX, intersectionY, verticesX[c], verticesY[c],
+                            verticesZ[c], verticesX[a], verticesY[a], verticesZ[a]);
                 }
             }
         }
         if (nearestIntersectionSide != -1) {
             //get this point Z using propagation line
-            zPropagationRayIntersection = calculateLinearInterpolation(propagationLine.p0, propagationLine.p1, intersection);
+            zPropagationRayIntersection = interpolateZ(intersectionX, intersectionY, p0.x, p0.y, p0.z, p1.x, p1.y, p1.z);
+            final int nextTriId = triangleNeighbors[triOffset + nearestIntersectionSide];
+            buffer.intersectionX = intersectionX;
+            buffer.intersectionY = intersectionY;
+            buffer.intersectionZ = zPropagationRayIntersection;
+            buffer.intersectionOnBuilding = false;
+            buffer.intersectionOnTopography = false;
             // Manage blocking buildings
-            int neightBuildingId = this.triVertices.get(triNeighbors.get(nearestIntersectionSide)).getAttribute();
+            int neightBuildingId = triangleBuildings[nextTriId];
             int rayBuildingId = 0;
             // Current tri is in building
-            if(tri.getAttribute() != 0) {
-                rayBuildingId = tri.getAttribute();
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(tri.getAttribute() - 1);
+            if(triBuildingId != 0) {
+                rayBuildingId = triBuildingId;
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(triBuildingId - 1);
                 // Stop propagation if ray collide with the building
                 if(!building.hasHeight() || Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection < building.getHeight()) {
-                    return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                            new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
-                            true,false, rayBuildingId);
+                    buffer.intersectionOnBuilding = true;
+                    buffer.buildingId = rayBuildingId;
+                    return nextTriId;
                 }
             }
             // Next tri is in building
@@ -283,29 +390,141 @@ public class FastObstructionTest {
                 MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(neightBuildingId - 1);
                 // Stop propagation if ray collide with the building
                 if(!building.hasHeight() || Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection < building.getHeight()) {
-                    return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                            new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
-                            true,false, rayBuildingId);
+                    buffer.intersectionOnBuilding = true;
+                    buffer.buildingId = rayBuildingId;
+                    return nextTriId;
                 }
             }
+            buffer.buildingId = rayBuildingId;
             //If the Z calculated by propagation Line >= Z calculated by intersected line, we will find next triangle
-            if (Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection + epsilon >= zTopoIntersection) {
-                return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                        new Coordinate(intersection.x, intersection.y, zPropagationRayIntersection),
-                        false, false, rayBuildingId);
-            }
-            //Else, the Z of Topographic intersection > Z calculated by propagation Line, the Topographic intersection will block the propagation line
-            else {
-                //Propagation line blocked by the topography
-                return new TriIdWithIntersection(triNeighbors.get(nearestIntersectionSide),
-                        new Coordinate(intersection.x, intersection.y, zTopoIntersection),
-                        false,true, rayBuildingId);
+            if (!(Double.isNaN(zPropagationRayIntersection) || zPropagationRayIntersection + epsilon >= zTopoIntersection)) {
+                //Else, the Z of Topographic intersection > Z calculated by propagation Line, the Topographic intersection will block the propagation line
+                buffer.intersectionZ = zTopoIntersection;
+                buffer.intersectionOnTopography = true;
             }
+            return nextTriId;
         } else {
-            return new TriIdWithIntersection(-1,
-                    new Coordinate(),
-                    false,false, 0);
+            buffer.intersectionX = 0;
+            buffer.intersectionY = 0;
+            buffer.intersectionZ = Double.NaN;
+            buffer.intersectionOnBuilding = false;
+            buffer.intersectionOnTopography = false;
+            buffer.buildingId = 0;
+            return -1;
+        }
+    }
+
+    private static double distance2D(double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Linear interpolation of Z along a segment, same as {@link Vertex#interpolateZ(Coordinate, Coordinate, Coordinate)}
+     */
+    private static double interpolateZ(double x, double y, double x0, double y0, double z0, double x1, double y1,
+                                       double z1) {
+        double segLen = distance2D(x0, y0, x1, y1);
+        double ptLen = distance2D(x, y, x0, y0);
+        return z0 + (z1 - z0) * (ptLen / segLen);
+    }
+
+    /**
+     * Intersection between the propagation line and a triangle side. Near misses under {@link #epsilon} are
+     * considered as intersections.
+     * @param p0 Propagation line origin
+     * @param p1 Propagation line destination
+     * @param vertexA Side first vertex
+     * @param vertexB Side second vertex
+     * @param buffer Receive the intersection point located on the propagation line
+     * @return True if the propagation line intersects the side
+     */
+    private boolean sideIntersection(Coordinate p0, Coordinate p1, int vertexA, int vertexB, WalkBuffer buffer) {
+        final double ax = verticesX[vertexA];
+        final double ay = verticesY[vertexA];
+        final double rx = p1.x - p0.x;
+        final double ry = p1.y - p0.y;
+        final double sx = verticesX[vertexB] - ax;
+        final double sy = verticesY[vertexB] - ay;
+        final double rLength = Math.sqrt(rx * rx + ry * ry);
+        final double sLength = Math.sqrt(sx * sx + sy * sy);
+        final double denominator = rx * sy - ry * sx;
+        if(Math.abs(denominator) <= PARALLEL_EPSILON * rLength * sLength) {
+            // Parallel or degenerated segments, rare case delegated to JTS
+            Coordinate[] closestPoints = new LineSegment(p0, p1).closestPoints(
+                    new LineSegment(getVertex(vertexA), getVertex(vertexB)));
+            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < epsilon) {
+                buffer.intersectionX = closestPoints[0].x;
+                buffer.intersectionY = closestPoints[0].y;
+                return true;
+            }
+            return false;
+        }
+        final double qpx = ax - p0.x;
+        final double qpy = ay - p0.y;
+        // position on the propagation line and on the side
+        final double t = (qpx * sy - qpy * sx) / denominator;
+        final double u = (qpx * ry - qpy * rx) / denominator;
+        final double tTolerance = epsilon / rLength;
+        final double uTolerance = epsilon / sLength;
+        if(t < -tTolerance || t > 1 + tTolerance || u < -uTolerance || u > 1 + uTolerance) {
+            return false;
+        }
+        buffer.intersectionX = p0.x + t * rx;
+        buffer.intersectionY = p0.y + t * ry;
+        return true;
+    }
+
+    /**
+     * Fast dot in triangle test, same as {@link #dotInTri(Coordinate, Coordinate, Coordinate, Coordinate)}
+     */
+    private boolean dotInTri(double px, double py, int triIndex) {
+        final int a = triangleVertices[triIndex * 3];
+        final int b = triangleVertices[triIndex * 3 + 1];
+        final int c = triangleVertices[triIndex * 3 + 2];
+        final double v0x = verticesX[c] - verticesX[a];
+        final double v0y = verticesY[c] - verticesY[a];
+        final double v1x = verticesX[b] - verticesX[a];
+        final double v1y = verticesY[b] - verticesY[a];
+        final double v2x = px - verticesX[a];
+        final double v2y = py - verticesY[a];
+
+        // Compute dot products
+        double dot00 = v0x * v0x + v0y * v0y;
+        double dot01 = v0x * v1x + v0y * v1y;
+        double dot02 = v0x * v2x + v0y * v2y;
+        double dot11 = v1x * v1x + v1y * v1y;
+        double dot12 = v1x * v2x + v1y * v2y;
+
+        // Compute barycentric coordinates
+        double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+
+        // Check if point is in triangle
+        return (u > (0. - epsilon)) && (v > (0. - epsilon))
+                && (u + v < (1. + epsilon));
+    }
+
+    /**
+     * Free the triangle walk memory of the current thread, it is sized by the largest mesh walked by the thread
+     */
+    public static void releaseWalkBuffer() {
+        WALK_BUFFER.remove();
+    }
+
+    /**
+     * @return Walk buffer of the current thread, or a new one if it is already used (nested walk)
+     */
+    private static WalkBuffer acquireWalkBuffer(int triangleCount) {
+        WalkBuffer buffer = WALK_BUFFER.get();
+        if(buffer.inUse) {
+            buffer = new WalkBuffer();
         }
+        buffer.inUse = true;
+        buffer.newWalk(triangleCount);
+        return buffer;
     }
 
     private boolean dotInTri(Coordinate p, Coordinate a, Coordinate b,
@@ -356,19 +575,160 @@ public class FastObstructionTest {
     }
 
     Coordinate[] getTriangle(int triIndex) {
-        final Triangle tri = this.triVertices.get(triIndex);
-        return new Coordinate[]{this.vertices.get(tri.getA()),
-                this.vertices.get(tri.getB()), this.vertices.get(tri.getC())};
+        final int triOffset = triIndex * 3;
+        return new Coordinate[]{getVertex(triangleVertices[triOffset]),
+                getVertex(triangleVertices[triOffset + 1]), getVertex(triangleVertices[triOffset + 2])};
+    }
+
+    /**
+     * Fill the walk start grid, with about 4 triangles per bucket
+     */
+    private void buildLocationGrid() {
+        final int triangleCount = triangleBuildings.length;
+        if(triangleCount == 0 || meshEnvelope.isNull() || meshEnvelope.getWidth() <= 0 ||
+                meshEnvelope.getHeight() <= 0) {
+            locationGrid = null;
+            return;
+        }
+        double bucketArea = meshEnvelope.getArea() / Math.max(1, triangleCount / 4);
+        double bucketSide = Math.sqrt(bucketArea);
+        locationGridColumns = Math.max(1, (int) Math.ceil(meshEnvelope.getWidth() / bucketSide));
+        locationGridRows = Math.max(1, (int) Math.ceil(meshEnvelope.getHeight() / bucketSide));
+        locationGridCellWidth = meshEnvelope.getWidth() / locationGridColumns;
+        locationGridCellHeight = meshEnvelope.getHeight() / locationGridRows;
+        locationGrid = new int[locationGridColumns * locationGridRows];
+        Arrays.fill(locationGrid, -1);
+        for (int triId = 0; triId < triangleCount; triId++) {
+            int a = triangleVertices[triId * 3];
+            int b = triangleVertices[triId * 3 + 1];
+            int c = triangleVertices[triId * 3 + 2];
+            int bucket = getLocationGridBucket((verticesX[a] + verticesX[b] + verticesX[c]) / 3,
+                    (verticesY[a] + verticesY[b] + verticesY[c]) / 3);
+            if(bucket >= 0 && locationGrid[bucket] == -1) {
+                locationGrid[bucket] = triId;
+            }
+        }
+    }
+
+    /**
+     * @return Bucket index in locationGrid or -1 if the point is outside of the mesh envelope
+     */
+    private int getLocationGridBucket(double x, double y) {
+        int column = (int) ((x - meshEnvelope.getMinX()) / locationGridCellWidth);
+        int row = (int) ((y - meshEnvelope.getMinY()) / locationGridCellHeight);
+        // Points on the max bounds belong to the last bucket
+        column = Math.min(column, locationGridColumns - 1);
+        row = Math.min(row, locationGridRows - 1);
+        if(column < 0 || row < 0 || x > meshEnvelope.getMaxX() || y > meshEnvelope.getMaxY()) {
+            return -1;
+        }
+        return row * locationGridColumns + column;
+    }
+
+    /**
+     * Visibility walk to the triangle that contain the point. Only triangles that contain the point with a margin
+     * are returned, so the result is the same as the exhaustive search in {@link #getTriangleIdByCoordinate}.
+     * @param x Point X
+     * @param y Point Y
+     * @param startTri Walk start triangle
+     * @param maxSteps Maximum number of crossed triangles
+     * @return Triangle Id, or -1 if the walk failed (point near a side, outside of the mesh or too far)
+     */
+    private int walkToPoint(double x, double y, int startTri, int maxSteps) {
+        int triId = startTri;
+        for(int step = 0; step <= maxSteps && triId >= 0; step++) {
+            final int triOffset = triId * 3;
+            final int a = triangleVertices[triOffset];
+            final int b = triangleVertices[triOffset + 1];
+            final int c = triangleVertices[triOffset + 2];
+            final double v0x = verticesX[c] - verticesX[a];
+            final double v0y = verticesY[c] - verticesY[a];
+            final double v1x = verticesX[b] - verticesX[a];
+            final double v1y = verticesY[b] - verticesY[a];
+            final double v2x = x - verticesX[a];
+            final double v2y = y - verticesY[a];
+            double dot00 = v0x * v0x + v0y * v0y;
+            double dot01 = v0x * v1x + v0y * v1y;
+            double dot02 = v0x * v2x + v0y * v2y;
+            double dot11 = v1x * v1x + v1y * v1y;
+            double dot12 = v1x * v2x + v1y * v2y;
+            double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+            // Barycentric weight of c, b and a
+            double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+            double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+            double w = 1 - u - v;
+            if(!(Double.isFinite(u) && Double.isFinite(v))) {
+                return -1;
+            }
+            if(u > epsilon && v > epsilon && w > epsilon) {
+                return triId;
+            }
+            if(triangleNeighbors == null || (u > -epsilon && v > -epsilon && w > -epsilon)) {
+                // Point is near a side, let the exhaustive search choose the triangle
+                return -1;
+            }
+            // Cross the side of the most negative weight, neighbor i is opposite to vertex i
+            if(u <= v && u <= w) {
+                triId = triangleNeighbors[triOffset + 2];
+            } else if(v <= w) {
+                triId = triangleNeighbors[triOffset + 1];
+            } else {
+                triId = triangleNeighbors[triOffset];
+            }
+        }
+        return -1;
     }
 
     /**
      * Return the triangle id from a point coordinate inside the triangle
+     * The triangle is first searched by walking from the last triangles found by this thread or from the location
+     * grid, then by the exhaustive search.
      *
      * @param pt Point test
      * @return Triangle Id, Or -1 if no triangle has been found
      */
-
     public int getTriangleIdByCoordinate(Coordinate pt) {
+        int[] hints = locationHints.get();
+        int triId = -1;
+        for(int idHint = 0; idHint < hints.length && triId == -1; idHint++) {
+            if(hints[idHint] >= 0) {
+                triId = walkToPoint(pt.x, pt.y, hints[idHint], 0);
+                if(triId >= 0 && idHint > 0) {
+                    // Keep the most recent hint first
+                    hints[idHint] = hints[0];
+                    hints[0] = triId;
+                    return triId;
+                }
+            }
+        }
+        if(triId == -1 && locationGrid != null) {
+            int bucket = getLocationGridBucket(pt.x, pt.y);
+            int startTri = bucket >= 0 ? locationGrid[bucket] : -1;
+            if(startTri == -1) {
+                startTri = hints[0];
+            }
+            if(startTri >= 0) {
+                triId = walkToPoint(pt.x, pt.y, startTri, MAXIMUM_LOCATION_WALK_STEPS);
+            }
+        }
+        if(triId == -1) {
+            triId = getTriangleIdByCoordinateExhaustive(pt);
+        }
+        if(triId >= 0 && triId != hints[0]) {
+            hints[1] = hints[0];
+            hints[0] = triId;
+        }
+        return triId;
+    }
+
+    /**
+     * Return the triangle id from a point coordinate using the triangle envelope index.
+     * If the point is not inside a triangle the nearest triangle in a 1 m range is returned.
+     *
+     * @param pt Point test
+     * @return Triangle Id, Or -1 if no triangle has been found
+     */
+    int getTriangleIdByCoordinateExhaustive(Coordinate pt) {
         Envelope ptEnv = new Envelope(pt);
         ptEnv.expandBy(1);
         List res = triIndex.query(new Envelope(ptEnv));
@@ -458,58 +818,61 @@ public class FastObstructionTest {
      */
     public List<Coordinate> getWideAnglePoints(double minAngle, double maxAngle) {
         List<Coordinate> wideAnglePts = new ArrayList<Coordinate>(
-                vertices.size());
+                verticesX.length);
         if (verticesOpenAngle == null) {
-            verticesOpenAngle = new ArrayList<Float>(vertices.size()); // Reserve
+            verticesOpenAngle = new ArrayList<Float>(verticesX.length); // Reserve
             // size
             verticesOpenAngleTranslated = new ArrayList<Coordinate>(
-                    vertices.size());
+                    verticesX.length);
             // Vertex open angle. For each vertex
             // [ccwmin,ccwmax,ccwmin,ccwmax,..]
             ArrayList<ArrayList<Double>> verticesOpenAnglesTuples = new ArrayList<ArrayList<Double>>(
-                    vertices.size());
-            for (int idvert = 0; idvert < vertices.size(); idvert++) {
+                    verticesX.length);
+            for (int idvert = 0; idvert < verticesX.length; idvert++) {
                 verticesOpenAngle.add(0.f);
                 verticesOpenAnglesTuples.add(new ArrayList<Double>());
             }
 
 
-            for (Triangle tri : this.triVertices) {
-                if (tri.getAttribute() < 1) {
+            for (int triId = 0; triId < triangleBuildings.length; triId++) {
+                if (triangleBuildings[triId] < 1) {
                     // Compute angle at each corner, then add to vertices angle
                     // array
-                    Coordinate triA = vertices.get(tri.getA());
-                    Coordinate triB = vertices.get(tri.getB());
-                    Coordinate triC = vertices.get(tri.getC());
+                    int idA = triangleVertices[triId * 3];
+                    int idB = triangleVertices[triId * 3 + 1];
+                    int idC = triangleVertices[triId * 3 + 2];
+                    Coordinate triA = getVertex(idA);
+                    Coordinate triB = getVertex(idB);
+                    Coordinate triC = getVertex(idC);
                     // Add A vertex min/max angle
-                    updateMinMax(tri.getA(), triA, triB, triC,
+                    updateMinMax(idA, triA, triB, triC,
                             verticesOpenAnglesTuples);
-                    verticesOpenAngle.set(tri.getA(),
-                            (float) (verticesOpenAngle.get(tri.getA()) + Angle
+                    verticesOpenAngle.set(idA,
+                            (float) (verticesOpenAngle.get(idA) + Angle
                                     .angleBetween(triB, triA, triC))
                     );
                     // Add B vertex angle
-                    updateMinMax(tri.getB(), triB, triC, triA,
+                    updateMinMax(idB, triB, triC, triA,
                             verticesOpenAnglesTuples);
-                    verticesOpenAngle.set(tri.getB(),
-                            (float) (verticesOpenAngle.get(tri.getB()) + Angle
+                    verticesOpenAngle.set(idB,
+                            (float) (verticesOpenAngle.get(idB) + Angle
                                     .angleBetween(triA, triB, triC))
                     );
                     // Add C vertex angle
-                    updateMinMax(tri.getC(), triC, triA, triB,
+                    updateMinMax(idC, triC, triA, triB,
                             verticesOpenAnglesTuples);
-                    verticesOpenAngle.set(tri.getC(),
-                            (float) (verticesOpenAngle.get(tri.getC()) + Angle
+                    verticesOpenAngle.set(idC,
+                            (float) (verticesOpenAngle.get(idC) + Angle
                                     .angleBetween(triB, triC, triA))
                     );
                 }
             }
 
-            for (int idvert = 0; idvert < vertices.size(); idvert++) {
+            for (int idvert = 0; idvert < verticesX.length; idvert++) {
                 // Compute median angle of open angle point
                 ArrayList<Double> curvert = verticesOpenAnglesTuples
                         .get(idvert);
-                Coordinate curVert = vertices.get(idvert);
+                Coordinate curVert = getVertex(idvert);
                 if (curvert.size() == 2) {
                     double ccw1 = curvert.get(0);
                     double ccw2 = curvert.get(1);
@@ -582,79 +945,149 @@ public class FastObstructionTest {
     }
 
     /**
-     * Compute the list of segments corresponding to holes and domain limitation
-     *
-     * @param maxDist Maximum distance from origin to segments
-     * @param p1      Origin of search
-     * @return List of segment
+     * Index the building walls seen from the free field (sides between a free triangle and a building triangle)
+     * into a uniform grid. Walls keep the orientation of the free triangle.
      */
-    public LinkedList<Wall> getLimitsInRange(double maxDist,
-                                             Coordinate p1, boolean goThroughWalls) {
-        LinkedList<Wall> walls = new LinkedList<>();
-        int curTri = getTriangleIdByCoordinate(p1);
-        int p1Building = 0;
-        p1Building = triVertices.get(curTri).getAttribute();
-        int nextTri = -1;
-        short firstSide = 0;
-        HashSet<Integer> navigationHistory = new HashSet<Integer>(); // List all
-        // triangles
-        // already
-        // processed
-        Stack<Integer> navigationNodes = new Stack<Integer>(); // List the
-        // current queue
-        // of triangles
-        // the process
-        // go through
-        Stack<Short> navigationSide = new Stack<Short>(); //History of current processing side
-
-        while (curTri != -1) {
-            if(firstSide == 0) {
-                navigationHistory.add(curTri);
-            }
-            // for each side of the triangle
-            Triangle neighbors = this.triNeighbors.get(curTri);
-            nextTri = -1;
-            for (short sideId = firstSide; sideId < 3; sideId++) {
-                Triangle tri = this.triVertices.get(curTri);
-                IntSegment segVerticesIndex = tri
-                        .getSegment(sideId);
-                int wallBuildingId = 0;
-                if(neighbors.get(sideId) != -1) {
-                    wallBuildingId = triVertices.get(neighbors.get(sideId)).getAttribute();
+    private void buildWallIndex() {
+        walls = new ArrayList<>();
+        if(triangleNeighbors != null) {
+            for (int triId = 0; triId < triangleBuildings.length; triId++) {
+                if (triangleBuildings[triId] != 0) {
+                    continue;
                 }
-                Wall wall = new Wall(
-                        this.vertices.get(segVerticesIndex.getA()),
-                        this.vertices.get(segVerticesIndex.getB()),wallBuildingId);
-                Coordinate closestPoint = wall.closestPoint(p1);
-                if (closestPoint.distance(p1) <= maxDist) {
-                    // Propagate search in this direction if this is not the domain limitation
-                    if (neighbors.get(sideId) != -1) {
-                        // If the triangle side is a wal
-                        if (wall.getBuildingId() >= 1 && wall.getLength() > MINIMAL_REFLECTION_WALL_LENGTH) {
+                final int triOffset = triId * 3;
+                for (int sideId = 0; sideId < 3; sideId++) {
+                    // side is the opposite of vertex sideId, see Triangle#getSegment
+                    int neighborTri = triangleNeighbors[triOffset + sideId];
+                    if (neighborTri != -1 && triangleBuildings[neighborTri] >= 1) {
+                        Wall wall = new Wall(getVertex(triangleVertices[triOffset + (sideId + 1) % 3]),
+                                getVertex(triangleVertices[triOffset + (sideId + 2) % 3]),
+                                triangleBuildings[neighborTri]);
+                        if (wall.getLength() > MINIMAL_REFLECTION_WALL_LENGTH) {
                             walls.add(wall);
                         }
-                        if((goThroughWalls || wall.getBuildingId() == 0 || wall.getBuildingId() == p1Building) && !navigationHistory.contains(neighbors.get(sideId))) {
-                            // Store currentTriangle Id. This is where to go
-                            // back when there is no more navigable neighbors at
-                            // the next triangle
-                            navigationNodes.add(curTri);
-                            navigationSide.add(sideId);
-                            firstSide = 0;
-                            nextTri = neighbors.get(sideId);
-                            break; // Next triangle
+                    }
+                }
+            }
+        }
+        if(walls.isEmpty() || meshEnvelope.getWidth() <= 0 || meshEnvelope.getHeight() <= 0) {
+            wallGridColumns = 1;
+            wallGridRows = 1;
+            wallGridCellWidth = Math.max(meshEnvelope.getWidth(), 1);
+            wallGridCellHeight = Math.max(meshEnvelope.getHeight(), 1);
+        } else {
+            double bucketSide = Math.sqrt(meshEnvelope.getArea() / walls.size());
+            wallGridColumns = Math.max(1, (int) Math.ceil(meshEnvelope.getWidth() / bucketSide));
+            wallGridRows = Math.max(1, (int) Math.ceil(meshEnvelope.getHeight() / bucketSide));
+            wallGridCellWidth = meshEnvelope.getWidth() / wallGridColumns;
+            wallGridCellHeight = meshEnvelope.getHeight() / wallGridRows;
+        }
+        // Packed bucket content, walls of bucket b are wallGridIds[wallGridStart[b]] to wallGridIds[wallGridStart[b+1]-1]
+        wallGridStart = new int[wallGridColumns * wallGridRows + 1];
+        for(int pass = 0; pass < 2; pass++) {
+            int[] bucketFill = pass == 0 ? wallGridStart : new int[wallGridStart.length];
+            for (int wallId = 0; wallId < walls.size(); wallId++) {
+                Wall wall = walls.get(wallId);
+                int minColumn = getWallGridColumn(Math.min(wall.p0.x, wall.p1.x));
+                int maxColumn = getWallGridColumn(Math.max(wall.p0.x, wall.p1.x));
+                int minRow = getWallGridRow(Math.min(wall.p0.y, wall.p1.y));
+                int maxRow = getWallGridRow(Math.max(wall.p0.y, wall.p1.y));
+                for (int row = minRow; row <= maxRow; row++) {
+                    for (int column = minColumn; column <= maxColumn; column++) {
+                        int bucket = row * wallGridColumns + column;
+                        if (pass == 0) {
+                            bucketFill[bucket + 1]++;
+                        } else {
+                            wallGridIds[wallGridStart[bucket] + bucketFill[bucket]++] = wallId;
                         }
                     }
                 }
             }
-            if (nextTri == -1 && !navigationNodes.empty()) {
-                // All the side have been rejected, go back by one on the
-                // navigation
-                nextTri = navigationNodes.pop();
-                firstSide = (short) (navigationSide.pop() + 1);
+            if(pass == 0) {
+                for (int bucket = 0; bucket < wallGridColumns * wallGridRows; bucket++) {
+                    wallGridStart[bucket + 1] += wallGridStart[bucket];
+                }
+                wallGridIds = new int[wallGridStart[wallGridStart.length - 1]];
+            }
+        }
+    }
+
+    private int getWallGridColumn(double x) {
+        return Math.max(0, Math.min(wallGridColumns - 1,
+                (int) Math.floor((x - meshEnvelope.getMinX()) / wallGridCellWidth)));
+    }
+
+    private int getWallGridRow(double y) {
+        return Math.max(0, Math.min(wallGridRows - 1,
+                (int) Math.floor((y - meshEnvelope.getMinY()) / wallGridCellHeight)));
+    }
+
+    /**
+     * @param wallId Wall identifier returned by {@link #getWallIdsInRange(double, Coordinate)}
+     * @return Building wall
+     */
+    public Wall getWall(int wallId) {
+        return walls.get(wallId);
+    }
+
+    /**
+     * @return Number of indexed building walls
+     */
+    public int getWallCount() {
+        return walls.size();
+    }
+
+    /**
+     * Find building walls near a point
+     *
+     * @param maxDist Maximum distance from origin to walls
+     * @param p1      Origin of search
+     * @return Wall identifiers in ascending order
+     */
+    public int[] getWallIdsInRange(double maxDist, Coordinate p1) {
+        int minColumn = getWallGridColumn(p1.x - maxDist);
+        int maxColumn = getWallGridColumn(p1.x + maxDist);
+        int minRow = getWallGridRow(p1.y - maxDist);
+        int maxRow = getWallGridRow(p1.y + maxDist);
+        int[] candidates = new int[16];
+        int candidateCount = 0;
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int column = minColumn; column <= maxColumn; column++) {
+                int bucket = row * wallGridColumns + column;
+                for(int i = wallGridStart[bucket]; i < wallGridStart[bucket + 1]; i++) {
+                    if(candidateCount == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, candidates.length * 2);
+                    }
+                    candidates[candidateCount++] = wallGridIds[i];
+                }
+            }
+        }
+        // Walls crossing several buckets are found multiple times
+        Arrays.sort(candidates, 0, candidateCount);
+        int resultCount = 0;
+        for(int i = 0; i < candidateCount; i++) {
+            int wallId = candidates[i];
+            if((resultCount == 0 || candidates[resultCount - 1] != wallId) && walls.get(wallId).distance(p1) <= maxDist) {
+                candidates[resultCount++] = wallId;
             }
-            curTri = nextTri;
         }
-        return walls;
+        return Arrays.copyOf(candidates, resultCount);
+    }
+
+    /**
+     * Compute the list of building walls in range
+     *
+     * @param maxDist Maximum distance from origin to segments
+     * @param p1      Origin of search
+     * @return List of walls, sorted by wall identifier
+     */
+    public List<Wall> getLimitsInRange(double maxDist, Coordinate p1) {
+        int[] wallIds = getWallIdsInRange(maxDist, p1);
+        List<Wall> wallsInRange = new ArrayList<>(wallIds.length);
+        for(int wallId : wallIds) {
+            wallsInRange.add(walls.get(wallId));
+        }
+        return wallsInRange;
     }
 
     /**
@@ -669,18 +1102,51 @@ public class FastObstructionTest {
 
     }
 
+    /**
+     * @return Sampled ground elevation used by {@link #getHeightAtPosition(Coordinate)}, null if not set
+     */
+    public ElevationRaster getElevationRaster() {
+        return elevationRaster;
+    }
+
+    /**
+     * Interpolate the ground elevation on a regular grid instead of locating the triangle of each position.
+     * @param elevationRaster Sampled ground elevation of this mesh, null to always use the triangles
+     */
+    public void setElevationRaster(ElevationRaster elevationRaster) {
+        this.elevationRaster = elevationRaster;
+    }
+
+    /**
+     * Ground elevation of a set of positions
+     * @param points Extraction points
+     * @return Interpolated Z values, NaN if out of bounds
+     */
+    public double[] getHeightAtPositions(Coordinate[] points) {
+        double[] heights = new double[points.length];
+        for(int i = 0; i < points.length; i++) {
+            heights[i] = getHeightAtPosition(points[i]);
+        }
+        return heights;
+    }
+
     /**
      * Interpolate Z value in the triangle that contain p1
      * @param p1 Extraction point
      * @return Interpolated Z value, NaN if out of bounds
      */
     public double getHeightAtPosition(Coordinate p1) {
+        if(elevationRaster != null) {
+            double z = elevationRaster.getHeightAtPosition(p1.x, p1.y);
+            if(!Double.isNaN(z)) {
+                return z;
+            }
+        }
         int curTri = getTriangleIdByCoordinate(p1);
         if(curTri >= 0) {
-            Triangle triangle = triVertices.get(curTri);
+            Coordinate[] triangle = getTriangle(curTri);
             org.locationtech.jts.geom.Triangle tri =
-                    new org.locationtech.jts.geom.Triangle(vertices.get(triangle.getA()),
-                            vertices.get(triangle.getB()),vertices.get(triangle.getC()));
+                    new org.locationtech.jts.geom.Triangle(triangle[0], triangle[1], triangle[2]);
 
             return tri.interpolateZ(p1);
         } else {
@@ -737,7 +1203,6 @@ public class FastObstructionTest {
      * @return True if the propagation goes from p1 to p2.
      */
     public boolean computePropagationPath(Coordinate p1, Coordinate p2, boolean stopOnIntersection, List<TriIdWithIntersection> path, boolean includePoints) {
-        LineSegment propaLine = new LineSegment(p1, p2);
 
         //get receiver triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
@@ -753,18 +1218,18 @@ public class FastObstructionTest {
         }
         Coordinate[] triP1 = getTriangle(curTriP1);
         Coordinate[] triP2 = getTriangle(curTriP2);
-        Triangle buildingP1 = this.triVertices.get(curTriP1);
-        Triangle buildingP2 = this.triVertices.get(curTriP2);
+        final int buildingP1 = triangleBuildings[curTriP1];
+        final int buildingP2 = triangleBuildings[curTriP2];
         if(stopOnIntersection) {
-            if (buildingP1.getAttribute() >= 1) {
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP1.getAttribute() - 1);
+            if (buildingP1 >= 1) {
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP1 - 1);
                 if (!building.hasHeight() || Double.isNaN(p1.z) || building.getHeight() >= p1.z) {
                     //receiver is in the building so this propagation line is invisible
                     return false;
                 }
             }
-            if (buildingP2.getAttribute() >= 1) {
-                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP2.getAttribute() - 1);
+            if (buildingP2 >= 1) {
+                MeshBuilder.PolygonWithHeight building = polygonWithHeight.get(buildingP2 - 1);
                 if (!building.hasHeight() || Double.isNaN(p2.z) || building.getHeight() >= p2.z) {
                     //receiver is in the building so this propagation line is invisible
                     return false;
@@ -781,32 +1246,38 @@ public class FastObstructionTest {
             //Z value of origin or destination is lower than topography. FreeField is always false in this case
             if(includePoints) {
                 path.add(new TriIdWithIntersection(curTriP2, new Coordinate(p2.x, p2.y, zTopoP2), false, false,
-                        buildingP2.getAttribute()));
+                        buildingP2));
             }
             return false;
         }
 
-        HashSet<Integer> navigationHistory = new HashSet<Integer>();
-        int navigationTri = curTriP1;
-        while (navigationTri != -1) {
-            navigationHistory.add(navigationTri);
-            Coordinate[] tri = getTriangle(navigationTri);
-            if (dotInTri(p2, tri[0], tri[1], tri[2])) {
-                if(includePoints) {
-                    path.add(new TriIdWithIntersection(curTriP2, new Coordinate(p2.x, p2.y, zTopoP2), false, false,
-                            buildingP2.getAttribute()));
+        WalkBuffer buffer = acquireWalkBuffer(triangleBuildings.length);
+        try {
+            int navigationTri = curTriP1;
+            while (navigationTri != -1) {
+                buffer.visit(navigationTri);
+                if (dotInTri(p2.x, p2.y, navigationTri)) {
+                    if (includePoints) {
+                        path.add(new TriIdWithIntersection(curTriP2, new Coordinate(p2.x, p2.y, zTopoP2), false, false,
+                                buildingP2));
+                    }
+                    return true;
+                }
+                int nextTri = this.getNextTri(navigationTri, p1, p2, buffer);
+                // Intersection objects are only created when the path is requested
+                if (path != null && nextTri >= 0) {
+                    path.add(new TriIdWithIntersection(nextTri, new Coordinate(buffer.intersectionX,
+                            buffer.intersectionY, buffer.intersectionZ), buffer.intersectionOnBuilding,
+                            buffer.intersectionOnTopography, buffer.buildingId));
+                }
+                if (!stopOnIntersection || !buffer.intersectionOnBuilding && !buffer.intersectionOnTopography) {
+                    navigationTri = nextTri;
+                } else {
+                    navigationTri = -1;
                 }
-                return true;
-            }
-            TriIdWithIntersection propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory);
-            if (path != null && propaTri.getTriID() >= 0) {
-                path.add(propaTri);
-            }
-            if (!stopOnIntersection || !propaTri.isIntersectionOnBuilding() && !propaTri.isIntersectionOnTopography()) {
-                navigationTri = propaTri.getTriID();
-            } else {
-                navigationTri = -1;
             }
+        } finally {
+            buffer.inUse = false;
         }
         // Can't find a way to p2
         return false;
@@ -832,9 +1303,8 @@ public class FastObstructionTest {
     public List<Coordinate> getGroundProfile(List<TriIdWithIntersection> allInterPoints) {
         List<Coordinate> groundProfile = new ArrayList<>(allInterPoints.size());
         for(TriIdWithIntersection tri : allInterPoints) {
-            Triangle triangle = triVertices.get(tri.getTriID());
-            double zTri = getTopoZByGiven3Points(vertices.get(triangle.getA()), vertices.get(triangle.getB()),
-                    vertices.get(triangle.getC()), tri.getCoorIntersection());
+            Coordinate[] triangle = getTriangle(tri.getTriID());
+            double zTri = getTopoZByGiven3Points(triangle[0], triangle[1], triangle[2], tri.getCoorIntersection());
             groundProfile.add(new Coordinate(tri.getCoorIntersection().x, tri.getCoorIntersection().y, zTri));
         }
         return groundProfile;
@@ -900,7 +1370,8 @@ public class FastObstructionTest {
         // Change from ground height for receiver and source to real receiver and source height
         if(receiver.distance(allInterPoints.get(0)) > receiver.distance(allInterPoints.get(allInterPoints.size() - 1))) {
             // the first inter point should be the receiver not the source
-            // reverse the order of the lists
+            // reverse the order of the lists, the intersections of the caller are left unchanged
+            allInterPoints = new ArrayList<>(allInterPoints);
             Collections.reverse(allInterPoints);
             Collections.reverse(interPoints);
         }
@@ -1371,6 +1842,43 @@ public class FastObstructionTest {
         return Vertex.interpolateZ(point, p1, p2, p3);
     }
 
+    /**
+     * Scratch memory of a triangle walk. Visited triangles are marked with the walk epoch, so the marks do not have
+     * to be cleared between walks.
+     */
+    private static final class WalkBuffer {
+        private int[] visitedEpoch = new int[0];
+        private int epoch = 0;
+        boolean inUse = false;
+        // Last intersection found by getNextTri
+        double intersectionX;
+        double intersectionY;
+        double intersectionZ;
+        boolean intersectionOnBuilding;
+        boolean intersectionOnTopography;
+        int buildingId;
+
+        void newWalk(int triangleCount) {
+            if(visitedEpoch.length < triangleCount) {
+                visitedEpoch = new int[triangleCount];
+                epoch = 0;
+            }
+            if(epoch == Integer.MAX_VALUE) {
+                Arrays.fill(visitedEpoch, 0);
+                epoch = 0;
+            }
+            epoch++;
+        }
+
+        void visit(int triIndex) {
+            visitedEpoch[triIndex] = epoch;
+        }
+
+        boolean isVisited(int triIndex) {
+            return visitedEpoch[triIndex] == epoch;
+        }
+    }
+
     public static final class Wall extends LineSegment {
         private int buildingId = 0;
 
@@ -1397,22 +1905,20 @@ public class FastObstructionTest {
         sb.append("CREATE TABLE TRI_NEIGHBOURS(id serial, the_geom LINESTRING);\n");
         GeometryFactory gf = new GeometryFactory();
         WKTWriter wktWriter = new WKTWriter(3);
-        int idTriangle = 0;
-        for( Triangle t : triVertices) {
-            Coordinate[] line = new Coordinate[] {vertices.get(t.getA()), vertices.get(t.getB()), vertices.get(t.getC()), vertices.get(t.getA())};
+        for(int idTriangle = 0; idTriangle < triangleBuildings.length; idTriangle++) {
+            Coordinate[] t = getTriangle(idTriangle);
+            Coordinate[] line = new Coordinate[] {t[0], t[1], t[2], t[0]};
             sb.append(String.format("INSERT INTO TRIANGLES(THE_GEOM) VALUES ('%s');\n", gf.createPolygon(line)));
-            Coordinate from = new org.locationtech.jts.geom.Triangle(vertices.get(t.getA()), vertices.get(t.getB()), vertices.get(t.getC())).centroid();
+            Coordinate from = new org.locationtech.jts.geom.Triangle(t[0], t[1], t[2]).centroid();
             // Dump neighbours links
-            Triangle neigh = triNeighbors.get(idTriangle);
             for(int n = 0; n < 3; n++) {
-                int vIndex = neigh.get(n);
+                int vIndex = triangleNeighbors[idTriangle * 3 + n];
                 if(vIndex >= 0) {
-                    Triangle tn = triVertices.get(vIndex);
-                    Coordinate to = new org.locationtech.jts.geom.Triangle(vertices.get(tn.getA()), vertices.get(tn.getB()), vertices.get(tn.getC())).centroid();
+                    Coordinate[] tn = getTriangle(vIndex);
+                    Coordinate to = new org.locationtech.jts.geom.Triangle(tn[0], tn[1], tn[2]).centroid();
                     sb.append(String.format("INSERT INTO TRI_NEIGHBOURS(THE_GEOM) VALUES ('%s');\n", gf.createLineString(new Coordinate[]{from, to})));
                 }
             }
-            idTriangle++;
         }
         return sb.toString();
     }
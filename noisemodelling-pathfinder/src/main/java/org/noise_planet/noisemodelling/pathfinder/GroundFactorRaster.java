@@ -0,0 +1,168 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Location;
+
+import java.util.List;
+
+/**
+ * Ground factor (G) sampled on a regular grid. The value of a cell is the sum of the ground factors of the soil areas
+ * that contain the cell center. The mean ground factor of a path is the integral of the cells crossed by the path.
+ */
+public class GroundFactorRaster {
+    private final Envelope envelope;
+    private final double resolution;
+    private final int columns;
+    private final int rows;
+    private final float[] values;
+
+    /**
+     * @param soilTypeList Soil areas
+     * @param resolution Cell side length
+     */
+    public GroundFactorRaster(List<GeoWithSoilType> soilTypeList, double resolution) {
+        if(!(resolution > 0)) {
+            throw new IllegalArgumentException("Resolution must be greater than 0");
+        }
+        this.resolution = resolution;
+        envelope = new Envelope();
+        for(GeoWithSoilType soilType : soilTypeList) {
+            envelope.expandToInclude(soilType.getGeo().getEnvelopeInternal());
+        }
+        if(envelope.isNull()) {
+            columns = 0;
+            rows = 0;
+            values = new float[0];
+            return;
+        }
+        columns = Math.max(1, (int) Math.ceil(envelope.getWidth() / resolution));
+        rows = Math.max(1, (int) Math.ceil(envelope.getHeight() / resolution));
+        values = new float[columns * rows];
+        Coordinate cellCenter = new Coordinate();
+        for(GeoWithSoilType soilType : soilTypeList) {
+            if(soilType.getType() == 0) {
+                continue;
+            }
+            Envelope soilEnvelope = soilType.getGeo().getEnvelopeInternal();
+            IndexedPointInAreaLocator locator = new IndexedPointInAreaLocator(soilType.getGeo());
+            int minColumn = getColumn(soilEnvelope.getMinX());
+            int maxColumn = getColumn(soilEnvelope.getMaxX());
+            int minRow = getRow(soilEnvelope.getMinY());
+            int maxRow = getRow(soilEnvelope.getMaxY());
+            for(int row = minRow; row <= maxRow; row++) {
+                cellCenter.y = envelope.getMinY() + (row + 0.5) * resolution;
+                for(int column = minColumn; column <= maxColumn; column++) {
+                    cellCenter.x = envelope.getMinX() + (column + 0.5) * resolution;
+                    if(locator.locate(cellCenter) != Location.EXTERIOR) {
+                        values[row * columns + column] += (float) soilType.getType();
+                    }
+                }
+            }
+        }
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - envelope.getMinX()) / resolution)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((y - envelope.getMinY()) / resolution)));
+    }
+
+    public double getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return Ground factor at this location, 0 outside of the soil areas
+     */
+    public double getGroundFactor(double x, double y) {
+        if(values.length == 0 || !envelope.contains(x, y)) {
+            return 0;
+        }
+        return values[getRow(y) * columns + getColumn(x)];
+    }
+
+    /**
+     * Mean ground factor along a segment, computed by walking through the crossed cells.
+     * @param p0 First point
+     * @param p1 Second point
+     * @return Mean ground factor weighted by the 2D length in each cell, NaN if the points are equal
+     */
+    public double getMeanGroundFactor(Coordinate p0, Coordinate p1) {
+        final double dx = p1.x - p0.x;
+        final double dy = p1.y - p0.y;
+        if(dx == 0 && dy == 0) {
+            return Double.NaN;
+        }
+        if(values.length == 0) {
+            return 0;
+        }
+        // Clip the segment with the raster envelope, the ground factor is 0 outside
+        double tMin = 0;
+        double tMax = 1;
+        double[] origins = {p0.x - envelope.getMinX(), p0.y - envelope.getMinY()};
+        double[] directions = {dx, dy};
+        double[] sizes = {columns * resolution, rows * resolution};
+        for(int axis = 0; axis < 2; axis++) {
+            if(directions[axis] == 0) {
+                if(origins[axis] < 0 || origins[axis] > sizes[axis]) {
+                    return 0;
+                }
+            } else {
+                double t0 = -origins[axis] / directions[axis];
+                double t1 = (sizes[axis] - origins[axis]) / directions[axis];
+                tMin = Math.max(tMin, Math.min(t0, t1));
+                tMax = Math.min(tMax, Math.max(t0, t1));
+            }
+        }
+        if(tMin >= tMax) {
+            return 0;
+        }
+        // Cell traversal (Amanatides and Woo)
+        double startX = origins[0] + tMin * dx;
+        double startY = origins[1] + tMin * dy;
+        int column = Math.max(0, Math.min(columns - 1, (int) Math.floor(startX / resolution)));
+        int row = Math.max(0, Math.min(rows - 1, (int) Math.floor(startY / resolution)));
+        final int stepColumn = dx > 0 ? 1 : -1;
+        final int stepRow = dy > 0 ? 1 : -1;
+        final double tDeltaX = dx != 0 ? resolution / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        final double tDeltaY = dy != 0 ? resolution / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tNextX = dx != 0 ? ((column + (dx > 0 ? 1 : 0)) * resolution - origins[0]) / dx : Double.POSITIVE_INFINITY;
+        double tNextY = dy != 0 ? ((row + (dy > 0 ? 1 : 0)) * resolution - origins[1]) / dy : Double.POSITIVE_INFINITY;
+        double t = tMin;
+        double weightedLength = 0;
+        while (t < tMax) {
+            double tExit = Math.min(tMax, Math.min(tNextX, tNextY));
+            weightedLength += (tExit - t) * values[row * columns + column];
+            t = tExit;
+            if(tNextX < tNextY) {
+                column += stepColumn;
+                tNextX += tDeltaX;
+            } else {
+                row += stepRow;
+                tNextY += tDeltaY;
+            }
+            if(column < 0 || column >= columns || row < 0 || row >= rows) {
+                break;
+            }
+        }
+        // t is a fraction of the segment length
+        return weightedLength;
+    }
+}
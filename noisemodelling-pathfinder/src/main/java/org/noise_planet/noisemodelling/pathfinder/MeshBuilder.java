@@ -505,6 +505,22 @@ public class MeshBuilder {
         polygonWithHeight.clear();
     }
 
+    Set<Coordinate> getTopoPoints() {
+        return topoPoints;
+    }
+
+    Set<LineString> getTopoLines() {
+        return topoLines;
+    }
+
+    double getMaximumArea() {
+        return maximumArea;
+    }
+
+    boolean isComputeNeighbors() {
+        return computeNeighbors;
+    }
+
     /**
      * Add a constraint on maximum triangle area.
      * @param maximumArea Value in square meter.
@@ -0,0 +1,289 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.io.ParseException;
+import org.locationtech.jts.io.WKBReader;
+import org.locationtech.jts.io.WKBWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Store cell triangulations into a directory, in order to skip the Delaunay triangulation when the buildings and
+ * the digital elevation model of the cell did not change since a previous computation.
+ * Files are named with a SHA-256 hash of the mesh inputs (buildings, topography, envelope and mesh parameters).
+ */
+public class MeshCache {
+    private static final int FILE_MAGIC = 0x4e4d4d43; // NMMC
+    private static final int FORMAT_VERSION = 1;
+    private static final String FILE_EXTENSION = ".mesh";
+    private static final Comparator<Coordinate> COORDINATE_3D_COMPARATOR = (o1, o2) -> {
+        int cmp = o1.compareTo(o2);
+        return cmp != 0 ? cmp : Double.compare(o1.z, o2.z);
+    };
+    private final Logger logger = LoggerFactory.getLogger(MeshCache.class);
+    private final File directory;
+
+    /**
+     * @param directory Folder that contains the cached triangulations, created if it does not exist
+     */
+    public MeshCache(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Triangulate the mesh or reload the triangulation of a previous computation with the same inputs.
+     * @param mesh Mesh fed with buildings and topography, finishPolygonFeeding must not have been called
+     * @param boundingBoxFilter Mesh envelope
+     * @return Obstruction test instance
+     * @throws LayerDelaunayError
+     * @throws IOException
+     */
+    public FastObstructionTest getFastObstructionTest(MeshBuilder mesh, Envelope boundingBoxFilter)
+            throws LayerDelaunayError, IOException {
+        File meshFile = new File(directory, computeKey(mesh, boundingBoxFilter) + FILE_EXTENSION);
+        if(meshFile.exists()) {
+            try {
+                return readMesh(meshFile);
+            } catch (IOException ex) {
+                logger.warn("Ignore unreadable mesh file " + meshFile.getAbsolutePath(), ex);
+            }
+        }
+        mesh.finishPolygonFeeding(boundingBoxFilter);
+        writeMesh(meshFile, mesh);
+        return new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(), mesh.getTriNeighbors(),
+                mesh.getVertices());
+    }
+
+    /**
+     * @param mesh Mesh fed with buildings and topography
+     * @param boundingBoxFilter Mesh envelope
+     * @return Hexadecimal hash of the triangulation inputs
+     * @throws IOException
+     */
+    public static String computeKey(MeshBuilder mesh, Envelope boundingBoxFilter) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+        WKBWriter wkbWriter = new WKBWriter(3);
+        try(DataOutputStream out = new DataOutputStream(new DigestOutputStream(new NullOutputStream(), digest))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeDouble(boundingBoxFilter.getMinX());
+            out.writeDouble(boundingBoxFilter.getMaxX());
+            out.writeDouble(boundingBoxFilter.getMinY());
+            out.writeDouble(boundingBoxFilter.getMaxY());
+            out.writeDouble(mesh.getMaximumArea());
+            out.writeBoolean(mesh.isComputeNeighbors());
+            // Buildings order change the merge result so it is kept, JdbcNoiseMap feeds them in primary key order
+            out.writeInt(mesh.getPolygonWithHeight().size());
+            for(MeshBuilder.PolygonWithHeight building : mesh.getPolygonWithHeight()) {
+                writeBuilding(out, wkbWriter, building);
+            }
+            List<Coordinate> topoPoints = new ArrayList<>(mesh.getTopoPoints());
+            Collections.sort(topoPoints, COORDINATE_3D_COMPARATOR);
+            out.writeInt(topoPoints.size());
+            for(Coordinate topoPoint : topoPoints) {
+                PropagationPath.writeCoordinate(out, topoPoint);
+            }
+            List<String> topoLines = new ArrayList<>(mesh.getTopoLines().size());
+            for(LineString topoLine : mesh.getTopoLines()) {
+                topoLines.add(WKBWriter.toHex(wkbWriter.write(topoLine)));
+            }
+            Collections.sort(topoLines);
+            out.writeInt(topoLines.size());
+            for(String topoLine : topoLines) {
+                out.writeUTF(topoLine);
+            }
+        }
+        StringBuilder key = new StringBuilder();
+        for(byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    private static void writeBuilding(DataOutputStream out, WKBWriter wkbWriter,
+                                      MeshBuilder.PolygonWithHeight building) throws IOException {
+        byte[] wkb = wkbWriter.write(building.getGeometry());
+        out.writeInt(wkb.length);
+        out.write(wkb);
+        out.writeDouble(building.getHeight());
+        out.writeInt(building.getPrimaryKey());
+        List<Double> alpha = building.getAlpha();
+        out.writeInt(alpha.size());
+        for(double a : alpha) {
+            out.writeDouble(a);
+        }
+    }
+
+    private static void writeTriangles(DataOutputStream out, List<Triangle> triangles) throws IOException {
+        out.writeInt(triangles.size());
+        for(Triangle triangle : triangles) {
+            out.writeInt(triangle.getA());
+            out.writeInt(triangle.getB());
+            out.writeInt(triangle.getC());
+            out.writeInt(triangle.getAttribute());
+        }
+    }
+
+    /**
+     * Write the triangulated mesh. The file is written next to the destination then moved, so concurrent readers
+     * never see a partial file.
+     * @param meshFile Destination file
+     * @param mesh Triangulated mesh
+     * @throws IOException
+     */
+    void writeMesh(File meshFile, MeshBuilder mesh) throws IOException {
+        if(!directory.exists() && !directory.mkdirs() && !directory.exists()) {
+            throw new IOException("Can not create the mesh cache directory " + directory.getAbsolutePath());
+        }
+        File tempFile = File.createTempFile("mesh", ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                List<Coordinate> vertices = mesh.getVertices();
+                out.writeInt(vertices.size());
+                for (Coordinate vertex : vertices) {
+                    PropagationPath.writeCoordinate(out, vertex);
+                }
+                writeTriangles(out, mesh.getTriangles());
+                List<Triangle> neighbors = mesh.getTriNeighbors();
+                out.writeBoolean(neighbors != null);
+                if (neighbors != null) {
+                    writeTriangles(out, neighbors);
+                }
+                WKBWriter wkbWriter = new WKBWriter(3);
+                out.writeInt(mesh.getPolygonWithHeight().size());
+                for (MeshBuilder.PolygonWithHeight building : mesh.getPolygonWithHeight()) {
+                    writeBuilding(out, wkbWriter, building);
+                }
+            }
+            Files.move(tempFile.toPath(), meshFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * @param buffer Source buffer
+     * @param triangleVertices (Out) 3 vertex index per triangle
+     * @param triangleAttributes (Out) attribute of each triangle, may be null
+     */
+    private static void readTriangles(ByteBuffer buffer, int[] triangleVertices, int[] triangleAttributes) {
+        for(int i = 0; i < triangleVertices.length / 3; i++) {
+            triangleVertices[i * 3] = buffer.getInt();
+            triangleVertices[i * 3 + 1] = buffer.getInt();
+            triangleVertices[i * 3 + 2] = buffer.getInt();
+            int attribute = buffer.getInt();
+            if(triangleAttributes != null) {
+                triangleAttributes[i] = attribute;
+            }
+        }
+    }
+
+    /**
+     * Read a mesh file through a memory mapped buffer
+     * @param meshFile Mesh file written by {@link #writeMesh(File, MeshBuilder)}
+     * @return Obstruction test instance
+     * @throws IOException
+     */
+    FastObstructionTest readMesh(File meshFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(meshFile.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if(buffer.getInt() != FILE_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Unsupported mesh file " + meshFile.getAbsolutePath());
+            }
+            int verticesSize = buffer.getInt();
+            double[] verticesX = new double[verticesSize];
+            double[] verticesY = new double[verticesSize];
+            double[] verticesZ = new double[verticesSize];
+            for(int i = 0; i < verticesSize; i++) {
+                verticesX[i] = buffer.getDouble();
+                verticesY[i] = buffer.getDouble();
+                verticesZ[i] = buffer.getDouble();
+            }
+            int trianglesSize = buffer.getInt();
+            int[] triangleVertices = new int[trianglesSize * 3];
+            int[] triangleBuildings = new int[trianglesSize];
+            readTriangles(buffer, triangleVertices, triangleBuildings);
+            int[] triangleNeighbors = null;
+            if(buffer.get() != 0) {
+                triangleNeighbors = new int[buffer.getInt() * 3];
+                readTriangles(buffer, triangleNeighbors, null);
+            }
+            int buildingsSize = buffer.getInt();
+            List<MeshBuilder.PolygonWithHeight> buildings = new ArrayList<>(buildingsSize);
+            WKBReader wkbReader = new WKBReader();
+            for(int i = 0; i < buildingsSize; i++) {
+                byte[] wkb = new byte[buffer.getInt()];
+                buffer.get(wkb);
+                double height = buffer.getDouble();
+                int primaryKey = buffer.getInt();
+                int alphaSize = buffer.getInt();
+                List<Double> alpha = new ArrayList<>(alphaSize);
+                for(int idAlpha = 0; idAlpha < alphaSize; idAlpha++) {
+                    alpha.add(buffer.getDouble());
+                }
+                MeshBuilder.PolygonWithHeight building = new MeshBuilder.PolygonWithHeight(wkbReader.read(wkb),
+                        height, alpha);
+                building.setPrimaryKey(primaryKey);
+                buildings.add(building);
+            }
+            return new FastObstructionTest(buildings, triangleVertices, triangleBuildings, triangleNeighbors,
+                    verticesX, verticesY, verticesZ);
+        } catch (ParseException | RuntimeException ex) {
+            throw new IOException("Corrupted mesh file " + meshFile.getAbsolutePath(), ex);
+        }
+    }
+
+    private static final class NullOutputStream extends OutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
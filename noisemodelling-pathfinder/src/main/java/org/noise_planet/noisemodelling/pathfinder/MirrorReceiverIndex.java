@@ -0,0 +1,84 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.LineIntersector;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Spatial index of the receiver images of one receiver. Each source point fetch only the images that may produce a
+ * reflection path.
+ */
+public class MirrorReceiverIndex {
+    private final List<MirrorReceiverResult> mirrorReceiverResults;
+    private final List<FastObstructionTest.Wall> nearBuildingsWalls;
+    private final STRtree imageIndex = new STRtree();
+
+    /**
+     * @param mirrorReceiverResults Receiver images, see {@link MirrorReceiverIterator}
+     * @param nearBuildingsWalls Walls referenced by the receiver images
+     */
+    public MirrorReceiverIndex(List<MirrorReceiverResult> mirrorReceiverResults,
+                               List<FastObstructionTest.Wall> nearBuildingsWalls) {
+        this.mirrorReceiverResults = mirrorReceiverResults;
+        this.nearBuildingsWalls = nearBuildingsWalls;
+        for(int imageId = 0; imageId < mirrorReceiverResults.size(); imageId++) {
+            imageIndex.insert(new Envelope(mirrorReceiverResults.get(imageId).getReceiverPos()), imageId);
+        }
+        imageIndex.build();
+    }
+
+    /**
+     * @return All receiver images
+     */
+    public List<MirrorReceiverResult> getMirrorReceiverResults() {
+        return mirrorReceiverResults;
+    }
+
+    /**
+     * Receiver images located at less than maxDistance from the source, where the line between the source and the
+     * image crosses the last reflection wall.
+     * @param srcCoord Source position
+     * @param maxDistance Maximum 3D distance between the source and the image
+     * @return Receiver images in the same order than the indexed list
+     */
+    public List<MirrorReceiverResult> findCloseMirrorReceivers(Coordinate srcCoord, double maxDistance) {
+        Envelope queryEnvelope = new Envelope(srcCoord);
+        queryEnvelope.expandBy(maxDistance);
+        List<Integer> imageIds = new ArrayList<>();
+        for(Object imageId : imageIndex.query(queryEnvelope)) {
+            imageIds.add((Integer) imageId);
+        }
+        Collections.sort(imageIds);
+        LineIntersector linters = new RobustLineIntersector();
+        List<MirrorReceiverResult> closeImages = new ArrayList<>(imageIds.size());
+        for(int imageId : imageIds) {
+            MirrorReceiverResult image = mirrorReceiverResults.get(imageId);
+            if(image.getReceiverPos().distance3D(srcCoord) > maxDistance) {
+                continue;
+            }
+            FastObstructionTest.Wall wall = nearBuildingsWalls.get(image.getWallId());
+            linters.computeIntersection(wall.p0, wall.p1, image.getReceiverPos(), srcCoord);
+            if(linters.hasIntersection()) {
+                closeImages.add(image);
+            }
+        }
+        return closeImages;
+    }
+}
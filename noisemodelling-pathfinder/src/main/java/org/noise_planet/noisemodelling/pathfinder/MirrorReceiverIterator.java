@@ -47,17 +47,31 @@ import java.util.*;
 public class MirrorReceiverIterator implements Iterator<MirrorReceiverResult> {
     private final Coordinate receiverCoord;
     private final List<FastObstructionTest.Wall> nearBuildingsWalls;
-    // Wall stack
-    private CrossTableIterator wallIdentifierIt;
-    private MirrorReceiverResult current = null;
     private final int maxDepth;
+    private final double maxDistance;
+    private final boolean beamCulling;
+    // Depth first walk state, arrays are indexed by depth
+    // Wall identifier of the node at each depth
+    private final int[] nodeWall;
+    // Mirrored receiver at each depth
+    private final MirrorReceiverResult[] nodeImage;
+    // Current depth, -1 when the walk is done
+    private int depth = 0;
+    private MirrorReceiverResult current = null;
 
     private MirrorReceiverIterator(Coordinate receiverCoord, List<FastObstructionTest.Wall> nearBuildingsWalls
-           , int maxDepth) {
+           , int maxDepth, double maxDistance, boolean beamCulling) {
         this.receiverCoord = receiverCoord;
         this.nearBuildingsWalls = nearBuildingsWalls;
-        this.wallIdentifierIt = new CrossTableIterator(maxDepth, nearBuildingsWalls.size());
         this.maxDepth = maxDepth;
+        this.maxDistance = maxDistance;
+        this.beamCulling = beamCulling;
+        this.nodeWall = new int[Math.max(1, maxDepth)];
+        this.nodeImage = new MirrorReceiverResult[Math.max(1, maxDepth)];
+        nodeWall[0] = -1;
+        if(maxDepth < 1) {
+            depth = -1;
+        }
         fetchNext();
     }
 
@@ -66,15 +80,31 @@ public class MirrorReceiverIterator implements Iterator<MirrorReceiverResult> {
         return current != null;
     }
 
-    private void fetchNext() {
-        if(!wallIdentifierIt.hasNext()) {
-            current = null;
+    /**
+     * Move to the next wall of the current depth, or go back to the parent depth if all walls have been processed
+     * @return False if there is no more walls
+     */
+    private boolean nextSibling() {
+        while (depth >= 0) {
+            int wallId = nodeWall[depth] + 1;
+            // A wall can not reflect its own image
+            if(depth > 0 && wallId == nodeWall[depth - 1]) {
+                wallId++;
+            }
+            if(wallId < nearBuildingsWalls.size()) {
+                nodeWall[depth] = wallId;
+                return true;
+            }
+            depth--;
         }
+        return false;
+    }
+
+    private void fetchNext() {
         MirrorReceiverResult next = null;
-        while(wallIdentifierIt.hasNext()) {
-            List<Integer> currentWall = wallIdentifierIt.next();
-            MirrorReceiverResult parent = fetchParent(current, currentWall);
-            int wallId = currentWall.get(currentWall.size() - 1);
+        while(next == null && nextSibling()) {
+            int wallId = nodeWall[depth];
+            MirrorReceiverResult parent = depth > 0 ? nodeImage[depth - 1] : null;
             FastObstructionTest.Wall wall = nearBuildingsWalls.get(wallId);
             //Counter ClockWise test. Walls vertices are CCW oriented.
             //This help to test if a wall could see a point or another wall
@@ -90,44 +120,59 @@ public class MirrorReceiverIterator implements Iterator<MirrorReceiverResult> {
                 isCCW = MirrorReceiverIterator.wallWallTest(nearBuildingsWalls.get(parent.getWallId()), wall)
                          && MirrorReceiverIterator.wallPointTest(wall, receiverCoord);
             }
+            // The reflection path length is greater than the distance between the parent image and the wall
+            if (isCCW && wall.distance(receiverIm) > maxDistance) {
+                isCCW = false;
+            }
+            // The reflection point must be seen from the parent image through the parent wall
+            if (isCCW && beamCulling && parent != null &&
+                    !beamIntersects(receiverIm, nearBuildingsWalls.get(parent.getWallId()), wall)) {
+                isCCW = false;
+            }
             if (isCCW) {
                 Coordinate intersectionPt = wall.project(receiverIm);
                 Coordinate mirrored = new Coordinate(2 * intersectionPt.x
                         - receiverIm.x, 2 * intersectionPt.y
                         - receiverIm.y, receiverIm.z);
-                    next = new MirrorReceiverResult(mirrored,
-                            parent, wallId, wall.getBuildingId());
-                    break;
-            }
-            // MirrorReceiverResult has not been found with this wall
-            // Do not fetch sub-reflections
-            if(currentWall.size() < maxDepth) {
-                wallIdentifierIt.skipLevel();
+                next = new MirrorReceiverResult(mirrored,
+                        parent, wallId, wall.getBuildingId());
+                // Process sub-reflections of this wall before the next wall
+                if(depth + 1 < maxDepth) {
+                    nodeImage[depth] = next;
+                    depth++;
+                    nodeWall[depth] = -1;
+                }
             }
+            // else MirrorReceiverResult has not been found with this wall, do not fetch sub-reflections
         }
         current = next;
     }
 
-    private static MirrorReceiverResult fetchParent(MirrorReceiverResult lastOne, List<Integer> currentWall) {
-        if(currentWall.size() == 1) {
-            return null;
-        } else {
-            Deque<MirrorReceiverResult> parents = new ArrayDeque<>();
-            MirrorReceiverResult cursor = lastOne;
-            while(cursor != null) {
-                parents.addFirst(cursor);
-                cursor = cursor.getParentMirror();
-            }
-            int walli = 0;
-            for(MirrorReceiverResult parent : parents) {
-                if(parent.getWallId() != currentWall.get(walli++)) {
-                    break;
-                } else {
-                    cursor = parent;
-                }
-            }
-            return cursor;
+    /**
+     * Beam test. The beam is the area behind the wall seen from the image source.
+     * @param image Apex of the beam
+     * @param beamWall Wall that limit the beam
+     * @param wall Tested wall
+     * @return False if the tested wall is entirely outside of the beam sides
+     */
+    static boolean beamIntersects(Coordinate image, LineSegment beamWall, LineSegment wall) {
+        Coordinate a = beamWall.p0;
+        Coordinate b = beamWall.p1;
+        double orientation = Math.signum(cross(image, a, b));
+        if(orientation == 0) {
+            return true;
         }
+        // signed distance of wall vertices to the beam sides, positive inside of the beam
+        double sideA0 = orientation * cross(image, a, wall.p0) / image.distance(a);
+        double sideA1 = orientation * cross(image, a, wall.p1) / image.distance(a);
+        double sideB0 = orientation * cross(image, wall.p0, b) / image.distance(b);
+        double sideB1 = orientation * cross(image, wall.p1, b) / image.distance(b);
+        return !(sideA0 < -FastObstructionTest.epsilon && sideA1 < -FastObstructionTest.epsilon) &&
+                !(sideB0 < -FastObstructionTest.epsilon && sideB1 < -FastObstructionTest.epsilon);
+    }
+
+    private static double cross(Coordinate origin, Coordinate p1, Coordinate p2) {
+        return (p1.x - origin.x) * (p2.y - origin.y) - (p1.y - origin.y) * (p2.x - origin.x);
     }
 
     @Override
@@ -168,18 +213,45 @@ public class MirrorReceiverIterator implements Iterator<MirrorReceiverResult> {
         private final Coordinate receiverCoord;
         private final List<FastObstructionTest.Wall> nearBuildingsWalls;
         private final int maxDepth;
+        private final double maxDistance;
+        private final boolean beamCulling;
 
+        /**
+         * Iterate over all receiver images with walls oriented toward the receiver
+         * @param receiverCoord Receiver position
+         * @param nearBuildingsWalls Walls
+         * @param maxDepth Maximum reflection order
+         */
         public It(Coordinate receiverCoord, List<FastObstructionTest.Wall> nearBuildingsWalls
                 , int maxDepth) {
             this.receiverCoord = receiverCoord;
             this.nearBuildingsWalls = nearBuildingsWalls;
             this.maxDepth = maxDepth;
+            this.maxDistance = Double.MAX_VALUE;
+            this.beamCulling = false;
+        }
+
+        /**
+         * Iterate over the receiver images that may produce a reflection path shorter than maxDistance.
+         * Images that can not be seen through the parent wall are skipped with their sub-reflections.
+         * @param receiverCoord Receiver position
+         * @param nearBuildingsWalls Walls
+         * @param maxDepth Maximum reflection order
+         * @param maxDistance Maximum length of reflection paths
+         */
+        public It(Coordinate receiverCoord, List<FastObstructionTest.Wall> nearBuildingsWalls
+                , int maxDepth, double maxDistance) {
+            this.receiverCoord = receiverCoord;
+            this.nearBuildingsWalls = nearBuildingsWalls;
+            this.maxDepth = maxDepth;
+            this.maxDistance = maxDistance;
+            this.beamCulling = true;
         }
 
         @Override
         public java.util.Iterator<MirrorReceiverResult> iterator() {
             return new MirrorReceiverIterator(receiverCoord, nearBuildingsWalls,
-                    maxDepth);
+                    maxDepth, maxDistance, beamCulling);
         }
     }
 
@@ -66,6 +66,11 @@ public class PropagationPath {
             new Orientation(0,0,0);
     double gs;
     private boolean initialized = false;
+    // Geometry that does not depend on the meteorological condition, shared by the homogeneous and favorable passes
+    private boolean geometryInitialized = false;
+    private SegmentGeometry[] segmentGeometries;
+    private double srD;
+    private double srDp;
     // computed in Augmented Path
     public List<Integer> difHPoints = new ArrayList<Integer>(); // diffraction points indices on horizontal edges
     public List<Integer> difVPoints = new ArrayList<Integer>(); // diffraction points indices on vertical edges
@@ -170,6 +175,7 @@ public class PropagationPath {
      */
     public void readStream( DataInputStream in ) throws IOException {
         favorable = in.readBoolean();
+        geometryInitialized = false;
         idSource = in.readInt();
         float bearing = in.readFloat();
         float inclination = in.readFloat();
@@ -207,8 +213,23 @@ public class PropagationPath {
         return initialized;
     }
 
+    /**
+     * @param initialized False to compute again all the values of the path on the next initialisation
+     */
     protected void setInitialized(boolean initialized) {
         this.initialized = initialized;
+        if(!initialized) {
+            geometryInitialized = false;
+        }
+    }
+
+    /**
+     * Compute again the values that depends on the meteorological condition on the next initialisation, the mean
+     * plane projections are kept. The SR path may be shared with other paths, so it must be refreshed before
+     * evaluating this path again.
+     */
+    public void invalidateConditionValues() {
+        this.initialized = false;
     }
 
     public List<PointPath> getPointList() {return pointList;}
@@ -217,11 +238,11 @@ public class PropagationPath {
 
     public List<SegmentPath> getSRList() {return srList;}
 
-    public void setPointList(List<PointPath> pointList) {this.pointList = pointList;}
+    public void setPointList(List<PointPath> pointList) {this.pointList = pointList; setInitialized(false);}
 
-    public void setSegmentList(List<SegmentPath>  segmentList) {this.segmentList = segmentList;}
+    public void setSegmentList(List<SegmentPath>  segmentList) {this.segmentList = segmentList; setInitialized(false);}
 
-    public void setSRList(List<SegmentPath> srList) {this.srList = srList;}
+    public void setSRList(List<SegmentPath> srList) {this.srList = srList; setInitialized(false);}
 
 
     public PropagationPath(List<SegmentPath> segmentList) {
@@ -232,9 +253,16 @@ public class PropagationPath {
         return favorable;
     }
 
+    /**
+     * Change the meteorological condition of the path. Only the values that depends on the condition are computed
+     * again on the next initialisation, the mean plane projections are kept.
+     * @param favorable True for favorable condition, false for homogeneous condition
+     */
     public void setFavorable(boolean favorable) {
-        this.favorable =  favorable;
-        setInitialized(false);
+        if(this.favorable != favorable) {
+            this.favorable = favorable;
+            this.initialized = false;
+        }
     }
 
 
@@ -261,9 +289,12 @@ public class PropagationPath {
      */
     public void initPropagationPath() {
         if(!isInitialized()) {
-            computeAugmentedPath();
+            if(!geometryInitialized) {
+                computeAugmentedPath();
+            }
             computeAugmentedSegments();
             computeAugmentedSRPath();
+            geometryInitialized = true;
             setInitialized(true);
         }
     }
@@ -284,30 +315,11 @@ public class PropagationPath {
         Coordinate S = (Coordinate) pointList.get(0).coordinate.clone();
         Coordinate R = (Coordinate) pointList.get(pointList.size()-1).coordinate.clone();
 
-        // Projected source and receiver on MeanPlane
-        Coordinate SGround = projectPointonVector(S,SR.vector3D,SR.pInit);
-        Coordinate RGround = projectPointonVector(R,SR.vector3D,SR.pInit);
-
-        SR.d = CGAlgorithms3D.distance(S, R);
-        SR.dp = CGAlgorithms3D.distance(SGround, RGround);
-
-        // In case of reflections the slanted path passes through the image sources.
-        if (refPoints.size()>0){
-            Coordinate ini = S;
-            Coordinate iniGround = SGround;
-            SR.d =0.;
-            SR.dp = 0.;
-            for (int idPoint = 1; idPoint < pointList.size(); idPoint++) {
-                if (pointList.get(idPoint).type == PointPath.POINT_TYPE.REFL){
-                    SR.d += CGAlgorithms3D.distance(ini, pointList.get(idPoint).coordinate);
-                    ini = pointList.get(idPoint).coordinate;
-
-                    SR.dp += CGAlgorithms3D.distance(iniGround, projectPointonVector(pointList.get(idPoint).coordinate,SR.vector3D,SR.pInit));
-                    iniGround = projectPointonVector(pointList.get(idPoint).coordinate,SR.vector3D,SR.pInit);
-                }
-            }
-            SR.d  += CGAlgorithms3D.distance(ini, R);
-            SR.dp += CGAlgorithms3D.distance(iniGround, RGround);
+        if(geometryInitialized) {
+            SR.d = srD;
+            SR.dp = srDp;
+        } else {
+            computeSRDistances(SR, S, R);
         }
 
         SR.dc = (favorable) ? getRayCurveLength(SR.d,SR.d): SR.d;
@@ -487,8 +499,54 @@ public class PropagationPath {
         SR.testFormPrime = testFormPrime;
     }
 
+    /**
+     * Compute the direct and mean plane distances of the SR path, these distances are kept for both meteorological
+     * conditions.
+     */
+    private void computeSRDistances(SegmentPath SR, Coordinate S, Coordinate R) {
+        // Projected source and receiver on MeanPlane
+        Coordinate SGround = projectPointonVector(S,SR.vector3D,SR.pInit);
+        Coordinate RGround = projectPointonVector(R,SR.vector3D,SR.pInit);
+
+        SR.d = CGAlgorithms3D.distance(S, R);
+        SR.dp = CGAlgorithms3D.distance(SGround, RGround);
+
+        // In case of reflections the slanted path passes through the image sources.
+        if (refPoints.size()>0){
+            Coordinate ini = S;
+            Coordinate iniGround = SGround;
+            SR.d =0.;
+            SR.dp = 0.;
+            for (int idPoint = 1; idPoint < pointList.size(); idPoint++) {
+                if (pointList.get(idPoint).type == PointPath.POINT_TYPE.REFL){
+                    SR.d += CGAlgorithms3D.distance(ini, pointList.get(idPoint).coordinate);
+                    ini = pointList.get(idPoint).coordinate;
+
+                    SR.dp += CGAlgorithms3D.distance(iniGround, projectPointonVector(pointList.get(idPoint).coordinate,SR.vector3D,SR.pInit));
+                    iniGround = projectPointonVector(pointList.get(idPoint).coordinate,SR.vector3D,SR.pInit);
+                }
+            }
+            SR.d  += CGAlgorithms3D.distance(ini, R);
+            SR.dp += CGAlgorithms3D.distance(iniGround, RGround);
+        }
+        srD = SR.d;
+        srDp = SR.dp;
+    }
+
 
     void computeAugmentedSegments() {
+        if(geometryInitialized && segmentGeometries != null && segmentGeometries.length == segmentList.size()) {
+            // Restore the shared geometry (the SR path may have overwritten it) and compute the curved length only
+            for (int idSegment = 0; idSegment < segmentList.size(); idSegment++) {
+                SegmentPath segmentPath = segmentList.get(idSegment);
+                segmentPath.idPtStart = idSegment;
+                segmentPath.idPtFinal = idSegment+1;
+                segmentGeometries[idSegment].restore(segmentPath);
+                segmentPath.dc = favorable ? getRayCurveLength(segmentPath.d, segmentPath.d) : segmentPath.d;
+            }
+            return;
+        }
+        segmentGeometries = new SegmentGeometry[segmentList.size()];
         for (int idSegment = 0; idSegment < segmentList.size(); idSegment++) {
 
             segmentList.get(idSegment).idPtStart = idSegment;
@@ -551,6 +609,7 @@ public class PropagationPath {
             }
             this.segmentList.get(idSegment).gPathPrime = gPathPrime;
 
+            segmentGeometries[idSegment] = new SegmentGeometry(segmentList.get(idSegment));
         }
 
     }
@@ -674,4 +733,43 @@ public class PropagationPath {
             propagationPaths.add(propagationPath);
         }
     }
+
+    /**
+     * Values of a segment that does not depend on the meteorological condition
+     */
+    private static final class SegmentGeometry {
+        private final double zs;
+        private final double zr;
+        private final Coordinate sGround;
+        private final Coordinate rGround;
+        private final double dp;
+        private final double d;
+        private final double testForm;
+        private final double testFormPrime;
+        private final double gPathPrime;
+
+        SegmentGeometry(SegmentPath segmentPath) {
+            zs = segmentPath.zs;
+            zr = segmentPath.zr;
+            sGround = segmentPath.sGround;
+            rGround = segmentPath.rGround;
+            dp = segmentPath.dp;
+            d = segmentPath.d;
+            testForm = segmentPath.testForm;
+            testFormPrime = segmentPath.testFormPrime;
+            gPathPrime = segmentPath.gPathPrime;
+        }
+
+        void restore(SegmentPath segmentPath) {
+            segmentPath.zs = zs;
+            segmentPath.zr = zr;
+            segmentPath.sGround = sGround;
+            segmentPath.rGround = rGround;
+            segmentPath.dp = dp;
+            segmentPath.d = d;
+            segmentPath.testForm = testForm;
+            segmentPath.testFormPrime = testFormPrime;
+            segmentPath.gPathPrime = gPathPrime;
+        }
+    }
 }
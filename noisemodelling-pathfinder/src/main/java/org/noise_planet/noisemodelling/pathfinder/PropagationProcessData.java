@@ -111,6 +111,14 @@ public class PropagationProcessData {
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
 
+    /** Cell size of the ground factor raster used to compute the paths mean ground factor, 0 to intersect the soil
+     * areas with each path */
+    public double groundFactorRasterResolution = 0;
+
+    /** Distance between the nodes of the ground elevation grid used to evaluate the ground height, 0 to locate the
+     * triangle of each position */
+    public double elevationRasterResolution = 0;
+
 
     /** cellId only used in output data */
     public int cellId;
@@ -0,0 +1,166 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import static org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation.getADiv;
+
+/**
+ * Binary tree of the sound sources. Each node carry the envelope and the summed maximal power of its sources, in
+ * order to bound the power received from a group of sources without looking at each one of them.
+ */
+public class SourceClusterTree {
+    private final double[] nodeMinX;
+    private final double[] nodeMaxX;
+    private final double[] nodeMinY;
+    private final double[] nodeMaxY;
+    // Sum of the maximal sound power of the node sources, power per metre is multiplied by the line length
+    private final double[] nodePower;
+    private final int[] nodeLeft;
+    private final int[] nodeRight;
+    // Source index of leaf nodes, -1 for other nodes
+    private final int[] nodeSource;
+    private int nodeCount = 0;
+
+    /**
+     * @param data Sources geometries and power
+     */
+    public SourceClusterTree(PropagationProcessData data) {
+        int sourceCount = data.sourceGeometries.size();
+        int maxNodes = Math.max(1, 2 * sourceCount - 1);
+        nodeMinX = new double[maxNodes];
+        nodeMaxX = new double[maxNodes];
+        nodeMinY = new double[maxNodes];
+        nodeMaxY = new double[maxNodes];
+        nodePower = new double[maxNodes];
+        nodeLeft = new int[maxNodes];
+        nodeRight = new int[maxNodes];
+        nodeSource = new int[maxNodes];
+        if(sourceCount > 0) {
+            Envelope[] envelopes = new Envelope[sourceCount];
+            double[] power = new double[sourceCount];
+            Integer[] sources = new Integer[sourceCount];
+            for (int srcIndex = 0; srcIndex < sourceCount; srcIndex++) {
+                Geometry source = data.sourceGeometries.get(srcIndex);
+                envelopes[srcIndex] = source.getEnvelopeInternal();
+                double[] wj = data.getMaximalSourcePower(srcIndex);
+                power[srcIndex] = ComputeRays.sumArray(wj.length, wj) * getSourceLength(source);
+                sources[srcIndex] = srcIndex;
+            }
+            buildNode(sources, 0, sourceCount, envelopes, power);
+        }
+    }
+
+    /**
+     * @return Length of line sources, 1 for point sources
+     */
+    private static double getSourceLength(Geometry source) {
+        if(source instanceof Point) {
+            return 1;
+        }
+        double length = 0;
+        for(int id = 0; id < source.getNumGeometries(); id++) {
+            Geometry subGeom = source.getGeometryN(id);
+            if(subGeom instanceof LineString) {
+                length += subGeom.getLength();
+            }
+        }
+        return length;
+    }
+
+    private int buildNode(Integer[] sources, int start, int end, Envelope[] envelopes, double[] power) {
+        int node = nodeCount++;
+        Envelope nodeEnvelope = new Envelope();
+        double sumPower = 0;
+        for(int i = start; i < end; i++) {
+            nodeEnvelope.expandToInclude(envelopes[sources[i]]);
+            sumPower += power[sources[i]];
+        }
+        nodeMinX[node] = nodeEnvelope.getMinX();
+        nodeMaxX[node] = nodeEnvelope.getMaxX();
+        nodeMinY[node] = nodeEnvelope.getMinY();
+        nodeMaxY[node] = nodeEnvelope.getMaxY();
+        nodePower[node] = sumPower;
+        if(end - start == 1) {
+            nodeSource[node] = sources[start];
+            nodeLeft[node] = -1;
+            nodeRight[node] = -1;
+        } else {
+            nodeSource[node] = -1;
+            // Split at the median of the longest envelope side
+            Comparator<Integer> comparator;
+            if(nodeEnvelope.getWidth() >= nodeEnvelope.getHeight()) {
+                comparator = Comparator.comparingDouble(src -> envelopes[src].getMinX() + envelopes[src].getMaxX());
+            } else {
+                comparator = Comparator.comparingDouble(src -> envelopes[src].getMinY() + envelopes[src].getMaxY());
+            }
+            Arrays.sort(sources, start, end, comparator);
+            int middle = (start + end) / 2;
+            nodeLeft[node] = buildNode(sources, start, middle, envelopes, power);
+            nodeRight[node] = buildNode(sources, middle, end, envelopes, power);
+        }
+        return node;
+    }
+
+    /**
+     * @return Root node, -1 if there is no sources
+     */
+    public int getRoot() {
+        return nodeCount > 0 ? 0 : -1;
+    }
+
+    /**
+     * @param node Node identifier
+     * @return Source index if the node is a leaf, -1 otherwise
+     */
+    public int getSource(int node) {
+        return nodeSource[node];
+    }
+
+    public int getLeft(int node) {
+        return nodeLeft[node];
+    }
+
+    public int getRight(int node) {
+        return nodeRight[node];
+    }
+
+    /**
+     * @param node Node identifier
+     * @param receiver Receiver position
+     * @return Horizontal distance between the receiver and the node envelope
+     */
+    public double getDistance(int node, Coordinate receiver) {
+        double dx = Math.max(0, Math.max(nodeMinX[node] - receiver.x, receiver.x - nodeMaxX[node]));
+        double dy = Math.max(0, Math.max(nodeMinY[node] - receiver.y, receiver.y - nodeMaxY[node]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Upper bound of the sum of the power computed by ComputeRays for each point of the node sources, using only the
+     * geometric dispersion.
+     * @param node Node identifier
+     * @param receiver Receiver position
+     * @return Maximal received power (W)
+     */
+    public double getMaximalPower(int node, Coordinate receiver) {
+        return nodePower[node] * ComputeRays.dbaToW(-getADiv(getDistance(node, receiver))) * ComputeRays.dbaToW(3);
+    }
+}
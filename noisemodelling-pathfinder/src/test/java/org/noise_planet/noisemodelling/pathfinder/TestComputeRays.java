@@ -11,6 +11,7 @@ import org.locationtech.jts.geom.util.AffineTransformation;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.locationtech.jts.math.Vector2D;
+import org.noise_planet.noisemodelling.pathfinder.utils.AcousticPropagation;
 import org.noise_planet.noisemodelling.pathfinder.utils.Densifier3D;
 import org.noise_planet.noisemodelling.pathfinder.utils.GeoJSONDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
@@ -21,7 +22,10 @@ import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.util.*;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 public class TestComputeRays {
@@ -286,6 +290,151 @@ public class TestComputeRays {
         assertEquals(3, prop.size());
     }
 
+    @Test
+    public void testSourceClusterTree() throws ParseException {
+        WKTReader wktReader = new WKTReader();
+        PropagationProcessData data = new PropagationProcessData(null) {
+            @Override
+            public double[] getMaximalSourcePower(int sourceId) {
+                return new double[]{sourceId + 1, 10};
+            }
+        };
+        data.addSource(wktReader.read("POINT (10 10 1)"));
+        data.addSource(wktReader.read("LINESTRING (50 0 0.5, 50 100 0.5)"));
+        data.addSource(wktReader.read("POINT (200 30 1)"));
+        data.addSource(wktReader.read("MULTILINESTRING ((0 200 0.5, 40 200 0.5), (40 200 0.5, 40 260 0.5))"));
+        data.addSource(wktReader.read("POINT (-100 -80 1)"));
+        SourceClusterTree tree = new SourceClusterTree(data);
+        Coordinate receiver = new Coordinate(20, 40, 4);
+        // Each group bound is greater than the sum of its sources bounds, leaves contain every source once
+        Set<Integer> leaves = new HashSet<>();
+        Deque<Integer> nodes = new ArrayDeque<>();
+        nodes.add(tree.getRoot());
+        while(!nodes.isEmpty()) {
+            int node = nodes.pop();
+            if(tree.getSource(node) >= 0) {
+                assertTrue(leaves.add(tree.getSource(node)));
+            } else {
+                double childrenPower = tree.getMaximalPower(tree.getLeft(node), receiver) +
+                        tree.getMaximalPower(tree.getRight(node), receiver);
+                assertTrue(tree.getMaximalPower(node, receiver) >= childrenPower);
+                nodes.add(tree.getLeft(node));
+                nodes.add(tree.getRight(node));
+            }
+        }
+        assertEquals(data.sourceGeometries.size(), leaves.size());
+        // Line source bound is greater than the maximal power of its points
+        for(int node = 0; node < 2 * data.sourceGeometries.size() - 1; node++) {
+            if(tree.getSource(node) == 1) {
+                List<Coordinate> pts = new ArrayList<>();
+                double li = ComputeRays.splitLineStringIntoPoints((LineString) data.sourceGeometries.get(1), 2, pts);
+                double sum = 0;
+                for(Coordinate pt : pts) {
+                    sum += 12 * li * ComputeRays.dbaToW(-AcousticPropagation.getADiv(receiver.distance3D(pt))) *
+                            ComputeRays.dbaToW(3);
+                }
+                assertTrue(tree.getMaximalPower(node, receiver) >= sum);
+            }
+        }
+    }
+
+    /**
+     * Compare the raster mean ground factor with the intersection of the path and the soil areas
+     */
+    @Test
+    public void testGroundFactorRaster() throws ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+        List<GeoWithSoilType> soilTypes = new ArrayList<>();
+        soilTypes.add(new GeoWithSoilType(factory.toGeometry(new Envelope(0, 50, -250, 250)), 0.9));
+        soilTypes.add(new GeoWithSoilType(factory.toGeometry(new Envelope(50, 150, -250, 250)), 0.5));
+        soilTypes.add(new GeoWithSoilType(factory.toGeometry(new Envelope(150, 225, -250, 250)), 0.2));
+        soilTypes.add(new GeoWithSoilType(wktReader.read("POLYGON ((-40 -40, 10 -90, 60 -40, 10 10, -40 -40))"), 1));
+        GroundFactorRaster raster = new GroundFactorRaster(soilTypes, 0.5);
+        Coordinate[][] paths = new Coordinate[][] {
+                {new Coordinate(-10, 5), new Coordinate(200, 40)},
+                {new Coordinate(10, -200), new Coordinate(10, 200)},
+                {new Coordinate(300, 10), new Coordinate(-100, -60)},
+                {new Coordinate(-300, 10), new Coordinate(-100, 20)},
+                {new Coordinate(120, 240), new Coordinate(120.3, -100)}};
+        for(Coordinate[] path : paths) {
+            LineString line = factory.createLineString(path);
+            double expected = 0;
+            for(GeoWithSoilType soilType : soilTypes) {
+                expected += line.intersection(soilType.getGeo()).getLength() * soilType.getType();
+            }
+            expected /= line.getLength();
+            // Error is bounded by the cells on the soil areas border
+            assertEquals(expected, raster.getMeanGroundFactor(path[0], path[1]), 0.01);
+        }
+        assertEquals(0.5, raster.getGroundFactor(100, 100), 1e-6);
+        assertEquals(0, raster.getGroundFactor(-100, 100), 1e-6);
+    }
+
+    /**
+     * Switching the meteorological condition must give the same values than a path initialised only once
+     */
+    @Test
+    public void testPropagationPathMeteorologicalSwitch() throws LayerDelaunayError, IOException {
+        GeometryFactory factory = new GeometryFactory();
+        Envelope cellEnvelope = new Envelope(new Coordinate(-300., -300., 0.), new Coordinate(300, 300, 0.));
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(95, 105, -20, 20)), 8);
+        mesh.addTopographicPoint(new Coordinate(0, -50, 0));
+        mesh.addTopographicPoint(new Coordinate(200, -50, 4));
+        mesh.addTopographicPoint(new Coordinate(200, 50, 4));
+        mesh.addTopographicPoint(new Coordinate(0, 50, 0));
+        mesh.finishPolygonFeeding(cellEnvelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        rayData.addReceiver(new Coordinate(190, 5, 4));
+        rayData.addSource(factory.createPoint(new Coordinate(10, 2, 1)));
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(0, 120, -250, 250)), 0.7));
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+        ComputeRaysOut propDataOut = new ComputeRaysOut(true);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.setThreadCount(1);
+        computeRays.run(propDataOut);
+        assertTrue(propDataOut.getPropagationPaths().size() > 1);
+        for(PropagationPath path : propDataOut.getPropagationPaths()) {
+            for(boolean favorable : new boolean[] {false, true}) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                path.writeStream(new DataOutputStream(bos));
+                PropagationPath expected = new PropagationPath();
+                expected.readStream(new DataInputStream(new ByteArrayInputStream(bos.toByteArray())));
+                expected.setFavorable(favorable);
+                expected.initPropagationPath();
+                path.setFavorable(!favorable);
+                path.initPropagationPath();
+                path.setFavorable(favorable);
+                path.initPropagationPath();
+                SegmentPath expectedSR = expected.getSRList().get(0);
+                SegmentPath sr = path.getSRList().get(0);
+                assertEquals(expectedSR.d, sr.d, 1e-12);
+                assertEquals(expectedSR.dp, sr.dp, 1e-12);
+                assertEquals(expectedSR.dc, sr.dc, 1e-12);
+                assertEquals(expectedSR.dPath, sr.dPath, 1e-12);
+                assertEquals(expectedSR.testForm, sr.testForm, 1e-12);
+                assertEquals(expectedSR.gPathPrime, sr.gPathPrime, 1e-12);
+                if(expectedSR.delta != null) {
+                    assertEquals(expectedSR.delta, sr.delta, 1e-12);
+                }
+                assertEquals(expected.getSegmentList().size(), path.getSegmentList().size());
+                for(int idSegment = 0; idSegment < path.getSegmentList().size(); idSegment++) {
+                    SegmentPath expectedSegment = expected.getSegmentList().get(idSegment);
+                    SegmentPath segment = path.getSegmentList().get(idSegment);
+                    assertEquals(expectedSegment.dp, segment.dp, 1e-12);
+                    assertEquals(expectedSegment.dc, segment.dc, 1e-12);
+                    assertEquals(expectedSegment.zs, segment.zs, 1e-12);
+                    assertEquals(expectedSegment.zr, segment.zr, 1e-12);
+                    assertEquals(expectedSegment.gPathPrime, segment.gPathPrime, 1e-12);
+                }
+            }
+        }
+    }
+
     @Test
     public void testPropagationPathSerialization() throws IOException {
         List<PropagationPath> expected = new ArrayList<>();
@@ -2659,4 +2808,209 @@ public class TestComputeRays {
         Assert.assertTrue(ray.isEmpty());
 
     }
-}
\ No newline at end of file
+
+    private static PropagationProcessData createLineSourceScene(List<Coordinate> receivers) throws LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(80, 90, 10, 30)), 10);
+        mesh.finishPolygonFeeding(new Envelope(new Coordinate(-300., -300., 0.), new Coordinate(300, 300, 0.)));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        for (Coordinate receiver : receivers) {
+            rayData.addReceiver(receiver);
+        }
+        rayData.addSource(factory.createLineString(new Coordinate[]{new Coordinate(0, 0, 1),
+                new Coordinate(200, 0, 1)}));
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+        return rayData;
+    }
+
+    private static List<String> getPathsDescription(List<PropagationPath> propagationPaths) {
+        List<String> paths = new ArrayList<>();
+        for (PropagationPath path : propagationPaths) {
+            StringBuilder sb = new StringBuilder();
+            for (PointPath pointPath : path.getPointList()) {
+                sb.append(String.format(Locale.ROOT, "(%.6f %.6f %.6f)", pointPath.coordinate.x,
+                        pointPath.coordinate.y, pointPath.coordinate.z));
+            }
+            paths.add(sb.toString());
+        }
+        Collections.sort(paths);
+        return paths;
+    }
+
+    /**
+     * Receivers sharing the line source points must find the same paths as a receiver computed alone
+     */
+    @Test
+    public void testLineSourceDiscretizationCache() throws LayerDelaunayError {
+        // The first two receivers are at the same distance of the line source so they have the same split count
+        List<Coordinate> receivers = Arrays.asList(new Coordinate(100, 50, 4), new Coordinate(110, 50, 4),
+                new Coordinate(100, 150, 4));
+        ComputeRaysOut cachedOut = new ComputeRaysOut(true);
+        ComputeRays computeRays = new ComputeRays(createLineSourceScene(receivers));
+        computeRays.setThreadCount(1);
+        computeRays.run(cachedOut);
+
+        for (int idReceiver = 0; idReceiver < receivers.size(); idReceiver++) {
+            List<PropagationPath> cachedPaths = new ArrayList<>();
+            for (PropagationPath path : cachedOut.getPropagationPaths()) {
+                if (path.getIdReceiver() == idReceiver) {
+                    cachedPaths.add(path);
+                }
+            }
+            ComputeRaysOut uncachedOut = new ComputeRaysOut(true);
+            ComputeRays uncachedComputeRays = new ComputeRays(
+                    createLineSourceScene(Collections.singletonList(receivers.get(idReceiver))));
+            uncachedComputeRays.setThreadCount(1);
+            uncachedComputeRays.run(uncachedOut);
+            assertFalse(cachedPaths.isEmpty());
+            assertEquals(getPathsDescription(uncachedOut.getPropagationPaths()), getPathsDescription(cachedPaths));
+        }
+    }
+
+    /**
+     * The side hulls found with the edges cache and the early rejection of long hulls must be the hulls found by
+     * evaluating every edge and rejecting the hulls once computed
+     */
+    @Test
+    public void testSideHullCacheAndEarlyReject() throws LayerDelaunayError, ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+        MeshBuilder mesh = new MeshBuilder();
+        // Rows of buildings, some of them long enough to reject the side paths
+        List<Geometry> buildings = new ArrayList<>();
+        buildings.add(wktReader.read("POLYGON((20 20, 40 20, 40 30, 20 30, 20 20))"));
+        buildings.add(wktReader.read("POLYGON((50 15, 60 15, 60 40, 50 40, 50 15))"));
+        buildings.add(wktReader.read("POLYGON((70 25, 80 25, 80 35, 70 35, 70 25))"));
+        buildings.add(wktReader.read("POLYGON((20 55, 120 55, 120 60, 20 60, 20 55))"));
+        buildings.add(wktReader.read("POLYGON((95 10, 100 10, 100 45, 95 45, 95 10))"));
+        buildings.add(wktReader.read("POLYGON((60 70, 75 70, 75 85, 60 85, 60 70))"));
+        for (int idBuilding = 0; idBuilding < buildings.size(); idBuilding++) {
+            mesh.addGeometry(buildings.get(idBuilding), 8 + idBuilding);
+        }
+        mesh.finishPolygonFeeding(new Envelope(0, 140, 0, 100));
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        ComputeRays computeRays = new ComputeRays(new PropagationProcessData(manager));
+        computeRays.initStructures();
+
+        List<Coordinate> points = new ArrayList<>();
+        for (double x = 5; x < 140; x += 15) {
+            for (double y = 5; y < 100; y += 15) {
+                Coordinate p = new Coordinate(x, y, 4);
+                boolean outside = true;
+                for (Geometry building : buildings) {
+                    outside &= !building.intersects(factory.createPoint(p));
+                }
+                if (outside) {
+                    points.add(p);
+                }
+            }
+        }
+        int hiddenPairs = 0;
+        int sidePaths = 0;
+        int rejectedPaths = 0;
+        for (int i = 0; i < points.size(); i++) {
+            for (int j = 0; j < points.size(); j++) {
+                Coordinate p1 = points.get(i);
+                Coordinate p2 = points.get(j);
+                if (i == j || manager.isFreeField(p1, p2)) {
+                    continue;
+                }
+                hiddenPairs++;
+                for (boolean left : new boolean[] {true, false}) {
+                    List<Coordinate> expected = computeRays.computeSideHull(left, p1, p2, false);
+                    // The second computation use the cached edges of the first one
+                    assertEquals(expected, computeRays.computeSideHull(left, p1, p2));
+                    assertEquals(expected, computeRays.computeSideHull(left, p1, p2));
+                    if (expected.isEmpty()) {
+                        rejectedPaths++;
+                    } else {
+                        sidePaths++;
+                    }
+                }
+            }
+        }
+        assertTrue(hiddenPairs > 0);
+        assertTrue(sidePaths > 0);
+        assertTrue(rejectedPaths > 0);
+    }
+
+    private static byte[] toBytes(PropagationPath path) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        path.writeStream(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The free field profile shared by the direct path variants must give the paths computed without the profile
+     */
+    @Test
+    public void testFreeFieldProfileSharing() throws LayerDelaunayError, IOException {
+        GeometryFactory factory = new GeometryFactory();
+        Envelope cellEnvelope = new Envelope(new Coordinate(-300., -300., 0.), new Coordinate(300, 300, 0.));
+        MeshBuilder mesh = new MeshBuilder();
+        mesh.addGeometry(factory.toGeometry(new Envelope(95, 105, -20, 20)), 8);
+        mesh.addGeometry(factory.toGeometry(new Envelope(40, 60, 30, 45)), 12);
+        mesh.addTopographicPoint(new Coordinate(0, -50, 0));
+        mesh.addTopographicPoint(new Coordinate(200, -50, 4));
+        mesh.addTopographicPoint(new Coordinate(200, 50, 4));
+        mesh.addTopographicPoint(new Coordinate(0, 50, 0));
+        mesh.addTopographicPoint(new Coordinate(140, 0, 10));
+        mesh.finishPolygonFeeding(cellEnvelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData rayData = new PropagationProcessData(manager);
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(0, 120, -250, 250)), 0.7));
+        rayData.addSoilType(new GeoWithSoilType(factory.toGeometry(new Envelope(120, 250, -250, 0)), 0.2));
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+        ComputeRays computeRays = new ComputeRays(rayData);
+        computeRays.initStructures();
+
+        Coordinate[] sources = {new Coordinate(10, 2, 1), new Coordinate(20, 40, 0.5), new Coordinate(120, -30, 1)};
+        Coordinate[] receivers = {new Coordinate(190, 5, 4), new Coordinate(160, 30, 1.5), new Coordinate(70, 38, 4)};
+        int obstructedPairs = 0;
+        for (Coordinate source : sources) {
+            for (Coordinate receiver : receivers) {
+                List<TriIdWithIntersection> inters = new ArrayList<>();
+                manager.computePropagationPath(source, receiver, false, inters, true);
+                ComputeRays.FreeFieldProfile profile = computeRays.computeFreeFieldProfile(receiver, source, inters);
+                // The diffraction previously computed its own free field path
+                byte[] expectedFreeField = toBytes(computeRays.computeFreefield(receiver, source, null));
+                PropagationPath freeField = profile.toPropagationPath(rayData.gS);
+                PropagationPath otherFreeField = profile.toPropagationPath(rayData.gS);
+                assertArrayEquals(expectedFreeField, toBytes(freeField));
+                // Initialising a path update its segments, the other paths of the profile must not change
+                freeField.initPropagationPath();
+                assertArrayEquals(expectedFreeField, toBytes(otherFreeField));
+                PropagationPath expectedInitialised = computeRays.computeFreefield(receiver, source, inters);
+                expectedInitialised.initPropagationPath();
+                otherFreeField.initPropagationPath();
+                assertEquals(expectedInitialised.getSRList().get(0).dp, otherFreeField.getSRList().get(0).dp, 0);
+                assertEquals(expectedInitialised.getSRList().get(0).zsPrime,
+                        otherFreeField.getSRList().get(0).zsPrime);
+                if (!manager.isFreeField(source, receiver)) {
+                    obstructedPairs++;
+                    boolean topographyHideReceiver = false;
+                    for (TriIdWithIntersection intersection : inters) {
+                        topographyHideReceiver |= intersection.getBuildingId() > 0 ||
+                                intersection.isIntersectionOnTopography();
+                    }
+                    assertArrayEquals(toBytes(computeRays.computeHorizontalEdgeDiffraction(topographyHideReceiver,
+                                    receiver, source, inters)),
+                            toBytes(computeRays.computeHorizontalEdgeDiffraction(topographyHideReceiver,
+                                    receiver, source, inters, profile)));
+                    // The lateral diffraction previously computed its free field path after the vertical diffraction,
+                    // with the same intersections
+                    assertArrayEquals(toBytes(computeRays.computeFreefield(receiver, source, inters)),
+                            toBytes(profile.toPropagationPath(rayData.gS)));
+                }
+            }
+        }
+        assertTrue(obstructedPairs > 0);
+    }
+}
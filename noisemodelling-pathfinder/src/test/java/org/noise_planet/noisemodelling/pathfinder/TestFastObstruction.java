@@ -40,6 +40,9 @@ import org.locationtech.jts.geom.*;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -229,6 +232,104 @@ public class TestFastObstruction extends TestCase {
 
 	}
 
+	@Test
+	public void testMeshCache() throws LayerDelaunayError, ParseException, IOException {
+		WKTReader wktReader = new WKTReader();
+		Geometry building1 = wktReader.read("MULTIPOLYGON (((223245.10954126046 6757870.685251366, 223254.3576750219 6757883.725402858, 223265.81413628225 6757875.6004328905, 223256.56738751417 6757862.559298952, 223245.10954126046 6757870.685251366)))");
+		Geometry building2 = wktReader.read("MULTIPOLYGON (((223243.47480791857 6757871.842867576, 223178.29477526256 6757917.929971755, 223183.61783164035 6757925.556583197, 223248.83068443503 6757879.444709641, 223243.47480791857 6757871.842867576)))");
+		Envelope envelope = new Envelope(new Coordinate(223127.3190158577, 6757833.636902214),
+				new Coordinate(223340.4209403399, 6757947.187562704));
+		File cacheDirectory = Files.createTempDirectory("meshcache").toFile();
+		MeshCache meshCache = new MeshCache(cacheDirectory);
+		FastObstructionTest[] managers = new FastObstructionTest[2];
+		for(int i = 0; i < managers.length; i++) {
+			MeshBuilder mesh = new MeshBuilder();
+			// the mesh update the geometries
+			mesh.addGeometry(building1.copy(), 14);
+			mesh.addGeometry(building2.copy(), 14);
+			mesh.addTopographicPoint(new Coordinate(223200, 6757850, 2));
+			managers[i] = meshCache.getFastObstructionTest(mesh, envelope);
+			// The second mesh is not triangulated
+			assertEquals(i == 0, mesh.getTriangles() != null);
+		}
+		assertEquals(1, cacheDirectory.listFiles().length);
+		assertEquals(managers[0].getVertices(), managers[1].getVertices());
+		assertEquals(managers[0].getTriangles().size(), managers[1].getTriangles().size());
+		assertEquals(managers[0].getBuildingCount(), managers[1].getBuildingCount());
+		for(int i = 1; i <= managers[0].getBuildingCount(); i++) {
+			assertEquals(managers[0].getBuildingRoofZ(i), managers[1].getBuildingRoofZ(i), 1e-12);
+			assertTrue(managers[0].getBuilding(i).equalsExact(managers[1].getBuilding(i)));
+		}
+		Coordinate p1 = new Coordinate(223245.77914329473, 6757881.602448081, 14.0000001);
+		Coordinate p2 = new Coordinate(223230.85137195565, 6757927.403564689, 0.050000100000000006);
+		assertEquals(managers[0].isFreeField(p1, p2), managers[1].isFreeField(p1, p2));
+
+		// Any change of the inputs produce another mesh
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(building1.copy(), 15);
+		mesh.addGeometry(building2.copy(), 14);
+		mesh.addTopographicPoint(new Coordinate(223200, 6757850, 2));
+		meshCache.getFastObstructionTest(mesh, envelope);
+		assertNotNull(mesh.getTriangles());
+		assertEquals(2, cacheDirectory.listFiles().length);
+	}
+
+	@Test
+	public void testPointLocation() throws LayerDelaunayError, ParseException {
+		WKTReader wktReader = new WKTReader();
+		MeshBuilder mesh = new MeshBuilder();
+		mesh.addGeometry(wktReader.read("POLYGON ((10 10, 30 10, 30 40, 10 40, 10 10))"), 10);
+		mesh.addGeometry(wktReader.read("POLYGON ((50 20, 70 20, 60 45, 50 20))"), 8);
+		for(int i = 0; i < 10; i++) {
+			mesh.addTopographicPoint(new Coordinate(5 + i * 9, 3 + (i * 7) % 50, i % 3));
+		}
+		mesh.finishPolygonFeeding(new Envelope(0, 100, 0, 60));
+		FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+				mesh.getTriNeighbors(), mesh.getVertices());
+		// Walk result must be the same than the exhaustive search, including points on vertices and sides
+		for(double x = -0.5; x <= 100.5; x += 2.5) {
+			for(double y = -0.5; y <= 60.5; y += 2.5) {
+				Coordinate pt = new Coordinate(x, y);
+				assertEquals(manager.getTriangleIdByCoordinateExhaustive(pt), manager.getTriangleIdByCoordinate(pt));
+			}
+		}
+	}
+
+	@Test
+	public void testElevationRaster() throws LayerDelaunayError {
+		MeshBuilder mesh = new MeshBuilder();
+		for(int x = 0; x <= 100; x += 10) {
+			for(int y = 0; y <= 60; y += 10) {
+				mesh.addTopographicPoint(new Coordinate(x, y, 0.1 * x + 0.05 * y + 2));
+			}
+		}
+		mesh.finishPolygonFeeding(new Envelope(0, 100, 0, 60));
+		FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+				mesh.getTriNeighbors(), mesh.getVertices());
+		List<Coordinate> points = new ArrayList<>();
+		List<Double> expectedHeights = new ArrayList<>();
+		// Stay away from the mesh boundary, the boundary vertices are not on the plane
+		for(double x = 10.3; x <= 90; x += 3.7) {
+			for(double y = 10.1; y <= 50; y += 2.9) {
+				Coordinate pt = new Coordinate(x, y);
+				points.add(pt);
+				expectedHeights.add(manager.getHeightAtPosition(pt));
+			}
+		}
+		ElevationRaster elevationRaster = new ElevationRaster(manager, 2.5);
+		manager.setElevationRaster(elevationRaster);
+		double[] heights = manager.getHeightAtPositions(points.toArray(new Coordinate[0]));
+		for(int i = 0; i < points.size(); i++) {
+			Coordinate pt = points.get(i);
+			// The ground is a plane, so the bilinear interpolation is exact
+			assertEquals(0.1 * pt.x + 0.05 * pt.y + 2, expectedHeights.get(i), 1e-6);
+			assertEquals(expectedHeights.get(i), elevationRaster.getHeightAtPosition(pt.x, pt.y), 1e-6);
+			assertEquals(expectedHeights.get(i), heights[i], 1e-6);
+		}
+		assertTrue(Double.isNaN(elevationRaster.getHeightAtPosition(-10, 5)));
+		assertTrue(Double.isNaN(manager.getHeightAtPosition(new Coordinate(-10, 5))));
+	}
+
 	@Test
 	public void testIntersectionRayEnvelope() {
 		Envelope env = new Envelope(new Coordinate(2, 3), new Coordinate(6, 6));
@@ -159,6 +159,48 @@ public class TestWallReflection extends TestCase {
         assertArrayEquals(new int[]{1, 2} ,asWallArray(res.get(4)));
         assertArrayEquals(new int[]{1, 2, 1} ,asWallArray(res.get(5)));
 
+        // Pruned images are a subset of all images, in the same order
+        List<MirrorReceiverResult> pruned = new ArrayList<>();
+        new MirrorReceiverIterator.It(receiver, walls, 3, 500).forEach(pruned::add);
+        assertFalse(pruned.isEmpty());
+        int idFull = 0;
+        for(MirrorReceiverResult image : pruned) {
+            while(idFull < res.size() && !res.get(idFull).equals(image)) {
+                idFull++;
+            }
+            assertTrue(idFull < res.size());
+        }
+        // No wall near enough
+        assertFalse(new MirrorReceiverIterator.It(receiver, walls, 3, 1).iterator().hasNext());
+    }
+
+    @Test
+    public void testMirrorReceiverIndex() {
+        List<FastObstructionTest.Wall> walls = new ArrayList<>();
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355265.87,6688353.34), new Coordinate(355267.89,6688335.39) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355267.89,6688335.39), new Coordinate(355080.59,6688318.03) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355091.25,6688308.90), new Coordinate(355268.15,6688325.84) , 1));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355079.33,6688338.38), new Coordinate(355265.87,6688353.34) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355080.59,6688318.03), new Coordinate(355079.33,6688338.38) , 2));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355270.96,6688300.54), new Coordinate(355093.28,6688287.69) , 1));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355093.28,6688287.69), new Coordinate(355091.25,6688308.90) , 1));
+        walls.add(new FastObstructionTest.Wall(new Coordinate(355268.15,6688325.84), new Coordinate(355270.96,6688300.54) , 1));
+        Coordinate receiver = new Coordinate(355261.53293337114, 6688329.444505501, 1.6);
+        Coordinate source = new Coordinate(355104.51057583705, 6688315.152817895, 0.05);
+        List<MirrorReceiverResult> images = getReceiverImages(receiver, source, walls, 3);
+        MirrorReceiverIndex index = new MirrorReceiverIndex(images, walls);
+        // The index return the images near the source that see the source through their last wall
+        List<MirrorReceiverResult> expected = new ArrayList<>();
+        for(MirrorReceiverResult image : images) {
+            FastObstructionTest.Wall wall = walls.get(image.getWallId());
+            if(image.getReceiverPos().distance3D(source) <= 200 &&
+                    wall.toGeometry(new GeometryFactory()).intersects(new LineSegment(image.getReceiverPos(), source).toGeometry(new GeometryFactory()))) {
+                expected.add(image);
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, index.findCloseMirrorReceivers(source, 200));
+        assertTrue(index.findCloseMirrorReceivers(source, 1).isEmpty());
     }
 
     @Test
@@ -337,7 +379,7 @@ public class TestWallReflection extends TestCase {
 	    Coordinate receiver = new Coordinate(316898.0027227718, 6703891.69841584, 4);
 	    Coordinate source = new Coordinate(316900.8845049501,6703903.754851485, 0.05);
         List<FastObstructionTest.Wall> walls = data.freeFieldFinder.getLimitsInRange(
-                data.maxRefDist, source, false);
+                data.maxRefDist, source);
         assertEquals(13, walls.size());
         List<PropagationPath> paths;
         List<MirrorReceiverResult> mirrorReceiverResults = new ArrayList<>();
@@ -370,4 +412,66 @@ public class TestWallReflection extends TestCase {
         assertEquals(PointPath.POINT_TYPE.RECV, pts.get(3).type);
         assertEquals(0, receiver.distance(pts.get(3).coordinate), 1e-6);
     }
+
+    private static List<String> getPathsDescription(List<PropagationPath> paths) {
+        List<String> descriptions = new ArrayList<>();
+        for(PropagationPath path : paths) {
+            StringBuilder sb = new StringBuilder();
+            for(PointPath pointPath : path.getPointList()) {
+                sb.append(String.format(Locale.ROOT, "%s(%.6f %.6f %.6f)", pointPath.type, pointPath.coordinate.x,
+                        pointPath.coordinate.y, pointPath.coordinate.z));
+            }
+            descriptions.add(sb.toString());
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    /**
+     * The walls index returns the walls sorted by identifier and includes the walls of closed courtyards that the
+     * triangle navigation did not reach. Only the order of the reflection paths may change.
+     */
+    public void testReflectionWallsOrderAndCourtyard() throws ParseException, LayerDelaunayError {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+        Envelope cellEnvelope = new Envelope(-100, 200, -100, 200);
+        MeshBuilder mesh = new MeshBuilder();
+        // Building with a closed courtyard
+        mesh.addGeometry(wktReader.read("POLYGON ((0 0, 60 0, 60 60, 0 60, 0 0), (15 15, 15 45, 45 45, 45 15, 15 15))"), 15);
+        mesh.addGeometry(wktReader.read("POLYGON ((80 10, 100 10, 100 50, 80 50, 80 10))"), 10);
+        mesh.addGeometry(wktReader.read("POLYGON ((20 80, 50 80, 50 95, 20 95, 20 80))"), 12);
+        mesh.finishPolygonFeeding(cellEnvelope);
+        FastObstructionTest manager = new FastObstructionTest(mesh.getPolygonWithHeight(), mesh.getTriangles(),
+                mesh.getTriNeighbors(), mesh.getVertices());
+        PropagationProcessData data = new PropagationProcessData(manager);
+        ComputeRays computeRays = new ComputeRays(data);
+        computeRays.initStructures();
+        data.reflexionOrder = 2;
+        Coordinate receiver = new Coordinate(70, 70, 4);
+        Coordinate source = new Coordinate(70, -20, 0.05);
+
+        List<FastObstructionTest.Wall> walls = data.freeFieldFinder.getLimitsInRange(data.maxRefDist, receiver);
+        // Walls reachable from the receiver, in a different order
+        Envelope courtyard = new Envelope(15, 45, 15, 45);
+        List<FastObstructionTest.Wall> reachableWalls = new ArrayList<>();
+        for(FastObstructionTest.Wall wall : walls) {
+            if(!courtyard.contains(wall.midPoint())) {
+                reachableWalls.add(wall);
+            }
+        }
+        assertTrue(reachableWalls.size() < walls.size());
+        Collections.reverse(reachableWalls);
+
+        List<MirrorReceiverResult> mirrorReceiverResults = new ArrayList<>();
+        new MirrorReceiverIterator.It(receiver, walls, data.reflexionOrder).forEach(mirrorReceiverResults::add);
+        List<PropagationPath> paths = computeRays.computeReflexion(receiver, source, false, walls,
+                mirrorReceiverResults);
+        List<MirrorReceiverResult> reachableMirrorReceiverResults = new ArrayList<>();
+        new MirrorReceiverIterator.It(receiver, reachableWalls, data.reflexionOrder)
+                .forEach(reachableMirrorReceiverResults::add);
+        List<PropagationPath> reachablePaths = computeRays.computeReflexion(receiver, source, false, reachableWalls,
+                reachableMirrorReceiverResults);
+        assertFalse(paths.isEmpty());
+        assertEquals(getPathsDescription(reachablePaths), getPathsDescription(paths));
+    }
 }
@@ -40,6 +40,7 @@ import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -82,6 +83,8 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
     public AtomicLong nb_diffraction_path = new AtomicLong();
     public AtomicInteger cellComputed = new AtomicInteger();
     private static final double angle_section = (2 * Math.PI) / PropagationProcessPathData.DEFAULT_WIND_ROSE.length;
+    // Evaluator and spectrum buffers of each thread, reused for all paths
+    private final ThreadLocal<AttenuationBuffers> attenuationBuffers = ThreadLocal.withInitial(AttenuationBuffers::new);
 
     /**
      * get the rose index to search the mean occurrence p of favourable conditions in the direction of the path (S,R):
@@ -145,7 +148,9 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
     public double[] computeAttenuation(PropagationProcessPathData pathData, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
         if(pathData != null) {
             // Compute receiver/source attenuation
-            EvaluateAttenuationCnossos evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
+            AttenuationBuffers buffers = attenuationBuffers.get();
+            buffers.init(pathData.freq_lvl.size());
+            EvaluateAttenuationCnossos evaluateAttenuationCnossos = buffers.evaluateAttenuationCnossos;
 
             if(inputData != null && inputData.sourceGs.containsKey(sourceId)) {
                 inputData.setGs(inputData.getSourceGs((int) sourceId));
@@ -155,32 +160,38 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             for (PropagationPath propath : propagationPath) {
                 List<PointPath> ptList = propath.getPointList();
 
+                // The path may have been evaluated before with an other SR path state
+                propath.invalidateConditionValues();
                 propath.initPropagationPath();
                 evaluateAttenuationCnossos.initEvaluateAttenutation(pathData);
 
-                double[] Adiv = evaluateAttenuationCnossos.evaluateAdiv(propath, pathData);
+                double[] Adiv = buffers.aDiv;
+                evaluateAttenuationCnossos.evaluateAdiv(propath, Adiv);
 
-                double[] Aatm;
+                double[] Aatm = buffers.aAtm;
                 // In addition, Aatm and Aground shall be calculated from the total length of the propagation path.
                 if (propath.difVPoints.size() > 0) {
-                    Aatm = evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).dPath);
+                    evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).dPath, Aatm);
                 }else{
-                    Aatm = evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).d);
+                    evaluateAttenuationCnossos.evaluateAatm(pathData, propath.getSRList().get(0).d, Aatm);
                 }
 
-                double[] Aref = evaluateAttenuationCnossos.evaluateAref(propath, pathData);
+                double[] Aref = buffers.aRef;
+                evaluateAttenuationCnossos.evaluateAref(propath, Aref);
 
                 //
                 int roseindex = getRoseIndex(ptList.get(0).coordinate, ptList.get(ptList.size() - 1).coordinate);
-                double[] aGlobalMeteoHom = new double[pathData.freq_lvl.size()];
-                double[] aGlobalMeteoFav = new double[pathData.freq_lvl.size()];
-                double[] Aboundary;
+                double[] aGlobalMeteoHom = buffers.aGlobalMeteoHom;
+                double[] aGlobalMeteoFav = buffers.aGlobalMeteoFav;
+                Arrays.fill(aGlobalMeteoHom, 0);
+                Arrays.fill(aGlobalMeteoFav, 0);
+                double[] Aboundary = buffers.aBoundary;
 
                 if (pathData.getWindRose()[roseindex]!=1) {
                     // Compute homogeneous conditions attenuation
                     propath.setFavorable(false);
                     propath.initPropagationPath();
-                    Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, false);
+                    evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, false, Aboundary);
                     for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
                         aGlobalMeteoHom[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq] + Aref[idfreq]); // Eq. 2.5.6
                     }
@@ -190,14 +201,20 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                 if (pathData.getWindRose()[roseindex]!=0) {
                     propath.setFavorable(true);
                     propath.initPropagationPath();
-                    Aboundary = evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, true);
+                    evaluateAttenuationCnossos.evaluateAboundary(propath, pathData, true, Aboundary);
                     for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
                         aGlobalMeteoFav[idfreq] = -(Adiv[idfreq] + Aatm[idfreq] + Aboundary[idfreq]+ Aref[idfreq]); // Eq. 2.5.8
                     }
                 }
 
                 // Compute attenuation under the wind conditions using the ray direction
-                double[] aGlobalMeteoRay = ComputeRays.sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, pathData.getWindRose()[roseindex]);
+                // same as ComputeRays.sumArrayWithPonderation without allocating the result
+                double[] aGlobalMeteoRay = buffers.aGlobalMeteoRay;
+                double p = pathData.getWindRose()[roseindex];
+                for (int idfreq = 0; idfreq < aGlobalMeteoRay.length; idfreq++) {
+                    aGlobalMeteoRay[idfreq] = ComputeRays.wToDba(p * ComputeRays.dbaToW(aGlobalMeteoFav[idfreq])
+                            + (1 - p) * ComputeRays.dbaToW(aGlobalMeteoHom[idfreq]));
+                }
 
                 // Apply attenuation due to sound direction
                 if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
@@ -209,21 +226,25 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                             nextPointFromSource.y - sourceCoordinate.y,
                             nextPointFromSource.z - sourceCoordinate.z)).normalize();
                     Orientation directivityToPick = Orientation.fromVector(Orientation.rotate(sourceOrientation, outgoingRay, true), 0);
-                    double[] attSource = new double[pathData.freq_lvl.size()];
-                    for (int idfreq = 0; idfreq < pathData.freq_lvl.size(); idfreq++) {
-                        attSource[idfreq] = inputData.getSourceAttenuation((int) sourceId,
-                                pathData.freq_lvl.get(idfreq), (float)Math.toRadians(directivityToPick.yaw),
-                                (float)Math.toRadians(directivityToPick.pitch));
+                    int[] frequencies = evaluateAttenuationCnossos.getFrequencies();
+                    float yaw = (float)Math.toRadians(directivityToPick.yaw);
+                    float pitch = (float)Math.toRadians(directivityToPick.pitch);
+                    for (int idfreq = 0; idfreq < aGlobalMeteoRay.length; idfreq++) {
+                        aGlobalMeteoRay[idfreq] += inputData.getSourceAttenuation((int) sourceId,
+                                frequencies[idfreq], yaw, pitch);
                     }
-                    aGlobalMeteoRay = ComputeRays.sumArray(aGlobalMeteoRay, attSource);
                 }
 
 
 
                 if (propagationAttenuationSpectrum != null) {
-                    propagationAttenuationSpectrum = ComputeRays.sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum);
+                    // energetic sum into the returned spectrum, see ComputeRays.sumDbArray
+                    for (int idfreq = 0; idfreq < propagationAttenuationSpectrum.length; idfreq++) {
+                        propagationAttenuationSpectrum[idfreq] = ComputeRays.wToDba(ComputeRays.dbaToW(aGlobalMeteoRay[idfreq])
+                                + ComputeRays.dbaToW(propagationAttenuationSpectrum[idfreq]));
+                    }
                 } else {
-                    propagationAttenuationSpectrum = aGlobalMeteoRay;
+                    propagationAttenuationSpectrum = aGlobalMeteoRay.clone();
                 }
             }
             if (propagationAttenuationSpectrum != null) {
@@ -402,4 +423,30 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             return multiThreadParent.subProcess();
         }
     }
+
+    /**
+     * Attenuation evaluator and spectrum buffers confined to one thread
+     */
+    private static final class AttenuationBuffers {
+        final EvaluateAttenuationCnossos evaluateAttenuationCnossos = new EvaluateAttenuationCnossos();
+        double[] aDiv = new double[0];
+        double[] aAtm = new double[0];
+        double[] aGlobalMeteoHom = new double[0];
+        double[] aGlobalMeteoFav = new double[0];
+        double[] aGlobalMeteoRay = new double[0];
+        double[] aRef = new double[0];
+        double[] aBoundary = new double[0];
+
+        void init(int frequencyCount) {
+            if(aDiv.length != frequencyCount) {
+                aDiv = new double[frequencyCount];
+                aAtm = new double[frequencyCount];
+                aGlobalMeteoRay = new double[frequencyCount];
+                aRef = new double[frequencyCount];
+                aBoundary = new double[frequencyCount];
+                aGlobalMeteoHom = new double[frequencyCount];
+                aGlobalMeteoFav = new double[frequencyCount];
+            }
+        }
+    }
 }
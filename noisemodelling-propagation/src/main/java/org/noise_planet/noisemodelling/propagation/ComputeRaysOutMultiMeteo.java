@@ -0,0 +1,193 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.propagation;
+
+import org.noise_planet.noisemodelling.pathfinder.ComputeRays;
+import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.pathfinder.PropagationProcessData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+/**
+ * Evaluate the propagation paths against several meteorological conditions, the paths are computed only once.
+ * The results of the first variant are stored in {@link #receiversAttenuationLevels}, as with
+ * {@link ComputeRaysOutAttenuation}.
+ * The attenuation returned to the path finder is the lowest level of all variants for each frequency, so that the
+ * sources skipped with the maximum error can not change the level of any variant by more than this error.
+ */
+public class ComputeRaysOutMultiMeteo extends ComputeRaysOutAttenuation {
+    private final List<PropagationProcessPathData> meteoVariants;
+    private final List<ConcurrentLinkedDeque<VerticeSL>> variantsAttenuationLevels;
+
+    /**
+     * @param keepRays True to keep the propagation paths
+     * @param meteoVariants Meteorological conditions, must contain at least one item
+     * @param inputData Input data, may be null
+     */
+    public ComputeRaysOutMultiMeteo(boolean keepRays, List<PropagationProcessPathData> meteoVariants,
+                                    PropagationProcessData inputData) {
+        super(keepRays, meteoVariants.isEmpty() ? null : meteoVariants.get(0), inputData);
+        if(meteoVariants.isEmpty()) {
+            throw new IllegalArgumentException("At least one meteorological variant is required");
+        }
+        this.meteoVariants = Collections.unmodifiableList(new ArrayList<>(meteoVariants));
+        List<ConcurrentLinkedDeque<VerticeSL>> levels = new ArrayList<>(meteoVariants.size());
+        levels.add(receiversAttenuationLevels);
+        for(int variant = 1; variant < meteoVariants.size(); variant++) {
+            levels.add(new ConcurrentLinkedDeque<>());
+        }
+        this.variantsAttenuationLevels = Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * @return Meteorological conditions
+     */
+    public List<PropagationProcessPathData> getMeteoVariants() {
+        return meteoVariants;
+    }
+
+    /**
+     * @return Number of meteorological conditions
+     */
+    public int getVariantCount() {
+        return meteoVariants.size();
+    }
+
+    /**
+     * @param variant Index of the meteorological condition
+     * @return Attenuation of each source/receiver for this meteorological condition
+     */
+    public List<VerticeSL> getVerticesSoundLevel(int variant) {
+        return new ArrayList<>(variantsAttenuationLevels.get(variant));
+    }
+
+    @Override
+    public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                        List<PropagationPath> propagationPath) {
+        long sourcePK = sourceId;
+        long receiverPK = receiverId;
+        if(inputData != null) {
+            if(sourceId < inputData.sourcesPk.size()) {
+                sourcePK = inputData.sourcesPk.get((int)sourceId);
+            }
+            if(receiverId < inputData.receiversPk.size()) {
+                receiverPK = inputData.receiversPk.get((int)receiverId);
+            }
+        }
+        List<double[]> variantsLevels = new ArrayList<>(meteoVariants.size() - 1);
+        for(int variant = 1; variant < meteoVariants.size(); variant++) {
+            double[] aGlobalMeteo = computeAttenuation(meteoVariants.get(variant), sourceId, sourceLi, receiverId,
+                    propagationPath);
+            if (aGlobalMeteo != null && aGlobalMeteo.length > 0) {
+                variantsAttenuationLevels.get(variant).add(new VerticeSL(receiverPK, sourcePK, aGlobalMeteo));
+                variantsLevels.add(aGlobalMeteo);
+            }
+        }
+        return getLowestLevels(super.addPropagationPaths(sourceId, sourceLi, receiverId, propagationPath),
+                variantsLevels);
+    }
+
+    /**
+     * @param levels Levels of the first variant, not modified
+     * @param variantsLevels Levels of the other variants
+     * @return Lowest level of each frequency
+     */
+    static double[] getLowestLevels(double[] levels, List<double[]> variantsLevels) {
+        if(levels == null || levels.length == 0 || variantsLevels.isEmpty()) {
+            return levels;
+        }
+        double[] lowestLevels = levels.clone();
+        for(double[] variantLevels : variantsLevels) {
+            for(int idfreq = 0; idfreq < Math.min(lowestLevels.length, variantLevels.length); idfreq++) {
+                lowestLevels[idfreq] = Math.min(lowestLevels[idfreq], variantLevels[idfreq]);
+            }
+        }
+        return lowestLevels;
+    }
+
+    @Override
+    public IComputeRaysOut subProcess() {
+        return new ThreadMultiMeteoRaysOut(this);
+    }
+
+    public static class ThreadMultiMeteoRaysOut extends ThreadRaysOut {
+        protected ComputeRaysOutMultiMeteo multiMeteoParent;
+        // Levels of the receiver for each meteorological variant except the first one
+        protected List<List<VerticeSL>> variantsReceiverAttenuationLevels;
+
+        public ThreadMultiMeteoRaysOut(ComputeRaysOutMultiMeteo multiThreadParent) {
+            super(multiThreadParent);
+            this.multiMeteoParent = multiThreadParent;
+            variantsReceiverAttenuationLevels = new ArrayList<>(multiThreadParent.getVariantCount());
+            variantsReceiverAttenuationLevels.add(receiverAttenuationLevels);
+            for(int variant = 1; variant < multiThreadParent.getVariantCount(); variant++) {
+                variantsReceiverAttenuationLevels.add(new ArrayList<>());
+            }
+        }
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId,
+                                            List<PropagationPath> propagationPath) {
+            List<double[]> variantsLevels = new ArrayList<>(multiMeteoParent.getVariantCount() - 1);
+            for(int variant = 1; variant < multiMeteoParent.getVariantCount(); variant++) {
+                double[] aGlobalMeteo = multiMeteoParent.computeAttenuation(multiMeteoParent.meteoVariants.get(variant),
+                        sourceId, sourceLi, receiverId, propagationPath);
+                if (aGlobalMeteo != null && aGlobalMeteo.length > 0) {
+                    variantsReceiverAttenuationLevels.get(variant).add(new VerticeSL(receiverId, sourceId, aGlobalMeteo));
+                    variantsLevels.add(aGlobalMeteo);
+                }
+            }
+            return getLowestLevels(super.addPropagationPaths(sourceId, sourceLi, receiverId, propagationPath),
+                    variantsLevels);
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+            long receiverPK = receiverId;
+            if(multiMeteoParent.inputData != null) {
+                if(receiverId < multiMeteoParent.inputData.receiversPk.size()) {
+                    receiverPK = multiMeteoParent.inputData.receiversPk.get((int)receiverId);
+                }
+            }
+            for(int variant = 1; variant < multiMeteoParent.getVariantCount(); variant++) {
+                List<VerticeSL> levels = variantsReceiverAttenuationLevels.get(variant);
+                // Merge levels for each receiver for lines sources
+                Map<Long, double[]> levelsPerSourceLines = new HashMap<>();
+                for (VerticeSL lvl : levels) {
+                    if (!levelsPerSourceLines.containsKey(lvl.sourceId)) {
+                        levelsPerSourceLines.put(lvl.sourceId, lvl.value);
+                    } else {
+                        levelsPerSourceLines.put(lvl.sourceId, ComputeRays.sumDbArray(levelsPerSourceLines.get(lvl.sourceId),
+                                lvl.value));
+                    }
+                }
+                for (Map.Entry<Long, double[]> entry : levelsPerSourceLines.entrySet()) {
+                    long sourcePK = entry.getKey();
+                    if(multiMeteoParent.inputData != null && entry.getKey() < multiMeteoParent.inputData.sourcesPk.size()) {
+                        sourcePK = multiMeteoParent.inputData.sourcesPk.get(entry.getKey().intValue());
+                    }
+                    multiMeteoParent.variantsAttenuationLevels.get(variant).add(
+                            new VerticeSL(receiverPK, sourcePK, entry.getValue()));
+                }
+                levels.clear();
+            }
+            // First variant
+            super.finalizeReceiver(receiverId);
+        }
+    }
+}
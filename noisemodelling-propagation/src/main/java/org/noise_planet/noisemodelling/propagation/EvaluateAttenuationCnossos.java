@@ -52,6 +52,21 @@ public class EvaluateAttenuationCnossos {
     private double[] freq_lambda;
     private double[] aGlobal;
     boolean gToSigma = false; // Todo publish parameter issue #13
+    // Frequency tables of the last initialised frequencies and celerity, rebuilt only if their values change
+    private int[] frequencies = new int[0];
+    private double tableCelerity;
+    // 2 pi f / c
+    private double[] waveNumber;
+    // f^2.5, f^1.5 and f^0.75 used by the ground attenuation
+    private double[] freqPow25;
+    private double[] freqPow15;
+    private double[] freqPow075;
+    // Spectra of the diffraction and ground terms of getABoundary, reused for all paths
+    private double[] deltaDifSR = new double[0];
+    private double[] deltaDifSpR = new double[0];
+    private double[] deltaDifSRp = new double[0];
+    private double[] aGroundSO = new double[0];
+    private double[] aGroundOR = new double[0];
 
     public void setaGlobal(double[] aGlobal) {
         this.aGlobal = aGlobal;
@@ -59,6 +74,8 @@ public class EvaluateAttenuationCnossos {
 
     public void setFreq_lambda(double[] freq_lambda) {
         this.freq_lambda = freq_lambda;
+        // The next initEvaluateAttenutation call rebuilds the tables
+        frequencies = new int[0];
     }
 
 
@@ -82,7 +99,16 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public double[] getDeltaDif(SegmentPath srpath, PropagationProcessPathData data) {
-        double[] DeltaDif = new double[data.freq_lvl.size()];
+        double[] deltaDif = new double[data.freq_lvl.size()];
+        getDeltaDif(srpath, data, deltaDif);
+        return deltaDif;
+    }
+
+    /**
+     * Eq 2.5.21, see {@link #getDeltaDif(SegmentPath, PropagationProcessPathData)}
+     * @param DeltaDif (Out) Diffraction attenuation for each frequency
+     */
+    public void getDeltaDif(SegmentPath srpath, PropagationProcessPathData data, double[] DeltaDif) {
         double cprime;
 
         for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
@@ -110,8 +136,6 @@ public class EvaluateAttenuationCnossos {
             DeltaDif[idfreq] = Math.max(0, deltaDif);
 
         }
-        return DeltaDif;
-
     }
 
 
@@ -145,49 +169,69 @@ public class EvaluateAttenuationCnossos {
     public static double[] getAGroundCore(PropagationPath path, SegmentPath segmentPath, PropagationProcessPathData data) {
 
         double[] aGround = new double[data.freq_lvl.size()];
-        double aGroundmin;
-        double AGround;
+        final double gw26 = Math.pow(segmentPath.gw, 2.6);
+        final double gw13 = Math.pow(segmentPath.gw, 1.3);
 
         for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+            double freq = data.freq_lvl.get(idfreq);
             //NF S 31-133 page 41 c
-            double k = 2 * Math.PI * data.freq_lvl.get(idfreq) / data.getCelerity();
-            //NF S 31-113 page 41 w
-            double w = 0.0185 * Math.pow(data.freq_lvl.get(idfreq), 2.5) * Math.pow(segmentPath.gw, 2.6) /
-                    (Math.pow(data.freq_lvl.get(idfreq), 1.5) * Math.pow(segmentPath.gw, 2.6) + 1.3 * Math.pow(10, 3) * Math.pow(data.freq_lvl.get(idfreq), 0.75) * Math.pow(segmentPath.gw, 1.3) + 1.16 * Math.pow(10, 6));
-            //NF S 31-113 page 41 Cf
-            double cf = segmentPath.dp * (1 + 3 * w * segmentPath.dp * Math.pow(Math.E, -Math.sqrt(w * segmentPath.dp))) / (1 + w * segmentPath.dp);
-            //NF S 31-113 page 41 A sol
+            double k = 2 * Math.PI * freq / data.getCelerity();
+            aGround[idfreq] = getAGroundAtFrequency(path, segmentPath, data, k, Math.pow(freq, 2.5),
+                    Math.pow(freq, 1.5), Math.pow(freq, 0.75), gw26, gw13);
+        }
+        return aGround;
+    }
 
-            if (path.isFavorable()) {
-                if (data.isPrime2520()) {
-                    if (segmentPath.testFormPrime <= 1) {
-                        aGroundmin = -3 * (1 - segmentPath.gm);
-                    } else {
-                        aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testFormPrime)));
-                    }
+    /**
+     * Aground for one frequency band, shared by {@link #getAGroundCore(PropagationPath, SegmentPath, PropagationProcessPathData)}
+     * and the table based evaluation
+     * @param k Wave number 2πf/c
+     * @param freqPow25 f^2.5
+     * @param freqPow15 f^1.5
+     * @param freqPow075 f^0.75
+     * @param gw26 Gw^2.6
+     * @param gw13 Gw^1.3
+     * @return Aground (dB)
+     */
+    private static double getAGroundAtFrequency(PropagationPath path, SegmentPath segmentPath,
+                                                PropagationProcessPathData data, double k, double freqPow25,
+                                                double freqPow15, double freqPow075, double gw26, double gw13) {
+        double aGroundmin;
+        double AGround;
+        //NF S 31-113 page 41 w
+        double w = 0.0185 * freqPow25 * gw26 /
+                (freqPow15 * gw26 + 1.3 * Math.pow(10, 3) * freqPow075 * gw13 + 1.16 * Math.pow(10, 6));
+        //NF S 31-113 page 41 Cf
+        double cf = segmentPath.dp * (1 + 3 * w * segmentPath.dp * Math.pow(Math.E, -Math.sqrt(w * segmentPath.dp))) / (1 + w * segmentPath.dp);
+        //NF S 31-113 page 41 A sol
+
+        if (path.isFavorable()) {
+            if (data.isPrime2520()) {
+                if (segmentPath.testFormPrime <= 1) {
+                    aGroundmin = -3 * (1 - segmentPath.gm);
                 } else {
-                    if (segmentPath.testForm <= 1) {
-                        aGroundmin = -3 * (1 - segmentPath.gm);
-                    } else {
-                        aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testForm)));
-                    }
+                    aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testFormPrime)));
                 }
-                /** eq. 2.5.20**/
-                AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
-                        (Math.pow(segmentPath.zsPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zsPrime + cf / k) *
-                        (Math.pow(segmentPath.zrPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zrPrime + cf / k));
             } else {
-                /** eq. 2.5.15**/
-                AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
-                        (Math.pow(segmentPath.zs, 2) - Math.sqrt(2 * cf / k) * segmentPath.zs + cf / k) *
-                        (Math.pow(segmentPath.zr, 2) - Math.sqrt(2 * cf / k) * segmentPath.zr + cf / k));
-                /** eq. 2.5.18**/
-                aGroundmin = -3 * (1 - segmentPath.gm);
+                if (segmentPath.testForm <= 1) {
+                    aGroundmin = -3 * (1 - segmentPath.gm);
+                } else {
+                    aGroundmin = -3 * (1 - segmentPath.gm) * (1 + 2 * (1 - (1 / segmentPath.testForm)));
+                }
             }
-            aGround[idfreq] = Math.max(AGround, aGroundmin);
-
+            /** eq. 2.5.20**/
+            AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
+                    (Math.pow(segmentPath.zsPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zsPrime + cf / k) *
+                    (Math.pow(segmentPath.zrPrime, 2) - Math.sqrt(2 * cf / k) * segmentPath.zrPrime + cf / k));
+        } else {
+            /** eq. 2.5.15**/
+            AGround = -10 * Math.log10(4 * Math.pow(k, 2) / Math.pow(segmentPath.dp, 2) *
+                    (Math.pow(segmentPath.zs, 2) - Math.sqrt(2 * cf / k) * segmentPath.zs + cf / k) *
+                    (Math.pow(segmentPath.zr, 2) - Math.sqrt(2 * cf / k) * segmentPath.zr + cf / k));
+            /** eq. 2.5.18**/
+            aGroundmin = -3 * (1 - segmentPath.gm);
         }
-        return aGround;
+        return Math.max(AGround, aGroundmin);
     }
 
     /**
@@ -213,17 +257,27 @@ public class EvaluateAttenuationCnossos {
      */
     public double[] getARef(PropagationPath path, PropagationProcessPathData data) {
         double[] aRef = new double[data.freq_lvl.size()];
+        getARef(path, aRef);
+        return aRef;
+    }
+
+    /**
+     * See {@link #getARef(PropagationPath, PropagationProcessPathData)}
+     * @param path Propagation path
+     * @param aRef (Out) Reflection attenuation for each frequency
+     */
+    public void getARef(PropagationPath path, double[] aRef) {
         Arrays.fill(aRef, 0.0);
-        for (int idf = 0; idf < nbfreq; idf++) {
-            for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
-                List<Double> alpha = path.getPointList().get(path.refPoints.get(idRef)).alphaWall;
-                /*if (gToSigma || alphaUniqueValue > 1){
-                    PropagationProcessData.getWallAlpha(alphaUniqueValue, data.freq_lvl.get(idf));
-                }*/
+        // Each wall absorption list is read once, the sum of each frequency keeps the reflection order
+        for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
+            List<Double> alpha = path.getPointList().get(path.refPoints.get(idRef)).alphaWall;
+            /*if (gToSigma || alphaUniqueValue > 1){
+                PropagationProcessData.getWallAlpha(alphaUniqueValue, data.freq_lvl.get(idf));
+            }*/
+            for (int idf = 0; idf < nbfreq; idf++) {
                 aRef[idf] += -10 * Math.log10(1 - alpha.get(idf));
             }
         }
-        return aRef;
     }
 
     /**
@@ -235,6 +289,16 @@ public class EvaluateAttenuationCnossos {
      */
     public double[] getAGround(SegmentPath segmentPath, PropagationPath path, PropagationProcessPathData data) {
         double[] aGround = new double[data.freq_lvl.size()];
+        getAGround(segmentPath, path, data, aGround);
+        return aGround;
+    }
+
+    /**
+     * See {@link #getAGround(SegmentPath, PropagationPath, PropagationProcessPathData)}
+     * @param aGround (Out) Ground attenuation for each frequency
+     */
+    public void getAGround(SegmentPath segmentPath, PropagationPath path, PropagationProcessPathData data,
+                           double[] aGround) {
         double aGroundmin;
 
         // Here there is a debate if use the condition isgDisc or not
@@ -252,9 +316,28 @@ public class EvaluateAttenuationCnossos {
             }
             java.util.Arrays.fill(aGround, aGroundmin);
         } else {
-            aGround = getAGroundCore(path, segmentPath, data);
+            getAGroundCoreWithTables(path, segmentPath, data, aGround);
+        }
+    }
+
+    /**
+     * Same as {@link #getAGroundCore(PropagationPath, SegmentPath, PropagationProcessPathData)} using the frequency
+     * tables built by {@link #initEvaluateAttenutation(PropagationProcessPathData)}
+     */
+    private void getAGroundCoreWithTables(PropagationPath path, SegmentPath segmentPath,
+                                          PropagationProcessPathData data, double[] aGround) {
+        if(!isTableValid(data)) {
+            double[] aGroundCore = getAGroundCore(path, segmentPath, data);
+            System.arraycopy(aGroundCore, 0, aGround, 0, aGroundCore.length);
+            return;
+        }
+        final double gw26 = Math.pow(segmentPath.gw, 2.6);
+        final double gw13 = Math.pow(segmentPath.gw, 1.3);
+
+        for (int idfreq = 0; idfreq < nbfreq; idfreq++) {
+            aGround[idfreq] = getAGroundAtFrequency(path, segmentPath, data, waveNumber[idfreq], freqPow25[idfreq],
+                    freqPow15[idfreq], freqPow075[idfreq], gw26, gw13);
         }
-        return aGround;
     }
 
     /**
@@ -264,14 +347,28 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public double[] getABoundary(PropagationPath path, PropagationProcessPathData data) {
+        double[] aBoundary = new double[data.freq_lvl.size()];
+        getABoundary(path, data, aBoundary);
+        return aBoundary;
+    }
 
-        List<SegmentPath> srPath = path.getSRList();
-
-        double[] aGround;
-        double[] aDif = new double[data.freq_lvl.size()];
-
-        double[] aBoundary;
+    /**
+     * See {@link #getABoundary(PropagationPath, PropagationProcessPathData)}
+     * @param path Propagation path
+     * @param data Propagation data
+     * @param aBoundary (Out) Ground and diffraction attenuation for each frequency
+     */
+    public void getABoundary(PropagationPath path, PropagationProcessPathData data, double[] aBoundary) {
 
+        List<SegmentPath> srPath = path.getSRList();
+        int freqCount = data.freq_lvl.size();
+        if(deltaDifSR.length != freqCount) {
+            deltaDifSR = new double[freqCount];
+            deltaDifSpR = new double[freqCount];
+            deltaDifSRp = new double[freqCount];
+            aGroundSO = new double[freqCount];
+            aGroundOR = new double[freqCount];
+        }
 
         // Set Gm and Gw for AGround SR - Table 2.5.b
         if (path.isFavorable()) {
@@ -286,15 +383,15 @@ public class EvaluateAttenuationCnossos {
             // Adif is calculated with diffraction. The ground effect is taken into account in the Adif equation itself (Aground = 0 dB). This therefore gives Aboundary = Adif
             List<SegmentPath> segmentPath = path.getSegmentList();
 
-            double[] DeltaDifSR; // is the attenuation due to the diffraction between the source S and the receiver R
-            double[] DeltaDifSpR;
-            double[] DeltaDifSRp;
-            double[] aGroundSO; // is the attenuation due to the ground effect on the source side, weighted by the diffraction on the source side; where it is understood that O = O1 in case of multiple diffractions as in Figure 2.5.f
-            double[] aGroundOR; // is the attenuation due to the ground effect on the receiver side, weighted by the diffraction on the receiver side.
+            double[] DeltaDifSR = deltaDifSR; // is the attenuation due to the diffraction between the source S and the receiver R
+            double[] DeltaDifSpR = deltaDifSpR;
+            double[] DeltaDifSRp = deltaDifSRp;
+            double[] aGroundSO = this.aGroundSO; // is the attenuation due to the ground effect on the source side, weighted by the diffraction on the source side; where it is understood that O = O1 in case of multiple diffractions as in Figure 2.5.f
+            double[] aGroundOR = this.aGroundOR; // is the attenuation due to the ground effect on the receiver side, weighted by the diffraction on the receiver side.
 
-            DeltaDifSR = getDeltaDif(srPath.get(0), data);
-            DeltaDifSpR = getDeltaDif(srPath.get(srPath.size() - 2), data);
-            DeltaDifSRp = getDeltaDif(srPath.get(srPath.size() - 1), data);
+            getDeltaDif(srPath.get(0), data, DeltaDifSR);
+            getDeltaDif(srPath.get(srPath.size() - 2), data, DeltaDifSpR);
+            getDeltaDif(srPath.get(srPath.size() - 1), data, DeltaDifSRp);
 
             // Set Gm and Gw for AGround SO - Table 2.5.b
             if (path.isFavorable()) {
@@ -304,7 +401,7 @@ public class EvaluateAttenuationCnossos {
                 segmentPath.get(0).setGw(segmentPath.get(0).gPathPrime);
                 segmentPath.get(0).setGm(segmentPath.get(0).gPathPrime);
             }
-            aGroundSO = getAGround(segmentPath.get(0), path, data);
+            getAGround(segmentPath.get(0), path, data, aGroundSO);
 
             // Set Gm and Gw for AGround OR - Table 2.5.b
             if (path.isFavorable()) {
@@ -314,45 +411,39 @@ public class EvaluateAttenuationCnossos {
                 segmentPath.get(segmentPath.size() - 1).setGw(segmentPath.get(segmentPath.size() - 1).gPath);
                 segmentPath.get(segmentPath.size() - 1).setGm(segmentPath.get(segmentPath.size() - 1).gPath);
             }
-            aGroundOR = getAGround(segmentPath.get(segmentPath.size() - 1), path, data);
+            getAGround(segmentPath.get(segmentPath.size() - 1), path, data, aGroundOR);
 
-            double[] deltaGroundSO = new double[data.freq_lvl.size()];
-            double[] deltaGroundOR = new double[data.freq_lvl.size()];
             // Eq 2.5.30 - Eq. 2.5.31 - Eq. 2.5.32
             for (int idf = 0; idf < nbfreq; idf++) {
                 // if Deltadif > 25: Deltadif = 25 dB for a diffraction on a horizontal edge and only on the term Deltadif which figures in the calculation of Adif. This upper bound shall not be applied in the Deltadif terms that intervene in the calculation of Deltaground, or for a diffraction on a vertical edge (lateral diffraction) in the case of industrial noise mapping
+                double deltaGroundSO;
+                double deltaGroundOR;
                 if (segmentPath.get(segmentPath.size() - 1).zr > 0.0000001) {// see 5.3 Equivalent heights from AFNOR document
-                    deltaGroundSO[idf]  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
-                    deltaGroundOR[idf] = getDeltaGround(aGroundOR[idf], DeltaDifSRp[idf], DeltaDifSR[idf]);
+                    deltaGroundSO  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
+                    deltaGroundOR = getDeltaGround(aGroundOR[idf], DeltaDifSRp[idf], DeltaDifSR[idf]);
                 }else{
-                    deltaGroundSO[idf]  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
-                    deltaGroundOR[idf]  = aGroundOR[idf];
+                    deltaGroundSO  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],DeltaDifSR[idf]);
+                    deltaGroundOR  = aGroundOR[idf];
                 }
-                aDif[idf] = Math.min(25, DeltaDifSR[idf]) + deltaGroundSO[idf] + deltaGroundOR[idf]; // Eq. 2.5.30
+                aBoundary[idf] = Math.min(25, DeltaDifSR[idf]) + deltaGroundSO + deltaGroundOR; // Eq. 2.5.30
             }
-
-            aBoundary = aDif;
         } else {
             // Aground is calculated with no diffraction (Adif = 0 dB) and Aboundary = Aground;
             // In addition, Aatm and Aground shall be calculated from the total length of the propagation path.
-            aGround = getAGround(srPath.get(0), path, data);
-            aBoundary = aGround;
+            getAGround(srPath.get(0), path, data, aBoundary);
 
             if (path.difVPoints.size() > 0 ) {
 
-                aDif = getDeltaDif(srPath.get(0), data);
+                double[] aDif = deltaDifSR;
+                getDeltaDif(srPath.get(0), data, aDif);
 
                 // Eq. 2.5.33 - Eq. 2.5.34
                 for (int idf = 0; idf < nbfreq; idf++) {
-                    aBoundary[idf] = aDif[idf] + aGround[idf];
+                    aBoundary[idf] = aDif[idf] + aBoundary[idf];
                 }
 
             }
         }
-
-
-
-        return aBoundary;
     }
 
     /**
@@ -360,20 +451,82 @@ public class EvaluateAttenuationCnossos {
      * @param data
      */
     public void initEvaluateAttenutation(PropagationProcessPathData data) {
+        if(isTableValid(data)) {
+            // Same frequencies and celerity than the previous path
+            return;
+        }
         // init
         aGlobal = new double[data.freq_lvl.size()];
         nbfreq = data.freq_lvl.size();
 
         // Init wave length for each frequency
         freq_lambda = new double[nbfreq];
+        waveNumber = new double[nbfreq];
+        freqPow25 = new double[nbfreq];
+        freqPow15 = new double[nbfreq];
+        freqPow075 = new double[nbfreq];
+        int[] tableFrequencies = new int[nbfreq];
         for (int idf = 0; idf < nbfreq; idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
+            int freq = data.freq_lvl.get(idf);
+            tableFrequencies[idf] = freq;
+            if (freq > 0) {
+                freq_lambda[idf] = data.getCelerity() / freq;
             } else {
                 freq_lambda[idf] = 1;
             }
+            waveNumber[idf] = 2 * Math.PI * freq / data.getCelerity();
+            freqPow25[idf] = Math.pow(freq, 2.5);
+            freqPow15[idf] = Math.pow(freq, 1.5);
+            freqPow075[idf] = Math.pow(freq, 0.75);
+        }
+        frequencies = tableFrequencies;
+        tableCelerity = data.getCelerity();
+    }
+
+    /**
+     * @return True if the frequency tables have been built for the frequency values and celerity of this data
+     */
+    private boolean isTableValid(PropagationProcessPathData data) {
+        List<Integer> freqLvl = data.freq_lvl;
+        if(freq_lambda == null || tableCelerity != data.getCelerity()
+                || frequencies.length != freqLvl.size() || nbfreq != frequencies.length) {
+            return false;
+        }
+        for (int idf = 0; idf < frequencies.length; idf++) {
+            if(frequencies[idf] != freqLvl.get(idf)) {
+                return false;
+            }
         }
+        return true;
+    }
+
+    /**
+     * @return Frequencies of the tables built by the last {@link #initEvaluateAttenutation(PropagationProcessPathData)}
+     */
+    int[] getFrequencies() {
+        return frequencies;
+    }
 
+    /**
+     * Eq. 2.5.12, see {@link #evaluateAdiv(PropagationPath, PropagationProcessPathData)}
+     * @param path Propagation path
+     * @param aDiv (Out) Divergence attenuation for each frequency
+     */
+    public void evaluateAdiv(PropagationPath path, double[] aDiv) {
+        Arrays.fill(aDiv, 0, nbfreq, getADiv(path.getSRList().get(0).d));
+    }
+
+    /**
+     * See {@link #evaluateAatm(PropagationProcessPathData, double)}
+     * @param data Atmosphere data
+     * @param distance Propagation distance
+     * @param aAtm (Out) Atmospheric attenuation for each frequency
+     */
+    public void evaluateAatm(PropagationProcessPathData data, double distance, double[] aAtm) {
+        double[] alpha_atmo = data.getAlpha_atmo();
+        for (int idfreq = 0; idfreq < nbfreq; idfreq++) {
+            aAtm[idfreq] = getAAtm(distance, alpha_atmo[idfreq]);
+        }
     }
 
 
@@ -415,6 +568,15 @@ public class EvaluateAttenuationCnossos {
         return getARef(path, data);
     }
 
+    /**
+     * See {@link #evaluateAref(PropagationPath, PropagationProcessPathData)}
+     * @param path Propagation path
+     * @param aRef (Out) Reflection attenuation for each frequency
+     */
+    public void evaluateAref(PropagationPath path, double[] aRef) {
+        getARef(path, aRef);
+    }
+
     /**
      *
      * @param path
@@ -429,6 +591,15 @@ public class EvaluateAttenuationCnossos {
         return aBoundary;
     }
 
+    /**
+     * See {@link #evaluateAboundary(PropagationPath, PropagationProcessPathData, boolean)}
+     * @param aBoundary (Out) Ground and diffraction attenuation for each frequency
+     */
+    public void evaluateAboundary(PropagationPath path, PropagationProcessPathData data, boolean Favorable,
+                                  double[] aBoundary) {
+        getABoundary(path, data, aBoundary);
+    }
+
 
 
     /**